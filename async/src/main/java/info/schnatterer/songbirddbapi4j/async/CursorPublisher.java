@@ -0,0 +1,273 @@
+/**
+ * Copyright (C) 2015 Johannes Schnatterer
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package info.schnatterer.songbirddbapi4j.async;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Publishes the elements of a cursor (e.g. a
+ * {@link info.schnatterer.songbirddbapi4j.MediaItemCursor}) as they are
+ * requested by the subscriber. Each subscriber gets its own cursor, which is
+ * opened on the first request and closed on completion, error or
+ * cancellation.
+ * 
+ * All signals to a subscriber are sent from tasks running on an
+ * {@link Executor}. Reading the cursor happens on the same tasks, so the
+ * cursor does not need to be thread safe. A cancellation takes effect after
+ * the element that is currently read. If the subscriber throws from
+ * {@link Flow.Subscriber#onNext(Object)}, the subscription is cancelled and
+ * the exception is logged (rule 2.13 of the Reactive Streams specification).
+ * 
+ * @author schnatterer
+ * 
+ * @param <T>
+ *            the elements of the cursor
+ */
+final class CursorPublisher<T> implements Flow.Publisher<T> {
+	/** SLF4J-Logger. */
+	private static final Logger logger = LoggerFactory
+			.getLogger(CursorPublisher.class);
+
+	/** Runs the tasks that read the cursors and signal the subscribers. */
+	private final Executor executor;
+	/**
+	 * Opens a new cursor. It is closed by this class if it implements
+	 * {@link Closeable}.
+	 */
+	private final Callable<? extends Iterator<T>> cursorFactory;
+
+	/**
+	 * @param executor
+	 *            runs the tasks that read the cursors and signal the
+	 *            subscribers
+	 * @param cursorFactory
+	 *            opens a new cursor per subscriber
+	 */
+	CursorPublisher(final Executor executor,
+			final Callable<? extends Iterator<T>> cursorFactory) {
+		this.executor = executor;
+		this.cursorFactory = cursorFactory;
+	}
+
+	@Override
+	public void subscribe(final Flow.Subscriber<? super T> subscriber) {
+		if (subscriber == null) {
+			throw new NullPointerException("subscriber");
+		}
+		new CursorSubscription(subscriber).schedule();
+	}
+
+	/**
+	 * Reads the cursor of a single subscriber. Calls to {@link #request(long)}
+	 * and {@link #cancel()} schedule {@link #run()}, which is never executed
+	 * concurrently.
+	 */
+	private final class CursorSubscription implements Flow.Subscription,
+			Runnable {
+		/** Receives the elements. */
+		private final Flow.Subscriber<? super T> subscriber;
+		/** Outstanding demand, {@link Long#MAX_VALUE} meaning unbounded. */
+		private final AtomicLong requested = new AtomicLong();
+		/** Number of times {@link #run()} has been scheduled and not run. */
+		private final AtomicInteger pending = new AtomicInteger();
+		/** Has {@link #cancel()} been called? */
+		private volatile boolean cancelled;
+		/** Has a non-positive number of elements been requested? */
+		private volatile boolean invalidRequest;
+
+		// Only accessed by run(), see schedule()
+		/** Has {@link Flow.Subscriber#onSubscribe(Flow.Subscription)} been called? */
+		private boolean subscribed;
+		/** The cursor, null until the first request. */
+		private Iterator<T> cursor;
+		/** Has a terminal signal been sent or has the subscription been cancelled? */
+		private boolean done;
+
+		/**
+		 * @param subscriber
+		 *            receives the elements
+		 */
+		private CursorSubscription(final Flow.Subscriber<? super T> subscriber) {
+			this.subscriber = subscriber;
+		}
+
+		@Override
+		public void request(final long n) {
+			if (n <= 0) {
+				invalidRequest = true;
+			} else {
+				long current;
+				long updated;
+				do {
+					current = requested.get();
+					updated = current + n;
+					if (updated < 0) {
+						updated = Long.MAX_VALUE;
+					}
+				} while (!requested.compareAndSet(current, updated));
+			}
+			schedule();
+		}
+
+		@Override
+		public void cancel() {
+			cancelled = true;
+			schedule();
+		}
+
+		/** Makes sure {@link #run()} is executed after this call. */
+		private void schedule() {
+			if (pending.getAndIncrement() == 0) {
+				try {
+					executor.execute(this);
+				} catch (RejectedExecutionException e) {
+					// Nothing is running, so signal the error from here
+					pending.set(0);
+					if (!subscribed) {
+						subscribed = true;
+						subscriber.onSubscribe(this);
+					}
+					if (!done) {
+						finish();
+						subscriber.onError(e);
+					}
+				}
+			}
+		}
+
+		@Override
+		public void run() {
+			int missed = 1;
+			do {
+				drain();
+				missed = pending.addAndGet(-missed);
+			} while (missed != 0);
+		}
+
+		/** Sends as many elements as requested. */
+		private void drain() {
+			if (!subscribed) {
+				subscribed = true;
+				subscriber.onSubscribe(this);
+			}
+			if (done) {
+				return;
+			}
+			if (cancelled) {
+				finish();
+				return;
+			}
+			if (invalidRequest) {
+				finish();
+				subscriber.onError(new IllegalArgumentException(
+						"Number of requested elements must be positive"));
+				return;
+			}
+			long demand = requested.get();
+			if (demand == 0) {
+				return;
+			}
+			long emitted = 0;
+			boolean hasNext;
+			try {
+				if (cursor == null) {
+					cursor = cursorFactory.call();
+				}
+				hasNext = cursor.hasNext();
+				while (emitted != demand && !cancelled && hasNext) {
+					T next = cursor.next();
+					if (!emit(next)) {
+						return;
+					}
+					emitted++;
+					hasNext = cursor.hasNext();
+				}
+			} catch (Exception e) {
+				// Only the cursor ends up here, not the subscriber
+				finish();
+				subscriber.onError(e);
+				return;
+			}
+			if (cancelled) {
+				finish();
+			} else if (!hasNext) {
+				finish();
+				subscriber.onComplete();
+			} else if (demand != Long.MAX_VALUE) {
+				requested.addAndGet(-emitted);
+			}
+		}
+
+		/**
+		 * Hands an element to the subscriber. If the subscriber throws, the
+		 * subscription is treated as cancelled.
+		 * 
+		 * @param element
+		 *            the element to send
+		 * @return <code>false</code> if the subscriber threw and the
+		 *         subscription has been cancelled
+		 */
+		private boolean emit(final T element) {
+			try {
+				subscriber.onNext(element);
+				return true;
+			} catch (RuntimeException e) {
+				logger.error("Subscriber " + subscriber
+						+ " threw from onNext(), cancelling its subscription",
+						e);
+				cancelled = true;
+				finish();
+				return false;
+			}
+		}
+
+		/** Closes the cursor and ignores all further signals. */
+		private void finish() {
+			done = true;
+			closeCursor();
+		}
+
+		/**
+		 * Closes the cursor, if it has been opened. Failures are logged only,
+		 * as the subscriber may already have received its terminal signal or
+		 * may have cancelled.
+		 */
+		private void closeCursor() {
+			Iterator<T> currentCursor = cursor;
+			cursor = null;
+			if (currentCursor instanceof Closeable) {
+				try {
+					((Closeable) currentCursor).close();
+				} catch (IOException e) {
+					logger.error("Closing cursor failed", e);
+				} catch (RuntimeException e) {
+					logger.error("Closing cursor failed", e);
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,96 @@
+/**
+ * Copyright (C) 2015 Johannes Schnatterer
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package info.schnatterer.songbirddbapi4j.async;
+
+import info.schnatterer.songbirddbapi4j.SongbirdDb;
+import info.schnatterer.songbirddbapi4j.domain.MediaItem;
+import info.schnatterer.songbirddbapi4j.domain.SimpleMediaList;
+
+import java.io.Closeable;
+import java.sql.SQLException;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * Reads the members of one playlist after another, so only a single
+ * playlist has to be kept in memory. Each playlist is read via
+ * {@link SongbirdDb#getPlayList(MediaItem)}, which releases its connection
+ * afterwards.
+ * 
+ * <b>This class is not thread safe.</b>
+ * 
+ * @author schnatterer
+ * 
+ */
+final class PlayListCursor implements Iterator<SimpleMediaList>, Closeable {
+	/** Reads the members. */
+	private final SongbirdDb db;
+	/** The playlists that have not been read yet. */
+	private Iterator<MediaItem> playLists;
+
+	/**
+	 * @param db
+	 *            reads the members
+	 * @param playLists
+	 *            the playlists to read, as returned by
+	 *            {@link SongbirdDb#getPlaylistItems(boolean, boolean)}
+	 */
+	PlayListCursor(final SongbirdDb db, final List<MediaItem> playLists) {
+		this.db = db;
+		this.playLists = playLists.iterator();
+	}
+
+	@Override
+	public boolean hasNext() {
+		return playLists.hasNext();
+	}
+
+	/**
+	 * @return the next playlist including its members
+	 * @throws NoSuchElementException
+	 *             if there are no more playlists
+	 * @throws RuntimeException
+	 *             wrapping an {@link SQLException}, if reading fails
+	 */
+	@Override
+	public SimpleMediaList next() {
+		MediaItem playList = playLists.next();
+		try {
+			return db.getPlayList(playList);
+		} catch (SQLException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	/**
+	 * Not supported, the database is opened read only.
+	 * 
+	 * @throws UnsupportedOperationException
+	 *             always
+	 */
+	@Override
+	public void remove() {
+		throw new UnsupportedOperationException("Database is read only");
+	}
+
+	/** Skips the remaining playlists. */
+	@Override
+	public void close() {
+		playLists = Collections.<MediaItem> emptyList().iterator();
+	}
+}
@@ -0,0 +1,407 @@
+/**
+ * Copyright (C) 2015 Johannes Schnatterer
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package info.schnatterer.songbirddbapi4j.async;
+
+import info.schnatterer.songbirddbapi4j.MediaItemCursor;
+import info.schnatterer.songbirddbapi4j.SongbirdDb;
+import info.schnatterer.songbirddbapi4j.domain.MediaItem;
+import info.schnatterer.songbirddbapi4j.domain.SimpleMediaList;
+
+import java.lang.reflect.Method;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Flow;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Asynchronous facade for {@link SongbirdDb}: Each call runs the blocking
+ * query on an {@link Executor} and returns a {@link CompletableFuture}
+ * immediately, so the calling thread is not parked while SQLite reads from
+ * disk. Large results can also be streamed with backpressure via the
+ * <code>publish</code> methods, which return a {@link Flow.Publisher}.
+ * 
+ * Cancelling a returned future (see {@link CompletableFuture#cancel(boolean)})
+ * aborts the query that is executed on its behalf at that moment (see
+ * {@link SongbirdDb#cancelQueries(Thread)}). Note that futures derived from
+ * the returned ones (e.g. via <code>thenApply()</code>) do not propagate
+ * cancellation back.
+ * 
+ * @author schnatterer
+ * 
+ */
+public class SongbirdDbAsync {
+	/** Name prefix of the threads of the fallback executor. */
+	private static final String THREAD_NAME = "songbirdDb-async-";
+
+	/** See {@link #defaultExecutor()}. */
+	private static volatile ExecutorService defaultExecutor;
+
+	/** Executes the blocking queries. */
+	private final SongbirdDb db;
+	/** Runs the queries. */
+	private final Executor executor;
+	/**
+	 * Close the connection <code>db</code> keeps open for a thread of the
+	 * executor after each task?
+	 */
+	private final boolean closeConnections;
+
+	/**
+	 * Creates an instance that runs its queries on the
+	 * {@link #defaultExecutor()}. As its threads are not reused (virtual
+	 * threads) or only for a while (cached pool), the connection that
+	 * <code>db</code> keeps open for a thread (see
+	 * {@link SongbirdDb#SongbirdDb(String, boolean)}) is closed after each
+	 * query, instead of piling up one connection per call.
+	 * 
+	 * @param db
+	 *            the database to query
+	 */
+	public SongbirdDbAsync(final SongbirdDb db) {
+		this(db, defaultExecutor(), true);
+	}
+
+	/**
+	 * @param db
+	 *            the database to query
+	 * @param executor
+	 *            runs the queries. Each call of this class occupies a thread
+	 *            of the executor until its query has finished. If
+	 *            <code>db</code> keeps its connections open, each thread of
+	 *            the executor keeps its own connection open, so use an
+	 *            executor with a fixed set of threads, e.g.
+	 *            {@link Executors#newFixedThreadPool(int)}.
+	 */
+	public SongbirdDbAsync(final SongbirdDb db, final Executor executor) {
+		this(db, executor, false);
+	}
+
+	/**
+	 * @param db
+	 *            the database to query
+	 * @param executor
+	 *            runs the queries
+	 * @param closeConnections
+	 *            <code>true</code> closes the connection <code>db</code> keeps
+	 *            open for a thread of <code>executor</code> after each task
+	 */
+	private SongbirdDbAsync(final SongbirdDb db, final Executor executor,
+			final boolean closeConnections) {
+		if (db == null || executor == null) {
+			throw new IllegalArgumentException("db and executor are mandatory");
+		}
+		this.db = db;
+		this.executor = executor;
+		this.closeConnections = closeConnections;
+	}
+
+	/**
+	 * Asynchronous version of {@link SongbirdDb#getAllTracks()}.
+	 * 
+	 * @return a future that completes with all tracks or exceptionally with
+	 *         the {@link java.sql.SQLException} thrown by the query
+	 */
+	public CompletableFuture<List<MediaItem>> getAllTracks() {
+		return supply(new Callable<List<MediaItem>>() {
+			@Override
+			public List<MediaItem> call() throws Exception {
+				return db.getAllTracks();
+			}
+		});
+	}
+
+	/**
+	 * Asynchronous version of {@link SongbirdDb#getPlayLists(boolean, boolean)}.
+	 * 
+	 * @param ignoreInternalPlaylists
+	 *            <code>true</code> ignores Songbird's internal playlists (all
+	 *            playlists having an mediaListType != simple)
+	 * @param skipDynamicLists
+	 *            <code>true</code> does not return songbird's "smart" playlists
+	 *            (all playlists whose name starts with "&amp;smart")
+	 * @return a future that completes with the playlists or exceptionally with
+	 *         the {@link java.sql.SQLException} thrown by the query
+	 */
+	public CompletableFuture<List<SimpleMediaList>> getPlayLists(
+			final boolean ignoreInternalPlaylists,
+			final boolean skipDynamicLists) {
+		return supply(new Callable<List<SimpleMediaList>>() {
+			@Override
+			public List<SimpleMediaList> call() throws Exception {
+				return db.getPlayLists(ignoreInternalPlaylists,
+						skipDynamicLists);
+			}
+		});
+	}
+
+	/**
+	 * Asynchronous version of {@link SongbirdDb#getPlayList(MediaItem)}.
+	 * 
+	 * @param playlistMediaItem
+	 *            the playlist, as returned by
+	 *            {@link SongbirdDb#getPlaylistItems(boolean, boolean)}
+	 * @return a future that completes with the playlist and its members or
+	 *         exceptionally with the {@link java.sql.SQLException} thrown by
+	 *         the query
+	 */
+	public CompletableFuture<SimpleMediaList> getPlayList(
+			final MediaItem playlistMediaItem) {
+		return supply(new Callable<SimpleMediaList>() {
+			@Override
+			public SimpleMediaList call() throws Exception {
+				return db.getPlayList(playlistMediaItem);
+			}
+		});
+	}
+
+	/**
+	 * Publishes the {@link MediaItem}s that are not playlists, reading them
+	 * from the database only as they are requested by the subscriber (see
+	 * {@link SongbirdDb#openTrackCursor(Set, boolean)}). Each subscriber uses
+	 * its own connection, even if the connections of <code>db</code> are kept
+	 * open, as the cursor is read by different tasks of the executor. The
+	 * connection is closed on completion, error or cancellation.
+	 * 
+	 * @return a publisher of all tracks
+	 */
+	public Flow.Publisher<MediaItem> publishTracks() {
+		return publishTracks(null);
+	}
+
+	/**
+	 * Publishes the {@link MediaItem}s that are not playlists, containing only
+	 * specific properties. See {@link #publishTracks()}.
+	 * 
+	 * @param propertyNames
+	 *            the properties to load, see
+	 *            {@link info.schnatterer.songbirddbapi4j.domain.Property} for
+	 *            available properties. <code>null</code> loads all properties.
+	 * @return a publisher of all tracks
+	 */
+	public Flow.Publisher<MediaItem> publishTracks(
+			final Set<String> propertyNames) {
+		return new CursorPublisher<MediaItem>(publisherExecutor(),
+				new Callable<MediaItemCursor>() {
+					@Override
+					public MediaItemCursor call() throws Exception {
+						return db.openTrackCursor(propertyNames, true);
+					}
+				});
+	}
+
+	/**
+	 * Publishes the playlists including their members, reading one playlist
+	 * at a time from the database as they are requested by the subscriber
+	 * (see {@link SongbirdDb#getPlayList(MediaItem)}). The connection is
+	 * released after each playlist.
+	 * 
+	 * @param ignoreInternalPlaylists
+	 *            <code>true</code> ignores Songbird's internal playlists (all
+	 *            playlists having an mediaListType != simple)
+	 * @param skipDynamicLists
+	 *            <code>true</code> does not return songbird's "smart" playlists
+	 *            (all playlists whose name starts with "&amp;smart")
+	 * @return a publisher of the playlists
+	 */
+	public Flow.Publisher<SimpleMediaList> publishPlayLists(
+			final boolean ignoreInternalPlaylists,
+			final boolean skipDynamicLists) {
+		return new CursorPublisher<SimpleMediaList>(publisherExecutor(),
+				new Callable<PlayListCursor>() {
+					@Override
+					public PlayListCursor call() throws Exception {
+						return new PlayListCursor(db, db.getPlaylistItems(
+								ignoreInternalPlaylists, skipDynamicLists));
+					}
+				});
+	}
+
+	/**
+	 * @return the database queried by this instance
+	 */
+	public SongbirdDb getDb() {
+		return db;
+	}
+
+	/**
+	 * Runs a query on {@link #executor}.
+	 * 
+	 * @param query
+	 *            the blocking query
+	 * @return a future that completes with the result of the query
+	 */
+	private <T> CompletableFuture<T> supply(final Callable<T> query) {
+		QueryFuture<T> future = new QueryFuture<T>(query);
+		try {
+			executor.execute(future);
+		} catch (RejectedExecutionException e) {
+			future.completeExceptionally(e);
+		}
+		return future;
+	}
+
+	/**
+	 * @return {@link #executor}, wrapped so that each task closes the
+	 *         connection that {@link #db} keeps open for the thread of the
+	 *         task once it is done, if {@link #closeConnections} (see
+	 *         {@link SongbirdDb#closeConnectionOfCurrentThread()})
+	 */
+	private Executor publisherExecutor() {
+		if (!closeConnections) {
+			return executor;
+		}
+		return new Executor() {
+			@Override
+			public void execute(final Runnable task) {
+				executor.execute(new Runnable() {
+					@Override
+					public void run() {
+						try {
+							task.run();
+						} finally {
+							db.closeConnectionOfCurrentThread();
+						}
+					}
+				});
+			}
+		};
+	}
+
+	/**
+	 * The executor used when none is passed to the constructor: A new virtual
+	 * thread per query on Java 21+, a cached pool of daemon threads otherwise.
+	 * The executor is shared by all instances and never shut down.
+	 * 
+	 * @return the default executor
+	 */
+	public static ExecutorService defaultExecutor() {
+		ExecutorService result = defaultExecutor;
+		if (result == null) {
+			synchronized (SongbirdDbAsync.class) {
+				result = defaultExecutor;
+				if (result == null) {
+					result = createDefaultExecutor();
+					defaultExecutor = result;
+				}
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * @return see {@link #defaultExecutor()}
+	 */
+	private static ExecutorService createDefaultExecutor() {
+		try {
+			// Compiled for Java 9, so look up the Java 21 API at runtime
+			Method virtualThreads = Executors.class
+					.getMethod("newVirtualThreadPerTaskExecutor");
+			return (ExecutorService) virtualThreads.invoke(null);
+		} catch (ReflectiveOperationException e) {
+			final AtomicInteger threadNumber = new AtomicInteger();
+			return Executors.newCachedThreadPool(new ThreadFactory() {
+				@Override
+				public Thread newThread(final Runnable runnable) {
+					Thread thread = new Thread(runnable, THREAD_NAME
+							+ threadNumber.incrementAndGet());
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+		}
+	}
+
+	/**
+	 * A future that runs its query when executed and aborts the query when
+	 * cancelled.
+	 * 
+	 * @param <T>
+	 *            the result of the query
+	 */
+	private final class QueryFuture<T> extends CompletableFuture<T> implements
+			Runnable {
+		/** The blocking query. */
+		private final Callable<T> query;
+		/** Guards {@link #runner}. */
+		private final Object lock = new Object();
+		/** The thread that currently runs the query, if any. */
+		private Thread runner;
+
+		/**
+		 * @param query
+		 *            the blocking query
+		 */
+		private QueryFuture(final Callable<T> query) {
+			this.query = query;
+		}
+
+		@Override
+		public void run() {
+			synchronized (lock) {
+				if (isDone()) {
+					// Cancelled before it was executed
+					return;
+				}
+				runner = Thread.currentThread();
+			}
+			T result = null;
+			Throwable failure = null;
+			try {
+				result = query.call();
+			} catch (Throwable e) {
+				failure = e;
+			} finally {
+				synchronized (lock) {
+					runner = null;
+				}
+				if (closeConnections) {
+					// Before completing, so the caller finds it closed
+					db.closeConnectionOfCurrentThread();
+				}
+			}
+			if (failure != null) {
+				completeExceptionally(failure);
+			} else {
+				complete(result);
+			}
+		}
+
+		@Override
+		public boolean cancel(final boolean mayInterruptIfRunning) {
+			boolean cancelled = super.cancel(mayInterruptIfRunning);
+			if (cancelled) {
+				/*
+				 * Holding the lock makes sure the runner does not start the
+				 * next task of the executor in the meantime, which must not
+				 * be cancelled.
+				 */
+				synchronized (lock) {
+					if (runner != null) {
+						db.cancelQueries(runner);
+					}
+				}
+			}
+			return cancelled;
+		}
+	}
+}
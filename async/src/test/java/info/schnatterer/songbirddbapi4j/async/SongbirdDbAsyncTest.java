@@ -0,0 +1,403 @@
+/**
+ * Copyright (C) 2015 Johannes Schnatterer
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package info.schnatterer.songbirddbapi4j.async;
+
+import static org.junit.Assert.*;
+
+import info.schnatterer.songbirddbapi4j.SongbirdDb;
+import info.schnatterer.songbirddbapi4j.SongbirdDbGenerator;
+import info.schnatterer.songbirddbapi4j.SongbirdDbMetrics;
+import info.schnatterer.songbirddbapi4j.domain.MediaItem;
+import info.schnatterer.songbirddbapi4j.domain.SimpleMediaList;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Flow;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Runs {@link SongbirdDbAsync} against databases created by
+ * {@link SongbirdDbGenerator}.
+ */
+public class SongbirdDbAsyncTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private SongbirdDb db;
+
+	@Before
+	public void setUp() throws Exception {
+		SongbirdDbGenerator generator = new SongbirdDbGenerator();
+		generator.setTracks(2000);
+		generator.setPropertiesPerTrack(10);
+		generator.setPlayLists(5);
+		generator.setMembersPerPlayList(40);
+		File file = folder.newFile();
+		generator.generate(file);
+		db = new SongbirdDb(file.getAbsolutePath());
+	}
+
+	@After
+	public void tearDown() {
+		db.close();
+	}
+
+	@Test
+	public void testQueries() throws Exception {
+		SongbirdDbAsync async = new SongbirdDbAsync(db);
+		CompletableFuture<List<MediaItem>> tracks = async.getAllTracks();
+		CompletableFuture<List<SimpleMediaList>> playLists = async
+				.getPlayLists(false, false);
+
+		assertEquals(2000, tracks.get(10, TimeUnit.SECONDS).size());
+		assertEquals(5, playLists.get(10, TimeUnit.SECONDS).size());
+		SimpleMediaList playList = async.getPlayList(
+				playLists.get().get(0).getList()).get(10, TimeUnit.SECONDS);
+		assertEquals(40, playList.getMembers().size());
+	}
+
+	@Test
+	public void testCancel() throws Exception {
+		final CountDownLatch started = new CountDownLatch(1);
+		final CountDownLatch proceed = new CountDownLatch(1);
+		ExecutorService executor = Executors.newSingleThreadExecutor();
+		try {
+			// Occupy the only thread, so the query is cancelled before it runs
+			executor.execute(new Runnable() {
+				@Override
+				public void run() {
+					started.countDown();
+					try {
+						proceed.await();
+					} catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+					}
+				}
+			});
+			started.await();
+			SongbirdDbAsync async = new SongbirdDbAsync(db, executor);
+			CompletableFuture<List<MediaItem>> cancelled = async.getAllTracks();
+			assertTrue(cancelled.cancel(true));
+			proceed.countDown();
+			try {
+				cancelled.join();
+				fail("Expected CancellationException");
+			} catch (CancellationException e) {
+				// Expected
+			}
+			assertEquals(2000, async.getAllTracks().get(10, TimeUnit.SECONDS)
+					.size());
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	@Test
+	public void testCancelRunning() throws Exception {
+		final CountDownLatch executing = new CountDownLatch(1);
+		final CountDownLatch proceed = new CountDownLatch(1);
+		final List<String> completed = new CopyOnWriteArrayList<String>();
+		db.setListener(new SongbirdDbMetrics() {
+			@Override
+			public void queryExecuted(final String query, final long nanos) {
+				if (executing.getCount() > 0) {
+					// Block the first query after it has produced a row
+					executing.countDown();
+					try {
+						proceed.await();
+					} catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+					}
+				}
+			}
+
+			@Override
+			public void itemsRead(final String operation, final long nanos,
+					final int items, final long rows, final long properties,
+					final long stringBytes) {
+				completed.add(operation);
+			}
+		});
+		ExecutorService executor = Executors.newSingleThreadExecutor();
+		try {
+			SongbirdDbAsync async = new SongbirdDbAsync(db, executor);
+			CompletableFuture<List<MediaItem>> running = async.getAllTracks();
+			assertTrue(executing.await(10, TimeUnit.SECONDS));
+			assertTrue(running.cancel(true));
+			proceed.countDown();
+			try {
+				running.join();
+				fail("Expected CancellationException");
+			} catch (CancellationException e) {
+				// Expected
+			}
+			// The statement has been aborted instead of being read to the end
+			assertFalse(holdsConnection(db, executor));
+			assertTrue(completed.isEmpty());
+
+			// The next query must not be affected
+			assertEquals(2000, async.getAllTracks().get(10, TimeUnit.SECONDS)
+					.size());
+			assertEquals(1, completed.size());
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	@Test
+	public void testPublishTracks() throws Exception {
+		ExecutorService executor = Executors.newSingleThreadExecutor();
+		try {
+			SongbirdDbAsync async = new SongbirdDbAsync(db, executor);
+			RecordingSubscriber<MediaItem> subscriber = new RecordingSubscriber<MediaItem>(
+					7);
+			async.publishTracks().subscribe(subscriber);
+			assertTrue(subscriber.terminated.await(10, TimeUnit.SECONDS));
+			assertNull(subscriber.error);
+			assertEquals(2000, subscriber.items.size());
+			assertEquals(Integer.valueOf(1), subscriber.items.get(0).getId());
+			assertFalse(holdsConnection(db, executor));
+
+			RecordingSubscriber<SimpleMediaList> playLists = new RecordingSubscriber<SimpleMediaList>(
+					1);
+			async.publishPlayLists(false, false).subscribe(playLists);
+			assertTrue(playLists.terminated.await(10, TimeUnit.SECONDS));
+			assertNull(playLists.error);
+			assertEquals(5, playLists.items.size());
+			assertEquals(40, playLists.items.get(0).getMembers().size());
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	@Test
+	public void testPublishTracksKeepConnectionsOpen() throws Exception {
+		SongbirdDb keepOpenDb = new SongbirdDb(db.getPathToDb(), true);
+		final AtomicInteger connectionsOpened = new AtomicInteger();
+		keepOpenDb.setListener(new SongbirdDbMetrics() {
+			@Override
+			public void connectionOpened(final String dbUrl, final long nanos) {
+				connectionsOpened.incrementAndGet();
+			}
+		});
+		// The items are read by different threads of the pool
+		ExecutorService executor = Executors.newFixedThreadPool(4);
+		ExecutorService singleThread = Executors.newSingleThreadExecutor();
+		try {
+			// The cursor does not use the connection of the executing thread
+			SongbirdDbAsync singleThreadAsync = new SongbirdDbAsync(
+					keepOpenDb, singleThread);
+			singleThreadAsync.getAllTracks().get(10, TimeUnit.SECONDS);
+			assertEquals(1, connectionsOpened.get());
+			RecordingSubscriber<MediaItem> single = new RecordingSubscriber<MediaItem>(
+					7);
+			singleThreadAsync.publishTracks().subscribe(single);
+			assertTrue(single.terminated.await(10, TimeUnit.SECONDS));
+			assertEquals(2000, single.items.size());
+			assertEquals(2, connectionsOpened.get());
+
+			SongbirdDbAsync async = new SongbirdDbAsync(keepOpenDb, executor);
+			List<RecordingSubscriber<MediaItem>> subscribers = new ArrayList<RecordingSubscriber<MediaItem>>();
+			for (int i = 0; i < 3; i++) {
+				RecordingSubscriber<MediaItem> subscriber = new RecordingSubscriber<MediaItem>(
+						3 + i);
+				async.publishTracks().subscribe(subscriber);
+				subscribers.add(subscriber);
+			}
+			CompletableFuture<List<MediaItem>> tracks = async.getAllTracks();
+			for (RecordingSubscriber<MediaItem> subscriber : subscribers) {
+				assertTrue(subscriber.terminated.await(10, TimeUnit.SECONDS));
+				assertNull(subscriber.error);
+				assertEquals(2000, subscriber.items.size());
+				for (int i = 0; i < subscriber.items.size(); i++) {
+					assertEquals(Integer.valueOf(i + 1), subscriber.items
+							.get(i).getId());
+				}
+			}
+			assertEquals(2000, tracks.get(10, TimeUnit.SECONDS).size());
+		} finally {
+			executor.shutdownNow();
+			singleThread.shutdownNow();
+			keepOpenDb.close();
+		}
+	}
+
+	@Test
+	public void testDefaultExecutorKeepConnectionsOpen() throws Exception {
+		SongbirdDb keepOpenDb = new SongbirdDb(db.getPathToDb(), true);
+		final AtomicInteger connectionsOpened = new AtomicInteger();
+		keepOpenDb.setListener(new SongbirdDbMetrics() {
+			@Override
+			public void connectionOpened(final String dbUrl, final long nanos) {
+				connectionsOpened.incrementAndGet();
+			}
+		});
+		try {
+			// The metadata is cached, so the constructor did not query
+			assertEquals(0, keepOpenDb.getOpenConnections());
+			SongbirdDbAsync async = new SongbirdDbAsync(keepOpenDb);
+			List<CompletableFuture<List<MediaItem>>> futures = new ArrayList<CompletableFuture<List<MediaItem>>>();
+			for (int i = 0; i < 20; i++) {
+				futures.add(async.getAllTracks());
+			}
+			for (CompletableFuture<List<MediaItem>> future : futures) {
+				assertEquals(2000, future.get(10, TimeUnit.SECONDS).size());
+			}
+			assertTrue(connectionsOpened.get() <= 20);
+			// The connections of the executor's threads have been closed
+			assertEquals(0, keepOpenDb.getOpenConnections());
+		} finally {
+			keepOpenDb.close();
+		}
+	}
+
+	@Test
+	public void testPublishTracksCancel() throws Exception {
+		ExecutorService executor = Executors.newSingleThreadExecutor();
+		try {
+			SongbirdDbAsync async = new SongbirdDbAsync(db, executor);
+			RecordingSubscriber<MediaItem> subscriber = new RecordingSubscriber<MediaItem>(
+					0);
+			async.publishTracks().subscribe(subscriber);
+			subscriber.subscribed.await(10, TimeUnit.SECONDS);
+			subscriber.subscription.request(3);
+			executor.submit(new Runnable() {
+				@Override
+				public void run() {
+				}
+			}).get();
+			// Only the requested items have been read
+			assertEquals(3, subscriber.items.size());
+			assertTrue(holdsConnection(db, executor));
+
+			subscriber.subscription.cancel();
+			assertFalse(holdsConnection(db, executor));
+			assertEquals(3, subscriber.items.size());
+			assertEquals(1, subscriber.terminated.getCount());
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	@Test
+	public void testPublishTracksSubscriberThrows() throws Exception {
+		ExecutorService executor = Executors.newSingleThreadExecutor();
+		try {
+			SongbirdDbAsync async = new SongbirdDbAsync(db, executor);
+			RecordingSubscriber<MediaItem> subscriber = new RecordingSubscriber<MediaItem>(
+					5) {
+				@Override
+				public void onNext(final MediaItem item) {
+					super.onNext(item);
+					if (item.getId() == 3) {
+						throw new IllegalStateException("Broken subscriber");
+					}
+				}
+			};
+			async.publishTracks().subscribe(subscriber);
+			subscriber.subscribed.await(10, TimeUnit.SECONDS);
+			// The subscription is cancelled, not terminated with an error
+			assertFalse(holdsConnection(db, executor));
+			assertEquals(3, subscriber.items.size());
+			assertEquals(1, subscriber.terminated.getCount());
+			assertNull(subscriber.error);
+
+			subscriber.subscription.request(10);
+			assertFalse(holdsConnection(db, executor));
+			assertEquals(3, subscriber.items.size());
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	/**
+	 * @return <code>true</code> if the thread of <code>executor</code> uses a
+	 *         connection of <code>db</code>, after all previously submitted
+	 *         tasks have been executed
+	 */
+	private static boolean holdsConnection(final SongbirdDb db,
+			final ExecutorService executor) throws Exception {
+		return executor.submit(new Callable<Boolean>() {
+			@Override
+			public Boolean call() {
+				return db.isUsingConnection(Thread.currentThread());
+			}
+		}).get();
+	}
+
+	/**
+	 * Records all signals, requesting <code>batch</code> items at a time.
+	 */
+	private static class RecordingSubscriber<T> implements
+			Flow.Subscriber<T> {
+		private final int batch;
+		private final List<T> items = new CopyOnWriteArrayList<T>();
+		private final CountDownLatch subscribed = new CountDownLatch(1);
+		private final CountDownLatch terminated = new CountDownLatch(1);
+		private volatile Flow.Subscription subscription;
+		private volatile Throwable error;
+		private int received;
+
+		private RecordingSubscriber(final int batch) {
+			this.batch = batch;
+		}
+
+		@Override
+		public void onSubscribe(final Flow.Subscription newSubscription) {
+			subscription = newSubscription;
+			subscribed.countDown();
+			if (batch > 0) {
+				subscription.request(batch);
+			}
+		}
+
+		@Override
+		public void onNext(final T item) {
+			items.add(item);
+			if (batch > 0 && ++received == batch) {
+				received = 0;
+				subscription.request(batch);
+			}
+		}
+
+		@Override
+		public void onError(final Throwable throwable) {
+			error = throwable;
+			terminated.countDown();
+		}
+
+		@Override
+		public void onComplete() {
+			terminated.countDown();
+		}
+	}
+}
@@ -0,0 +1,147 @@
+/**
+ * Copyright (C) 2015 Johannes Schnatterer
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package info.schnatterer.songbirddbapi4j.benchmarks;
+
+import info.schnatterer.songbirddbapi4j.MediaItemCursor;
+import info.schnatterer.songbirddbapi4j.SongbirdDb;
+import info.schnatterer.songbirddbapi4j.SongbirdDbGenerator;
+import info.schnatterer.songbirddbapi4j.domain.MediaItem;
+import info.schnatterer.songbirddbapi4j.domain.SimpleMediaList;
+
+import java.io.File;
+import java.io.IOException;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Measures loading tracks and playlists from a synthetic database (see
+ * {@link SongbirdDbGenerator}) of several sizes. Run with <code>-prof gc</code>
+ * to report the allocation rate as well.
+ * 
+ * @author schnatterer
+ * 
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class LoadBenchmark {
+
+	/** Number of tracks in the library. */
+	@Param({ "1000", "10000", "50000" })
+	private int tracks;
+
+	/** Number of playlists in the library. */
+	@Param({ "50" })
+	private int playLists;
+
+	/** Number of members of each playlist. */
+	@Param({ "200" })
+	private int membersPerPlayList;
+
+	private File db;
+	private SongbirdDb songbirdDb;
+	/** Loads the properties on first access. */
+	private SongbirdDb lazySongbirdDb;
+	private List<MediaItem> playListItems;
+
+	@Setup(Level.Trial)
+	public void setUp() throws IOException, SQLException {
+		db = File.createTempFile("songbird-benchmark", ".db");
+		SongbirdDbGenerator generator = new SongbirdDbGenerator();
+		generator.setTracks(tracks);
+		generator.setPropertiesPerTrack(8);
+		generator.setPlayLists(playLists);
+		generator.setMembersPerPlayList(membersPerPlayList);
+		generator.setValueCardinality(Math.max(1, tracks / 10));
+		generator.generate(db);
+		songbirdDb = new SongbirdDb(db.getAbsolutePath(), true);
+		playListItems = songbirdDb.getPlaylistItems(false, false);
+		lazySongbirdDb = new SongbirdDb(db.getAbsolutePath(), true);
+		lazySongbirdDb.setLazyPropertyLoading(true);
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		songbirdDb.close();
+		lazySongbirdDb.close();
+		db.delete();
+	}
+
+	@Benchmark
+	public List<MediaItem> getAllTracks() throws SQLException {
+		return songbirdDb.getAllTracks();
+	}
+
+	/**
+	 * Decodes the rows of all tracks (see <code>readProperties()</code>)
+	 * without keeping the tracks, so that the cost of decoding is measured
+	 * without the cost of retaining the whole library.
+	 */
+	@Benchmark
+	public void decodeTrackRows(final Blackhole blackhole) throws SQLException {
+		MediaItemCursor cursor = songbirdDb.openTrackCursor();
+		try {
+			while (cursor.hasNext()) {
+				blackhole.consume(cursor.next());
+			}
+		} finally {
+			cursor.close();
+		}
+	}
+
+	@Benchmark
+	public List<MediaItem> getPlaylistItems() throws SQLException {
+		return songbirdDb.getPlaylistItems(false, false);
+	}
+
+	@Benchmark
+	public List<SimpleMediaList> getPlayLists() throws SQLException {
+		return songbirdDb.getPlayLists(false, false);
+	}
+
+	/** Loads the members' content URLs only, without their properties. */
+	@Benchmark
+	public List<SimpleMediaList> getPlayListsLazily() throws SQLException {
+		return lazySongbirdDb.getPlayLists(false, false);
+	}
+
+	/** Loads the playlists one by one, as callers of the old API do. */
+	@Benchmark
+	public void getPlayListEach(final Blackhole blackhole) throws SQLException {
+		for (MediaItem playListItem : playListItems) {
+			blackhole.consume(songbirdDb.getPlayList(playListItem));
+		}
+	}
+}
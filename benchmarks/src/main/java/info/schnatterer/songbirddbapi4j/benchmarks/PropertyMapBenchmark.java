@@ -0,0 +1,237 @@
+/**
+ * Copyright (C) 2015 Johannes Schnatterer
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package info.schnatterer.songbirddbapi4j.benchmarks;
+
+import info.schnatterer.songbirddbapi4j.domain.util.PropertyMap;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares {@link PropertyMap} to the <code>HashMap&lt;Integer, String&gt;</code>
+ * that media items used to store their properties in: the latency of looking
+ * up a property and, via {@link #main(String[])}, the heap retained per map.
+ * Run the benchmarks with <code>-prof gc</code> to report the allocation per
+ * map built as well.
+ *
+ * The retained heap is measured outside of JMH by running
+ * <code>java -cp target/benchmarks.jar info.schnatterer.songbirddbapi4j.benchmarks.PropertyMapBenchmark</code>.
+ * The values are shared by all maps, so only the maps themselves are counted.
+ *
+ * @author schnatterer
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PropertyMapBenchmark {
+
+	/** Number of maps, one per media item. */
+	private static final int ITEMS = 10000;
+	/**
+	 * Number of maps when measuring the retained heap. Large enough for the
+	 * noise of measuring the used heap to even out.
+	 */
+	private static final int RETAINED_ITEMS = 200000;
+	/** Greatest property ID, about the number of properties of a database. */
+	private static final int MAX_PROPERTY_ID = 150;
+	/** Number of precomputed lookups, a power of two. */
+	private static final int LOOKUPS = 1 << 16;
+	/** Shared by all maps, so that only the maps are measured. */
+	private static final String[] VALUES = new String[MAX_PROPERTY_ID + 1];
+	static {
+		for (int i = 0; i < VALUES.length; i++) {
+			VALUES[i] = "Value " + i;
+		}
+	}
+	/** Keeps the maps reachable while measuring the retained heap. */
+	private static volatile Object[] retained;
+
+	/** Number of properties of each media item. */
+	@Param({ "5", "10", "30" })
+	private int propertiesPerItem;
+
+	private PropertyMap[] propertyMaps;
+	private List<Map<Integer, String>> hashMaps;
+	/** The maps to look up, at the same index as {@link #lookupKeys}. */
+	private int[] lookupItems;
+	/** The keys to look up. Half of them are contained in their map. */
+	private int[] lookupKeys;
+	/** The index of the next lookup. */
+	private int next;
+	/** The keys of the map that is built by the build benchmarks. */
+	private int[] buildKeys;
+
+	@Setup(Level.Trial)
+	public void createMaps() {
+		Random random = new Random(42);
+		propertyMaps = new PropertyMap[ITEMS];
+		hashMaps = new ArrayList<Map<Integer, String>>(ITEMS);
+		List<int[]> keys = new ArrayList<int[]>(ITEMS);
+		for (int i = 0; i < ITEMS; i++) {
+			int[] itemKeys = randomKeys(random, propertiesPerItem);
+			keys.add(itemKeys);
+			propertyMaps[i] = createPropertyMap(itemKeys);
+			hashMaps.add(createHashMap(itemKeys));
+		}
+		lookupItems = new int[LOOKUPS];
+		lookupKeys = new int[LOOKUPS];
+		for (int i = 0; i < LOOKUPS; i++) {
+			lookupItems[i] = random.nextInt(ITEMS);
+			int[] itemKeys = keys.get(lookupItems[i]);
+			lookupKeys[i] = random.nextBoolean() ? itemKeys[random
+					.nextInt(itemKeys.length)] : 1 + random
+					.nextInt(MAX_PROPERTY_ID);
+		}
+		buildKeys = randomKeys(random, propertiesPerItem);
+	}
+
+	@Benchmark
+	public String getPropertyMap() {
+		int i = next++ & (LOOKUPS - 1);
+		return propertyMaps[lookupItems[i]].get(lookupKeys[i]);
+	}
+
+	/** Boxes the key, as keys above 127 are not cached by Integer. */
+	@Benchmark
+	public String getHashMap() {
+		int i = next++ & (LOOKUPS - 1);
+		return hashMaps.get(lookupItems[i]).get(lookupKeys[i]);
+	}
+
+	@Benchmark
+	public PropertyMap buildPropertyMap() {
+		return createPropertyMap(buildKeys);
+	}
+
+	@Benchmark
+	public Map<Integer, String> buildHashMap() {
+		return createHashMap(buildKeys);
+	}
+
+	/**
+	 * Prints the heap retained per map, for several numbers of properties.
+	 *
+	 * @param args
+	 *            ignored
+	 */
+	public static void main(final String[] args) {
+		System.out.println("properties\tPropertyMap\tHashMap (bytes per map)");
+		for (int properties : new int[] { 5, 10, 30 }) {
+			// Once in order to warm up
+			retainedBytes(true, properties);
+			System.out.println(properties + "\t\t"
+					+ retainedBytes(true, properties) + "\t\t"
+					+ retainedBytes(false, properties));
+		}
+	}
+
+	/**
+	 * @param propertyMap
+	 *            <code>true</code> measures {@link PropertyMap},
+	 *            <code>false</code> <code>HashMap</code>
+	 * @param properties
+	 *            number of properties per map
+	 * @return the average heap retained by one map, in bytes
+	 */
+	private static long retainedBytes(final boolean propertyMap,
+			final int properties) {
+		Random random = new Random(42);
+		int[][] keys = new int[RETAINED_ITEMS][];
+		for (int i = 0; i < RETAINED_ITEMS; i++) {
+			keys[i] = randomKeys(random, properties);
+		}
+		Object[] maps = new Object[RETAINED_ITEMS];
+		retained = maps;
+		long before = usedHeap();
+		for (int i = 0; i < RETAINED_ITEMS; i++) {
+			maps[i] = propertyMap ? createPropertyMap(keys[i])
+					: createHashMap(keys[i]);
+		}
+		long after = usedHeap();
+		retained = null;
+		return (after - before) / RETAINED_ITEMS;
+	}
+
+	/** @return the heap in use after collecting garbage, in bytes */
+	private static long usedHeap() {
+		Runtime runtime = Runtime.getRuntime();
+		for (int i = 0; i < 3; i++) {
+			System.gc();
+		}
+		return runtime.totalMemory() - runtime.freeMemory();
+	}
+
+	/**
+	 * @return <code>count</code> distinct property IDs within
+	 *         <code>1..{@value #MAX_PROPERTY_ID}</code>, in random order
+	 */
+	private static int[] randomKeys(final Random random, final int count) {
+		int[] ids = new int[MAX_PROPERTY_ID];
+		for (int i = 0; i < ids.length; i++) {
+			ids[i] = i + 1;
+		}
+		// Partial Fisher-Yates shuffle
+		int[] keys = new int[count];
+		for (int i = 0; i < count; i++) {
+			int j = i + random.nextInt(ids.length - i);
+			int id = ids[j];
+			ids[j] = ids[i];
+			ids[i] = id;
+			keys[i] = id;
+		}
+		return keys;
+	}
+
+	/** @return a map as <code>SongbirdDb</code> creates it */
+	private static PropertyMap createPropertyMap(final int[] keys) {
+		PropertyMap map = new PropertyMap();
+		for (int key : keys) {
+			map.put(key, VALUES[key]);
+		}
+		map.trimToSize();
+		return map;
+	}
+
+	/** @return a map as media items used to store their properties in */
+	private static Map<Integer, String> createHashMap(final int[] keys) {
+		Map<Integer, String> map = new HashMap<Integer, String>();
+		for (int key : keys) {
+			map.put(key, VALUES[key]);
+		}
+		return map;
+	}
+}
@@ -0,0 +1,107 @@
+/**
+ * Copyright (C) 2015 Johannes Schnatterer
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package info.schnatterer.songbirddbapi4j.benchmarks;
+
+import info.schnatterer.songbirddbapi4j.domain.MediaItem;
+import info.schnatterer.songbirddbapi4j.domain.MemberMediaItem;
+import info.schnatterer.songbirddbapi4j.domain.SimpleMediaList;
+import info.schnatterer.songbirddbapi4j.domain.util.MemberMediaItemComparator;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures sorting the members of a playlist by their ordinal (see
+ * {@link MemberMediaItemComparator}). Run with <code>-prof gc</code> to report
+ * the allocation rate as well.
+ * 
+ * @author schnatterer
+ * 
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SortBenchmark {
+
+	/** Number of members of the playlist. */
+	@Param({ "100", "10000", "100000" })
+	private int members;
+
+	/**
+	 * <code>true</code> creates ordinals consisting of several numbers, as
+	 * songbird does when inserting into a playlist.
+	 */
+	@Param({ "false", "true" })
+	private boolean nestedOrdinals;
+
+	private List<MemberMediaItem> shuffled;
+	private SimpleMediaList list;
+
+	@Setup(Level.Trial)
+	public void createMembers() {
+		Random random = new Random(42);
+		shuffled = new ArrayList<MemberMediaItem>(members);
+		for (int i = 0; i < members; i++) {
+			MediaItem item = new MediaItem();
+			item.setId(i);
+			MemberMediaItem member = new MemberMediaItem();
+			member.setMember(item);
+			member.setOridnal(nestedOrdinals ? i / 10 + "." + i % 10 : String
+					.valueOf(i));
+			shuffled.add(member);
+		}
+		Collections.shuffle(shuffled, random);
+		list = new SimpleMediaList();
+	}
+
+	/** Restores the unsorted order before each invocation. */
+	@Setup(Level.Invocation)
+	public void shuffle() {
+		list.setMembers(new ArrayList<MemberMediaItem>(shuffled));
+	}
+
+	@Benchmark
+	public SimpleMediaList sortMembers() {
+		list.sortMembers(false);
+		return list;
+	}
+
+	@Benchmark
+	public List<MemberMediaItem> sortWithComparator() {
+		List<MemberMediaItem> copy = new ArrayList<MemberMediaItem>(shuffled);
+		Collections.sort(copy, new MemberMediaItemComparator(false));
+		return copy;
+	}
+}
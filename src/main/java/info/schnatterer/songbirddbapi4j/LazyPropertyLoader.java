@@ -0,0 +1,100 @@
+/**
+ * Copyright (C) 2015 Johannes Schnatterer
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package info.schnatterer.songbirddbapi4j;
+
+import info.schnatterer.songbirddbapi4j.domain.MediaItem;
+import info.schnatterer.songbirddbapi4j.domain.PropertyLoader;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Makes {@link MediaItem}s load their properties on first access. The items
+ * are grouped into batches in the order they are added. Accessing the
+ * properties of one item loads the properties of all items of its batch with
+ * a single query, as items that have been loaded together tend to be accessed
+ * together.
+ * 
+ * <b>This class is not thread safe</b>, but the batches it creates are.
+ * 
+ * @author schnatterer
+ * 
+ */
+final class LazyPropertyLoader {
+
+	/** Number of items whose properties are loaded by one query. */
+	static final int BATCH_SIZE = 500;
+
+	/** Reads the properties. */
+	private final SongbirdDb songbirdDb;
+	/**
+	 * Query for the properties of a batch, see
+	 * {@link SongbirdDb#QUERY_PROPERTIES_OF_ITEMS}.
+	 */
+	private final String query;
+	/** The batch items are currently added to. */
+	private Batch batch = null;
+
+	/**
+	 * @param songbirdDb
+	 *            reads the properties
+	 * @param query
+	 *            query for the properties of a batch, see
+	 *            {@link SongbirdDb#QUERY_PROPERTIES_OF_ITEMS}
+	 */
+	LazyPropertyLoader(final SongbirdDb songbirdDb, final String query) {
+		this.songbirdDb = songbirdDb;
+		this.query = query;
+	}
+
+	/**
+	 * Makes an item load its properties on first access.
+	 * 
+	 * @param mediaItem
+	 *            an item without properties
+	 */
+	void add(final MediaItem mediaItem) {
+		if (batch == null || batch.items.size() >= BATCH_SIZE) {
+			batch = new Batch();
+		}
+		batch.items.add(mediaItem);
+		mediaItem.setPropertyLoader(batch);
+	}
+
+	/** Loads the properties of up to {@link #BATCH_SIZE} items. */
+	private final class Batch implements PropertyLoader {
+		/** The items of this batch, <code>null</code> once loaded. */
+		private List<MediaItem> items = new ArrayList<MediaItem>();
+
+		@Override
+		public synchronized void loadProperties(final MediaItem mediaItem) {
+			if (items == null) {
+				// Loaded by another thread in the meantime
+				return;
+			}
+			try {
+				songbirdDb.loadProperties(query, items);
+			} catch (SQLException e) {
+				throw new RuntimeException(e);
+			}
+			for (MediaItem item : items) {
+				item.setPropertyLoader(null);
+			}
+			items = null;
+		}
+	}
+}
@@ -0,0 +1,160 @@
+/**
+ * Copyright (C) 2015 Johannes Schnatterer
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package info.schnatterer.songbirddbapi4j;
+
+import info.schnatterer.songbirddbapi4j.domain.MediaItem;
+
+import java.io.Closeable;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Streams {@link MediaItem}s from a {@link ResultSet} one by one, instead of
+ * materializing all of them in a list. Each item is returned as soon as all of
+ * its property rows have been read.
+ * 
+ * The cursor is closed automatically once the last item has been returned.
+ * Make sure to call {@link #close()} when stopping the iteration before that.
+ * 
+ * <b>This class is not thread safe.</b>
+ * 
+ * @author schnatterer
+ * 
+ */
+public class MediaItemCursor implements Iterator<MediaItem>, Closeable {
+
+	/** Reads the actual items from the result set and owns the connection. */
+	private final SongbirdDb songbirdDb;
+	/** The connection the result set belongs to. Released by this cursor. */
+	private final SongbirdDbConnection connection;
+	/** The result set to read from, ordered by media_item_id. */
+	private final ResultSet rs;
+	/** Read media_list_type_id from the result set? */
+	private final boolean setListType;
+	/** Loads the properties on first access, null if read from rs. */
+	private final LazyPropertyLoader lazyLoader;
+	/** Counts what is read, null if there is no listener. */
+	private final SongbirdDb.ItemCounter counter;
+	/** ID of the next media item or -1 if there is no more data. */
+	private int nextId = -1;
+	/** Has {@link #close()} been called? */
+	private boolean closed = false;
+
+	/**
+	 * Creates a cursor that takes ownership of <code>rs</code> and
+	 * <code>connection</code>.
+	 * 
+	 * @param songbirdDb
+	 *            reads the items from <code>rs</code>
+	 * @param connection
+	 *            connection to release when the cursor is closed
+	 * @param rs
+	 *            result set ordered by media_item_id
+	 * @param setListType
+	 *            <code>true</code> reads the media_list_type_id column
+	 * @param lazyLoader
+	 *            makes the items load their properties on first access, if
+	 *            <code>rs</code> does not contain the properties.
+	 *            <code>null</code> reads the properties from <code>rs</code>.
+	 * @param counter
+	 *            counts what is read, <code>null</code> if there is no
+	 *            listener
+	 * @throws SQLException
+	 *             database-related exceptions
+	 */
+	MediaItemCursor(final SongbirdDb songbirdDb,
+			final SongbirdDbConnection connection, final ResultSet rs,
+			final boolean setListType, final LazyPropertyLoader lazyLoader,
+			final SongbirdDb.ItemCounter counter) throws SQLException {
+		this.songbirdDb = songbirdDb;
+		this.connection = connection;
+		this.rs = rs;
+		this.setListType = setListType;
+		this.lazyLoader = lazyLoader;
+		this.counter = counter;
+
+		if (rs.next()) { // If there are results at all
+			nextId = rs.getInt("media_item_id");
+		} else {
+			close();
+		}
+	}
+
+	@Override
+	public boolean hasNext() {
+		return nextId >= 0;
+	}
+
+	/**
+	 * @return the next {@link MediaItem} including all of its properties (or
+	 *         loading them on first access, see
+	 *         {@link SongbirdDb#setLazyPropertyLoading(boolean)})
+	 * @throws NoSuchElementException
+	 *             if there are no more items
+	 * @throws RuntimeException
+	 *             wrapping an {@link SQLException}, if reading fails. The
+	 *             cursor is closed in this case.
+	 */
+	@Override
+	public MediaItem next() {
+		if (!hasNext()) {
+			throw new NoSuchElementException();
+		}
+		MediaItem m = new MediaItem();
+		try {
+			nextId = songbirdDb.readMediaItem(rs, nextId, m, setListType,
+					counter);
+		} catch (SQLException e) {
+			close();
+			throw new RuntimeException(e);
+		}
+		if (nextId < 0) {
+			close();
+		}
+		if (lazyLoader != null) {
+			lazyLoader.add(m);
+		}
+		return m;
+	}
+
+	/**
+	 * Not supported, the database is opened read only.
+	 * 
+	 * @throws UnsupportedOperationException
+	 *             always
+	 */
+	@Override
+	public void remove() {
+		throw new UnsupportedOperationException("Database is read only");
+	}
+
+	/**
+	 * Closes the result set and releases the underlying connection. Can be
+	 * called more than once.
+	 */
+	@Override
+	public void close() {
+		if (closed) {
+			return;
+		}
+		closed = true;
+		nextId = -1;
+		connection.release(rs);
+		songbirdDb.releaseConnection(connection);
+	}
+}
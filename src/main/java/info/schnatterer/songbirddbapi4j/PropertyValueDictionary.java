@@ -0,0 +1,273 @@
+/**
+ * Copyright (C) 2015 Johannes Schnatterer
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package info.schnatterer.songbirddbapi4j;
+
+import info.schnatterer.songbirddbapi4j.domain.SongbirdDbMetadata;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Canonicalizes repeated property values (e.g. artist or album names), so
+ * that all {@link info.schnatterer.songbirddbapi4j.domain.MediaItem}s loaded
+ * with the same dictionary share one {@link String} instance per distinct
+ * value. This is only done for the properties the dictionary has been created
+ * for, as it is pointless for unique values like track names.
+ * 
+ * Create via {@link SongbirdDb#createValueDictionary(String...)} or
+ * {@link #PropertyValueDictionary(String...)} and use it for loading via
+ * {@link SongbirdDb#setValueDictionary(PropertyValueDictionary)}. The
+ * properties are identified by their names, so one dictionary can be used for
+ * several databases, even though the IDs of the properties differ between
+ * them.
+ * 
+ * This class is thread safe.
+ * 
+ * @author schnatterer
+ * 
+ */
+public class PropertyValueDictionary {
+
+	/** Size of a {@link String} object, without its character array. */
+	private static final int STRING_SIZE = 24;
+	/** Size of an array object, without its elements. */
+	private static final int ARRAY_HEADER_SIZE = 16;
+	/**
+	 * Heap used by the dictionary for each distinct value: a node of the
+	 * {@link ConcurrentHashMap} (32 bytes) plus its share of the table, which
+	 * is at most 75% full (about 8 bytes).
+	 */
+	private static final int ENTRY_SIZE = 40;
+	/**
+	 * Do strings that only contain Latin-1 characters use one byte per
+	 * character? That is the default since Java 9 (compact strings).
+	 */
+	private static final boolean COMPACT_STRINGS = !System.getProperty(
+			"java.specification.version", "").startsWith("1.");
+
+	/** The names of the properties to deduplicate. */
+	private final Set<String> propertyNames;
+
+	/**
+	 * The properties to deduplicate, resolved for the database that has been
+	 * used most recently. Saves looking up {@link #enabledIds} for each value.
+	 */
+	private volatile EnabledIds lastEnabledIds = null;
+
+	/** The properties to deduplicate, resolved for each database. */
+	private final ConcurrentMap<SongbirdDbMetadata, EnabledIds> enabledIds = new ConcurrentHashMap<SongbirdDbMetadata, EnabledIds>();
+
+	/** The canonical instance of each value. */
+	private final ConcurrentMap<String, String> values = new ConcurrentHashMap<String, String>();
+
+	/** Number of values that have been replaced by their canonical instance. */
+	private final AtomicLong deduplicatedValues = new AtomicLong();
+
+	/**
+	 * Estimated number of bytes of the duplicates that have been replaced,
+	 * not taking into account the heap used by {@link #values}.
+	 */
+	private final AtomicLong replacedBytes = new AtomicLong();
+
+	/**
+	 * @param propertyNames
+	 *            the properties whose values are to be deduplicated. See
+	 *            {@link info.schnatterer.songbirddbapi4j.domain.Property} for
+	 *            available properties.
+	 */
+	public PropertyValueDictionary(final String... propertyNames) {
+		this.propertyNames = Collections.unmodifiableSet(new HashSet<String>(
+				Arrays.asList(propertyNames)));
+	}
+
+	/**
+	 * Returns the canonical instance of a property value.
+	 * 
+	 * @param metadata
+	 *            the mappings of the database the value has been read from
+	 * @param propertyId
+	 *            the numerical ID of the property within this database
+	 * @param value
+	 *            the value read from the database
+	 * @return the canonical instance of <code>value</code> if the property is
+	 *         to be deduplicated, otherwise <code>value</code>
+	 */
+	public String canonicalize(final SongbirdDbMetadata metadata,
+			final int propertyId, final String value) {
+		if (value == null || !enabledIds(metadata).contains(propertyId)) {
+			return value;
+		}
+		String canonical = values.putIfAbsent(value, value);
+		if (canonical == null) {
+			return value;
+		}
+		deduplicatedValues.incrementAndGet();
+		replacedBytes.addAndGet(estimateSize(value));
+		return canonical;
+	}
+
+	/**
+	 * @param propertyName
+	 *            a property constant
+	 * @return <code>true</code> if the values of the property are
+	 *         deduplicated
+	 */
+	public boolean isEnabled(final String propertyName) {
+		return propertyNames.contains(propertyName);
+	}
+
+	/**
+	 * @param metadata
+	 *            the mappings of a database
+	 * @return the IDs of the properties to deduplicate within this database
+	 */
+	private EnabledIds enabledIds(final SongbirdDbMetadata metadata) {
+		EnabledIds last = lastEnabledIds;
+		if (last != null && last.metadata == metadata) {
+			return last;
+		}
+		EnabledIds ids = enabledIds.get(metadata);
+		if (ids == null) {
+			ids = new EnabledIds(metadata, propertyNames);
+			EnabledIds existing = enabledIds.putIfAbsent(metadata, ids);
+			if (existing != null) {
+				ids = existing;
+			}
+		}
+		lastEnabledIds = ids;
+		return ids;
+	}
+
+	/**
+	 * @return the number of distinct values
+	 */
+	public int getDistinctValues() {
+		return values.size();
+	}
+
+	/**
+	 * @return the number of values that have been replaced by an already
+	 *         existing instance
+	 */
+	public long getDeduplicatedValues() {
+		return deduplicatedValues.get();
+	}
+
+	/**
+	 * @return an estimation of the heap that has been saved by the
+	 *         deduplication, in bytes: the size of the duplicates that have
+	 *         been replaced minus the heap used by the dictionary itself (about
+	 *         {@value #ENTRY_SIZE} bytes per distinct value). Negative if the
+	 *         values are too rarely repeated for the dictionary to pay off.
+	 *         Assumes a 64 bit JVM with compressed references and, as of Java
+	 *         9, compact strings (one byte per Latin-1 character).
+	 */
+	public long getSavedBytes() {
+		return replacedBytes.get() - (long) ENTRY_SIZE * values.size();
+	}
+
+	/**
+	 * @param value
+	 *            a string
+	 * @return the estimated heap size of <code>value</code>, in bytes
+	 */
+	static long estimateSize(final String value) {
+		return align(STRING_SIZE)
+				+ align(ARRAY_HEADER_SIZE + bytesPerChar(value)
+						* (long) value.length());
+	}
+
+	/**
+	 * @param value
+	 *            a string
+	 * @return the number of bytes used for each character of
+	 *         <code>value</code>: one for compact strings that only contain
+	 *         Latin-1 characters, otherwise two
+	 */
+	private static int bytesPerChar(final String value) {
+		if (!COMPACT_STRINGS) {
+			return 2;
+		}
+		for (int i = 0; i < value.length(); i++) {
+			if (value.charAt(i) > 0xFF) {
+				return 2;
+			}
+		}
+		return 1;
+	}
+
+	/**
+	 * @param size
+	 *            size of an object
+	 * @return <code>size</code> aligned to 8 bytes
+	 */
+	private static long align(final long size) {
+		return (size + 7) & ~7L;
+	}
+
+	@Override
+	public String toString() {
+		return "PropertyValueDictionary [distinctValues=" + getDistinctValues()
+				+ ", deduplicatedValues=" + getDeduplicatedValues()
+				+ ", savedBytes=" + getSavedBytes() + "]";
+	}
+
+	/** The IDs of the properties to deduplicate within one database. */
+	private static final class EnabledIds {
+		/** The mappings of the database. */
+		private final SongbirdDbMetadata metadata;
+		/** Deduplicate property with ID i? */
+		private final boolean[] enabled;
+
+		/**
+		 * @param metadata
+		 *            the mappings of the database
+		 * @param propertyNames
+		 *            the properties to deduplicate
+		 */
+		private EnabledIds(final SongbirdDbMetadata metadata,
+				final Set<String> propertyNames) {
+			this.metadata = metadata;
+			int maxId = -1;
+			for (String propertyName : propertyNames) {
+				maxId = Math.max(maxId, metadata.property2Id(propertyName));
+			}
+			enabled = new boolean[maxId + 1];
+			for (String propertyName : propertyNames) {
+				int id = metadata.property2Id(propertyName);
+				if (id >= 0) {
+					enabled[id] = true;
+				}
+			}
+		}
+
+		/**
+		 * @param propertyId
+		 *            the numerical ID of a property within the database
+		 * @return <code>true</code> if the values of the property are
+		 *         deduplicated
+		 */
+		private boolean contains(final int propertyId) {
+			return propertyId >= 0 && propertyId < enabled.length
+					&& enabled[propertyId];
+		}
+	}
+}
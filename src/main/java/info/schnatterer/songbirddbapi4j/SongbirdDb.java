@@ -15,40 +15,105 @@
  */
 package info.schnatterer.songbirddbapi4j;
 
+import info.schnatterer.songbirddbapi4j.domain.DuplicateGroup;
 import info.schnatterer.songbirddbapi4j.domain.MediaItem;
-import info.schnatterer.songbirddbapi4j.domain.MediaListTypes;
 import info.schnatterer.songbirddbapi4j.domain.MemberMediaItem;
 import info.schnatterer.songbirddbapi4j.domain.Property;
 import info.schnatterer.songbirddbapi4j.domain.SimpleMediaList;
+import info.schnatterer.songbirddbapi4j.domain.SongbirdDbMetadata;
+import info.schnatterer.songbirddbapi4j.domain.util.MediaItemIndex;
+import info.schnatterer.songbirddbapi4j.domain.util.PlayListIndex;
 
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 
 /**
  * Provides queries to the songbird database related to playlists and its
  * members.
  * 
+ * The IDs of properties and list types differ between databases, so each
+ * instance reads those of its own database (see {@link #getMetadata()}) and
+ * the {@link MediaItem}s it returns refer to them. The global mappings of
+ * {@link Property} and
+ * {@link info.schnatterer.songbirddbapi4j.domain.MediaListTypes} are neither
+ * used nor filled.
+ * 
  * @author schnatterer
  * 
  */
-public class SongbirdDb {
+public class SongbirdDb implements Closeable {
 	// /** SLF4J-Logger. */
 	// private static Logger logger =
 	// LoggerFactory.getLogger(PlaylistService.class);
 
+	/**
+	 * Joins the properties of a media item. Can be restricted to certain
+	 * properties, see {@link #projectQuery(String, Set)}.
+	 */
+	private static final String JOIN_PROPERTIES = "left join resource_properties as r on m.media_item_id = r.media_item_id ";
+
 	/**
 	 * Gets all media items that have is_list = 0.
 	 */
 	public static final String QUERY_MEDIA_ITEMS = "select m.media_item_id, m.content_url"
 			+ ", m.created, m.updated, r.property_id, r.obj from media_items m "
-			+ "left join resource_properties as r on m.media_item_id = r.media_item_id "
+			+ JOIN_PROPERTIES
 			+ "where m.is_list = 0 " + "order by m.media_item_id ";
 
+	/**
+	 * Gets all media items that have is_list = 0 and have been updated after
+	 * a specific point in time (realized as {@link PreparedStatement}).
+	 */
+	public static final String QUERY_MEDIA_ITEMS_CHANGED_SINCE = QUERY_MEDIA_ITEMS
+			.replace("where m.is_list = 0 ",
+					"where m.is_list = 0 and m.updated > ? ");
+
+	/**
+	 * Gets a page of media items that have is_list = 0: The ones with the
+	 * smallest IDs greater than a specific ID (realized as
+	 * {@link PreparedStatement} with the ID and the maximum number of items
+	 * as parameters). The limit applies to the items, not to the rows, so
+	 * the properties of an item are never split up between pages.
+	 */
+	public static final String QUERY_MEDIA_ITEMS_PAGE = QUERY_MEDIA_ITEMS
+			.replace(
+					"where m.is_list = 0 ",
+					"where m.media_item_id in (select media_item_id from media_items "
+							+ "where is_list = 0 and media_item_id > ? order by media_item_id limit ?) ");
+
+	/** Gets the IDs of all media items that have is_list = 0. */
+	public static final String QUERY_MEDIA_ITEM_IDS = "select media_item_id from media_items "
+			+ "where is_list = 0 order by media_item_id";
+
+	/** Gets the IDs of all media items that have is_list = 1. */
+	public static final String QUERY_MEDIA_LIST_IDS = "select media_item_id from media_items "
+			+ "where is_list = 1 order by media_item_id";
+
 	/**
 	 * Gets all media items that have is_list = 1, INCLUDING emtpy ones. Also
 	 * finds dynamic playlist (subscriptions) (unfortunately also finds playlist
@@ -56,12 +121,26 @@ public class SongbirdDb {
 	 */
 	public static final String QUERY_MEDIA_LISTS_TYPE_SIMPLE = "select m.media_item_id, m.content_url"
 			+ ", m.media_list_type_id, m.created, m.updated, r.property_id, r.obj from media_items m "
-			+ "left join resource_properties as r on m.media_item_id = r.media_item_id "
+			+ JOIN_PROPERTIES
 			+ "left join media_list_types as mlt on m.media_list_type_id = mlt.media_list_type_id "
 			+ "where m.is_list = 1 "
 			+ "and m.media_list_type_id is not null "
 			+ "order by m.media_item_id ";
 
+	/**
+	 * Gets all playlists like {@link #QUERY_MEDIA_LISTS_TYPE_SIMPLE} that have
+	 * been updated after a specific point in time, or contain a member that
+	 * has been updated after this point in time (realized as
+	 * {@link PreparedStatement} with the point in time as both parameters).
+	 */
+	public static final String QUERY_MEDIA_LISTS_TYPE_SIMPLE_CHANGED_SINCE = QUERY_MEDIA_LISTS_TYPE_SIMPLE
+			.replace(
+					"and m.media_list_type_id is not null ",
+					"and m.media_list_type_id is not null "
+							+ "and (m.updated > ? or exists (select 1 from simple_media_lists cl "
+							+ "join media_items cm on cm.media_item_id = cl.member_media_item_id "
+							+ "where cl.media_item_id = m.media_item_id and cm.updated > ?)) ");
+
 	/**
 	 * Gets all media items with a single playlist (realized as
 	 * {@link PreparedStatement}). The results contains several lines for one
@@ -69,17 +148,169 @@ public class SongbirdDb {
 	 * queries sent to SQLite.
 	 * 
 	 */
-	public static final String QUERY_MEDIA_LIST = "select l.member_media_item_id media_item_id, l.ordinal, m.content_url "
+	public static final String QUERY_MEDIA_LIST = "select l.media_item_id list_id, l.member_media_item_id media_item_id, l.ordinal, m.content_url "
 			+ ", m.media_list_type_id, m.created, m.updated, r.property_id, r.obj from simple_media_lists l "
 			+ "left join media_items m ON m.media_item_id = l.member_media_item_id "
-			+ "left join resource_properties as r on m.media_item_id = r.media_item_id "
+			+ JOIN_PROPERTIES
 			// + "where l.media_item_id =? COLLATE NOCASE " +
 			// "order by l.member_media_item_id ";
 			+ "where l.media_item_id =? COLLATE NOCASE "
-			+ "order by l.ordinal COLLATE NOCASE";
+			+ "order by l.ordinal COLLATE NOCASE, l.member_media_item_id";
+
+	/**
+	 * Gets the members of all playlists in one scan of simple_media_lists. As
+	 * with {@link #QUERY_MEDIA_LIST}, the result contains several lines for one
+	 * member, one for each property. The lines of a member are adjacent, as
+	 * the result is ordered by playlist, member and ordinal, which is the
+	 * order of the index on simple_media_lists, so SQLite does not have to
+	 * sort. The members are sorted by their ordinal afterwards.
+	 */
+	public static final String QUERY_MEDIA_LIST_MEMBERS = "select l.media_item_id list_id, l.member_media_item_id media_item_id, l.ordinal, m.content_url "
+			+ ", m.media_list_type_id, m.created, m.updated, r.property_id, r.obj from simple_media_lists l "
+			+ "left join media_items m ON m.media_item_id = l.member_media_item_id "
+			+ JOIN_PROPERTIES
+			+ "order by l.media_item_id, l.member_media_item_id, l.ordinal";
+
+	/**
+	 * Gets the IDs of the playlists found by
+	 * {@link #QUERY_MEDIA_LISTS_TYPE_SIMPLE}, used as subquery in order to
+	 * restrict {@link #QUERY_MEDIA_LIST_MEMBERS} to the same playlists.
+	 */
+	public static final String QUERY_MEDIA_LIST_IDS_TYPE_SIMPLE = "select m.media_item_id from media_items m "
+			+ "where m.is_list = 1 "
+			+ "and m.media_list_type_id is not null ";
+
+	/**
+	 * Gets the playlists that contain specific members, by the ID of the
+	 * member (realized as {@link PreparedStatement}, the placeholder
+	 * <code>{0}</code> is replaced by one '?' parameter per member). See
+	 * {@link #getPlayListIdsContaining(Collection)}.
+	 */
+	public static final String QUERY_PLAYLISTS_CONTAINING_IDS = "select distinct l.member_media_item_id, l.media_item_id from simple_media_lists l "
+			+ "where l.member_media_item_id in ({0}) "
+			+ "order by l.member_media_item_id, l.media_item_id";
+
+	/**
+	 * Gets the playlists that contain specific members, by the exact content
+	 * URL of the member, using the index on content_url (realized as
+	 * {@link PreparedStatement}, the placeholder <code>{0}</code> is replaced
+	 * by one '?' parameter per URL). Returns a row with a playlist ID of
+	 * <code>null</code> for members that are not contained in any playlist.
+	 * See {@link #getPlayListIdsContainingContentUrls(Collection)}.
+	 */
+	public static final String QUERY_PLAYLISTS_CONTAINING_EXACT_CONTENT_URLS = "select distinct m.content_url, l.media_item_id from media_items m "
+			+ "left join simple_media_lists l on m.media_item_id = l.member_media_item_id "
+			+ "where m.content_url in ({0}) "
+			+ "order by m.content_url, l.media_item_id";
+
+	/**
+	 * Gets the playlists that contain specific members, by the content URL of
+	 * the member, normalized like
+	 * {@link MediaItemIndex#normalizeContentUrl(String)} (realized as
+	 * {@link PreparedStatement}, the placeholder <code>{0}</code> is replaced
+	 * by one '?' parameter per normalized URL). See
+	 * {@link #getPlayListIdsContainingContentUrls(Collection)}.
+	 */
+	public static final String QUERY_PLAYLISTS_CONTAINING_CONTENT_URLS = "select distinct lower(trim(m.content_url)) url, l.media_item_id from media_items m "
+			+ "inner join simple_media_lists l on m.media_item_id = l.member_media_item_id "
+			+ "where lower(trim(m.content_url)) in ({0}) "
+			+ "order by url, l.media_item_id";
+
+	/**
+	 * Gets the members that are contained in a playlist more than once, along
+	 * with the number of entries. See {@link #getDuplicateMembers()}.
+	 */
+	public static final String QUERY_DUPLICATE_MEMBERS = "select l.media_item_id list_id, l.member_media_item_id, m.content_url, count(*) entries "
+			+ "from simple_media_lists l "
+			+ "left join media_items m on m.media_item_id = l.member_media_item_id "
+			+ "group by l.media_item_id, l.member_media_item_id having count(*) > 1 "
+			+ "order by l.media_item_id, entries desc, l.member_media_item_id";
+
+	/**
+	 * Gets the ID and content URL of all media items that have is_list = 0
+	 * and a content URL. Used for finding duplicates, see
+	 * {@link #getDuplicateTracksByContentUrl()}.
+	 */
+	public static final String QUERY_TRACK_CONTENT_URLS = "select m.media_item_id, m.content_url from media_items m "
+			+ "where m.is_list = 0 and m.content_url is not null ";
+
+	/**
+	 * Gets the ID, artist, title and album of all media items that have
+	 * is_list = 0 and a title. The placeholders <code>{0}</code>,
+	 * <code>{1}</code> and <code>{2}</code> are replaced by the IDs of the
+	 * artist, title and album property. Used for grouping the candidates for
+	 * duplicates, see {@link #getDuplicateTracksByTags()}.
+	 */
+	public static final String QUERY_TRACK_TAGS = "select m.media_item_id, a.obj artist, t.obj title, b.obj album from media_items m "
+			+ "inner join resource_properties t on t.media_item_id = m.media_item_id and t.property_id = {1} "
+			+ "left join resource_properties a on a.media_item_id = m.media_item_id and a.property_id = {0} "
+			+ "left join resource_properties b on b.media_item_id = m.media_item_id and b.property_id = {2} "
+			+ "where m.is_list = 0 ";
+
+	/**
+	 * Gets specific properties of all media items, unordered. The placeholder
+	 * <code>{0}</code> is replaced by the comma-separated IDs of the
+	 * properties. Used for hashing the tags of all tracks in one scan, see
+	 * {@link #getDuplicateTracksByTags()}.
+	 */
+	public static final String QUERY_TAG_PROPERTIES = "select r.media_item_id, r.property_id, r.obj from resource_properties r "
+			+ "where r.property_id in ({0})";
+
+	/** Gets the greatest ID of all media items. */
+	public static final String QUERY_MAX_MEDIA_ITEM_ID = "select max(media_item_id) from media_items";
+
+	/**
+	 * Gets the properties of specific media items (realized as
+	 * {@link PreparedStatement}, the placeholder <code>{0}</code> is replaced
+	 * by one '?' parameter per item). Used for loading properties lazily, see
+	 * {@link #setLazyPropertyLoading(boolean)}.
+	 */
+	public static final String QUERY_PROPERTIES_OF_ITEMS = "select r.media_item_id, r.property_id, r.obj from resource_properties r "
+			+ "where r.media_item_id in ({0}) ";
+
+	/**
+	 * Maximum number of '?' parameters bound to one statement. SQLite's limit
+	 * is 999 by default.
+	 */
+	private static final int MAX_QUERY_PARAMETERS = 500;
+
+	/** Default number of threads used for loading playlists in parallel. */
+	public static final int DEFAULT_PARALLELISM = Runtime.getRuntime()
+			.availableProcessors();
 
 	private final String pathToDb;
 
+	/** Hands out the connections to {@link #pathToDb}. */
+	private final SongbirdDbConnectionManager connections;
+
+	/**
+	 * The IDs of properties and list types of {@link #pathToDb}. Replaced as a
+	 * whole by {@link #addNumericProperty(String)}.
+	 */
+	private volatile SongbirdDbMetadata metadata;
+
+	/**
+	 * The metadata of the database files that have been opened, by canonical
+	 * path. Shared between all instances, so opening a database again does not
+	 * have to read the metadata again.
+	 */
+	private static final ConcurrentMap<String, CachedMetadata> METADATA = new ConcurrentHashMap<String, CachedMetadata>();
+
+	/**
+	 * The connections that are currently in use, mapped to the thread that
+	 * acquired them. See {@link #cancelQueries(Thread)}. Guarded by itself.
+	 */
+	private final Map<SongbirdDbConnection, ConnectionUsage> activeConnections = new HashMap<SongbirdDbConnection, ConnectionUsage>();
+
+	/** Canonicalizes property values while loading, if not null. */
+	private volatile PropertyValueDictionary valueDictionary = null;
+
+	/** Is informed about timings and counts, if not null. */
+	private volatile SongbirdDbListener listener = null;
+
+	/** Load the properties of tracks and playlist members on first access? */
+	private volatile boolean lazyPropertyLoading = false;
+
 	// @SuppressWarnings("serial")
 	// public static final Set<String> PLAYLISTS_IGNORE = new HashSet<String>()
 	// {
@@ -99,340 +330,2395 @@ public class SongbirdDb {
 	// LinkedList<SimpleMediaList>();
 
 	/**
-	 * Creates a wrapper for the songbird database at a specific location.
+	 * Creates a wrapper for the songbird database at a specific location. Each
+	 * call opens a new connection to the database and closes it afterwards.
 	 * 
 	 * @param pathToDb
 	 *            the dbUrl to the songbird database file
 	 */
 	public SongbirdDb(String pathToDb) {
+		this(pathToDb, false);
+	}
+
+	/**
+	 * Creates a wrapper for the songbird database at a specific location.
+	 * 
+	 * @param pathToDb
+	 *            the dbUrl to the songbird database file
+	 * @param keepConnectionsOpen
+	 *            <code>true</code> keeps one connection per thread open, so
+	 *            repeated calls don't have to connect and prepare their
+	 *            statements again. Make sure to call {@link #close()} when
+	 *            done. <code>false</code> opens a new connection for each call
+	 *            and closes it afterwards.
+	 */
+	public SongbirdDb(String pathToDb, boolean keepConnectionsOpen) {
 		this.pathToDb = pathToDb;
+		this.connections = new SongbirdDbConnectionManager(pathToDb,
+				keepConnectionsOpen);
+		this.metadata = loadMetadata();
+	}
 
-		// Make sure Property and MediaListType Maps are initialized
-		synchronized (SongbirdDb.class) {
-			if (!MediaListTypes.isInitialized() || !Property.isInitialized()) {
-				SongbirdDbConnection connection = new SongbirdDbConnection(
-						pathToDb);
-				try {
-					MediaListTypes.populatelistTypeMap(connection);
-					Property.populateResourceMap(connection);
-				} catch (SQLException e) {
-					throw new RuntimeException(e);
-				} finally {
-					connection.close();
-				}
+	/**
+	 * Gets the metadata of {@link #pathToDb} from {@link #METADATA} or reads
+	 * it from the database, if it has not been read before or the file has
+	 * been modified since. Recreates the metadata if
+	 * {@link Property#getNumericProperties()} changed. Properties added via
+	 * {@link #addNumericProperty(String)} are not cached.
+	 * 
+	 * @return the metadata of the database
+	 */
+	private SongbirdDbMetadata loadMetadata() {
+		File dbFile = new File(pathToDb);
+		String key;
+		try {
+			key = dbFile.getCanonicalPath();
+		} catch (IOException e) {
+			key = dbFile.getAbsolutePath();
+		}
+		long lastModified = dbFile.lastModified();
+		CachedMetadata cached = METADATA.get(key);
+		SongbirdDbMetadata newMetadata;
+		if (cached != null && cached.lastModified == lastModified) {
+			if (cached.metadata.getNumericProperties().equals(
+					Property.getNumericProperties())) {
+				return cached.metadata;
 			}
+			newMetadata = new SongbirdDbMetadata(
+					cached.metadata.getId2PropertyMap(),
+					cached.metadata.getId2ListTypeMap());
+		} else {
+			SongbirdDbConnection connection = acquireConnection();
+			try {
+				newMetadata = SongbirdDbMetadata.read(connection);
+			} catch (SQLException e) {
+				throw new RuntimeException(e);
+			} finally {
+				releaseConnection(connection);
+			}
+		}
+		if (dbFile.isFile()) {
+			METADATA.put(key, new CachedMetadata(lastModified, newMetadata));
 		}
+		return newMetadata;
 	}
 
 	/**
-	 * Gets only the {@link MediaItem}s that are not playlists.
-	 * 
-	 * @return a list of all tracks
+	 * @return the IDs of properties and list types of this database. All
+	 *         {@link MediaItem}s loaded by this instance refer to it.
+	 */
+	public SongbirdDbMetadata getMetadata() {
+		return metadata;
+	}
+
+	/**
+	 * Decodes the values of a property to numbers when loading items, in
+	 * addition to {@link Property#getNumericProperties()}. That is,
+	 * {@link MediaItem#getPropertyAsLong(String, long)} does not have to parse
+	 * them. Affects the {@link MediaItem}s that are loaded by this instance
+	 * from now on, but neither items that have been loaded before nor other
+	 * instances.
 	 * 
-	 * @throws SQLException
-	 *             database-related exceptions
+	 * @param property
+	 *            a property whose values are integers, e.g.
+	 *            "http://songbirdnest.com/data/1.0#year"
 	 */
-	public List<MediaItem> getAllTracks() throws SQLException {
-		List<MediaItem> playListItems = new LinkedList<MediaItem>();
+	public synchronized void addNumericProperty(final String property) {
+		metadata = metadata.withNumericProperty(property);
+	}
 
-		SongbirdDbConnection connection = new SongbirdDbConnection(pathToDb);
-		try {
-			ResultSet rs = connection.executeQuery(QUERY_MEDIA_ITEMS);
+	/**
+	 * Closes the connections that are kept open (see
+	 * {@link #SongbirdDb(String, boolean)}). Must not be called while other
+	 * threads are still querying this instance. Querying after closing will
+	 * open new connections.
+	 */
+	@Override
+	public void close() {
+		connections.close();
+	}
 
-			if (rs.next()) { // If there are results at all
-				int currentId = rs.getInt("media_item_id");
-				while (currentId >= 0) {
-					MediaItem m = new MediaItem();
-					currentId = readMediaItem(rs, currentId, m, false);
-					playListItems.add(m);
-				}
+	/**
+	 * Closes the connection that is kept open for the current thread (see
+	 * {@link #SongbirdDb(String, boolean)}), if any. Threads that query only
+	 * once or twice before they end, e.g. a new virtual thread per task,
+	 * should call this when done, so their connection does not stay open.
+	 * The connection is not closed while it is still in use by the current
+	 * thread, e.g. by an open {@link MediaItemCursor}.
+	 * 
+	 * @return <code>true</code> if a connection has been closed
+	 */
+	public boolean closeConnectionOfCurrentThread() {
+		synchronized (activeConnections) {
+			SongbirdDbConnection connection = connections.current();
+			if (connection == null
+					|| activeConnections.containsKey(connection)) {
+				return false;
 			}
-			return playListItems;
-		} finally {
-			connection.close();
+			return connections.closeCurrent();
 		}
 	}
 
 	/**
-	 * Gets only the {@link MediaItem}s that are playlists. Does not get the
-	 * {@link MediaItem}s which are members of the playlist. Ignores all
-	 * playlists that don't have a name.
-	 * 
-	 * @param ignoreInternalPlaylists
-	 *            <code>true</code> ignores Songbird's internal playlists (all
-	 *            playlists having an mediaListType != simple)
-	 * @param skipDynamicLists
-	 *            <code>true</code> does not return songbird's "smart" playlists
-	 *            (all playlists whose name starts with "&amp;smart")
-	 * @return the playlist {@link MediaItem}
-	 * @throws SQLException
-	 *             database-related exceptions
-	 * @see #getPlayLists(boolean, boolean)
+	 * @return the number of connections that are currently kept open, one per
+	 *         thread that has queried this instance (see
+	 *         {@link #SongbirdDb(String, boolean)}). The connections of threads
+	 *         that have ended are closed when the next connection is opened.
+	 *         Always 0 if connections are not kept open.
 	 */
-	public List<MediaItem> getPlaylistItems(
-			final boolean ignoreInternalPlaylists,
-			final boolean skipDynamicLists) throws SQLException {
-		/**
-		 * Note: Get all playlists and attributes in on result set like this
-		 * 
-		 * <pre>
-		 * select m.media_item_id, m.content_url, lt.type, p.property_name, r.obj from media_items m 
-		 * 	left join resource_properties as r on m.media_item_id = r.media_item_id 
-		 * 	left join media_list_types as mlt on m.media_list_type_id = mlt.media_list_type_id
-		 * 	left join properties p on r.property_id =  p.property_id
-		 * 	left join MEDIA_LIST_TYPES lt on m.media_list_type_id = lt.media_list_type_id
-		 * where m.is_list = 1 and m.media_list_type_id is not null order by m.media_item_id
-		 * </pre>
-		 */
-		List<MediaItem> playListItems = new LinkedList<MediaItem>();
+	public int getOpenConnections() {
+		return connections.size();
+	}
 
-		SongbirdDbConnection connection = new SongbirdDbConnection(pathToDb);
-		try {
-			ResultSet rs = connection
-					.executeQuery(QUERY_MEDIA_LISTS_TYPE_SIMPLE);
+	/**
+	 * @return the path to the songbird database file
+	 */
+	public String getPathToDb() {
+		return pathToDb;
+	}
 
-			if (rs.next()) { // If there are results at all
-				int currentId = rs.getInt("media_item_id");
-				while (currentId >= 0) {
-					MediaItem m = new MediaItem();
-					currentId = readMediaItem(rs, currentId, m, true);
+	/**
+	 * Creates a dictionary that canonicalizes the values of specific
+	 * properties, e.g. {@link Property#PROP_ARTIST_NAME} and
+	 * {@link Property#PROP_ALBUM_NAME}. Properties that are not contained in
+	 * the database are ignored. Same as
+	 * {@link PropertyValueDictionary#PropertyValueDictionary(String...)}.
+	 * 
+	 * @param propertyNames
+	 *            the properties whose values are to be deduplicated. See
+	 *            {@link Property} for available properties.
+	 * @return a new dictionary, to be passed to
+	 *         {@link #setValueDictionary(PropertyValueDictionary)}
+	 */
+	public PropertyValueDictionary createValueDictionary(
+			final String... propertyNames) {
+		return new PropertyValueDictionary(propertyNames);
+	}
 
-					String mediaListName = m
-							.getProperty(Property.PROP_MEDIA_LIST_NAME);
+	/**
+	 * Sets a dictionary that is used for canonicalizing the property values of
+	 * all items that are loaded from now on. Use a new dictionary for each
+	 * load in order to find out how much was saved by each load, or one
+	 * dictionary for several loads (even from several databases, as the
+	 * dictionary resolves the properties for each database) in order to share
+	 * values between them.
+	 * 
+	 * @param newValueDictionary
+	 *            the dictionary to use or <code>null</code> in order to stop
+	 *            canonicalizing
+	 */
+	public void setValueDictionary(
+			final PropertyValueDictionary newValueDictionary) {
+		this.valueDictionary = newValueDictionary;
+	}
 
-					// Skip all playlist without name
-					if (mediaListName == null) {
-						continue;
-					}
+	/**
+	 * @return the dictionary used for canonicalizing property values or
+	 *         <code>null</code> if none
+	 */
+	public PropertyValueDictionary getValueDictionary() {
+		return valueDictionary;
+	}
 
-					if (ignoreInternalPlaylists) {
-						String mediaListType = m
-								.getProperty(Property.PROP_CUSTOM_TYPE);
-						// if (mediaListName != null &&
-						// mediaListName.startsWith("&")) {
-						/*
-						 * Note: Dynamic and internal playlists start with '&'.
-						 * However, a dynamic playlist's customType is "simple",
-						 * as with it is for "normal" playlists. Internal
-						 * playlists have a type like "download" or "smart". So
-						 * in order to ignore internal playlists it would be
-						 * possible to filter for the custom type.
-						 * 
-						 * In addition, most internal playlists don't have a
-						 * name. But not all!
-						 * 
-						 * It also seems that only internal lists have a
-						 * mediaListType of "dynamic". But not all!
-						 * 
-						 * So skip any playlists with customType != "simple"
-						 */
-						if (mediaListType != null
-								&& !mediaListType.equals("simple")) {
-							// && mediaListName == null &&
-							// m.getListType().equals("dynamic")) {
-							// Skip this one
-							continue;
-						}
-					}
+	/**
+	 * Sets a listener that is informed about the timings and counts of all
+	 * operations started from now on, e.g. {@link SongbirdDbMetrics}.
+	 * Operations returning a {@link MediaItemCursor} are not reported, only
+	 * their queries.
+	 * 
+	 * @param newListener
+	 *            the listener or <code>null</code> in order to stop measuring
+	 */
+	public void setListener(final SongbirdDbListener newListener) {
+		this.listener = newListener;
+	}
 
-					if (skipDynamicLists) {
-						/* Note: Dynamic lists begin with "&smart". */
-						if (mediaListName.startsWith("&smart")) {
-							// Skip this one
-							continue;
-						}
-					}
+	/**
+	 * @return the listener that is informed about timings and counts or
+	 *         <code>null</code> if none
+	 */
+	public SongbirdDbListener getListener() {
+		return listener;
+	}
 
-					// /* Discard playlist that don't have a name property */
-					// if (m.getProperty(Property.PROP_MEDIA_LIST_NAME) == null)
-					// {
-					// logger.warn("Found playlist with no name. Skipping list. "
-					// + m);
-					// } else if (skipDynamicLists &&
-					// m.getListType().equals("dynamic")) {
-					// logger.info("Skipping dynamic list " +
-					// m.getProperty(Property.PROP_MEDIA_LIST_NAME));
-					// } else {
-					playListItems.add(m);
-					// }
+	/**
+	 * Makes all tracks and playlist members loaded from now on contain only
+	 * their columns (ID, content URL, dates). Their properties are loaded on
+	 * first access, e.g. via {@link MediaItem#getProperty(String)}: Accessing
+	 * one item loads the properties of up to
+	 * {@value LazyPropertyLoader#BATCH_SIZE} items that have been loaded
+	 * together with it, using a single query. This is much faster and uses
+	 * less memory if only some properties (or only the content URLs) are
+	 * needed. The playlist {@link MediaItem}s themselves are always loaded
+	 * including their properties.
+	 * 
+	 * Note that loading the properties later on requires this instance to be
+	 * able to connect to the database. If the properties are restricted to a
+	 * specific set on loading, only those are loaded lazily.
+	 * 
+	 * @param newLazyPropertyLoading
+	 *            <code>true</code> loads properties on first access,
+	 *            <code>false</code> (default) loads them right away
+	 */
+	public void setLazyPropertyLoading(final boolean newLazyPropertyLoading) {
+		this.lazyPropertyLoading = newLazyPropertyLoading;
+	}
 
-					// logger.debug("ID: " + m.getId() + ": \""
-					// + m.getProperty(Property.PROP_MEDIA_LIST_NAME)
-					// + "\"; Type: " + m.getListType());
-				}
-			}
-			return playListItems;
-		} finally {
-			connection.close();
-		}
+	/**
+	 * @return <code>true</code> if properties are loaded on first access, see
+	 *         {@link #setLazyPropertyLoading(boolean)}
+	 */
+	public boolean isLazyPropertyLoading() {
+		return lazyPropertyLoading;
 	}
 
 	/**
-	 * Gets all {@link MediaItem}s that are playlists and also aggregates the
-	 * {@link MediaItem}s that are members of the playlists. Ignores all
-	 * playlists that don't have a name.
+	 * Gets only the {@link MediaItem}s that are not playlists.
 	 * 
-	 * @param ignoreInternalPlaylists
-	 *            <code>true</code> ignores Songbird's internal playlists (all
-	 *            playlists having an mediaListType != simple)
-	 * @param skipDynamicLists
-	 *            <code>true</code> does not return songbird's "smart" playlists
-	 *            (all playlists whose name starts with "&amp;smart")
+	 * @return a list of all tracks
 	 * 
-	 * @return an object that contains the "parent" (playlist) {@link MediaItem}
-	 *         as well as all of its member {@link MediaItem}s
 	 * @throws SQLException
 	 *             database-related exceptions
+	 * @see #openTrackCursor()
 	 */
-	public List<SimpleMediaList> getPlayLists(
-			final boolean ignoreInternalPlaylists,
-			final boolean skipDynamicLists) throws SQLException {
+	public List<MediaItem> getAllTracks() throws SQLException {
+		return getAllTracks(null);
+	}
 
-		List<MediaItem> playListItems = getPlaylistItems(
-				ignoreInternalPlaylists, skipDynamicLists);
+	/**
+	 * Gets only the {@link MediaItem}s that are not playlists, containing
+	 * only specific properties. Only those are read from the database.
+	 * 
+	 * @param propertyNames
+	 *            the properties to load, see {@link Property} for available
+	 *            properties. <code>null</code> loads all properties.
+	 * @return a list of all tracks
+	 * 
+	 * @throws SQLException
+	 *             database-related exceptions
+	 * @see #openTrackCursor(Set)
+	 */
+	public List<MediaItem> getAllTracks(final Set<String> propertyNames)
+			throws SQLException {
+		SongbirdDbListener currentListener = listener;
+		long start = currentListener != null ? System.nanoTime() : 0;
+		ItemCounter counter = currentListener != null ? new ItemCounter()
+				: null;
+		List<MediaItem> playListItems = new LinkedList<MediaItem>();
 
-		List<SimpleMediaList> playLists = new LinkedList<SimpleMediaList>();
-		SongbirdDbConnection connection = new SongbirdDbConnection(pathToDb);
+		MediaItemCursor cursor = openTrackCursor(propertyNames, false,
+				counter);
 		try {
-			PreparedStatement queryMediaList = connection
-					.preparedStatement(QUERY_MEDIA_LIST);
-			for (MediaItem playlistMediaItem : playListItems) {
-
-				// This is taken care of by getPlaylistItems() now
-				// if (ignoreInternalPlaylists) {
-				// String mediaListName =
-				// playlistMediaItem.getProperty(Property.PROP_MEDIA_LIST_NAME);
-				// String mediaListType =
-				// playlistMediaItem.getProperty(Property.PROP_CUSTOM_TYPE);
-				// /*
-				// * Note: Dynamic and internal playlists start with '&'.
-				// However, a dynamic playlist's customType is
-				// * "simple", as with it is for "normal" playlists. Internal
-				// playlists have a type like "download" or
-				// * "smart". So in order to ignore internal playlists it would
-				// be possible to filter for the custom
-				// type.
-				// * In addition, most internal playlists don't have a name.
-				// *
-				// * So skip any playlists without name and customType !=
-				// "simple".
-				// */
-				// // if (mediaListName != null &&
-				// mediaListName.startsWith("&")) {
-				// if (mediaListName == null && mediaListType != null &&
-				// !mediaListType.equals("simple")) {
-				// // Skip this one
-				// continue;
-				// }
-				// }
-
-				/* Query members of playlist */
-				queryMediaList.setInt(1, playlistMediaItem.getId());
-
-				ResultSet rs = queryMediaList.executeQuery();
-
-				SimpleMediaList list = new SimpleMediaList();
-				list.setList(playlistMediaItem);
-				// Map<String, MediaItem> members = new TreeMap<String,
-				// MediaItem>();
-
-				List<MemberMediaItem> members = list.getMembers();
-
-				if (rs.next()) { // If there are results at all
-					int currentId = rs.getInt("media_item_id");
-					while (currentId >= 0) {
-
-						MemberMediaItem memberWrapper = new MemberMediaItem();
-						// ordinal looks like "168.225.0.-1.0"
-						memberWrapper.setOridnal(rs.getString("ordinal"));
-
-						// read the result set
-						MediaItem member = new MediaItem();
-						currentId = readMediaItem(rs, currentId, member, true);
-
-						memberWrapper.setMember(member);
-
-						// members.put(ordinal, m);
-						members.add(memberWrapper);
-					}
-				}
-
-				// list.setMembers(members);
-				list.sortMembers(true);
-
-				playLists.add(list);
-				// } catch (IOException e) {
-				// logger.error("unable to write to file", e);
-				// } finally {
-				// try {
-				// out.close();
-				// } catch (IOException e) {
-				// logger.error("unable to close file", e);
-				// }
-				// }
-				// } catch (FileNotFoundException e) {
-				// logger.error("unable to open file for writing", e);
-				// }
-			}
-			return playLists;
+			while (cursor.hasNext()) {
+				playListItems.add(cursor.next());
+			}
+			if (counter != null) {
+				counter.report(currentListener, "getAllTracks",
+						System.nanoTime() - start);
+			}
+			return playListItems;
 		} finally {
-			connection.close();
+			cursor.close();
 		}
 	}
 
 	/**
-	 * Reads all attributes of a {@link MediaItem} from a {@link ResultSet}.
+	 * Streams the {@link MediaItem}s that are not playlists. In contrast to
+	 * {@link #getAllTracks()}, each item is handed out as soon as its
+	 * properties have been read, so only one item at a time has to be kept in
+	 * memory.
+	 * 
+	 * Make sure to call {@link MediaItemCursor#close()} if the cursor is not
+	 * iterated to the end.
+	 * 
+	 * @return a cursor over all tracks
 	 * 
-	 * @param rs
-	 *            database to read from
-	 * @param currentId
-	 * @param mediaItem
-	 *            item to attach the properties to
-	 * @return the next id returned by the cursor
 	 * @throws SQLException
+	 *             database-related exceptions
 	 */
-	private int readMediaItem(ResultSet rs, int currentId, MediaItem mediaItem,
-			boolean setListType) throws SQLException {
-		mediaItem.setId(currentId);
-		mediaItem.setDateCreated(new Date(rs.getLong("created")));
-		mediaItem.setDateUpdated(new Date(rs.getLong("updated")));
-		if (setListType) {
-			mediaItem.setListType(rs.getInt("media_list_type_id"));
-		}
-		mediaItem.setContentUrl(rs.getString("content_url"));
-		currentId = readProperties(mediaItem, rs, "media_item_id");
-		return currentId;
+	public MediaItemCursor openTrackCursor() throws SQLException {
+		return openTrackCursor(null);
 	}
 
 	/**
-	 * Reads all properties for an id column (integer) and appends them to
-	 * <code>mediaItem</code>. Note: This will only work well if <code>rs</code>
-	 * is ordered by <code>idColumn</code>.
+	 * Streams the {@link MediaItem}s that are not playlists, containing only
+	 * specific properties. See {@link #openTrackCursor()}.
+	 * 
+	 * @param propertyNames
+	 *            the properties to load, see {@link Property} for available
+	 *            properties. <code>null</code> loads all properties.
+	 * @return a cursor over all tracks
 	 * 
-	 * @param mediaItem
-	 *            item to attach the properties to
-	 * @param rs
-	 *            database to read from
-	 * @param idColumn
-	 *            name of the ID column (needed for comparing)
-	 * @return the next id or -1 if there is no more data in <code>rs</code>
 	 * @throws SQLException
 	 *             database-related exceptions
 	 */
-	private int readProperties(final MediaItem mediaItem, final ResultSet rs,
-			final String idColumn) throws SQLException {
+	public MediaItemCursor openTrackCursor(final Set<String> propertyNames)
+			throws SQLException {
+		return openTrackCursor(propertyNames, false);
+	}
+
+	/**
+	 * Streams the {@link MediaItem}s that are not playlists, containing only
+	 * specific properties. See {@link #openTrackCursor()}.
+	 * 
+	 * When connections are kept open (see
+	 * {@link #SongbirdDb(String, boolean)}), a cursor uses the connection of
+	 * the thread that opened it, so it must not be read by other threads. A
+	 * cursor that has its own connection can be read by different threads,
+	 * one after the other, e.g. by the tasks of an executor.
+	 * 
+	 * @param propertyNames
+	 *            the properties to load, see {@link Property} for available
+	 *            properties. <code>null</code> loads all properties.
+	 * @param ownConnection
+	 *            <code>true</code> opens a connection that is used by the
+	 *            cursor only and closed along with it
+	 * @return a cursor over all tracks
+	 * 
+	 * @throws SQLException
+	 *             database-related exceptions
+	 */
+	public MediaItemCursor openTrackCursor(final Set<String> propertyNames,
+			final boolean ownConnection) throws SQLException {
+		return openTrackCursor(propertyNames, ownConnection, null);
+	}
+
+	/**
+	 * Streams the {@link MediaItem}s that are not playlists. See
+	 * {@link #openTrackCursor(Set, boolean)}.
+	 * 
+	 * @param propertyNames
+	 *            the properties to load, <code>null</code> loads all
+	 * @param ownConnection
+	 *            <code>true</code> opens a connection that is used by the
+	 *            cursor only
+	 * @param counter
+	 *            counts what is read, <code>null</code> if there is no
+	 *            listener
+	 * @return a cursor over all tracks
+	 * @throws SQLException
+	 *             database-related exceptions
+	 */
+	private MediaItemCursor openTrackCursor(final Set<String> propertyNames,
+			final boolean ownConnection, final ItemCounter counter)
+			throws SQLException {
+		LazyPropertyLoader lazyLoader = lazyLoader(propertyNames);
+		SongbirdDbConnection connection = ownConnection ? acquireUnpooledConnection()
+				: acquireConnection();
+		ResultSet rs = null;
+		boolean success = false;
+		try {
+			rs = connection.executeQuery(itemQuery(QUERY_MEDIA_ITEMS,
+					propertyNames, lazyLoader));
+			MediaItemCursor cursor = new MediaItemCursor(this, connection,
+					rs, false, lazyLoader, counter);
+			success = true;
+			return cursor;
+		} finally {
+			if (!success) {
+				connection.release(rs);
+				releaseConnection(connection);
+			}
+		}
+	}
+
+	/**
+	 * Gets only the {@link MediaItem}s that are not playlists and that have
+	 * been added or updated after a specific point in time. Use together with
+	 * {@link #getTrackIds()} in order to find out about deleted tracks.
+	 * 
+	 * @param timestamp
+	 *            milliseconds since epoch, compared to
+	 *            {@link MediaItem#getDateUpdated()}
+	 * @return all tracks that have been updated after <code>timestamp</code>
+	 * 
+	 * @throws SQLException
+	 *             database-related exceptions
+	 */
+	public List<MediaItem> getTracksChangedSince(final long timestamp)
+			throws SQLException {
+		return readTracks("getTracksChangedSince",
+				QUERY_MEDIA_ITEMS_CHANGED_SINCE, null, timestamp);
+	}
+
+	/**
+	 * Gets one page of the {@link MediaItem}s that are not playlists, ordered
+	 * by their ID. In contrast to paging via OFFSET, the page is found via
+	 * the primary key, so getting a page takes the same time no matter how
+	 * deep it is. Example:
+	 * 
+	 * <pre>
+	 * int afterId = 0;
+	 * List&lt;MediaItem&gt; page;
+	 * while (!(page = songbirdDb.getTracks(afterId, 1000)).isEmpty()) {
+	 * 	// ...
+	 * 	afterId = page.get(page.size() - 1).getId();
+	 * }
+	 * </pre>
+	 * 
+	 * @param afterMediaItemId
+	 *            the page starts with the first track whose ID is greater
+	 *            than this one, i.e. the ID of the last track of the previous
+	 *            page. 0 for the first page.
+	 * @param limit
+	 *            maximum number of tracks in the page
+	 * @return the tracks, sorted ascendingly by ID. Empty if there are no
+	 *         more tracks.
+	 * @throws SQLException
+	 *             database-related exceptions
+	 */
+	public List<MediaItem> getTracks(final int afterMediaItemId,
+			final int limit) throws SQLException {
+		return getTracks(afterMediaItemId, limit, null);
+	}
+
+	/**
+	 * Gets one page of the {@link MediaItem}s that are not playlists,
+	 * containing only specific properties. See {@link #getTracks(int, int)}.
+	 * 
+	 * @param afterMediaItemId
+	 *            the page starts with the first track whose ID is greater
+	 *            than this one. 0 for the first page.
+	 * @param limit
+	 *            maximum number of tracks in the page
+	 * @param propertyNames
+	 *            the properties to load, see {@link Property} for available
+	 *            properties. <code>null</code> loads all properties.
+	 * @return the tracks, sorted ascendingly by ID. Empty if there are no
+	 *         more tracks.
+	 * @throws SQLException
+	 *             database-related exceptions
+	 */
+	public List<MediaItem> getTracks(final int afterMediaItemId,
+			final int limit, final Set<String> propertyNames)
+			throws SQLException {
+		return readTracks("getTracks", QUERY_MEDIA_ITEMS_PAGE, propertyNames,
+				afterMediaItemId, limit);
+	}
+
+	/**
+	 * Reads all tracks returned by a query.
+	 * 
+	 * @param operation
+	 *            name of the calling operation, for the listener
+	 * @param query
+	 *            {@link #QUERY_MEDIA_ITEMS} or a variant of it
+	 * @param propertyNames
+	 *            the properties to load, <code>null</code> loads all
+	 * @param parameters
+	 *            the values of the parameters of <code>query</code>, if any
+	 * @return the tracks
+	 * @throws SQLException
+	 *             database-related exceptions
+	 */
+	private List<MediaItem> readTracks(final String operation,
+			final String query, final Set<String> propertyNames,
+			final long... parameters) throws SQLException {
+		SongbirdDbListener currentListener = listener;
+		long start = currentListener != null ? System.nanoTime() : 0;
+		ItemCounter counter = currentListener != null ? new ItemCounter()
+				: null;
+		List<MediaItem> playListItems = new ArrayList<MediaItem>();
+
+		LazyPropertyLoader lazyLoader = lazyLoader(propertyNames);
+		SongbirdDbConnection connection = acquireConnection();
+		ResultSet rs = null;
+		MediaItemCursor cursor;
+		try {
+			rs = executeQuery(connection,
+					itemQuery(query, propertyNames, lazyLoader), parameters);
+			cursor = new MediaItemCursor(this, connection, rs, false,
+					lazyLoader, counter);
+		} catch (SQLException e) {
+			connection.release(rs);
+			releaseConnection(connection);
+			throw e;
+		}
+
+		try {
+			while (cursor.hasNext()) {
+				playListItems.add(cursor.next());
+			}
+			if (counter != null) {
+				counter.report(currentListener, operation, System.nanoTime()
+						- start);
+			}
+			return playListItems;
+		} finally {
+			cursor.close();
+		}
+	}
+
+	/**
+	 * Gets the IDs of all {@link MediaItem}s that are not playlists. This is
+	 * a cheap way of finding out which tracks have been deleted since the last
+	 * load.
+	 * 
+	 * @return the IDs of all tracks, sorted ascendingly
+	 * @throws SQLException
+	 *             database-related exceptions
+	 */
+	public int[] getTrackIds() throws SQLException {
+		return queryIds(QUERY_MEDIA_ITEM_IDS);
+	}
+
+	/**
+	 * Gets the IDs of all {@link MediaItem}s that are playlists, including
+	 * internal, dynamic and unnamed ones. This is a cheap way of finding out
+	 * which playlists have been deleted since the last load.
+	 * 
+	 * @return the IDs of all playlists, sorted ascendingly
+	 * @throws SQLException
+	 *             database-related exceptions
+	 */
+	public int[] getPlayListIds() throws SQLException {
+		return queryIds(QUERY_MEDIA_LIST_IDS);
+	}
+
+	/**
+	 * @param query
+	 *            a query returning IDs in its first column
+	 * @return the IDs
+	 * @throws SQLException
+	 *             database-related exceptions
+	 */
+	private int[] queryIds(final String query) throws SQLException {
+		SongbirdDbConnection connection = acquireConnection();
+		ResultSet rs = null;
+		try {
+			rs = connection.executeQuery(query);
+			int[] ids = new int[1024];
+			int size = 0;
+			while (rs.next()) {
+				if (size == ids.length) {
+					ids = Arrays.copyOf(ids, size * 2);
+				}
+				ids[size++] = rs.getInt(1);
+			}
+			return Arrays.copyOf(ids, size);
+		} finally {
+			connection.release(rs);
+			releaseConnection(connection);
+		}
+	}
+
+	/**
+	 * Gets only the {@link MediaItem}s that are playlists. Does not get the
+	 * {@link MediaItem}s which are members of the playlist. Ignores all
+	 * playlists that don't have a name.
+	 * 
+	 * @param ignoreInternalPlaylists
+	 *            <code>true</code> ignores Songbird's internal playlists (all
+	 *            playlists having an mediaListType != simple)
+	 * @param skipDynamicLists
+	 *            <code>true</code> does not return songbird's "smart" playlists
+	 *            (all playlists whose name starts with "&amp;smart")
+	 * @return the playlist {@link MediaItem}
+	 * @throws SQLException
+	 *             database-related exceptions
+	 * @see #getPlayLists(boolean, boolean)
+	 */
+	public List<MediaItem> getPlaylistItems(
+			final boolean ignoreInternalPlaylists,
+			final boolean skipDynamicLists) throws SQLException {
+		SongbirdDbListener currentListener = listener;
+		long start = currentListener != null ? System.nanoTime() : 0;
+		ItemCounter counter = currentListener != null ? new ItemCounter()
+				: null;
+		List<MediaItem> playListItems = getPlaylistItems(
+				ignoreInternalPlaylists, skipDynamicLists, counter,
+				QUERY_MEDIA_LISTS_TYPE_SIMPLE);
+		if (counter != null) {
+			counter.report(currentListener, "getPlaylistItems",
+					System.nanoTime() - start);
+		}
+		return playListItems;
+	}
+
+	/**
+	 * Gets only the {@link MediaItem}s that are playlists. See
+	 * {@link #getPlaylistItems(boolean, boolean)}.
+	 * 
+	 * @param ignoreInternalPlaylists
+	 *            <code>true</code> ignores Songbird's internal playlists
+	 * @param skipDynamicLists
+	 *            <code>true</code> does not return songbird's "smart" playlists
+	 * @param counter
+	 *            counts what is read, <code>null</code> if there is no
+	 *            listener
+	 * @param query
+	 *            {@link #QUERY_MEDIA_LISTS_TYPE_SIMPLE} or a variant of it
+	 * @param parameters
+	 *            the values of the parameters of <code>query</code>, if any
+	 * @return the playlist {@link MediaItem}
+	 * @throws SQLException
+	 *             database-related exceptions
+	 */
+	private List<MediaItem> getPlaylistItems(
+			final boolean ignoreInternalPlaylists,
+			final boolean skipDynamicLists, final ItemCounter counter,
+			final String query, final long... parameters) throws SQLException {
+		/**
+		 * Note: Get all playlists and attributes in on result set like this
+		 * 
+		 * <pre>
+		 * select m.media_item_id, m.content_url, lt.type, p.property_name, r.obj from media_items m 
+		 * 	left join resource_properties as r on m.media_item_id = r.media_item_id 
+		 * 	left join media_list_types as mlt on m.media_list_type_id = mlt.media_list_type_id
+		 * 	left join properties p on r.property_id =  p.property_id
+		 * 	left join MEDIA_LIST_TYPES lt on m.media_list_type_id = lt.media_list_type_id
+		 * where m.is_list = 1 and m.media_list_type_id is not null order by m.media_item_id
+		 * </pre>
+		 */
+		List<MediaItem> playListItems = new LinkedList<MediaItem>();
+		if (!metadata.containsProperty(Property.PROP_MEDIA_LIST_NAME)) {
+			// Without names, all playlists would be skipped
+			return playListItems;
+		}
+
+		SongbirdDbConnection connection = acquireConnection();
+		ResultSet rs = null;
+		try {
+			rs = executeQuery(
+					connection,
+					filterPlayLists(query, ignoreInternalPlaylists,
+							skipDynamicLists), parameters);
+
+			if (rs.next()) { // If there are results at all
+				int currentId = rs.getInt("media_item_id");
+				while (currentId >= 0) {
+					MediaItem m = new MediaItem();
+					currentId = readMediaItem(rs, currentId, m, true, counter);
+					playListItems.add(m);
+
+					// logger.debug("ID: " + m.getId() + ": \""
+					// + m.getProperty(Property.PROP_MEDIA_LIST_NAME)
+					// + "\"; Type: " + m.getListType());
+				}
+			}
+			return playListItems;
+		} finally {
+			connection.release(rs);
+			releaseConnection(connection);
+		}
+	}
+
+	/**
+	 * Restricts a playlist query so that SQLite skips the unwanted playlists,
+	 * instead of reading and decoding them.
+	 * 
+	 * @param query
+	 *            {@link #QUERY_MEDIA_LISTS_TYPE_SIMPLE},
+	 *            {@link #QUERY_MEDIA_LIST_IDS_TYPE_SIMPLE} or a variant of them
+	 * @param ignoreInternalPlaylists
+	 *            <code>true</code> skips Songbird's internal playlists
+	 * @param skipDynamicLists
+	 *            <code>true</code> skips songbird's "smart" playlists
+	 * @return <code>query</code>, restricted to playlists that have a name
+	 *         and match the flags
+	 */
+	private String filterPlayLists(final String query,
+			final boolean ignoreInternalPlaylists,
+			final boolean skipDynamicLists) {
+		int nameId = metadata.property2Id(Property.PROP_MEDIA_LIST_NAME);
+		// Skip all playlist without name
+		StringBuilder filter = new StringBuilder(
+				"and exists (select 1 from resource_properties n where n.media_item_id = m.media_item_id and n.property_id = ")
+				.append(nameId).append(") ");
+
+		if (ignoreInternalPlaylists
+				&& metadata.containsProperty(Property.PROP_CUSTOM_TYPE)) {
+			/*
+			 * Note: Dynamic and internal playlists start with '&'. However, a
+			 * dynamic playlist's customType is "simple", as with it is for
+			 * "normal" playlists. Internal playlists have a type like
+			 * "download" or "smart". So in order to ignore internal playlists
+			 * it would be possible to filter for the custom type.
+			 * 
+			 * In addition, most internal playlists don't have a name. But not
+			 * all!
+			 * 
+			 * It also seems that only internal lists have a mediaListType of
+			 * "dynamic". But not all!
+			 * 
+			 * So skip any playlists with customType != "simple"
+			 */
+			filter.append(
+					"and not exists (select 1 from resource_properties t where t.media_item_id = m.media_item_id and t.property_id = ")
+					.append(metadata.property2Id(Property.PROP_CUSTOM_TYPE))
+					.append(" and t.obj <> 'simple') ");
+		}
+
+		if (skipDynamicLists) {
+			/* Note: Dynamic lists begin with "&smart". */
+			filter.append(
+					"and not exists (select 1 from resource_properties d where d.media_item_id = m.media_item_id and d.property_id = ")
+					.append(nameId)
+					.append(" and substr(d.obj, 1, 6) = '&smart') ");
+		}
+
+		return query.replace("and m.media_list_type_id is not null ",
+				"and m.media_list_type_id is not null " + filter);
+	}
+
+	/**
+	 * Restricts {@link #QUERY_MEDIA_LIST_MEMBERS} to the playlists that match
+	 * the same filters as the playlists themselves (see
+	 * {@link #filterPlayLists(String, boolean, boolean)}), so SQLite does not
+	 * return the members of playlists that are dropped anyway.
+	 * 
+	 * @param ignoreInternalPlaylists
+	 *            <code>true</code> skips the members of Songbird's internal
+	 *            playlists
+	 * @param skipDynamicLists
+	 *            <code>true</code> skips the members of songbird's "smart"
+	 *            playlists
+	 * @return {@link #QUERY_MEDIA_LIST_MEMBERS}, restricted to the playlists
+	 */
+	private String filterMembers(final boolean ignoreInternalPlaylists,
+			final boolean skipDynamicLists) {
+		return QUERY_MEDIA_LIST_MEMBERS.replace(
+				"order by ",
+				"where l.media_item_id in ("
+						+ filterPlayLists(QUERY_MEDIA_LIST_IDS_TYPE_SIMPLE,
+								ignoreInternalPlaylists, skipDynamicLists)
+						+ ") order by ");
+	}
+
+	/**
+	 * Gets all {@link MediaItem}s that are playlists and also aggregates the
+	 * {@link MediaItem}s that are members of the playlists. Ignores all
+	 * playlists that don't have a name.
+	 * 
+	 * @param ignoreInternalPlaylists
+	 *            <code>true</code> ignores Songbird's internal playlists (all
+	 *            playlists having an mediaListType != simple)
+	 * @param skipDynamicLists
+	 *            <code>true</code> does not return songbird's "smart" playlists
+	 *            (all playlists whose name starts with "&amp;smart")
+	 * 
+	 * @return an object that contains the "parent" (playlist) {@link MediaItem}
+	 *         as well as all of its member {@link MediaItem}s
+	 * @throws SQLException
+	 *             database-related exceptions
+	 */
+	public List<SimpleMediaList> getPlayLists(
+			final boolean ignoreInternalPlaylists,
+			final boolean skipDynamicLists) throws SQLException {
+		return getPlayLists(ignoreInternalPlaylists, skipDynamicLists, null);
+	}
+
+	/**
+	 * Gets all {@link MediaItem}s that are playlists and also aggregates the
+	 * {@link MediaItem}s that are members of the playlists, containing only
+	 * specific properties. Only those are read from the database. See
+	 * {@link #getPlayLists(boolean, boolean)}.
+	 * 
+	 * @param ignoreInternalPlaylists
+	 *            <code>true</code> ignores Songbird's internal playlists (all
+	 *            playlists having an mediaListType != simple)
+	 * @param skipDynamicLists
+	 *            <code>true</code> does not return songbird's "smart" playlists
+	 *            (all playlists whose name starts with "&amp;smart")
+	 * @param propertyNames
+	 *            the properties to load, see {@link Property} for available
+	 *            properties. <code>null</code> loads all properties. The
+	 *            playlists are filtered by the database, so
+	 *            {@link Property#PROP_MEDIA_LIST_NAME} and
+	 *            {@link Property#PROP_CUSTOM_TYPE} are only loaded when
+	 *            requested.
+	 * 
+	 * @return an object that contains the "parent" (playlist) {@link MediaItem}
+	 *         as well as all of its member {@link MediaItem}s
+	 * @throws SQLException
+	 *             database-related exceptions
+	 */
+	public List<SimpleMediaList> getPlayLists(
+			final boolean ignoreInternalPlaylists,
+			final boolean skipDynamicLists, final Set<String> propertyNames)
+			throws SQLException {
+		SongbirdDbListener currentListener = listener;
+		long start = currentListener != null ? System.nanoTime() : 0;
+		ItemCounter counter = currentListener != null ? new ItemCounter()
+				: null;
+		Map<Integer, SimpleMediaList> playLists = createPlayLists(
+				ignoreInternalPlaylists, skipDynamicLists, propertyNames,
+				counter);
+		LazyPropertyLoader lazyLoader = lazyLoader(propertyNames);
+		/*
+		 * Query the members of all playlists at once, instead of sending one
+		 * query per playlist.
+		 */
+		readMembers(playLists, itemQuery(
+				filterMembers(ignoreInternalPlaylists, skipDynamicLists),
+				propertyNames, lazyLoader), acquireConnection(), counter);
+		addMembers(lazyLoader, playLists.values());
+		if (counter != null) {
+			counter.report(currentListener, "getPlayLists", System.nanoTime()
+					- start);
+		}
+		return new LinkedList<SimpleMediaList>(playLists.values());
+	}
+
+	/**
+	 * Gets all {@link MediaItem}s that are playlists and also aggregates the
+	 * {@link MediaItem}s that are members of the playlists, like
+	 * {@link #getPlayLists(boolean, boolean, Set)}. The members are loaded in
+	 * parallel: The playlists are split up into <code>parallelism</code>
+	 * parts, each of which is loaded by a task running on
+	 * <code>executor</code>, using its own connection to the database.
+	 * 
+	 * @param ignoreInternalPlaylists
+	 *            <code>true</code> ignores Songbird's internal playlists (all
+	 *            playlists having an mediaListType != simple)
+	 * @param skipDynamicLists
+	 *            <code>true</code> does not return songbird's "smart" playlists
+	 *            (all playlists whose name starts with "&amp;smart")
+	 * @param propertyNames
+	 *            the properties to load, see {@link Property} for available
+	 *            properties. <code>null</code> loads all properties.
+	 * @param executor
+	 *            executes the tasks that load the members, e.g. a fixed thread
+	 *            pool with <code>parallelism</code> threads
+	 * @param parallelism
+	 *            the number of tasks to split the playlists into, e.g.
+	 *            {@link #DEFAULT_PARALLELISM}
+	 * 
+	 * @return the playlists in the same order as returned by
+	 *         {@link #getPlayLists(boolean, boolean, Set)}
+	 * @throws SQLException
+	 *             database-related exceptions
+	 */
+	public List<SimpleMediaList> getPlayLists(
+			final boolean ignoreInternalPlaylists,
+			final boolean skipDynamicLists, final Set<String> propertyNames,
+			final ExecutorService executor, final int parallelism)
+			throws SQLException {
+		SongbirdDbListener currentListener = listener;
+		long start = currentListener != null ? System.nanoTime() : 0;
+		ItemCounter counter = currentListener != null ? new ItemCounter()
+				: null;
+		Map<Integer, SimpleMediaList> playLists = createPlayLists(
+				ignoreInternalPlaylists, skipDynamicLists, propertyNames,
+				counter);
+		final LazyPropertyLoader lazyLoader = lazyLoader(propertyNames);
+
+		int tasks = Math.min(parallelism, playLists.size());
+		if (tasks < 2) {
+			readMembers(playLists, itemQuery(
+					filterMembers(ignoreInternalPlaylists, skipDynamicLists),
+					propertyNames, lazyLoader), acquireConnection(), counter);
+			addMembers(lazyLoader, playLists.values());
+			if (counter != null) {
+				counter.report(currentListener, "getPlayLists",
+						System.nanoTime() - start);
+			}
+			return new LinkedList<SimpleMediaList>(playLists.values());
+		}
+
+		/* Distribute the playlists round robin */
+		List<Map<Integer, SimpleMediaList>> parts = new ArrayList<Map<Integer, SimpleMediaList>>(
+				tasks);
+		for (int i = 0; i < tasks; i++) {
+			parts.add(new HashMap<Integer, SimpleMediaList>());
+		}
+		int i = 0;
+		for (SimpleMediaList list : playLists.values()) {
+			parts.get(i++ % tasks).put(list.getList().getId(), list);
+		}
+
+		List<Future<Void>> futures = new ArrayList<Future<Void>>(tasks);
+		/* Each task counts on its own, they are added up once all are done */
+		List<ItemCounter> taskCounters = new ArrayList<ItemCounter>(tasks);
+		/* The connections of the tasks that are currently querying */
+		final Set<SongbirdDbConnection> taskConnections = Collections
+				.newSetFromMap(new ConcurrentHashMap<SongbirdDbConnection, Boolean>());
+		boolean success = false;
+		try {
+			for (final Map<Integer, SimpleMediaList> part : parts) {
+				final ItemCounter taskCounter = counter != null ? new ItemCounter()
+						: null;
+				taskCounters.add(taskCounter);
+				futures.add(executor.submit(new Callable<Void>() {
+					@Override
+					public Void call() throws SQLException {
+						/*
+						 * Don't use the shared cache, as SQLite serializes the
+						 * access to it.
+						 */
+						SongbirdDbConnection connection = acquireUnpooledConnection();
+						taskConnections.add(connection);
+						try {
+							readMembers(
+									part,
+									itemQuery(
+											restrictToPlayLists(
+													QUERY_MEDIA_LIST_MEMBERS,
+													part.keySet()),
+											propertyNames, lazyLoader),
+									connection, taskCounter);
+						} finally {
+							taskConnections.remove(connection);
+						}
+						return null;
+					}
+				}));
+			}
+			for (Future<Void> future : futures) {
+				future.get();
+			}
+			success = true;
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new SQLException("Interrupted while loading playlists", e);
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof SQLException) {
+				throw (SQLException) e.getCause();
+			}
+			if (e.getCause() instanceof RuntimeException) {
+				throw (RuntimeException) e.getCause();
+			}
+			throw new SQLException("Loading playlists failed", e.getCause());
+		} finally {
+			if (!success) {
+				for (Future<Void> future : futures) {
+					future.cancel(true);
+				}
+				/*
+				 * Interrupting the tasks does not stop SQLite, so abort the
+				 * queries that are still running.
+				 */
+				for (SongbirdDbConnection connection : taskConnections) {
+					connection.cancel();
+				}
+			}
+		}
+		addMembers(lazyLoader, playLists.values());
+		if (counter != null) {
+			for (ItemCounter taskCounter : taskCounters) {
+				counter.add(taskCounter);
+			}
+			counter.report(currentListener, "getPlayLists", System.nanoTime()
+					- start);
+		}
+		return new LinkedList<SimpleMediaList>(playLists.values());
+	}
+
+	/**
+	 * Gets the playlists that have been added or updated after a specific
+	 * point in time, or contain a member that has been updated after this
+	 * point in time, like {@link #getPlayLists(boolean, boolean)}. Use
+	 * together with {@link #getPlayListIds()} in order to find out about
+	 * deleted playlists.
+	 * 
+	 * Note that adding, removing or reordering members is only detected if
+	 * the client that changed the playlist has also set the playlist's
+	 * <code>updated</code> column, because the memberships in the
+	 * <code>simple_media_lists</code> table do not have a timestamp of their
+	 * own. Removing a member that is deleted from the library altogether can
+	 * be detected via {@link #getTrackIds()}. Reload all playlists (e.g. via
+	 * {@link #getPlayLists(boolean, boolean)}) if the memberships must be
+	 * exact.
+	 * 
+	 * @param timestamp
+	 *            milliseconds since epoch, compared to
+	 *            {@link MediaItem#getDateUpdated()}
+	 * @param ignoreInternalPlaylists
+	 *            <code>true</code> ignores Songbird's internal playlists (all
+	 *            playlists having an mediaListType != simple)
+	 * @param skipDynamicLists
+	 *            <code>true</code> does not return songbird's "smart" playlists
+	 *            (all playlists whose name starts with "&amp;smart")
+	 * @return the changed playlists, including all of their members
+	 * @throws SQLException
+	 *             database-related exceptions
+	 */
+	public List<SimpleMediaList> getPlayListsChangedSince(
+			final long timestamp, final boolean ignoreInternalPlaylists,
+			final boolean skipDynamicLists) throws SQLException {
+		SongbirdDbListener currentListener = listener;
+		long start = currentListener != null ? System.nanoTime() : 0;
+		ItemCounter counter = currentListener != null ? new ItemCounter()
+				: null;
+		Map<Integer, SimpleMediaList> playLists = createPlayLists(
+				ignoreInternalPlaylists, skipDynamicLists, null, counter,
+				QUERY_MEDIA_LISTS_TYPE_SIMPLE_CHANGED_SINCE, timestamp,
+				timestamp);
+		LazyPropertyLoader lazyLoader = lazyLoader(null);
+		readMembers(playLists, itemQuery(
+				restrictToPlayLists(QUERY_MEDIA_LIST_MEMBERS,
+						playLists.keySet()), null, lazyLoader),
+				acquireConnection(), counter);
+		addMembers(lazyLoader, playLists.values());
+		if (counter != null) {
+			counter.report(currentListener, "getPlayListsChangedSince",
+					System.nanoTime() - start);
+		}
+		return new LinkedList<SimpleMediaList>(playLists.values());
+	}
+
+	/**
+	 * Creates the {@link SimpleMediaList}s for all playlists, without their
+	 * members.
+	 * 
+	 * @param ignoreInternalPlaylists
+	 *            <code>true</code> ignores Songbird's internal playlists
+	 * @param skipDynamicLists
+	 *            <code>true</code> does not return songbird's "smart" playlists
+	 * @param propertyNames
+	 *            the properties to load, <code>null</code> loads all
+	 * @param counter
+	 *            counts what is read, <code>null</code> if there is no
+	 *            listener
+	 * @return the playlists, by their ID, in the order of
+	 *         {@link #getPlaylistItems(boolean, boolean)}
+	 * @throws SQLException
+	 *             database-related exceptions
+	 */
+	private Map<Integer, SimpleMediaList> createPlayLists(
+			final boolean ignoreInternalPlaylists,
+			final boolean skipDynamicLists, final Set<String> propertyNames,
+			final ItemCounter counter) throws SQLException {
+		return createPlayLists(ignoreInternalPlaylists, skipDynamicLists,
+				propertyNames, counter, QUERY_MEDIA_LISTS_TYPE_SIMPLE);
+	}
+
+	/**
+	 * Creates the {@link SimpleMediaList}s for specific playlists, without
+	 * their members.
+	 * 
+	 * @param ignoreInternalPlaylists
+	 *            <code>true</code> ignores Songbird's internal playlists
+	 * @param skipDynamicLists
+	 *            <code>true</code> does not return songbird's "smart" playlists
+	 * @param propertyNames
+	 *            the properties to load, <code>null</code> loads all
+	 * @param counter
+	 *            counts what is read, <code>null</code> if there is no
+	 *            listener
+	 * @param query
+	 *            {@link #QUERY_MEDIA_LISTS_TYPE_SIMPLE} or a variant of it
+	 * @param parameters
+	 *            the values of the parameters of <code>query</code>, if any
+	 * @return the playlists, by their ID, in the order of
+	 *         {@link #getPlaylistItems(boolean, boolean)}
+	 * @throws SQLException
+	 *             database-related exceptions
+	 */
+	private Map<Integer, SimpleMediaList> createPlayLists(
+			final boolean ignoreInternalPlaylists,
+			final boolean skipDynamicLists, final Set<String> propertyNames,
+			final ItemCounter counter, final String query,
+			final long... parameters) throws SQLException {
+		List<MediaItem> playListItems = getPlaylistItems(
+				ignoreInternalPlaylists, skipDynamicLists, counter,
+				projectQuery(query, propertyNames), parameters);
+
+		/* Keep the order of the playlist items */
+		Map<Integer, SimpleMediaList> playLists = new LinkedHashMap<Integer, SimpleMediaList>();
+		for (MediaItem playlistMediaItem : playListItems) {
+			SimpleMediaList list = new SimpleMediaList();
+			list.setList(playlistMediaItem);
+			playLists.put(playlistMediaItem.getId(), list);
+		}
+		return playLists;
+	}
+
+	/**
+	 * Queries the members of playlists, appends them to the corresponding
+	 * {@link SimpleMediaList}s and sorts them.
+	 * 
+	 * @param playLists
+	 *            the playlists to attach the members to, by the ID of the
+	 *            playlist
+	 * @param query
+	 *            {@link #QUERY_MEDIA_LIST_MEMBERS} or a variant of it
+	 * @param connection
+	 *            the connection to query. Released via
+	 *            {@link #releaseConnection(SongbirdDbConnection)} afterwards.
+	 * @param counter
+	 *            counts what is read, <code>null</code> if there is no
+	 *            listener
+	 * @throws SQLException
+	 *             database-related exceptions
+	 */
+	private void readMembers(final Map<Integer, SimpleMediaList> playLists,
+			final String query, final SongbirdDbConnection connection,
+			final ItemCounter counter) throws SQLException {
+		ResultSet rs = null;
+		try {
+			if (!playLists.isEmpty()) {
+				rs = connection.executeQuery(query);
+				readMembers(rs, playLists, counter);
+			}
+		} finally {
+			connection.release(rs);
+			releaseConnection(connection);
+		}
+
+		for (SimpleMediaList list : playLists.values()) {
+			sortMembers(list);
+		}
+	}
+
+	/**
+	 * Aggregates the {@link MediaItem}s that are members of a single playlist.
+	 * 
+	 * @param playlistMediaItem
+	 *            the playlist, as returned by
+	 *            {@link #getPlaylistItems(boolean, boolean)}
+	 * @return an object that contains the "parent" (playlist) {@link MediaItem}
+	 *         as well as all of its member {@link MediaItem}s
+	 * @throws SQLException
+	 *             database-related exceptions
+	 */
+	public SimpleMediaList getPlayList(final MediaItem playlistMediaItem)
+			throws SQLException {
+		SongbirdDbListener currentListener = listener;
+		long start = currentListener != null ? System.nanoTime() : 0;
+		ItemCounter counter = currentListener != null ? new ItemCounter()
+				: null;
+		SimpleMediaList list = new SimpleMediaList();
+		list.setList(playlistMediaItem);
+
+		LazyPropertyLoader lazyLoader = lazyLoader(null);
+		SongbirdDbConnection connection = acquireConnection();
+		PreparedStatement queryMediaList = null;
+		ResultSet rs = null;
+		try {
+			queryMediaList = connection.preparedStatement(itemQuery(
+					QUERY_MEDIA_LIST, null, lazyLoader));
+			/* Query members of playlist */
+			queryMediaList.setInt(1, playlistMediaItem.getId());
+			rs = connection.executeQuery(queryMediaList);
+			readMembers(rs,
+					Collections.singletonMap(playlistMediaItem.getId(), list),
+					counter);
+		} finally {
+			connection.release(rs);
+			connection.release(queryMediaList);
+			releaseConnection(connection);
+		}
+
+		sortMembers(list);
+		addMembers(lazyLoader, Collections.singleton(list));
+		if (counter != null) {
+			counter.report(currentListener, "getPlayList", System.nanoTime()
+					- start);
+		}
+		return list;
+	}
+
+	/**
+	 * Sorts the members of a playlist by their ordinal, informing the
+	 * listener, if any.
+	 * 
+	 * @param list
+	 *            the playlist to sort
+	 */
+	private void sortMembers(final SimpleMediaList list) {
+		SongbirdDbListener currentListener = listener;
+		if (currentListener == null) {
+			list.sortMembers(true);
+			return;
+		}
+		long start = System.nanoTime();
+		list.sortMembers(true);
+		currentListener.membersSorted(list.getMembers().size(),
+				System.nanoTime() - start);
+	}
+
+	/**
+	 * Counts the items, rows, properties and bytes that are read for
+	 * {@link SongbirdDbListener}, while reading. Only created if there is a
+	 * listener, so reading without listener does not pay for counting.
+	 */
+	static final class ItemCounter {
+		private int items = 0;
+		private long rows = 0;
+		private long properties = 0;
+		private long stringBytes = 0;
+
+		/**
+		 * Counts an item.
+		 * 
+		 * @param contentUrl
+		 *            the content URL read for the item, may be
+		 *            <code>null</code>
+		 */
+		void item(final String contentUrl) {
+			items++;
+			stringBytes += utf8Length(contentUrl);
+		}
+
+		/**
+		 * Counts items whose columns have been read before, e.g. when
+		 * loading their properties later.
+		 * 
+		 * @param count
+		 *            the number of items
+		 */
+		void items(final int count) {
+			items += count;
+		}
+
+		/** Counts a row read from a result set, even if it is skipped. */
+		void row() {
+			rows++;
+		}
+
+		/**
+		 * Counts a property.
+		 * 
+		 * @param value
+		 *            the value read, may be <code>null</code>
+		 */
+		void property(final String value) {
+			properties++;
+			stringBytes += utf8Length(value);
+		}
+
+		/**
+		 * Adds the counts of another counter, e.g. of a parallel task.
+		 * 
+		 * @param other
+		 *            the counter to add
+		 */
+		void add(final ItemCounter other) {
+			items += other.items;
+			rows += other.rows;
+			properties += other.properties;
+			stringBytes += other.stringBytes;
+		}
+
+		/** Hands the counts to the listener. */
+		void report(final SongbirdDbListener currentListener,
+				final String operation, final long nanos) {
+			currentListener.itemsRead(operation, nanos, items, rows,
+					properties, stringBytes);
+		}
+
+		/**
+		 * @param value
+		 *            a string, may be <code>null</code>
+		 * @return the number of bytes of <code>value</code> in UTF-8, the
+		 *         encoding SQLite stores the strings of Songbird's database
+		 *         in. 0 for <code>null</code>.
+		 */
+		static long utf8Length(final String value) {
+			if (value == null) {
+				return 0;
+			}
+			long length = 0;
+			for (int i = 0; i < value.length(); i++) {
+				char c = value.charAt(i);
+				if (c < 0x80) {
+					length++;
+				} else if (c < 0x800) {
+					length += 2;
+				} else if (Character.isHighSurrogate(c)
+						&& i + 1 < value.length()
+						&& Character.isLowSurrogate(value.charAt(i + 1))) {
+					length += 4;
+					i++;
+				} else {
+					length += 3;
+				}
+			}
+			return length;
+		}
+	}
+
+	/**
+	 * Finds the playlists that contain a specific {@link MediaItem}. See
+	 * {@link #getPlayListIdsContaining(Collection)} for looking up many items
+	 * at once.
+	 * 
+	 * @param mediaItemId
+	 *            the ID of the member
+	 * @return the IDs of the playlists, sorted ascendingly. Empty if there
+	 *         are none.
+	 * @throws SQLException
+	 *             database-related exceptions
+	 */
+	public Set<Integer> getPlayListIdsContaining(final int mediaItemId)
+			throws SQLException {
+		return getPlayListIdsContaining(Collections.singleton(mediaItemId))
+				.get(mediaItemId);
+	}
+
+	/**
+	 * Finds the playlists that contain specific {@link MediaItem}s, using one
+	 * query per {@value #MAX_QUERY_PARAMETERS} items. The IDs of the playlists
+	 * can be resolved via {@link #getPlayLists(boolean, boolean)} or
+	 * {@link #getPlaylistItems(boolean, boolean)}. Note that the result
+	 * includes all playlists, also the ones these methods ignore (e.g.
+	 * playlists without a name).
+	 * 
+	 * @param mediaItemIds
+	 *            the IDs of the members
+	 * @return the IDs of the playlists, sorted ascendingly, by the ID of the
+	 *         member. Contains an empty set for members that are not
+	 *         contained in any playlist.
+	 * @throws SQLException
+	 *             database-related exceptions
+	 */
+	public Map<Integer, Set<Integer>> getPlayListIdsContaining(
+			final Collection<Integer> mediaItemIds) throws SQLException {
+		Map<Integer, Set<Integer>> playListIds = new HashMap<Integer, Set<Integer>>();
+		List<Object> parameters = new ArrayList<Object>(mediaItemIds.size());
+		for (Integer mediaItemId : mediaItemIds) {
+			if (!playListIds.containsKey(mediaItemId)) {
+				playListIds.put(mediaItemId, new TreeSet<Integer>());
+				parameters.add(mediaItemId);
+			}
+		}
+		queryPlayListIdsContaining(QUERY_PLAYLISTS_CONTAINING_IDS, parameters,
+				playListIds);
+		return playListIds;
+	}
+
+	/**
+	 * Finds the playlists that contain a file. See
+	 * {@link #getPlayListIdsContainingContentUrls(Collection)} for looking up
+	 * many files at once.
+	 * 
+	 * @param contentUrl
+	 *            the content URL of the member. If it is not stored exactly
+	 *            like this, it is compared after normalizing via
+	 *            {@link MediaItemIndex#normalizeContentUrl(String)}, like
+	 *            {@link PlayListIndex#getPlayListsContaining(String)} does
+	 * @return the IDs of the playlists, sorted ascendingly. Empty if there
+	 *         are none.
+	 * @throws SQLException
+	 *             database-related exceptions
+	 */
+	public Set<Integer> getPlayListIdsContaining(final String contentUrl)
+			throws SQLException {
+		return getPlayListIdsContainingContentUrls(
+				Collections.singleton(contentUrl)).get(contentUrl);
+	}
+
+	/**
+	 * Finds the playlists that contain specific files, using one query per
+	 * {@value #MAX_QUERY_PARAMETERS} files. The files are looked up via the
+	 * index on the content URL first. Only the files that are not stored
+	 * exactly as passed are compared after normalizing, which has to scan the
+	 * content URLs of all media items, so look up as many files at once as
+	 * possible.
+	 * 
+	 * @param contentUrls
+	 *            the content URLs of the members. If a URL is not stored
+	 *            exactly like this, it is compared after normalizing via
+	 *            {@link MediaItemIndex#normalizeContentUrl(String)}, like
+	 *            {@link PlayListIndex#getPlayListsContaining(String)} does.
+	 *            Note that a URL that is stored exactly like this does not
+	 *            find other media items whose URL only differs in case or
+	 *            surrounding blanks.
+	 * @return the IDs of the playlists, sorted ascendingly, by content URL as
+	 *         passed in. Contains an empty set for files that are not
+	 *         contained in any playlist.
+	 * @throws SQLException
+	 *             database-related exceptions
+	 */
+	public Map<String, Set<Integer>> getPlayListIdsContainingContentUrls(
+			final Collection<String> contentUrls) throws SQLException {
+		Map<String, Set<Integer>> playListIds = new HashMap<String, Set<Integer>>();
+		List<Object> exactParameters = new ArrayList<Object>(
+				contentUrls.size());
+		for (String contentUrl : contentUrls) {
+			if (!playListIds.containsKey(contentUrl)) {
+				playListIds.put(contentUrl, new TreeSet<Integer>());
+				if (contentUrl != null) {
+					exactParameters.add(contentUrl);
+				}
+			}
+		}
+		Set<Object> found = queryPlayListIdsContaining(
+				QUERY_PLAYLISTS_CONTAINING_EXACT_CONTENT_URLS, exactParameters,
+				playListIds);
+
+		/* Compare the remaining ones normalized, which cannot use the index */
+		Map<String, Set<Integer>> normalizedPlayListIds = new HashMap<String, Set<Integer>>();
+		List<Object> parameters = new ArrayList<Object>();
+		for (Map.Entry<String, Set<Integer>> entry : playListIds.entrySet()) {
+			String normalized = MediaItemIndex.normalizeContentUrl(entry
+					.getKey());
+			if (normalized == null || found.contains(entry.getKey())) {
+				continue;
+			}
+			Set<Integer> ids = normalizedPlayListIds.get(normalized);
+			if (ids == null) {
+				normalizedPlayListIds.put(normalized, entry.getValue());
+				parameters.add(normalized);
+			} else {
+				// URLs that are equal after normalization share their result
+				entry.setValue(ids);
+			}
+		}
+		queryPlayListIdsContaining(QUERY_PLAYLISTS_CONTAINING_CONTENT_URLS,
+				parameters, normalizedPlayListIds);
+		return playListIds;
+	}
+
+	/**
+	 * Runs a query returning pairs of (member key, playlist ID) in chunks of
+	 * {@value #MAX_QUERY_PARAMETERS} parameters.
+	 * 
+	 * @param query
+	 *            {@link #QUERY_PLAYLISTS_CONTAINING_IDS},
+	 *            {@link #QUERY_PLAYLISTS_CONTAINING_EXACT_CONTENT_URLS} or
+	 *            {@link #QUERY_PLAYLISTS_CONTAINING_CONTENT_URLS}
+	 * @param parameters
+	 *            the keys of the members, distinct
+	 * @param playListIds
+	 *            the result, containing a set for each parameter
+	 * @return the keys the query returned at least one row for, including
+	 *         rows without playlist ID
+	 * @throws SQLException
+	 *             database-related exceptions
+	 */
+	private <K> Set<Object> queryPlayListIdsContaining(final String query,
+			final List<Object> parameters,
+			final Map<K, Set<Integer>> playListIds) throws SQLException {
+		Set<Object> found = new HashSet<Object>();
+		if (parameters.isEmpty()) {
+			return found;
+		}
+		SongbirdDbConnection connection = acquireConnection();
+		try {
+			for (int from = 0; from < parameters.size(); from += MAX_QUERY_PARAMETERS) {
+				List<Object> chunk = parameters.subList(from,
+						Math.min(from + MAX_QUERY_PARAMETERS, parameters.size()));
+				PreparedStatement statement = connection
+						.preparedStatement(query.replace("{0}",
+								placeholders(chunk.size())));
+				ResultSet rs = null;
+				try {
+					for (int i = 0; i < chunk.size(); i++) {
+						statement.setObject(i + 1, chunk.get(i));
+					}
+					rs = connection.executeQuery(statement);
+					while (rs.next()) {
+						Object key = rs.getObject(1);
+						found.add(key);
+						Set<Integer> ids = playListIds.get(key);
+						int playListId = rs.getInt(2);
+						if (ids != null && !rs.wasNull()) {
+							ids.add(playListId);
+						}
+					}
+				} finally {
+					connection.release(rs);
+					connection.release(statement);
+				}
+			}
+			return found;
+		} finally {
+			releaseConnection(connection);
+		}
+	}
+
+	/**
+	 * Finds the members that are contained in a playlist more than once. The
+	 * counting is done by the database in one scan of all playlists.
+	 * 
+	 * @return for each playlist that contains duplicates (by ID, ascendingly)
+	 *         one {@link DuplicateGroup} per duplicate member, sorted by the
+	 *         number of entries descendingly. The key of a group is the
+	 *         content URL of the member.
+	 * @throws SQLException
+	 *             database-related exceptions
+	 */
+	public Map<Integer, List<DuplicateGroup>> getDuplicateMembers()
+			throws SQLException {
+		Map<Integer, List<DuplicateGroup>> duplicates = new LinkedHashMap<Integer, List<DuplicateGroup>>();
+		SongbirdDbConnection connection = acquireConnection();
+		ResultSet rs = null;
+		try {
+			rs = connection.executeQuery(QUERY_DUPLICATE_MEMBERS);
+			while (rs.next()) {
+				int listId = rs.getInt("list_id");
+				List<DuplicateGroup> groups = duplicates.get(listId);
+				if (groups == null) {
+					groups = new ArrayList<DuplicateGroup>();
+					duplicates.put(listId, groups);
+				}
+				groups.add(new DuplicateGroup(rs.getString("content_url"), rs
+						.getInt("entries"), Collections.singletonList(rs
+						.getInt("member_media_item_id"))));
+			}
+			return duplicates;
+		} finally {
+			connection.release(rs);
+			releaseConnection(connection);
+		}
+	}
+
+	/**
+	 * Finds tracks that share the same content URL, normalized via
+	 * {@link MediaItemIndex#normalizeContentUrl(String)}. Reads the URLs in
+	 * one pass, keeping only a hash of each in memory, and then reads the URLs
+	 * of the tracks whose hashes collide again in order to group them. So
+	 * neither pairs are compared, nor does the database have to sort.
+	 * 
+	 * @return one {@link DuplicateGroup} per content URL that belongs to more
+	 *         than one track, sorted by URL. The key of a group is the
+	 *         normalized content URL.
+	 * @throws SQLException
+	 *             database-related exceptions
+	 */
+	public List<DuplicateGroup> getDuplicateTracksByContentUrl()
+			throws SQLException {
+		return findDuplicateTracks(QUERY_TRACK_CONTENT_URLS, false);
+	}
+
+	/**
+	 * Finds tracks that share the same artist, title and album, ignoring case
+	 * and surrounding whitespace. Tracks without title or with an empty one
+	 * are ignored, missing artists or albums are considered equal to empty
+	 * ones. Works like
+	 * {@link #getDuplicateTracksByContentUrl()}, but the first pass scans the
+	 * properties directly instead of joining them to each track.
+	 * 
+	 * @return one {@link DuplicateGroup} per combination that belongs to more
+	 *         than one track, sorted by artist, title and album. The key of a
+	 *         group is "artist - title - album" in lower case. Empty if the
+	 *         database does not contain titles at all.
+	 * @throws SQLException
+	 *             database-related exceptions
+	 */
+	public List<DuplicateGroup> getDuplicateTracksByTags()
+			throws SQLException {
+		if (!metadata.containsProperty(Property.PROP_TRACK_NAME)) {
+			return new ArrayList<DuplicateGroup>();
+		}
+		int artistId = metadata.property2Id(Property.PROP_ARTIST_NAME);
+		int titleId = metadata.property2Id(Property.PROP_TRACK_NAME);
+		int albumId = metadata.property2Id(Property.PROP_ALBUM_NAME);
+		String query = QUERY_TRACK_TAGS.replace("{0}", String.valueOf(artistId))
+				.replace("{1}", String.valueOf(titleId))
+				.replace("{2}", String.valueOf(albumId));
+		return findDuplicateTracks(query, true, artistId, titleId, albumId);
+	}
+
+	/**
+	 * Finds duplicates in two passes: The first pass hashes the key of each
+	 * track, the second one groups the tracks whose hashes collide by their
+	 * actual key.
+	 * 
+	 * @param query
+	 *            {@link #QUERY_TRACK_CONTENT_URLS} or {@link #QUERY_TRACK_TAGS}
+	 * @param tags
+	 *            see {@link #duplicateKey(ResultSet, boolean)}
+	 * @param tagIds
+	 *            the IDs of the artist, title and album property, if
+	 *            <code>tags</code>
+	 * @return the groups, sorted by key
+	 * @throws SQLException
+	 *             database-related exceptions
+	 */
+	private List<DuplicateGroup> findDuplicateTracks(final String query,
+			final boolean tags, final int... tagIds) throws SQLException {
+		SongbirdDbConnection connection = acquireConnection();
+		try {
+			/* Pass 1: Keep only a hash of the key of each track */
+			KeyHashes keyHashes;
+			if (tags) {
+				keyHashes = hashTags(connection, tagIds[0], tagIds[1],
+						tagIds[2]);
+			} else {
+				keyHashes = hashContentUrls(connection, query);
+			}
+			int size = keyHashes.size;
+			long[] hashes = keyHashes.hashes;
+			int[] ids = keyHashes.ids;
+
+			long[] sortedHashes = Arrays.copyOf(hashes, size);
+			Arrays.sort(sortedHashes);
+			Set<Long> duplicateHashes = new HashSet<Long>();
+			for (int i = 1; i < size; i++) {
+				if (sortedHashes[i] == sortedHashes[i - 1]) {
+					duplicateHashes.add(sortedHashes[i]);
+				}
+			}
+			List<Object> candidates = new ArrayList<Object>();
+			for (int i = 0; i < size; i++) {
+				if (duplicateHashes.contains(hashes[i])) {
+					candidates.add(ids[i]);
+				}
+			}
+
+			/* Pass 2: Group the candidates by their actual key */
+			Map<String, List<Integer>> groups = new TreeMap<String, List<Integer>>();
+			for (int from = 0; from < candidates.size(); from += MAX_QUERY_PARAMETERS) {
+				List<Object> chunk = candidates.subList(from,
+						Math.min(from + MAX_QUERY_PARAMETERS, candidates.size()));
+				PreparedStatement statement = connection
+						.preparedStatement(query + "and m.media_item_id in ("
+								+ placeholders(chunk.size()) + ") ");
+				ResultSet rs = null;
+				try {
+					for (int i = 0; i < chunk.size(); i++) {
+						statement.setObject(i + 1, chunk.get(i));
+					}
+					rs = connection.executeQuery(statement);
+					while (rs.next()) {
+						String key = duplicateKey(rs, tags);
+						if (key == null) {
+							continue;
+						}
+						List<Integer> group = groups.get(key);
+						if (group == null) {
+							group = new ArrayList<Integer>(2);
+							groups.put(key, group);
+						}
+						group.add(rs.getInt("media_item_id"));
+					}
+				} finally {
+					connection.release(rs);
+					connection.release(statement);
+				}
+			}
+
+			List<DuplicateGroup> duplicates = new ArrayList<DuplicateGroup>();
+			for (Map.Entry<String, List<Integer>> group : groups.entrySet()) {
+				// Groups of one are hash collisions
+				if (group.getValue().size() > 1) {
+					Collections.sort(group.getValue());
+					duplicates.add(new DuplicateGroup(group.getKey().replace(
+							"\u0000", " - "), group.getValue().size(), group
+							.getValue()));
+				}
+			}
+			return duplicates;
+		} finally {
+			releaseConnection(connection);
+		}
+	}
+
+	/**
+	 * Hashes the normalized content URL of each track.
+	 * 
+	 * @param connection
+	 *            the connection to query
+	 * @param query
+	 *            {@link #QUERY_TRACK_CONTENT_URLS}
+	 * @return the hashes by media item ID
+	 * @throws SQLException
+	 *             database-related exceptions
+	 */
+	private static KeyHashes hashContentUrls(
+			final SongbirdDbConnection connection, final String query)
+			throws SQLException {
+		KeyHashes keyHashes = new KeyHashes(1024);
+		ResultSet rs = connection.executeQuery(query);
+		try {
+			while (rs.next()) {
+				keyHashes.add(rs.getInt("media_item_id"), hash(duplicateKey(
+						rs, false)));
+			}
+		} finally {
+			connection.release(rs);
+		}
+		return keyHashes;
+	}
+
+	/**
+	 * Hashes artist, title and album of each media item that has a title that
+	 * is not empty, see {@link #duplicateKey(ResultSet, boolean)}. The
+	 * properties are read in one scan of resource_properties, in any order,
+	 * so the hashes of the properties of an item are summed up. Properties of
+	 * IDs above the greatest media item ID are skipped, as they cannot belong
+	 * to a media item. Orphaned properties within that range are dropped by
+	 * the second pass of {@link #findDuplicateTracks(String, boolean, int...)}.
+	 * 
+	 * @param connection
+	 *            the connection to query
+	 * @param artistId
+	 *            ID of the artist property, -1 if it does not exist
+	 * @param titleId
+	 *            ID of the title property
+	 * @param albumId
+	 *            ID of the album property, -1 if it does not exist
+	 * @return the hashes by media item ID
+	 * @throws SQLException
+	 *             database-related exceptions
+	 */
+	private static KeyHashes hashTags(final SongbirdDbConnection connection,
+			final int artistId, final int titleId, final int albumId)
+			throws SQLException {
+		int maxId = 0;
+		ResultSet rs = connection.executeQuery(QUERY_MAX_MEDIA_ITEM_ID);
+		try {
+			if (rs.next()) {
+				maxId = rs.getInt(1);
+			}
+		} finally {
+			connection.release(rs);
+		}
+
+		long[] hashes = new long[maxId + 1];
+		boolean[] hasTitle = new boolean[maxId + 1];
+		rs = connection.executeQuery(QUERY_TAG_PROPERTIES.replace("{0}",
+				artistId + "," + titleId + "," + albumId));
+		try {
+			while (rs.next()) {
+				int id = rs.getInt(1);
+				if (id < 0 || id > maxId) {
+					// Orphaned properties, not referring to any media item
+					continue;
+				}
+				int propertyId = rs.getInt(2);
+				String tag = normalizeTag(rs.getString(3));
+				if (propertyId == titleId && tag.length() > 0) {
+					hasTitle[id] = true;
+				}
+				// Empty tags are equal to missing ones
+				if (tag.length() > 0) {
+					hashes[id] += hash(propertyId + "=" + tag);
+				}
+			}
+		} finally {
+			connection.release(rs);
+		}
+
+		KeyHashes keyHashes = new KeyHashes(maxId + 1);
+		for (int id = 0; id <= maxId; id++) {
+			if (hasTitle[id]) {
+				keyHashes.add(id, hashes[id]);
+			}
+		}
+		return keyHashes;
+	}
+
+	/** The hashes of the keys of media items, see {@link #hash(String)}. */
+	private static final class KeyHashes {
+		/** Number of hashes. */
+		private int size = 0;
+		/** The hashes. Only the first {@link #size} are used. */
+		private long[] hashes;
+		/** The IDs of the media items, at the same index as the hashes. */
+		private int[] ids;
+
+		/**
+		 * @param capacity
+		 *            initial number of hashes that fit in
+		 */
+		private KeyHashes(final int capacity) {
+			hashes = new long[Math.max(capacity, 1)];
+			ids = new int[hashes.length];
+		}
+
+		/**
+		 * @param id
+		 *            the ID of a media item
+		 * @param hash
+		 *            the hash of its key
+		 */
+		private void add(final int id, final long hash) {
+			if (size == hashes.length) {
+				hashes = Arrays.copyOf(hashes, size * 2);
+				ids = Arrays.copyOf(ids, size * 2);
+			}
+			hashes[size] = hash;
+			ids[size] = id;
+			size++;
+		}
+	}
+
+	/**
+	 * @param rs
+	 *            the current row of {@link #QUERY_TRACK_CONTENT_URLS} or
+	 *            {@link #QUERY_TRACK_TAGS}
+	 * @param tags
+	 *            <code>true</code> reads artist, title and album,
+	 *            <code>false</code> reads the content URL
+	 * @return the normalized key that is equal for duplicates. Artist, title
+	 *         and album are separated by NUL characters. <code>null</code> if the
+	 *         title is empty, as such tracks are not considered duplicates.
+	 * @throws SQLException
+	 *             database-related exceptions
+	 */
+	private static String duplicateKey(final ResultSet rs, final boolean tags)
+			throws SQLException {
+		if (!tags) {
+			return MediaItemIndex.normalizeContentUrl(rs
+					.getString("content_url"));
+		}
+		String title = normalizeTag(rs.getString("title"));
+		if (title.length() == 0) {
+			return null;
+		}
+		return normalizeTag(rs.getString("artist")) + '\u0000' + title
+				+ '\u0000' + normalizeTag(rs.getString("album"));
+	}
+
+	/**
+	 * @param tag
+	 *            value of a property like title or artist
+	 * @return the tag trimmed and in lower case, "" for <code>null</code>
+	 */
+	private static String normalizeTag(final String tag) {
+		if (tag == null) {
+			return "";
+		}
+		return tag.trim().toLowerCase(Locale.ENGLISH);
+	}
+
+	/**
+	 * @param key
+	 *            a string
+	 * @return 64 bit FNV-1a hash of <code>key</code>. Collisions are a lot less
+	 *         likely than with {@link String#hashCode()}.
+	 */
+	private static long hash(final String key) {
+		long hash = 0xcbf29ce484222325L;
+		for (int i = 0; i < key.length(); i++) {
+			hash ^= key.charAt(i);
+			hash *= 0x100000001b3L;
+		}
+		return hash;
+	}
+
+	/**
+	 * @param count
+	 *            number of parameters
+	 * @return <code>count</code> comma-separated '?'
+	 */
+	private static String placeholders(final int count) {
+		StringBuilder placeholders = new StringBuilder(count * 2);
+		for (int i = 0; i < count; i++) {
+			if (i > 0) {
+				placeholders.append(',');
+			}
+			placeholders.append('?');
+		}
+		return placeholders.toString();
+	}
+
+	/**
+	 * @param propertyNames
+	 *            the properties to load, <code>null</code> loads all
+	 * @return a loader that makes items load their properties on first
+	 *         access or <code>null</code> if properties are not loaded lazily
+	 *         (see {@link #setLazyPropertyLoading(boolean)})
+	 */
+	private LazyPropertyLoader lazyLoader(final Set<String> propertyNames) {
+		if (!lazyPropertyLoading) {
+			return null;
+		}
+		String query = QUERY_PROPERTIES_OF_ITEMS;
+		if (propertyNames != null) {
+			query += "and r.property_id in (" + propertyIds(propertyNames)
+					+ ") ";
+		}
+		return new LazyPropertyLoader(this, query);
+	}
+
+	/**
+	 * @param query
+	 *            a query that joins the properties via
+	 *            {@link #JOIN_PROPERTIES}
+	 * @param propertyNames
+	 *            the properties to join, <code>null</code> joins all
+	 * @param lazyLoader
+	 *            see {@link #lazyLoader(Set)}
+	 * @return <code>query</code> without the properties if they are loaded
+	 *         lazily, otherwise restricted to <code>propertyNames</code>
+	 */
+	private String itemQuery(final String query,
+			final Set<String> propertyNames,
+			final LazyPropertyLoader lazyLoader) {
+		if (lazyLoader == null) {
+			return projectQuery(query, propertyNames);
+		}
+		return query.replace(JOIN_PROPERTIES, "").replace(
+				"r.property_id, r.obj", "null property_id, null obj");
+	}
+
+	/**
+	 * Makes the members of playlists load their properties on first access.
+	 * 
+	 * @param lazyLoader
+	 *            see {@link #lazyLoader(Set)}. Nothing is done if
+	 *            <code>null</code>.
+	 * @param playLists
+	 *            the playlists whose members have been loaded without
+	 *            properties
+	 */
+	private static void addMembers(final LazyPropertyLoader lazyLoader,
+			final Collection<SimpleMediaList> playLists) {
+		if (lazyLoader == null) {
+			return;
+		}
+		for (SimpleMediaList list : playLists) {
+			for (MemberMediaItem member : list.getMembers()) {
+				lazyLoader.add(member.getMember());
+			}
+		}
+	}
+
+	/**
+	 * Loads the properties of specific items. Called by
+	 * {@link LazyPropertyLoader}.
+	 * 
+	 * @param query
+	 *            {@link #QUERY_PROPERTIES_OF_ITEMS} or a projection of it
+	 * @param items
+	 *            the items, at most {@value #MAX_QUERY_PARAMETERS} distinct
+	 *            IDs
+	 * @throws SQLException
+	 *             database-related exceptions
+	 */
+	void loadProperties(final String query, final List<MediaItem> items)
+			throws SQLException {
+		SongbirdDbListener currentListener = listener;
+		long start = currentListener != null ? System.nanoTime() : 0;
+		ItemCounter counter = currentListener != null ? new ItemCounter()
+				: null;
+		/* The same track might be contained in a batch several times */
+		Map<Integer, List<MediaItem>> itemsById = new LinkedHashMap<Integer, List<MediaItem>>();
+		for (MediaItem item : items) {
+			List<MediaItem> sameId = itemsById.get(item.getId());
+			if (sameId == null) {
+				sameId = new ArrayList<MediaItem>(1);
+				itemsById.put(item.getId(), sameId);
+			}
+			sameId.add(item);
+		}
+
+		SongbirdDbConnection connection = acquireConnection();
+		PreparedStatement statement = null;
+		ResultSet rs = null;
+		try {
+			statement = connection.preparedStatement(query.replace("{0}",
+					placeholders(itemsById.size())));
+			int i = 1;
+			for (Integer id : itemsById.keySet()) {
+				statement.setInt(i++, id);
+			}
+			rs = connection.executeQuery(statement);
+			while (rs.next()) {
+				if (counter != null) {
+					counter.row();
+				}
+				List<MediaItem> sameId = itemsById.get(rs
+						.getInt("media_item_id"));
+				if (sameId != null) {
+					for (MediaItem item : sameId) {
+						readProperty(item, rs, counter);
+					}
+				}
+			}
+		} finally {
+			connection.release(rs);
+			connection.release(statement);
+			releaseConnection(connection);
+		}
+		for (MediaItem item : items) {
+			item.trimToSize();
+		}
+		if (counter != null) {
+			counter.items(items.size());
+			counter.report(currentListener, "loadProperties",
+					System.nanoTime() - start);
+		}
+	}
+
+	/**
+	 * Restricts the properties that are joined by a query to a specific set.
+	 * 
+	 * @param query
+	 *            a query that joins the properties via
+	 *            {@link #JOIN_PROPERTIES}
+	 * @param propertyNames
+	 *            the properties to join. Properties that are not contained in
+	 *            the database are ignored. <code>null</code> joins all
+	 *            properties.
+	 * @return <code>query</code>, restricted to the properties
+	 */
+	private String projectQuery(final String query,
+			final Set<String> propertyNames) {
+		if (propertyNames == null) {
+			return query;
+		}
+		return query.replace(JOIN_PROPERTIES, JOIN_PROPERTIES
+				+ "and r.property_id in (" + propertyIds(propertyNames) + ") ");
+	}
+
+	/**
+	 * @param propertyNames
+	 *            names of properties. Properties that are not contained in the
+	 *            database are ignored.
+	 * @return the comma-separated IDs of the properties, sorted ascendingly.
+	 *         That is, the same properties always result in the same query
+	 *         text and thus in the same cached prepared statement, regardless
+	 *         of the iteration order of <code>propertyNames</code>.
+	 */
+	private String propertyIds(final Set<String> propertyNames) {
+		SongbirdDbMetadata currentMetadata = metadata;
+		int[] ids = new int[propertyNames.size()];
+		int size = 0;
+		for (String propertyName : propertyNames) {
+			if (currentMetadata.containsProperty(propertyName)) {
+				ids[size++] = currentMetadata.property2Id(propertyName);
+			}
+		}
+		Arrays.sort(ids, 0, size);
+		StringBuilder joined = new StringBuilder();
+		for (int i = 0; i < size; i++) {
+			if (i > 0) {
+				joined.append(',');
+			}
+			joined.append(ids[i]);
+		}
+		return joined.toString();
+	}
+
+	/**
+	 * Executes a query using a prepared statement. Call
+	 * {@link SongbirdDbConnection#release(ResultSet)} when done.
+	 * 
+	 * @param connection
+	 *            the connection to query
+	 * @param query
+	 *            the SQL statement, possibly containing '?' parameters
+	 * @param parameters
+	 *            the values of the parameters, in order
+	 * @return the result of the query
+	 * @throws SQLException
+	 *             database-related exceptions
+	 */
+	private static ResultSet executeQuery(
+			final SongbirdDbConnection connection, final String query,
+			final long... parameters) throws SQLException {
+		PreparedStatement statement = connection.preparedStatement(query);
+		try {
+			for (int i = 0; i < parameters.length; i++) {
+				statement.setLong(i + 1, parameters[i]);
+			}
+			return connection.executeQuery(statement);
+		} catch (SQLException e) {
+			connection.release(statement);
+			throw e;
+		}
+	}
+
+	/**
+	 * Restricts {@link #QUERY_MEDIA_LIST_MEMBERS} to specific playlists.
+	 * 
+	 * @param query
+	 *            {@link #QUERY_MEDIA_LIST_MEMBERS} or a projection of it
+	 * @param playlistIds
+	 *            the IDs of the playlists whose members are to be queried
+	 * @return <code>query</code>, restricted to the playlists
+	 */
+	private static String restrictToPlayLists(final String query,
+			final Set<Integer> playlistIds) {
+		StringBuilder where = new StringBuilder("where l.media_item_id in (");
+		boolean first = true;
+		for (Integer playlistId : playlistIds) {
+			if (!first) {
+				where.append(',');
+			}
+			where.append(playlistId);
+			first = false;
+		}
+		where.append(") order by ");
+		return query.replace("order by ", where);
+	}
+
+	/**
+	 * @return a connection to be used by the current thread only. Call
+	 *         {@link #releaseConnection(SongbirdDbConnection)} when done.
+	 */
+	SongbirdDbConnection acquireConnection() {
+		return activate(connections.acquire());
+	}
+
+	/**
+	 * @return a new connection that is not shared with any thread. Call
+	 *         {@link #releaseConnection(SongbirdDbConnection)} when done,
+	 *         which closes the connection.
+	 */
+	SongbirdDbConnection acquireUnpooledConnection() {
+		return activate(connections.acquireUnpooled());
+	}
+
+	/**
+	 * Prepares a connection for being handed out by this instance.
+	 * 
+	 * @param connection
+	 *            a connection obtained from {@link #connections}
+	 * @return <code>connection</code>
+	 */
+	private SongbirdDbConnection activate(
+			final SongbirdDbConnection connection) {
+		connection.setListener(listener);
+		synchronized (activeConnections) {
+			ConnectionUsage usage = activeConnections.get(connection);
+			if (usage == null) {
+				usage = new ConnectionUsage(Thread.currentThread());
+				activeConnections.put(connection, usage);
+			}
+			/*
+			 * With connections kept open, the same connection is acquired
+			 * again by nested calls, e.g. when lazily loading properties
+			 * while reading a cursor.
+			 */
+			usage.acquired++;
+		}
+		return connection;
+	}
+
+	/**
+	 * Hands back a connection obtained by {@link #acquireConnection()}.
+	 * 
+	 * @param connection
+	 *            the connection to hand back
+	 */
+	void releaseConnection(final SongbirdDbConnection connection) {
+		synchronized (activeConnections) {
+			ConnectionUsage usage = activeConnections.get(connection);
+			if (usage != null && --usage.acquired == 0) {
+				activeConnections.remove(connection);
+			}
+		}
+		connections.release(connection);
+	}
+
+	/**
+	 * Unlike {@link #cancelQueries(Thread)}, this does not affect the queries
+	 * of <code>thread</code>.
+	 * 
+	 * @param thread
+	 *            the thread to check
+	 * @return <code>true</code> if the thread is currently using a connection
+	 *         of this instance, i.e. executing a query or reading a cursor
+	 */
+	public boolean isUsingConnection(final Thread thread) {
+		synchronized (activeConnections) {
+			for (ConnectionUsage usage : activeConnections.values()) {
+				if (usage.thread == thread) {
+					return true;
+				}
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Aborts the queries that are currently executed by a specific thread on
+	 * behalf of this instance, e.g. in order to cancel a long-running
+	 * {@link #getAllTracks()} from another thread. The aborted call throws an
+	 * {@link SQLException}. Queries started afterwards are not affected.
+	 * 
+	 * Note that the members loaded in parallel by
+	 * {@link #getPlayLists(boolean, boolean, Set, ExecutorService, int)} are
+	 * queried by the threads of the executor, not by the calling thread.
+	 * 
+	 * @param thread
+	 *            the thread whose queries are aborted
+	 * @return <code>true</code> if the thread was using a connection
+	 */
+	public boolean cancelQueries(final Thread thread) {
+		boolean cancelled = false;
+		synchronized (activeConnections) {
+			for (Map.Entry<SongbirdDbConnection, ConnectionUsage> active : activeConnections
+					.entrySet()) {
+				if (active.getValue().thread == thread) {
+					active.getKey().cancel();
+					cancelled = true;
+				}
+			}
+		}
+		return cancelled;
+	}
+
+	/**
+	 * Reads the members of playlists from a {@link ResultSet} and appends them
+	 * to the corresponding {@link SimpleMediaList}s. Rows belonging to
+	 * playlists that are not contained in <code>playLists</code> are skipped
+	 * without being decoded.
+	 * 
+	 * @param rs
+	 *            database to read from, ordered so that the rows of each
+	 *            member are adjacent (see {@link #QUERY_MEDIA_LIST_MEMBERS})
+	 * @param playLists
+	 *            the playlists to attach the members to, by the ID of the
+	 *            playlist
+	 * @param counter
+	 *            counts what is read, <code>null</code> if there is no
+	 *            listener
+	 * @throws SQLException
+	 *             database-related exceptions
+	 */
+	private void readMembers(final ResultSet rs,
+			final Map<Integer, SimpleMediaList> playLists,
+			final ItemCounter counter) throws SQLException {
+		boolean moreData = rs.next();
+		while (moreData) {
+			int listId = rs.getInt("list_id");
+			SimpleMediaList list = playLists.get(listId);
+			if (list == null) {
+				// Skip this one
+				if (counter != null) {
+					counter.row();
+				}
+				moreData = rs.next();
+				continue;
+			}
+
+			MemberMediaItem memberWrapper = new MemberMediaItem();
+			// ordinal looks like "168.225.0.-1.0"
+			String ordinal = rs.getString("ordinal");
+			memberWrapper.setOridnal(ordinal);
+
+			// read the result set
+			MediaItem member = new MediaItem();
+			readColumns(rs, rs.getInt("media_item_id"), member, true, counter);
+			moreData = readMemberProperties(member, rs, listId, ordinal,
+					counter);
+
+			memberWrapper.setMember(member);
+			list.getMembers().add(memberWrapper);
+		}
+	}
+
+	/**
+	 * Reads all properties of one playlist member and appends them to
+	 * <code>member</code>. In contrast to
+	 * {@link #readProperties(MediaItem, ResultSet, String)} the rows are not
+	 * only identified by the member's id but also by playlist and ordinal.
+	 * Otherwise, a track that is contained in the playlist several times in a
+	 * row would be merged into one member.
+	 * 
+	 * @param member
+	 *            item to attach the properties to
+	 * @param rs
+	 *            database to read from
+	 * @param listId
+	 *            id of the playlist the member belongs to
+	 * @param ordinal
+	 *            ordinal of the member within the playlist
+	 * @param counter
+	 *            counts what is read, <code>null</code> if there is no
+	 *            listener
+	 * @return <code>true</code> if there is more data in <code>rs</code>
+	 * @throws SQLException
+	 *             database-related exceptions
+	 */
+	private boolean readMemberProperties(final MediaItem member,
+			final ResultSet rs, final int listId, final String ordinal,
+			final ItemCounter counter) throws SQLException {
+		int memberId = member.getId();
+		boolean moreData;
+		do {
+			if (counter != null) {
+				counter.row();
+			}
+			readProperty(member, rs, counter);
+			moreData = rs.next();
+		} while (moreData && rs.getInt("list_id") == listId
+				&& rs.getInt("media_item_id") == memberId
+				&& ordinal.equals(rs.getString("ordinal")));
+		member.trimToSize();
+		return moreData;
+	}
+
+	/**
+	 * Reads all attributes of a {@link MediaItem} from a {@link ResultSet}.
+	 * 
+	 * @param rs
+	 *            database to read from
+	 * @param currentId
+	 * @param mediaItem
+	 *            item to attach the properties to
+	 * @param counter
+	 *            counts what is read, <code>null</code> if there is no
+	 *            listener
+	 * @return the next id returned by the cursor
+	 * @throws SQLException
+	 */
+	int readMediaItem(ResultSet rs, int currentId, MediaItem mediaItem,
+			boolean setListType, ItemCounter counter) throws SQLException {
+		readColumns(rs, currentId, mediaItem, setListType, counter);
+		currentId = readProperties(mediaItem, rs, "media_item_id", counter);
+		return currentId;
+	}
+
+	/**
+	 * Reads the columns of media_items (everything but the properties) of a
+	 * {@link MediaItem} from the current row of a {@link ResultSet}.
+	 * 
+	 * @param rs
+	 *            database to read from
+	 * @param id
+	 *            the id of the item
+	 * @param mediaItem
+	 *            item to set the columns to
+	 * @param setListType
+	 *            <code>true</code> reads the media_list_type_id column
+	 * @param counter
+	 *            counts what is read, <code>null</code> if there is no
+	 *            listener
+	 * @throws SQLException
+	 *             database-related exceptions
+	 */
+	private void readColumns(final ResultSet rs, final int id,
+			final MediaItem mediaItem, final boolean setListType,
+			final ItemCounter counter) throws SQLException {
+		mediaItem.setId(id);
+		mediaItem.setMetadata(metadata);
+		mediaItem.setDateCreated(new Date(rs.getLong("created")));
+		mediaItem.setDateUpdated(new Date(rs.getLong("updated")));
+		if (setListType) {
+			mediaItem.setListType(rs.getInt("media_list_type_id"));
+		}
+		String contentUrl = rs.getString("content_url");
+		mediaItem.setContentUrl(contentUrl);
+		if (counter != null) {
+			counter.item(contentUrl);
+		}
+	}
+
+	/**
+	 * Reads all properties for an id column (integer) and appends them to
+	 * <code>mediaItem</code>. Note: This will only work well if <code>rs</code>
+	 * is ordered by <code>idColumn</code>.
+	 * 
+	 * @param mediaItem
+	 *            item to attach the properties to
+	 * @param rs
+	 *            database to read from
+	 * @param idColumn
+	 *            name of the ID column (needed for comparing)
+	 * @param counter
+	 *            counts what is read, <code>null</code> if there is no
+	 *            listener
+	 * @return the next id or -1 if there is no more data in <code>rs</code>
+	 * @throws SQLException
+	 *             database-related exceptions
+	 */
+	private int readProperties(final MediaItem mediaItem, final ResultSet rs,
+			final String idColumn, final ItemCounter counter)
+			throws SQLException {
 		boolean moreData = false;
 		int currentId = mediaItem.getId();
-		Map<Integer, String> props = mediaItem.getProperties();
 		/* Set all props to this media item */
 		do {
-			props.put(rs.getInt("property_id"), rs.getString("obj"));
+			if (counter != null) {
+				counter.row();
+			}
+			readProperty(mediaItem, rs, counter);
 			moreData = rs.next();
 			if (!moreData) {
 				break;
 			}
 			currentId = rs.getInt(idColumn);
 		} while (currentId == mediaItem.getId());
+		mediaItem.trimToSize();
 
 		if (!moreData) {
 			return -1;
@@ -440,4 +2726,71 @@ public class SongbirdDb {
 		return currentId;
 	}
 
+	/**
+	 * Reads the property of the current row of <code>rs</code> and sets it to
+	 * <code>mediaItem</code>. Rows without property (items that don't have any
+	 * properties at all) are ignored.
+	 * 
+	 * @param mediaItem
+	 *            item to attach the property to
+	 * @param rs
+	 *            database to read from
+	 * @param counter
+	 *            counts the property, <code>null</code> if there is no
+	 *            listener
+	 * @throws SQLException
+	 *             database-related exceptions
+	 */
+	private void readProperty(final MediaItem mediaItem, final ResultSet rs,
+			final ItemCounter counter) throws SQLException {
+		int propertyId = rs.getInt("property_id");
+		if (rs.wasNull()) {
+			return;
+		}
+		String value = rs.getString("obj");
+		if (counter != null) {
+			counter.property(value);
+		}
+		PropertyValueDictionary dictionary = valueDictionary;
+		if (dictionary != null) {
+			value = dictionary.canonicalize(metadata, propertyId, value);
+		}
+		mediaItem.setProperty(propertyId, value);
+	}
+
+	/** Metadata of a database file, along with the file's modification time. */
+	private static final class CachedMetadata {
+		/** Modification time of the file when the metadata was read. */
+		private final long lastModified;
+		/** The metadata read from the file. */
+		private final SongbirdDbMetadata metadata;
+
+		/**
+		 * @param lastModified
+		 *            modification time of the file when the metadata was read
+		 * @param metadata
+		 *            the metadata read from the file
+		 */
+		private CachedMetadata(final long lastModified,
+				final SongbirdDbMetadata metadata) {
+			this.lastModified = lastModified;
+			this.metadata = metadata;
+		}
+	}
+
+	/** A connection that is in use, see <code>activeConnections</code>. */
+	private static final class ConnectionUsage {
+		/** The thread that acquired the connection. */
+		private final Thread thread;
+		/** How often the connection has been acquired and not released yet. */
+		private int acquired = 0;
+
+		/**
+		 * @param thread
+		 *            the thread that acquired the connection
+		 */
+		private ConnectionUsage(final Thread thread) {
+			this.thread = thread;
+		}
+	}
 }
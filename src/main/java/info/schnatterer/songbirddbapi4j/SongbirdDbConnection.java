@@ -20,6 +20,14 @@ import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -29,7 +37,15 @@ import org.sqlite.SQLiteConfig;
  * Abstracts from the Songbird database database file. Make sure to call
  * {@link #close()} after using it.
  * 
- * <b>This class is not thread safe.</b> Use a new instance in each thread.
+ * The connection is opened lazily and keeps a cache of prepared statements,
+ * keyed by their SQL. A statement obtained via {@link #executeQuery(String)} or
+ * {@link #preparedStatement(String)} is exclusively used by the caller until
+ * it is handed back via {@link #release(ResultSet)} or
+ * {@link #release(PreparedStatement)}. {@link #close()} closes all statements,
+ * including the ones that have not been released.
+ * 
+ * <b>This class is not thread safe.</b> Use a new instance in each thread. The
+ * only exception is {@link #cancel()}, which can be called from any thread.
  * 
  * @author schnatterer
  * 
@@ -41,7 +57,23 @@ public final class SongbirdDbConnection {
 	 *            the dbUrl to set
 	 */
 	public SongbirdDbConnection(final String pathToDb) {
+		this(pathToDb, true);
+	}
+
+	/**
+	 * @param pathToDb
+	 *            the dbUrl to set
+	 * @param sharedCache
+	 *            <code>true</code> shares the page cache with the other
+	 *            connections to the same database within this process. Note
+	 *            that SQLite serializes the access to a shared cache, so
+	 *            connections that are supposed to read in parallel should not
+	 *            use it.
+	 */
+	public SongbirdDbConnection(final String pathToDb,
+			final boolean sharedCache) {
 		this.dbUrl = JDBC_PREFIX + pathToDb;
+		this.sharedCache = sharedCache;
 	}
 
 	/** SLF4J-Logger. */
@@ -60,18 +92,167 @@ public final class SongbirdDbConnection {
 	/** Actual database URL to connect to. */
 	private String dbUrl = null;
 
+	/** Use SQLite's shared cache mode? */
+	private final boolean sharedCache;
+
+	/** Has the JDBC driver been loaded already? */
+	private static volatile boolean driverLoaded = false;
+
 	/** Connection to the database. */
 	private Connection connection = null;
 
-	/** Closes the database connection. */
+	/** Maximum number of unused prepared statements kept in the cache. */
+	private static final int STATEMENT_CACHE_SIZE = 32;
+
+	/**
+	 * Prepared statements that are currently not in use, by their SQL. The
+	 * least recently used ones are closed when exceeding
+	 * {@link #STATEMENT_CACHE_SIZE}.
+	 */
+	private final Map<String, PreparedStatement> statementCache = new LinkedHashMap<String, PreparedStatement>(
+			16, 0.75f, true) {
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected boolean removeEldestEntry(
+				final Map.Entry<String, PreparedStatement> eldest) {
+			if (size() > STATEMENT_CACHE_SIZE) {
+				close(eldest.getValue());
+				return true;
+			}
+			return false;
+		}
+	};
+
+	/** Prepared statements that are currently in use, mapped to their SQL. */
+	private final Map<PreparedStatement, String> leasedStatements = new IdentityHashMap<PreparedStatement, String>();
+
+	/**
+	 * Statements that have been executed and not been released yet. Might be
+	 * read by other threads, see {@link #cancel()}.
+	 */
+	private final Set<PreparedStatement> executingStatements = Collections
+			.newSetFromMap(new ConcurrentHashMap<PreparedStatement, Boolean>());
+
+	/** Is informed about opening the connection and executing queries. */
+	private SongbirdDbListener listener = null;
+
+	/**
+	 * @param newListener
+	 *            is informed about opening the connection and executing
+	 *            queries. <code>null</code> disables measuring.
+	 */
+	public void setListener(final SongbirdDbListener newListener) {
+		this.listener = newListener;
+	}
+
+	/** Closes all statements and the database connection. */
 	public void close() {
 		try {
+			List<Statement> statements = new ArrayList<Statement>(
+					statementCache.values());
+			statements.addAll(leasedStatements.keySet());
+			statementCache.clear();
+			leasedStatements.clear();
+			executingStatements.clear();
+			for (Statement statement : statements) {
+				close(statement);
+			}
 			close(connection);
 		} finally {
 			connection = null;
 		}
 	}
 
+	/**
+	 * Aborts the statements that are currently executed or whose results are
+	 * currently read, so the thread using this connection gets an
+	 * {@link SQLException}. Unlike all other methods, this one can be called
+	 * from any thread.
+	 */
+	public void cancel() {
+		for (PreparedStatement statement : executingStatements) {
+			try {
+				statement.cancel();
+			} catch (SQLException e) {
+				// E.g. the statement has just been closed
+				logger.debug("Unable to cancel statement", e);
+			}
+		}
+	}
+
+	/**
+	 * Closes a result set and hands its statement back to this connection, so
+	 * it can be reused by the next query with the same SQL.
+	 * 
+	 * @param rs
+	 *            a result set returned by {@link #executeQuery(String)} or
+	 *            created from a statement returned by
+	 *            {@link #preparedStatement(String)}. Might be
+	 *            <code>null</code>.
+	 */
+	public void release(final ResultSet rs) {
+		if (rs == null) {
+			return;
+		}
+		Statement statement = null;
+		try {
+			statement = rs.getStatement();
+		} catch (SQLException e) {
+			logger.error(e.getMessage(), e);
+		}
+		close(rs);
+		if (statement instanceof PreparedStatement) {
+			release((PreparedStatement) statement);
+		}
+	}
+
+	/**
+	 * Hands a statement back to this connection, so it can be reused by the
+	 * next query with the same SQL. The statement must not be used afterwards.
+	 * 
+	 * @param statement
+	 *            a statement returned by {@link #preparedStatement(String)}.
+	 *            Statements that have been created otherwise are ignored.
+	 */
+	public void release(final PreparedStatement statement) {
+		executingStatements.remove(statement);
+		String query = leasedStatements.remove(statement);
+		if (query == null) {
+			// Not ours or released already
+			return;
+		}
+		if (connection == null || statementCache.containsKey(query)) {
+			close(statement);
+			return;
+		}
+		try {
+			statement.clearParameters();
+			statementCache.put(query, statement);
+		} catch (SQLException e) {
+			logger.error(e.getMessage(), e);
+			close(statement);
+		}
+	}
+
+	/** Closes a statement, logging any exception. */
+	private void close(Statement statement) {
+		try {
+			statement.close();
+		} catch (SQLException e) {
+			logger.error(e.getMessage(), e);
+		}
+	}
+
+	/** Closes a result set, logging any exception. */
+	private void close(ResultSet rs) {
+		try {
+			rs.close();
+		} catch (SQLException e) {
+			logger.error(e.getMessage(), e);
+		}
+	}
+
 	/** Closes the database connection. */
 	private void close(Connection actualConnection) {
 		try {
@@ -101,22 +282,20 @@ public final class SongbirdDbConnection {
 				throw new SQLException("Missing URL to songbird db");
 			}
 
-			// Load the sqlite-JDBC driver using the current class loader
-			try {
-				Class.forName(JDBC_DRIVER);
-				// Class.forName("org.sqlite.Driver");
-
-			} catch (ClassNotFoundException e) {
-				throw new SQLException("SQLlite driver not found on classpath",
-						e);
-			}
+			loadDriver();
 			SQLiteConfig config = new SQLiteConfig();
 			config.setReadOnly(true);
-			config.setSharedCache(true);
+			config.setSharedCache(sharedCache);
 
 			// create a database connection
 			logger.info("Opening connection to " + dbUrl);
+			SongbirdDbListener currentListener = listener;
+			long start = currentListener != null ? System.nanoTime() : 0;
 			connection = config.createConnection(dbUrl);
+			if (currentListener != null) {
+				currentListener.connectionOpened(dbUrl, System.nanoTime()
+						- start);
+			}
 			// logger.debug(String.format("running in %s mode",
 			// org.sqlite.SQLiteJDBCLoader.isNativeMode() ? "native"
 			// : "pure-java"));
@@ -129,23 +308,29 @@ public final class SongbirdDbConnection {
 	}
 
 	/**
-	 * Create a statement using the {@link #connection}.
+	 * Loads the sqlite-JDBC driver using the current class loader. Only done
+	 * once per class loader.
 	 * 
-	 * @return a new statement object.
 	 * @throws SQLException
-	 *             if a database access error occurs or this method is called on
-	 *             a closed connection
+	 *             if the driver is not on the classpath
 	 */
-	private Statement getStatment() throws SQLException {
-		Connection actualConnection = getConnection();
-		Statement statement;
-		statement = actualConnection.createStatement();
-		statement.setQueryTimeout(STATEMENT_TIMEOUT);
-		return statement;
+	private static void loadDriver() throws SQLException {
+		if (driverLoaded) {
+			return;
+		}
+		try {
+			Class.forName(JDBC_DRIVER);
+			// Class.forName("org.sqlite.Driver");
+			driverLoaded = true;
+		} catch (ClassNotFoundException e) {
+			throw new SQLException("SQLlite driver not found on classpath", e);
+		}
 	}
 
 	/**
-	 * Executes an SQL query as a new Statement.
+	 * Executes an SQL query using a cached {@link PreparedStatement}. Call
+	 * {@link #release(ResultSet)} after reading the result, in order to free
+	 * the statement for reuse.
 	 * 
 	 * @param query
 	 *            an SQL statement to be sent to the database, typically a
@@ -161,19 +346,54 @@ public final class SongbirdDbConnection {
 	 */
 	public ResultSet executeQuery(final String query) throws SQLException {
 		// logger.debug("Query to SQLite: " + query);
-		return getStatment().executeQuery(query);
+		PreparedStatement statement = preparedStatement(query);
+		try {
+			return executeQuery(statement);
+		} catch (SQLException e) {
+			release(statement);
+			throw e;
+		}
 	}
 
 	/**
-	 * Creates a PreparedStatement object for sending parameterized SQL
-	 * statements to the database.
+	 * Executes a statement returned by {@link #preparedStatement(String)}
+	 * whose parameters have been set. Use this instead of
+	 * {@link PreparedStatement#executeQuery()}, in order to inform the
+	 * listener (see {@link #setListener(SongbirdDbListener)}).
+	 * 
+	 * @param statement
+	 *            the statement to execute
+	 * @return the result of the statement
+	 * @throws SQLException
+	 *             database-related exceptions
+	 */
+	public ResultSet executeQuery(final PreparedStatement statement)
+			throws SQLException {
+		executingStatements.add(statement);
+		SongbirdDbListener currentListener = listener;
+		if (currentListener == null) {
+			return statement.executeQuery();
+		}
+		long start = System.nanoTime();
+		ResultSet rs = statement.executeQuery();
+		currentListener.queryExecuted(leasedStatements.get(statement),
+				System.nanoTime() - start);
+		return rs;
+	}
+
+	/**
+	 * Returns a PreparedStatement object for sending parameterized SQL
+	 * statements to the database. The statement is taken from the cache if
+	 * the same SQL has been prepared before and is not in use. Call
+	 * {@link #release(PreparedStatement)} or {@link #release(ResultSet)} when
+	 * done.
 	 * 
 	 * @param query
 	 *            an SQL statement that may contain one or more '?' IN parameter
 	 *            placeholders
 	 * 
-	 * @return new default PreparedStatement object containing the pre-compiled
-	 *         SQL statement
+	 * @return PreparedStatement object containing the pre-compiled SQL
+	 *         statement, exclusively for use by the caller
 	 * 
 	 * @throws SQLException
 	 *             if a database access error occurs or this method is called on
@@ -181,7 +401,13 @@ public final class SongbirdDbConnection {
 	 */
 	public PreparedStatement preparedStatement(final String query)
 			throws SQLException {
-		return getConnection().prepareStatement(query);
+		PreparedStatement statement = statementCache.remove(query);
+		if (statement == null) {
+			statement = getConnection().prepareStatement(query);
+			statement.setQueryTimeout(STATEMENT_TIMEOUT);
+		}
+		leasedStatements.put(statement, query);
+		return statement;
 	}
 
 	/**
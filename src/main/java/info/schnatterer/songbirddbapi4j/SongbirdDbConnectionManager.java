@@ -0,0 +1,194 @@
+/**
+ * Copyright (C) 2015 Johannes Schnatterer
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package info.schnatterer.songbirddbapi4j;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * Hands out {@link SongbirdDbConnection}s to a single database file.
+ * 
+ * If the connections are kept open, each thread gets its own long-lived
+ * connection (including its cache of prepared statements), which is reused by
+ * all subsequent calls from the same thread until {@link #close()} is called.
+ * The connections of threads that have ended are closed the next time a
+ * connection is opened, so short-lived threads don't pile up connections.
+ * Otherwise, a new connection is opened for each call and closed when it is
+ * released. Connections returned by {@link #acquireUnpooled()} are never kept
+ * open.
+ * 
+ * @author schnatterer
+ * 
+ */
+final class SongbirdDbConnectionManager {
+
+	/** The path to the songbird database file. */
+	private final String pathToDb;
+
+	/** Keep connections open after release? */
+	private final boolean keepOpen;
+
+	/**
+	 * The connection that is confined to the current thread. Replaced by
+	 * {@link #close()}, which drops the connections of all threads at once.
+	 */
+	private volatile ThreadLocal<SongbirdDbConnection> threadConnection = new ThreadLocal<SongbirdDbConnection>();
+
+	/**
+	 * All connections that are kept open, along with the thread they belong
+	 * to. Guarded by itself.
+	 */
+	private final Map<SongbirdDbConnection, Thread> connections = new HashMap<SongbirdDbConnection, Thread>();
+
+	/**
+	 * @param pathToDb
+	 *            the path to the songbird database file
+	 * @param keepOpen
+	 *            <code>true</code> keeps one connection per thread open until
+	 *            {@link #close()} is called
+	 */
+	SongbirdDbConnectionManager(final String pathToDb, final boolean keepOpen) {
+		this.pathToDb = pathToDb;
+		this.keepOpen = keepOpen;
+	}
+
+	/**
+	 * Returns a connection that is to be used by the current thread only.
+	 * Call {@link #release(SongbirdDbConnection)} when done.
+	 * 
+	 * @return a connection to the songbird database
+	 */
+	SongbirdDbConnection acquire() {
+		if (!keepOpen) {
+			return new SongbirdDbConnection(pathToDb);
+		}
+		ThreadLocal<SongbirdDbConnection> currentThreadConnection = threadConnection;
+		SongbirdDbConnection connection = currentThreadConnection.get();
+		if (connection == null) {
+			connection = new SongbirdDbConnection(pathToDb);
+			currentThreadConnection.set(connection);
+			synchronized (connections) {
+				closeConnectionsOfEndedThreads();
+				connections.put(connection, Thread.currentThread());
+			}
+		}
+		return connection;
+	}
+
+	/**
+	 * Closes the connections of threads that have ended. They cannot be in use
+	 * anymore, as a connection is confined to its thread. Must be called while
+	 * holding the lock of {@link #connections}.
+	 */
+	private void closeConnectionsOfEndedThreads() {
+		Iterator<Map.Entry<SongbirdDbConnection, Thread>> iterator = connections
+				.entrySet().iterator();
+		while (iterator.hasNext()) {
+			Map.Entry<SongbirdDbConnection, Thread> entry = iterator.next();
+			if (!entry.getValue().isAlive()) {
+				entry.getKey().close();
+				iterator.remove();
+			}
+		}
+	}
+
+	/**
+	 * Returns a new connection that is not shared with any thread, so it can
+	 * be handed from one thread to another, e.g. by a cursor that is read by
+	 * different threads one after the other. It does not use the shared
+	 * cache, as SQLite serializes the access to it. Call
+	 * {@link #release(SongbirdDbConnection)} when done, which closes the
+	 * connection.
+	 * 
+	 * @return a connection to the songbird database
+	 */
+	SongbirdDbConnection acquireUnpooled() {
+		return new SongbirdDbConnection(pathToDb, false);
+	}
+
+	/**
+	 * Hands back a connection that has been obtained by {@link #acquire()} or
+	 * {@link #acquireUnpooled()}. Closes the connection, unless it is kept
+	 * open.
+	 * 
+	 * @param connection
+	 *            the connection to release
+	 */
+	void release(final SongbirdDbConnection connection) {
+		if (keepOpen) {
+			synchronized (connections) {
+				if (connections.containsKey(connection)) {
+					return;
+				}
+			}
+		}
+		connection.close();
+	}
+
+	/**
+	 * @return the connection that is kept open for the current thread or
+	 *         <code>null</code> if there is none
+	 */
+	SongbirdDbConnection current() {
+		return threadConnection.get();
+	}
+
+	/**
+	 * Closes the connection that is kept open for the current thread, if any.
+	 * The next call of {@link #acquire()} by the current thread opens a new
+	 * one.
+	 * 
+	 * @return <code>true</code> if a connection has been closed
+	 */
+	boolean closeCurrent() {
+		ThreadLocal<SongbirdDbConnection> currentThreadConnection = threadConnection;
+		SongbirdDbConnection connection = currentThreadConnection.get();
+		if (connection == null) {
+			return false;
+		}
+		currentThreadConnection.remove();
+		synchronized (connections) {
+			connections.remove(connection);
+		}
+		connection.close();
+		return true;
+	}
+
+	/**
+	 * @return the number of connections that are kept open
+	 */
+	int size() {
+		synchronized (connections) {
+			return connections.size();
+		}
+	}
+
+	/**
+	 * Closes all connections that are kept open. Must not be called while
+	 * other threads are still using their connections. Afterwards, each
+	 * thread gets a new connection.
+	 */
+	void close() {
+		synchronized (connections) {
+			threadConnection = new ThreadLocal<SongbirdDbConnection>();
+			for (SongbirdDbConnection connection : connections.keySet()) {
+				connection.close();
+			}
+			connections.clear();
+		}
+	}
+}
@@ -0,0 +1,93 @@
+/**
+ * Copyright (C) 2015 Johannes Schnatterer
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package info.schnatterer.songbirddbapi4j;
+
+/**
+ * Receives timings and counts of the work done by {@link SongbirdDb} and
+ * {@link SongbirdDbConnection}, e.g. for monitoring load performance. Set via
+ * {@link SongbirdDb#setListener(SongbirdDbListener)}. {@link SongbirdDbMetrics}
+ * is a ready-made implementation that aggregates the calls.
+ * 
+ * Implementations must be thread safe, as the methods are called from each
+ * thread that queries the database. They should also return quickly, as they
+ * are called synchronously during loading.
+ * 
+ * Without a listener, nothing is measured at all.
+ * 
+ * @author schnatterer
+ * 
+ */
+public interface SongbirdDbListener {
+
+	/**
+	 * Called after a connection to the database has been opened.
+	 * 
+	 * @param dbUrl
+	 *            the JDBC URL of the database
+	 * @param nanos
+	 *            time it took to open the connection
+	 */
+	void connectionOpened(String dbUrl, long nanos);
+
+	/**
+	 * Called after an SQL query has been executed, that is, after SQLite has
+	 * produced the first row. Reading the remaining rows is contained in
+	 * {@link #itemsRead(String, long, int, long, long, long)}.
+	 * 
+	 * @param query
+	 *            the SQL of the query
+	 * @param nanos
+	 *            time it took to execute the query
+	 */
+	void queryExecuted(String query, long nanos);
+
+	/**
+	 * Called after a public operation of {@link SongbirdDb} has read its
+	 * result.
+	 * 
+	 * @param operation
+	 *            the name of the operation, i.e. the method of
+	 *            {@link SongbirdDb}, e.g. <code>getAllTracks</code>
+	 * @param nanos
+	 *            time it took to complete the operation, including executing
+	 *            the queries and sorting
+	 * @param items
+	 *            number of {@link info.schnatterer.songbirddbapi4j.domain.MediaItem}s
+	 *            produced, including playlists and their members
+	 * @param rows
+	 *            number of rows read from the database, including rows that
+	 *            have been skipped, e.g. members of playlists that are not
+	 *            requested
+	 * @param properties
+	 *            number of properties read
+	 * @param stringBytes
+	 *            number of bytes of the strings read (property values and
+	 *            content URLs), as stored by SQLite, i.e. in UTF-8
+	 */
+	void itemsRead(String operation, long nanos, int items, long rows,
+			long properties, long stringBytes);
+
+	/**
+	 * Called after the members of a playlist have been sorted by their
+	 * ordinal.
+	 * 
+	 * @param members
+	 *            number of members sorted
+	 * @param nanos
+	 *            time it took to sort the members
+	 */
+	void membersSorted(int members, long nanos);
+}
@@ -0,0 +1,317 @@
+/**
+ * Copyright (C) 2015 Johannes Schnatterer
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package info.schnatterer.songbirddbapi4j;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A {@link SongbirdDbListener} that aggregates all calls: Latency histograms
+ * for opening connections, executing queries and sorting members, and
+ * latency histograms plus counts for each operation of {@link SongbirdDb}.
+ * 
+ * Thread safe. Example:
+ * 
+ * <pre>
+ * SongbirdDbMetrics metrics = new SongbirdDbMetrics();
+ * songbirdDb.setListener(metrics);
+ * songbirdDb.getPlayLists(true, true);
+ * System.out.println(metrics);
+ * </pre>
+ * 
+ * @author schnatterer
+ * 
+ */
+public class SongbirdDbMetrics implements SongbirdDbListener {
+
+	private final Histogram connections = new Histogram();
+	private final Histogram queries = new Histogram();
+	private final Histogram sorts = new Histogram();
+	private final AtomicLong sortedMembers = new AtomicLong();
+	private final ConcurrentMap<String, Operation> operations = new ConcurrentHashMap<String, Operation>();
+
+	@Override
+	public void connectionOpened(final String dbUrl, final long nanos) {
+		connections.record(nanos);
+	}
+
+	@Override
+	public void queryExecuted(final String query, final long nanos) {
+		queries.record(nanos);
+	}
+
+	@Override
+	public void itemsRead(final String operation, final long nanos,
+			final int items, final long rows, final long properties,
+			final long stringBytes) {
+		Operation metrics = operations.get(operation);
+		if (metrics == null) {
+			Operation newMetrics = new Operation();
+			metrics = operations.putIfAbsent(operation, newMetrics);
+			if (metrics == null) {
+				metrics = newMetrics;
+			}
+		}
+		metrics.latency.record(nanos);
+		metrics.items.addAndGet(items);
+		metrics.rows.addAndGet(rows);
+		metrics.properties.addAndGet(properties);
+		metrics.stringBytes.addAndGet(stringBytes);
+	}
+
+	@Override
+	public void membersSorted(final int members, final long nanos) {
+		sorts.record(nanos);
+		sortedMembers.addAndGet(members);
+	}
+
+	/**
+	 * @return the time it took to open connections
+	 */
+	public Histogram getConnections() {
+		return connections;
+	}
+
+	/**
+	 * @return the time it took to execute queries
+	 */
+	public Histogram getQueries() {
+		return queries;
+	}
+
+	/**
+	 * @return the time it took to sort the members of a playlist
+	 */
+	public Histogram getSorts() {
+		return sorts;
+	}
+
+	/**
+	 * @return the number of playlist members that have been sorted
+	 */
+	public long getSortedMembers() {
+		return sortedMembers.get();
+	}
+
+	/**
+	 * @return the metrics of each operation that has been called, by the name
+	 *         of the operation (see
+	 *         {@link SongbirdDbListener#itemsRead(String, long, int, long, long, long)}
+	 *         ), sorted by name
+	 */
+	public Map<String, Operation> getOperations() {
+		return Collections.unmodifiableMap(new TreeMap<String, Operation>(
+				operations));
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder string = new StringBuilder();
+		string.append("connections: ").append(connections);
+		string.append("\nqueries: ").append(queries);
+		string.append("\nsorts: ").append(sorts).append(", members=")
+				.append(sortedMembers.get());
+		for (Map.Entry<String, Operation> operation : getOperations()
+				.entrySet()) {
+			string.append('\n').append(operation.getKey()).append(": ")
+					.append(operation.getValue());
+		}
+		return string.toString();
+	}
+
+	/**
+	 * The metrics of one operation of {@link SongbirdDb}.
+	 */
+	public static final class Operation {
+		private final Histogram latency = new Histogram();
+		private final AtomicLong items = new AtomicLong();
+		private final AtomicLong rows = new AtomicLong();
+		private final AtomicLong properties = new AtomicLong();
+		private final AtomicLong stringBytes = new AtomicLong();
+
+		/** Only to be instantiated by {@link SongbirdDbMetrics}. */
+		private Operation() {
+		}
+
+		/**
+		 * @return the time it took to complete the operation
+		 */
+		public Histogram getLatency() {
+			return latency;
+		}
+
+		/**
+		 * @return the total number of items produced
+		 */
+		public long getItems() {
+			return items.get();
+		}
+
+		/**
+		 * @return the total number of rows read
+		 */
+		public long getRows() {
+			return rows.get();
+		}
+
+		/**
+		 * @return the total number of properties read
+		 */
+		public long getProperties() {
+			return properties.get();
+		}
+
+		/**
+		 * @return the average number of properties per item
+		 */
+		public double getPropertiesPerItem() {
+			long itemCount = items.get();
+			return itemCount == 0 ? 0 : (double) properties.get() / itemCount;
+		}
+
+		/**
+		 * @return the total number of bytes of the strings read, in UTF-8
+		 */
+		public long getStringBytes() {
+			return stringBytes.get();
+		}
+
+		@Override
+		public String toString() {
+			return latency + ", items=" + items + ", rows=" + rows
+					+ ", properties=" + properties + ", stringBytes="
+					+ stringBytes;
+		}
+	}
+
+	/**
+	 * A histogram of latencies with buckets of exponentially growing size:
+	 * Bucket <code>i</code> counts latencies from <code>2^i</code> up to
+	 * <code>2^(i+1) - 1</code> nanoseconds. Percentiles are therefore
+	 * accurate up to a factor of 2.
+	 */
+	public static final class Histogram {
+		private static final int BUCKETS = 64;
+
+		private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+		private final AtomicLong count = new AtomicLong();
+		private final AtomicLong totalNanos = new AtomicLong();
+		private final AtomicLong maxNanos = new AtomicLong();
+
+		/** Only to be instantiated by {@link SongbirdDbMetrics}. */
+		private Histogram() {
+		}
+
+		/**
+		 * @param nanos
+		 *            a latency to add
+		 */
+		void record(final long nanos) {
+			long value = Math.max(nanos, 0);
+			buckets.incrementAndGet(bucket(value));
+			count.incrementAndGet();
+			totalNanos.addAndGet(value);
+			long max = maxNanos.get();
+			while (value > max && !maxNanos.compareAndSet(max, value)) {
+				max = maxNanos.get();
+			}
+		}
+
+		/** @return the index of the bucket that counts <code>nanos</code> */
+		private static int bucket(final long nanos) {
+			return nanos == 0 ? 0 : BUCKETS - 1 - Long.numberOfLeadingZeros(nanos);
+		}
+
+		/**
+		 * @return the number of latencies recorded
+		 */
+		public long getCount() {
+			return count.get();
+		}
+
+		/**
+		 * @return the sum of all latencies in nanoseconds
+		 */
+		public long getTotalNanos() {
+			return totalNanos.get();
+		}
+
+		/**
+		 * @return the maximum latency in nanoseconds
+		 */
+		public long getMaxNanos() {
+			return maxNanos.get();
+		}
+
+		/**
+		 * @return the average latency in nanoseconds
+		 */
+		public long getMeanNanos() {
+			long n = count.get();
+			return n == 0 ? 0 : totalNanos.get() / n;
+		}
+
+		/**
+		 * @param percentile
+		 *            between 0 and 100, e.g. 99
+		 * @return an upper bound of the latency in nanoseconds below which
+		 *         <code>percentile</code> percent of the latencies fall, at
+		 *         most twice the actual value. 0 if nothing has been recorded.
+		 */
+		public long getPercentileNanos(final double percentile) {
+			long n = count.get();
+			if (n == 0) {
+				return 0;
+			}
+			long rank = (long) Math.ceil(n * percentile / 100);
+			long seen = 0;
+			for (int i = 0; i < BUCKETS; i++) {
+				seen += buckets.get(i);
+				if (seen >= rank) {
+					long upper = i >= BUCKETS - 2 ? Long.MAX_VALUE
+							: (1L << (i + 1)) - 1;
+					return Math.min(upper, maxNanos.get());
+				}
+			}
+			return maxNanos.get();
+		}
+
+		/**
+		 * @return the number of latencies in each bucket, see
+		 *         {@link Histogram}
+		 */
+		public long[] getBuckets() {
+			long[] copy = new long[BUCKETS];
+			for (int i = 0; i < BUCKETS; i++) {
+				copy[i] = buckets.get(i);
+			}
+			return copy;
+		}
+
+		@Override
+		public String toString() {
+			return "count=" + getCount() + ", mean=" + getMeanNanos() / 1000
+					+ "us, p50=" + getPercentileNanos(50) / 1000 + "us, p99="
+					+ getPercentileNanos(99) / 1000 + "us, max="
+					+ getMaxNanos() / 1000 + "us";
+		}
+	}
+}
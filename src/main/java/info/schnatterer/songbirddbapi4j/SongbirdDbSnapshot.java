@@ -0,0 +1,653 @@
+/**
+ * Copyright (C) 2015 Johannes Schnatterer
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package info.schnatterer.songbirddbapi4j;
+
+import info.schnatterer.songbirddbapi4j.domain.MediaItem;
+import info.schnatterer.songbirddbapi4j.domain.MediaListTypes;
+import info.schnatterer.songbirddbapi4j.domain.MemberMediaItem;
+import info.schnatterer.songbirddbapi4j.domain.Property;
+import info.schnatterer.songbirddbapi4j.domain.SimpleMediaList;
+import info.schnatterer.songbirddbapi4j.domain.SongbirdDbMetadata;
+
+import java.io.BufferedOutputStream;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A binary snapshot of the tracks and playlists loaded from a songbird
+ * database, including the {@link Property} and {@link MediaListTypes}
+ * mappings. Reading a snapshot is a lot faster than querying the database
+ * again, e.g. when restarting an application.
+ * 
+ * A snapshot is bound to the state of the database file it was loaded from
+ * (see {@link DbFileState}). It is considered outdated as soon as the size,
+ * the modification time or the checksum of the header of the database file
+ * change. SQLite increments a change counter within the header on each write
+ * transaction. In WAL mode, transactions are written to the write-ahead log
+ * and reach the database file only when checkpointed, so the size and
+ * modification time of the write-ahead log (<code>-wal</code>) and of the
+ * rollback journal (<code>-journal</code>) are compared as well.
+ * 
+ * {@link MediaItem}s are stored once per ID. That is, after reading, tracks
+ * and playlist members with the same ID are the same instance.
+ * 
+ * @author schnatterer
+ * 
+ */
+public final class SongbirdDbSnapshot {
+
+	/** Identifies snapshot files. */
+	private static final int MAGIC = 0x53424442;
+	/** Version of the file format. */
+	private static final int VERSION = 2;
+	/** Size of the SQLite database header, which is checksummed. */
+	private static final int DB_HEADER_SIZE = 100;
+	/** Size of the header of a snapshot file: magic, version, db state. */
+	private static final int HEADER_SIZE = 64;
+	/** SLF4J-Logger. */
+	private static final Logger logger = LoggerFactory
+			.getLogger(SongbirdDbSnapshot.class);
+	/** Marks <code>null</code> references to strings. */
+	private static final int NULL = -1;
+	/** Marks <code>null</code> dates. */
+	private static final long NULL_DATE = Long.MIN_VALUE;
+	/** Encoding of the strings within the snapshot. */
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	/** The tracks. */
+	private final List<MediaItem> tracks;
+	/** The playlists. */
+	private final List<SimpleMediaList> playLists;
+	/** The mappings of the database the snapshot was created from. */
+	private final SongbirdDbMetadata metadata;
+
+	/**
+	 * @param tracks
+	 *            the tracks
+	 * @param playLists
+	 *            the playlists
+	 * @param metadata
+	 *            the mappings of the database
+	 */
+	private SongbirdDbSnapshot(final List<MediaItem> tracks,
+			final List<SimpleMediaList> playLists,
+			final SongbirdDbMetadata metadata) {
+		this.tracks = tracks;
+		this.playLists = playLists;
+		this.metadata = metadata;
+	}
+
+	/**
+	 * @return the IDs of properties and list types of the database the
+	 *         snapshot was created from. All {@link MediaItem}s of the
+	 *         snapshot refer to it.
+	 */
+	public SongbirdDbMetadata getMetadata() {
+		return metadata;
+	}
+
+	/**
+	 * @return the tracks contained in the snapshot
+	 */
+	public List<MediaItem> getTracks() {
+		return tracks;
+	}
+
+	/**
+	 * @return the playlists contained in the snapshot
+	 */
+	public List<SimpleMediaList> getPlayLists() {
+		return playLists;
+	}
+
+	/**
+	 * Loads all tracks and playlists of a database and writes them to a
+	 * snapshot file. The state of the database file is determined before
+	 * loading, so a change during loading makes the snapshot outdated right
+	 * away.
+	 * 
+	 * @param snapshotFile
+	 *            the file to write
+	 * @param db
+	 *            the database to load the tracks and playlists from
+	 * @param ignoreInternalPlaylists
+	 *            see {@link SongbirdDb#getPlayLists(boolean, boolean)}
+	 * @param skipDynamicLists
+	 *            see {@link SongbirdDb#getPlayLists(boolean, boolean)}
+	 * @return the snapshot that has been written
+	 * @throws SQLException
+	 *             database-related exceptions
+	 * @throws IOException
+	 *             if reading the database file or writing the snapshot fails
+	 */
+	public static SongbirdDbSnapshot create(final File snapshotFile,
+			final SongbirdDb db, final boolean ignoreInternalPlaylists,
+			final boolean skipDynamicLists) throws SQLException, IOException {
+		DbFileState dbState = DbFileState.of(new File(db.getPathToDb()));
+		List<MediaItem> tracks = db.getAllTracks();
+		List<SimpleMediaList> playLists = db.getPlayLists(
+				ignoreInternalPlaylists, skipDynamicLists);
+		write(snapshotFile, dbState, db.getMetadata(), tracks, playLists);
+		return new SongbirdDbSnapshot(tracks, playLists, db.getMetadata());
+	}
+
+	/**
+	 * Writes a snapshot file. The file is written to a temporary file first
+	 * and then renamed, so readers never see a partially written snapshot.
+	 * 
+	 * @param snapshotFile
+	 *            the file to write
+	 * @param dbState
+	 *            the state of the songbird database file, determined
+	 *            <b>before</b> loading the items via {@link DbFileState#of(File)}
+	 * @param metadata
+	 *            the mappings of the database, see
+	 *            {@link SongbirdDb#getMetadata()}
+	 * @param tracks
+	 *            the tracks, e.g. loaded via {@link SongbirdDb#getAllTracks()}
+	 * @param playLists
+	 *            the playlists, e.g. loaded via
+	 *            {@link SongbirdDb#getPlayLists(boolean, boolean)}
+	 * @throws IOException
+	 *             if writing the snapshot fails
+	 */
+	public static void write(final File snapshotFile,
+			final DbFileState dbState, final SongbirdDbMetadata metadata,
+			final List<MediaItem> tracks, final List<SimpleMediaList> playLists)
+			throws IOException {
+		/* Collect all distinct items and strings first */
+		Map<Integer, MediaItem> items = new LinkedHashMap<Integer, MediaItem>();
+		for (MediaItem track : tracks) {
+			addItem(items, track);
+		}
+		for (SimpleMediaList list : playLists) {
+			addItem(items, list.getList());
+			for (MemberMediaItem member : list.getMembers()) {
+				addItem(items, member.getMember());
+			}
+		}
+		Map<Integer, String> id2Property = metadata.getId2PropertyMap();
+		Map<Integer, String> id2ListType = metadata.getId2ListTypeMap();
+
+		Map<String, Integer> strings = new LinkedHashMap<String, Integer>();
+		addStrings(strings, id2Property);
+		addStrings(strings, id2ListType);
+		for (MediaItem item : items.values()) {
+			addString(strings, item.getContentUrl());
+			addStrings(strings, item.getProperties());
+		}
+		for (SimpleMediaList list : playLists) {
+			for (MemberMediaItem member : list.getMembers()) {
+				addString(strings, member.getOridnal());
+			}
+		}
+
+		File tmpFile = new File(snapshotFile.getPath() + ".tmp");
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+				new FileOutputStream(tmpFile)));
+		try {
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			dbState.write(out);
+
+			out.writeInt(strings.size());
+			for (String string : strings.keySet()) {
+				byte[] bytes = string.getBytes(UTF8);
+				out.writeInt(bytes.length);
+				out.write(bytes);
+			}
+
+			writeMap(out, strings, id2Property);
+			writeMap(out, strings, id2ListType);
+
+			Map<Integer, Integer> itemIndices = new HashMap<Integer, Integer>();
+			out.writeInt(items.size());
+			for (MediaItem item : items.values()) {
+				itemIndices.put(item.getId(), itemIndices.size());
+				out.writeInt(item.getId());
+				out.writeInt(index(strings, item.getContentUrl()));
+				out.writeInt(item.getListTypeId());
+				out.writeLong(toLong(item.getDateCreated()));
+				out.writeLong(toLong(item.getDateUpdated()));
+				writeMap(out, strings, item.getProperties());
+			}
+
+			out.writeInt(tracks.size());
+			for (MediaItem track : tracks) {
+				out.writeInt(itemIndices.get(track.getId()));
+			}
+
+			out.writeInt(playLists.size());
+			for (SimpleMediaList list : playLists) {
+				out.writeInt(itemIndices.get(list.getList().getId()));
+				out.writeInt(list.getMembers().size());
+				for (MemberMediaItem member : list.getMembers()) {
+					out.writeInt(index(strings, member.getOridnal()));
+					out.writeInt(itemIndices.get(member.getMember().getId()));
+				}
+			}
+		} finally {
+			out.close();
+		}
+
+		if (snapshotFile.exists() && !snapshotFile.delete()) {
+			throw new IOException("Unable to replace snapshot " + snapshotFile);
+		}
+		if (!tmpFile.renameTo(snapshotFile)) {
+			throw new IOException("Unable to rename " + tmpFile + " to "
+					+ snapshotFile);
+		}
+	}
+
+	/**
+	 * Checks if a snapshot exists and was created from the current state of a
+	 * database file.
+	 * 
+	 * @param snapshotFile
+	 *            the snapshot file
+	 * @param dbFile
+	 *            the songbird database file
+	 * @return <code>true</code> if the snapshot can be read via
+	 *         {@link #read(File, File)}
+	 * @throws IOException
+	 *             if reading one of the files fails
+	 */
+	public static boolean isUpToDate(final File snapshotFile, final File dbFile)
+			throws IOException {
+		if (!snapshotFile.isFile() || !dbFile.isFile()) {
+			return false;
+		}
+		RandomAccessFile in = new RandomAccessFile(snapshotFile, "r");
+		try {
+			if (in.length() < HEADER_SIZE) {
+				return false;
+			}
+			return in.readInt() == MAGIC && in.readInt() == VERSION
+					&& DbFileState.read(in).equals(DbFileState.of(dbFile));
+		} finally {
+			in.close();
+		}
+	}
+
+	/**
+	 * Reads a snapshot file via a memory mapped file, if it is up to date (see
+	 * {@link #isUpToDate(File, File)}). The items refer to the mappings of the
+	 * snapshot, see {@link #getMetadata()}. The global mappings of
+	 * {@link Property} and {@link MediaListTypes} are not touched.
+	 * 
+	 * The file is unmapped before returning, so it can be replaced afterwards
+	 * (which is not possible for mapped files on Windows).
+	 * 
+	 * @param snapshotFile
+	 *            the snapshot file
+	 * @param dbFile
+	 *            the songbird database file the snapshot was created from
+	 * @return the snapshot or <code>null</code> if the snapshot does not exist
+	 *         or is outdated.
+	 * @throws IOException
+	 *             if reading one of the files fails
+	 */
+	public static SongbirdDbSnapshot read(final File snapshotFile,
+			final File dbFile) throws IOException {
+		if (!isUpToDate(snapshotFile, dbFile)) {
+			return null;
+		}
+
+		MappedByteBuffer in;
+		FileInputStream stream = new FileInputStream(snapshotFile);
+		try {
+			FileChannel channel = stream.getChannel();
+			in = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+		} finally {
+			stream.close();
+		}
+		try {
+			return read(in);
+		} finally {
+			// All strings have been copied, nothing refers to the buffer
+			unmap(in);
+		}
+	}
+
+	/**
+	 * @param in
+	 *            the content of a snapshot file
+	 * @return the snapshot
+	 */
+	private static SongbirdDbSnapshot read(final ByteBuffer in) {
+		// Skip header, already validated
+		in.position(HEADER_SIZE);
+
+		String[] strings = new String[in.getInt()];
+		for (int i = 0; i < strings.length; i++) {
+			byte[] bytes = new byte[in.getInt()];
+			in.get(bytes);
+			strings[i] = new String(bytes, UTF8);
+		}
+
+		Map<Integer, String> id2Property = readMap(in, strings);
+		Map<Integer, String> id2ListType = readMap(in, strings);
+		SongbirdDbMetadata metadata = new SongbirdDbMetadata(id2Property,
+				id2ListType);
+
+		MediaItem[] items = new MediaItem[in.getInt()];
+		for (int i = 0; i < items.length; i++) {
+			MediaItem item = new MediaItem();
+			item.setMetadata(metadata);
+			item.setId(in.getInt());
+			item.setContentUrl(string(strings, in.getInt()));
+			item.setListType(in.getInt());
+			item.setDateCreated(toDate(in.getLong()));
+			item.setDateUpdated(toDate(in.getLong()));
+			int properties = in.getInt();
+			for (int j = 0; j < properties; j++) {
+				item.setProperty(in.getInt(), string(strings, in.getInt()));
+			}
+			item.trimToSize();
+			items[i] = item;
+		}
+
+		int trackCount = in.getInt();
+		List<MediaItem> tracks = new ArrayList<MediaItem>(trackCount);
+		for (int i = 0; i < trackCount; i++) {
+			tracks.add(items[in.getInt()]);
+		}
+
+		int playListCount = in.getInt();
+		List<SimpleMediaList> playLists = new ArrayList<SimpleMediaList>(
+				playListCount);
+		for (int i = 0; i < playListCount; i++) {
+			SimpleMediaList list = new SimpleMediaList();
+			list.setList(items[in.getInt()]);
+			int members = in.getInt();
+			for (int j = 0; j < members; j++) {
+				MemberMediaItem member = new MemberMediaItem();
+				member.setOridnal(string(strings, in.getInt()));
+				member.setMember(items[in.getInt()]);
+				list.getMembers().add(member);
+			}
+			playLists.add(list);
+		}
+
+		return new SongbirdDbSnapshot(tracks, playLists, metadata);
+	}
+
+	/**
+	 * Releases the memory mapping of a buffer right away instead of waiting
+	 * for the garbage collector. There is no public API for this, so the
+	 * internal cleaner of the JDK is invoked via reflection. If that fails,
+	 * the buffer is left to the garbage collector.
+	 * 
+	 * <b>The buffer must not be accessed afterwards.</b>
+	 * 
+	 * @param buffer
+	 *            the buffer to unmap
+	 */
+	private static void unmap(final MappedByteBuffer buffer) {
+		try {
+			try {
+				// Java 9+
+				Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+				Method invokeCleaner = unsafeClass.getMethod("invokeCleaner",
+						ByteBuffer.class);
+				Field theUnsafe = unsafeClass.getDeclaredField("theUnsafe");
+				theUnsafe.setAccessible(true);
+				invokeCleaner.invoke(theUnsafe.get(null), buffer);
+			} catch (NoSuchMethodException e) {
+				// Java 8 and older
+				Method cleanerMethod = buffer.getClass().getMethod("cleaner");
+				cleanerMethod.setAccessible(true);
+				Object cleaner = cleanerMethod.invoke(buffer);
+				if (cleaner != null) {
+					cleaner.getClass().getMethod("clean").invoke(cleaner);
+				}
+			}
+		} catch (Exception e) {
+			logger.debug("Unable to unmap snapshot, left to the GC", e);
+		}
+	}
+
+	/** Adds an item, unless there already is one with the same ID. */
+	private static void addItem(final Map<Integer, MediaItem> items,
+			final MediaItem item) {
+		if (!items.containsKey(item.getId())) {
+			items.put(item.getId(), item);
+		}
+	}
+
+	/** Adds all values of <code>map</code> to the string table. */
+	private static void addStrings(final Map<String, Integer> strings,
+			final Map<Integer, String> map) {
+		for (String value : map.values()) {
+			addString(strings, value);
+		}
+	}
+
+	/** Adds a string to the string table, unless it is already contained. */
+	private static void addString(final Map<String, Integer> strings,
+			final String string) {
+		if (string != null && !strings.containsKey(string)) {
+			strings.put(string, strings.size());
+		}
+	}
+
+	/** @return the index of a string within the string table. */
+	private static int index(final Map<String, Integer> strings,
+			final String string) {
+		if (string == null) {
+			return NULL;
+		}
+		return strings.get(string);
+	}
+
+	/** @return the string at an index of the string table. */
+	private static String string(final String[] strings, final int index) {
+		if (index == NULL) {
+			return null;
+		}
+		return strings[index];
+	}
+
+	/** Writes a mapping from IDs to strings. */
+	private static void writeMap(final DataOutputStream out,
+			final Map<String, Integer> strings, final Map<Integer, String> map)
+			throws IOException {
+		out.writeInt(map.size());
+		for (Map.Entry<Integer, String> entry : map.entrySet()) {
+			out.writeInt(entry.getKey());
+			out.writeInt(index(strings, entry.getValue()));
+		}
+	}
+
+	/** Reads a mapping from IDs to strings. */
+	private static Map<Integer, String> readMap(final ByteBuffer in,
+			final String[] strings) {
+		int size = in.getInt();
+		Map<Integer, String> map = new HashMap<Integer, String>();
+		for (int i = 0; i < size; i++) {
+			map.put(in.getInt(), string(strings, in.getInt()));
+		}
+		return map;
+	}
+
+	/** @return the milliseconds of a date or {@link #NULL_DATE} */
+	private static long toLong(final Date date) {
+		if (date == null) {
+			return NULL_DATE;
+		}
+		return date.getTime();
+	}
+
+	/** @return the date or <code>null</code> for {@link #NULL_DATE} */
+	private static Date toDate(final long date) {
+		if (date == NULL_DATE) {
+			return null;
+		}
+		return new Date(date);
+	}
+
+	/**
+	 * The state of a songbird database file a snapshot is bound to: Its size,
+	 * modification time and the checksum of its SQLite header.
+	 */
+	public static final class DbFileState {
+		/** Size of the file. */
+		private final long length;
+		/** Modification time of the file. */
+		private final long lastModified;
+		/** CRC32 of the SQLite header of the file. */
+		private final long headerChecksum;
+		/** Size of the write-ahead log, 0 if none. */
+		private final long walLength;
+		/** Modification time of the write-ahead log, 0 if none. */
+		private final long walLastModified;
+		/** Size of the rollback journal, 0 if none. */
+		private final long journalLength;
+		/** Modification time of the rollback journal, 0 if none. */
+		private final long journalLastModified;
+
+		/**
+		 * @param length
+		 *            size of the file
+		 * @param lastModified
+		 *            modification time of the file
+		 * @param headerChecksum
+		 *            CRC32 of the SQLite header of the file
+		 * @param walLength
+		 *            size of the write-ahead log, 0 if none
+		 * @param walLastModified
+		 *            modification time of the write-ahead log, 0 if none
+		 * @param journalLength
+		 *            size of the rollback journal, 0 if none
+		 * @param journalLastModified
+		 *            modification time of the rollback journal, 0 if none
+		 */
+		private DbFileState(final long length, final long lastModified,
+				final long headerChecksum, final long walLength,
+				final long walLastModified, final long journalLength,
+				final long journalLastModified) {
+			this.length = length;
+			this.lastModified = lastModified;
+			this.headerChecksum = headerChecksum;
+			this.walLength = walLength;
+			this.walLastModified = walLastModified;
+			this.journalLength = journalLength;
+			this.journalLastModified = journalLastModified;
+		}
+
+		/**
+		 * Determines the current state of a database file, including its
+		 * write-ahead log and rollback journal, if they exist. Call this
+		 * <b>before</b> loading the items to write to a snapshot.
+		 * 
+		 * @param dbFile
+		 *            the songbird database file
+		 * @return the current state of <code>dbFile</code>
+		 * @throws IOException
+		 *             if reading the file fails
+		 */
+		public static DbFileState of(final File dbFile) throws IOException {
+			RandomAccessFile in = new RandomAccessFile(dbFile, "r");
+			try {
+				long length = in.length();
+				long lastModified = dbFile.lastModified();
+				byte[] header = new byte[(int) Math.min(DB_HEADER_SIZE,
+						length)];
+				in.readFully(header);
+				CRC32 crc = new CRC32();
+				crc.update(header);
+				// length() and lastModified() return 0 for missing files
+				File wal = new File(dbFile.getPath() + "-wal");
+				File journal = new File(dbFile.getPath() + "-journal");
+				return new DbFileState(length, lastModified, crc.getValue(),
+						wal.length(), wal.lastModified(), journal.length(),
+						journal.lastModified());
+			} finally {
+				in.close();
+			}
+		}
+
+		/** Reads a state written by {@link #write(DataOutput)}. */
+		private static DbFileState read(final DataInput in) throws IOException {
+			return new DbFileState(in.readLong(), in.readLong(), in.readLong(),
+					in.readLong(), in.readLong(), in.readLong(), in.readLong());
+		}
+
+		/** Writes this state to a snapshot file. */
+		private void write(final DataOutput out) throws IOException {
+			out.writeLong(length);
+			out.writeLong(lastModified);
+			out.writeLong(headerChecksum);
+			out.writeLong(walLength);
+			out.writeLong(walLastModified);
+			out.writeLong(journalLength);
+			out.writeLong(journalLastModified);
+		}
+
+		@Override
+		public boolean equals(final Object obj) {
+			if (!(obj instanceof DbFileState)) {
+				return false;
+			}
+			DbFileState other = (DbFileState) obj;
+			return length == other.length
+					&& lastModified == other.lastModified
+					&& headerChecksum == other.headerChecksum
+					&& walLength == other.walLength
+					&& walLastModified == other.walLastModified
+					&& journalLength == other.journalLength
+					&& journalLastModified == other.journalLastModified;
+		}
+
+		@Override
+		public int hashCode() {
+			return (int) (length ^ lastModified ^ headerChecksum ^ walLength
+					^ walLastModified ^ journalLength ^ journalLastModified);
+		}
+
+		@Override
+		public String toString() {
+			return "DbFileState [length=" + length + ", lastModified="
+					+ lastModified + ", headerChecksum=" + headerChecksum
+					+ ", walLength=" + walLength + ", walLastModified="
+					+ walLastModified + ", journalLength=" + journalLength
+					+ ", journalLastModified=" + journalLastModified + "]";
+		}
+	}
+}
@@ -0,0 +1,358 @@
+/**
+ * Copyright (C) 2015 Johannes Schnatterer
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package info.schnatterer.songbirddbapi4j;
+
+import info.schnatterer.songbirddbapi4j.domain.LibrarySummary;
+import info.schnatterer.songbirddbapi4j.domain.Property;
+import info.schnatterer.songbirddbapi4j.domain.PropertyStatistics;
+import info.schnatterer.songbirddbapi4j.domain.PropertyValueStatistics;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+/**
+ * Provides aggregate queries over the properties of the tracks, e.g. for
+ * reports like "most played artists". The aggregation is done by the
+ * database, so in contrast to {@link SongbirdDb#getAllTracks()} no
+ * {@link info.schnatterer.songbirddbapi4j.domain.MediaItem}s are created and
+ * only the (small) results are read.
+ * 
+ * Each query scans the values of one property only. Note that without an
+ * index on <code>resource_properties.property_id</code> this means scanning
+ * the whole table.
+ * 
+ * @author schnatterer
+ * 
+ */
+public class SongbirdDbStatistics {
+
+	/** Gets the number of media items that have is_list = 0. */
+	public static final String QUERY_TRACK_COUNT = "select count(*) from media_items where is_list = 0";
+
+	/**
+	 * Gets the number of distinct values of a property (realized as
+	 * {@link PreparedStatement}, the placeholder is the ID of the property).
+	 */
+	public static final String QUERY_DISTINCT_VALUE_COUNT = "select count(distinct obj) from resource_properties where property_id = ?";
+
+	/**
+	 * Aggregates the values of a numeric property (realized as
+	 * {@link PreparedStatement}, the placeholder is the ID of the property):
+	 * count, count of values that are not 0, sum, min and max.
+	 */
+	public static final String QUERY_NUMERIC_STATISTICS = "select count(*), "
+			+ "coalesce(sum(cast(obj as integer) <> 0), 0), coalesce(sum(cast(obj as integer)), 0), "
+			+ "min(cast(obj as integer)), max(cast(obj as integer)) "
+			+ "from resource_properties where property_id = ?";
+
+	/**
+	 * Gets the values of a property that occur most often, including their
+	 * number of tracks and the sum of the play counts (realized as
+	 * {@link PreparedStatement}, the placeholders are the ID of the play count
+	 * property, the ID of the property and the maximum number of values).
+	 */
+	public static final String QUERY_TOP_VALUES_BY_TRACK_COUNT = "select v.obj, count(*) tracks, "
+			+ "coalesce(sum(cast(p.obj as integer)), 0) plays from resource_properties v "
+			+ "left join resource_properties p on p.media_item_id = v.media_item_id and p.property_id = ? "
+			+ "where v.property_id = ? group by v.obj order by tracks desc, plays desc, v.obj limit ?";
+
+	/**
+	 * Gets the values of a property whose tracks have been played most often.
+	 * Same result and placeholders as {@link #QUERY_TOP_VALUES_BY_TRACK_COUNT}.
+	 */
+	public static final String QUERY_TOP_VALUES_BY_PLAY_COUNT = QUERY_TOP_VALUES_BY_TRACK_COUNT
+			.replace("order by tracks desc, plays desc, v.obj",
+					"order by plays desc, tracks desc, v.obj");
+
+	/**
+	 * Counts the values of a numeric property per bucket (realized as
+	 * {@link PreparedStatement}, the placeholders are the width of the buckets
+	 * (three times) and the ID of the property). The buckets are identified
+	 * by their lower bound. SQLite's division truncates towards 0, so
+	 * negative values are rounded down explicitly, e.g. -5 belongs to the
+	 * bucket -10 for a width of 10, not to the bucket 0.
+	 */
+	public static final String QUERY_HISTOGRAM = "select (case when v < 0 then (v + 1) / ? - 1 else v / ? end) * ? bucket, count(*) "
+			+ "from (select cast(obj as integer) v from resource_properties where property_id = ?) group by bucket";
+
+	/** Executes the queries. */
+	private final SongbirdDb db;
+
+	/**
+	 * @param db
+	 *            the database to query, which also provides the IDs of the
+	 *            properties
+	 */
+	public SongbirdDbStatistics(final SongbirdDb db) {
+		this.db = db;
+	}
+
+	/**
+	 * Gets the key figures of the library. Runs one query per figure.
+	 * 
+	 * @return the key figures
+	 * @throws SQLException
+	 *             database-related exceptions
+	 */
+	public LibrarySummary getSummary() throws SQLException {
+		return new LibrarySummary(getTrackCount(),
+				getDistinctValueCount(Property.PROP_ARTIST_NAME),
+				getDistinctValueCount(Property.PROP_ALBUM_NAME),
+				getStatistics(Property.PROP_PLAY_COUNT),
+				getStatistics(Property.PROP_RATING),
+				getStatistics(Property.PROP_LAST_PLAY_TIME));
+	}
+
+	/**
+	 * @return the number of tracks, i.e. media items that are not playlists
+	 * @throws SQLException
+	 *             database-related exceptions
+	 */
+	public int getTrackCount() throws SQLException {
+		SongbirdDbConnection connection = db.acquireConnection();
+		ResultSet rs = null;
+		try {
+			rs = connection.executeQuery(QUERY_TRACK_COUNT);
+			return rs.next() ? rs.getInt(1) : 0;
+		} finally {
+			connection.release(rs);
+			db.releaseConnection(connection);
+		}
+	}
+
+	/**
+	 * @param property
+	 *            the property, see {@link Property} for available properties
+	 * @return the number of distinct values of <code>property</code>, e.g. the
+	 *         number of artists for {@link Property#PROP_ARTIST_NAME}
+	 * @throws SQLException
+	 *             database-related exceptions
+	 */
+	public int getDistinctValueCount(final String property)
+			throws SQLException {
+		SongbirdDbConnection connection = db.acquireConnection();
+		PreparedStatement statement = null;
+		ResultSet rs = null;
+		try {
+			statement = connection
+					.preparedStatement(QUERY_DISTINCT_VALUE_COUNT);
+			statement.setInt(1, propertyId(property));
+			rs = connection.executeQuery(statement);
+			return rs.next() ? rs.getInt(1) : 0;
+		} finally {
+			connection.release(rs);
+			connection.release(statement);
+			db.releaseConnection(connection);
+		}
+	}
+
+	/**
+	 * Aggregates the values of a numeric property, e.g. the sum of all
+	 * {@link Property#PROP_PLAY_COUNT}s.
+	 * 
+	 * @param property
+	 *            the numeric property, see {@link Property} for available
+	 *            properties. Values that are not numbers count as 0.
+	 * @return count, sum, min and max of the values. Min and max are
+	 *         <code>null</code> if no media item has the property.
+	 * @throws SQLException
+	 *             database-related exceptions
+	 */
+	public PropertyStatistics getStatistics(final String property)
+			throws SQLException {
+		SongbirdDbConnection connection = db.acquireConnection();
+		PreparedStatement statement = null;
+		ResultSet rs = null;
+		try {
+			statement = connection.preparedStatement(QUERY_NUMERIC_STATISTICS);
+			statement.setInt(1, propertyId(property));
+			rs = connection.executeQuery(statement);
+			if (!rs.next()) {
+				return new PropertyStatistics(property, 0, 0, 0, null, null);
+			}
+			// min() and max() are null without values
+			return new PropertyStatistics(property, rs.getInt(1),
+					rs.getInt(2), rs.getLong(3), getLong(rs, 4),
+					getLong(rs, 5));
+		} finally {
+			connection.release(rs);
+			connection.release(statement);
+			db.releaseConnection(connection);
+		}
+	}
+
+	/**
+	 * Gets the artists whose tracks have been played most often.
+	 * 
+	 * @param limit
+	 *            the maximum number of artists to return
+	 * @return the artists, ordered by their play count descendingly
+	 * @throws SQLException
+	 *             database-related exceptions
+	 */
+	public List<PropertyValueStatistics> getTopArtists(final int limit)
+			throws SQLException {
+		return getTopValues(Property.PROP_ARTIST_NAME, true, limit);
+	}
+
+	/**
+	 * Gets the albums whose tracks have been played most often.
+	 * 
+	 * @param limit
+	 *            the maximum number of albums to return
+	 * @return the albums, ordered by their play count descendingly
+	 * @throws SQLException
+	 *             database-related exceptions
+	 */
+	public List<PropertyValueStatistics> getTopAlbums(final int limit)
+			throws SQLException {
+		return getTopValues(Property.PROP_ALBUM_NAME, true, limit);
+	}
+
+	/**
+	 * Groups the tracks by the value of a property and gets the values
+	 * having the most tracks or the most plays.
+	 * 
+	 * @param property
+	 *            the property to group by, see {@link Property} for available
+	 *            properties
+	 * @param byPlayCount
+	 *            <code>true</code> orders by the sum of the
+	 *            {@link Property#PROP_PLAY_COUNT}s of the tracks,
+	 *            <code>false</code> by the number of tracks
+	 * @param limit
+	 *            the maximum number of values to return
+	 * @return the values, ordered descendingly
+	 * @throws SQLException
+	 *             database-related exceptions
+	 */
+	public List<PropertyValueStatistics> getTopValues(final String property,
+			final boolean byPlayCount, final int limit) throws SQLException {
+		SongbirdDbConnection connection = db.acquireConnection();
+		PreparedStatement statement = null;
+		ResultSet rs = null;
+		try {
+			statement = connection
+					.preparedStatement(byPlayCount ? QUERY_TOP_VALUES_BY_PLAY_COUNT
+							: QUERY_TOP_VALUES_BY_TRACK_COUNT);
+			statement.setInt(1, propertyId(Property.PROP_PLAY_COUNT));
+			statement.setInt(2, propertyId(property));
+			statement.setInt(3, limit);
+			rs = connection.executeQuery(statement);
+			List<PropertyValueStatistics> values = new ArrayList<PropertyValueStatistics>();
+			while (rs.next()) {
+				values.add(new PropertyValueStatistics(rs.getString(1), rs
+						.getInt(2), rs.getLong(3)));
+			}
+			return values;
+		} finally {
+			connection.release(rs);
+			connection.release(statement);
+			db.releaseConnection(connection);
+		}
+	}
+
+	/**
+	 * Gets the number of tracks per {@link Property#PROP_RATING}.
+	 * 
+	 * @return the ratings (0 to 100) mapped to their number of tracks.
+	 *         Ratings without tracks are not contained. Tracks that have
+	 *         never been rated usually don't have the property, so they are
+	 *         not counted at all; 0 counts the tracks whose rating has been
+	 *         set to 0, e.g. by removing it. See
+	 *         {@link LibrarySummary#getRatedTrackCount()} for the number of
+	 *         rated tracks.
+	 * @throws SQLException
+	 *             database-related exceptions
+	 */
+	public SortedMap<Long, Integer> getRatingHistogram() throws SQLException {
+		return getHistogram(Property.PROP_RATING, 1);
+	}
+
+	/**
+	 * Counts the values of a numeric property per bucket, e.g. the number of
+	 * tracks per {@link Property#PROP_LAST_PLAY_TIME} by day, using a
+	 * <code>bucketWidth</code> of 86400000 milliseconds.
+	 * 
+	 * @param property
+	 *            the numeric property, see {@link Property} for available
+	 *            properties. Values that are not numbers count as 0.
+	 * @param bucketWidth
+	 *            the width of the buckets, must be positive
+	 * @return the lower bounds of the buckets mapped to the number of values
+	 *         they contain. Buckets without values are not contained.
+	 * @throws SQLException
+	 *             database-related exceptions
+	 */
+	public SortedMap<Long, Integer> getHistogram(final String property,
+			final long bucketWidth) throws SQLException {
+		if (bucketWidth <= 0) {
+			throw new IllegalArgumentException("bucketWidth must be positive");
+		}
+		SongbirdDbConnection connection = db.acquireConnection();
+		PreparedStatement statement = null;
+		ResultSet rs = null;
+		try {
+			statement = connection.preparedStatement(QUERY_HISTOGRAM);
+			statement.setLong(1, bucketWidth);
+			statement.setLong(2, bucketWidth);
+			statement.setLong(3, bucketWidth);
+			statement.setInt(4, propertyId(property));
+			rs = connection.executeQuery(statement);
+			SortedMap<Long, Integer> histogram = new TreeMap<Long, Integer>();
+			while (rs.next()) {
+				histogram.put(rs.getLong(1), rs.getInt(2));
+			}
+			return histogram;
+		} finally {
+			connection.release(rs);
+			connection.release(statement);
+			db.releaseConnection(connection);
+		}
+	}
+
+	/**
+	 * @param rs
+	 *            the result to read
+	 * @param column
+	 *            the index of the column to read
+	 * @return the value of <code>column</code> or <code>null</code> if it is
+	 *         NULL
+	 * @throws SQLException
+	 *             database-related exceptions
+	 */
+	private static Long getLong(final ResultSet rs, final int column)
+			throws SQLException {
+		long value = rs.getLong(column);
+		return rs.wasNull() ? null : value;
+	}
+
+	/**
+	 * @param property
+	 *            a property constant
+	 * @return the ID of <code>property</code> in {@link #db} or -1 if the
+	 *         database does not know the property, which results in empty
+	 *         aggregates
+	 */
+	private int propertyId(final String property) {
+		return db.getMetadata().property2Id(property);
+	}
+}
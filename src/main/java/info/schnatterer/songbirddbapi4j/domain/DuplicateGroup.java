@@ -0,0 +1,83 @@
+/**
+ * Copyright (C) 2015 Johannes Schnatterer
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package info.schnatterer.songbirddbapi4j.domain;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Entries of the songbird database that are considered equal, e.g. tracks
+ * with the same content URL or a track that is contained in a playlist
+ * several times.
+ * 
+ * @author schnatterer
+ * 
+ */
+public class DuplicateGroup {
+
+	/** What the entries have in common, e.g. the content URL. */
+	private final String key;
+	/** Number of entries. */
+	private final int count;
+	/** IDs of the {@link MediaItem}s of the entries, sorted ascendingly. */
+	private final List<Integer> mediaItemIds;
+
+	/**
+	 * @param key
+	 *            what the entries have in common, e.g. the content URL
+	 * @param count
+	 *            number of entries
+	 * @param mediaItemIds
+	 *            IDs of the {@link MediaItem}s of the entries, sorted
+	 *            ascendingly
+	 */
+	public DuplicateGroup(final String key, final int count,
+			final List<Integer> mediaItemIds) {
+		this.key = key;
+		this.count = count;
+		this.mediaItemIds = Collections.unmodifiableList(mediaItemIds);
+	}
+
+	/**
+	 * @return what the entries have in common, e.g. the content URL
+	 */
+	public String getKey() {
+		return key;
+	}
+
+	/**
+	 * @return number of entries, at least 2. For tracks, this is the number of
+	 *         {@link #getMediaItemIds()}. For playlist members, this is the
+	 *         number of times the member is contained in the playlist.
+	 */
+	public int getCount() {
+		return count;
+	}
+
+	/**
+	 * @return IDs of the {@link MediaItem}s of the entries, sorted
+	 *         ascendingly. Each ID is contained once.
+	 */
+	public List<Integer> getMediaItemIds() {
+		return mediaItemIds;
+	}
+
+	@Override
+	public String toString() {
+		return "DuplicateGroup [key=" + key + ", count=" + count
+				+ ", mediaItemIds=" + mediaItemIds + "]";
+	}
+}
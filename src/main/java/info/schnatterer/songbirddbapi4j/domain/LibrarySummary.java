@@ -0,0 +1,156 @@
+/**
+ * Copyright (C) 2015 Johannes Schnatterer
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package info.schnatterer.songbirddbapi4j.domain;
+
+import java.util.Date;
+
+/**
+ * Key figures of a songbird library.
+ * 
+ * @author schnatterer
+ * 
+ */
+public class LibrarySummary {
+
+	/** Number of tracks, i.e. media items that are not playlists. */
+	private final int trackCount;
+	/** Number of distinct {@link Property#PROP_ARTIST_NAME}s. */
+	private final int artistCount;
+	/** Number of distinct {@link Property#PROP_ALBUM_NAME}s. */
+	private final int albumCount;
+	/** Aggregated {@link Property#PROP_PLAY_COUNT}s. */
+	private final PropertyStatistics playCount;
+	/** Aggregated {@link Property#PROP_RATING}s. */
+	private final PropertyStatistics rating;
+	/** Aggregated {@link Property#PROP_LAST_PLAY_TIME}s. */
+	private final PropertyStatistics lastPlayTime;
+
+	/**
+	 * @param trackCount
+	 *            number of tracks, i.e. media items that are not playlists
+	 * @param artistCount
+	 *            number of distinct {@link Property#PROP_ARTIST_NAME}s
+	 * @param albumCount
+	 *            number of distinct {@link Property#PROP_ALBUM_NAME}s
+	 * @param playCount
+	 *            aggregated {@link Property#PROP_PLAY_COUNT}s
+	 * @param rating
+	 *            aggregated {@link Property#PROP_RATING}s
+	 * @param lastPlayTime
+	 *            aggregated {@link Property#PROP_LAST_PLAY_TIME}s
+	 */
+	public LibrarySummary(final int trackCount, final int artistCount,
+			final int albumCount, final PropertyStatistics playCount,
+			final PropertyStatistics rating,
+			final PropertyStatistics lastPlayTime) {
+		this.trackCount = trackCount;
+		this.artistCount = artistCount;
+		this.albumCount = albumCount;
+		this.playCount = playCount;
+		this.rating = rating;
+		this.lastPlayTime = lastPlayTime;
+	}
+
+	/**
+	 * @return number of tracks, i.e. media items that are not playlists
+	 */
+	public int getTrackCount() {
+		return trackCount;
+	}
+
+	/**
+	 * @return number of distinct {@link Property#PROP_ARTIST_NAME}s
+	 */
+	public int getArtistCount() {
+		return artistCount;
+	}
+
+	/**
+	 * @return number of distinct {@link Property#PROP_ALBUM_NAME}s
+	 */
+	public int getAlbumCount() {
+		return albumCount;
+	}
+
+	/**
+	 * @return the sum of all {@link Property#PROP_PLAY_COUNT}s
+	 */
+	public long getTotalPlayCount() {
+		return playCount.getSum();
+	}
+
+	/**
+	 * @return number of tracks that have been played at least once
+	 */
+	public int getPlayedTrackCount() {
+		return playCount.getNonZeroCount();
+	}
+
+	/**
+	 * @return number of tracks that have been rated
+	 */
+	public int getRatedTrackCount() {
+		return rating.getNonZeroCount();
+	}
+
+	/**
+	 * @return the average {@link Property#PROP_RATING} of the rated tracks or
+	 *         0 if no track has been rated
+	 */
+	public double getAverageRating() {
+		return rating.getNonZeroAverage();
+	}
+
+	/**
+	 * @return when a track has been played the last time or
+	 *         <code>null</code> if no track has been played
+	 */
+	public Date getLastPlayTime() {
+		if (lastPlayTime.getNonZeroCount() == 0) {
+			return null;
+		}
+		return new Date(lastPlayTime.getMax());
+	}
+
+	/**
+	 * @return aggregated {@link Property#PROP_PLAY_COUNT}s
+	 */
+	public PropertyStatistics getPlayCountStatistics() {
+		return playCount;
+	}
+
+	/**
+	 * @return aggregated {@link Property#PROP_RATING}s
+	 */
+	public PropertyStatistics getRatingStatistics() {
+		return rating;
+	}
+
+	/**
+	 * @return aggregated {@link Property#PROP_LAST_PLAY_TIME}s
+	 */
+	public PropertyStatistics getLastPlayTimeStatistics() {
+		return lastPlayTime;
+	}
+
+	@Override
+	public String toString() {
+		return "LibrarySummary [trackCount=" + trackCount + ", artistCount="
+				+ artistCount + ", albumCount=" + albumCount + ", playCount="
+				+ playCount + ", rating=" + rating + ", lastPlayTime="
+				+ lastPlayTime + "]";
+	}
+}
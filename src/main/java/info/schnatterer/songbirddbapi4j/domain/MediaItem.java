@@ -15,8 +15,9 @@
  */
 package info.schnatterer.songbirddbapi4j.domain;
 
+import info.schnatterer.songbirddbapi4j.domain.util.PropertyMap;
+
 import java.util.Date;
-import java.util.HashMap;
 import java.util.Map;
 
 /**
@@ -39,7 +40,21 @@ public class MediaItem {
 	 * All properties of the MediaItem. See {@link Property} for available
 	 * properties.
 	 */
-	private Map<Integer, String> properties = new HashMap<Integer, String>();
+	private PropertyMap properties = new PropertyMap();
+	/**
+	 * Loads the properties on first access, if they have not been loaded
+	 * together with the MediaItem. Volatile, as the loader may be removed by
+	 * another thread: It is removed after the properties have been set, so a
+	 * thread that reads <code>null</code> also sees the properties.
+	 */
+	private volatile PropertyLoader propertyLoader;
+	/**
+	 * The IDs of properties and list types of the database this MediaItem
+	 * belongs to. <code>null</code> uses the global mappings of
+	 * {@link Property} and {@link MediaListTypes}, which are not filled by
+	 * <code>SongbirdDb</code>.
+	 */
+	private SongbirdDbMetadata metadata;
 	/** The list type of this MediaItem. See {@link MediaListTypes}. */
 	private int listType;
 
@@ -72,22 +87,64 @@ public class MediaItem {
 		if (property == null) {
 			return null;
 		}
-		return properties.get(Property.property2Id(property));
+		loadProperties();
+		return properties.get(propertyId(property));
+	}
+
+	/**
+	 * @param propertyId
+	 *            the numerical ID of the property to be retrieved. See
+	 *            {@link SongbirdDbMetadata#property2Id(String)}.
+	 * @return the property, of <code>null</code> if no such property.
+	 */
+	public String getProperty(final int propertyId) {
+		loadProperties();
+		return properties.get(propertyId);
+	}
+
+	/**
+	 * Sets a single property. Values of numeric properties (see
+	 * {@link SongbirdDbMetadata#isNumericProperty(int)}) are decoded once
+	 * here, so set the metadata (see {@link #setMetadata(SongbirdDbMetadata)})
+	 * before the properties.
+	 * 
+	 * @param propertyId
+	 *            the numerical ID of the property. See
+	 *            {@link SongbirdDbMetadata#property2Id(String)}.
+	 * @param value
+	 *            the value of the property
+	 */
+	public void setProperty(final int propertyId, final String value) {
+		SongbirdDbMetadata currentMetadata = metadata;
+		if (value != null && currentMetadata != null
+				&& currentMetadata.isNumericProperty(propertyId)) {
+			try {
+				properties.put(propertyId, value, Long.parseLong(value));
+				return;
+			} catch (NumberFormatException e) {
+				// Keep the value only, getPropertyAsLong() will fail as well
+			}
+		}
+		properties.put(propertyId, value);
 	}
 
 	/**
+	 * Creates a new {@link Date} on each call, as dates are mutable. In order
+	 * to compare many items, e.g. by {@link Property#PROP_LAST_PLAY_TIME},
+	 * use {@link #getPropertyAsLong(String, long)}, which returns the
+	 * milliseconds without allocating.
+	 *
 	 * @param property
 	 *            the property to be retrieved. See {@link Property} for
 	 *            available properties.
 	 * @return the property, of <code>null</code> if no such property.
 	 */
 	public Date getPropertyAsDate(final String property) {
-		String propertyString = getProperty(property);
-		if (propertyString == null) {
+		if (getProperty(property) == null) {
 			return null;
 		}
 
-		return new Date(Long.valueOf(propertyString));
+		return new Date(properties.getLong(propertyId(property), 0));
 	}
 
 	/**
@@ -97,12 +154,53 @@ public class MediaItem {
 	 * @return the property, of <code>null</code> if no such property.
 	 */
 	public Long getPropertyAsLong(final String property) {
-		String propertyString = getProperty(property);
-		if (propertyString == null) {
+		if (getProperty(property) == null) {
 			return null;
 		}
 
-		return Long.valueOf(propertyString);
+		return properties.getLong(propertyId(property), 0);
+	}
+
+	/**
+	 * Gets a numeric property without allocating, e.g. for ranking many
+	 * items. The values of {@link SongbirdDbMetadata#getNumericProperties()}
+	 * are decoded when loaded, all others are parsed on each call.
+	 * 
+	 * @param property
+	 *            the property to be retrieved. See {@link Property} for
+	 *            available properties.
+	 * @param defaultValue
+	 *            returned if there is no such property
+	 * @return the property or <code>defaultValue</code> if no such property
+	 * @throws NumberFormatException
+	 *             if the value of the property is not a number
+	 */
+	public long getPropertyAsLong(final String property,
+			final long defaultValue) {
+		if (property == null) {
+			return defaultValue;
+		}
+		loadProperties();
+		return properties.getLong(propertyId(property), defaultValue);
+	}
+
+	/**
+	 * @param property
+	 *            a property constant
+	 * @return the numerical ID of the property, resolved via
+	 *         {@link #metadata} if set. -1 if the property is unknown.
+	 */
+	@SuppressWarnings("deprecation")
+	private int propertyId(final String property) {
+		SongbirdDbMetadata currentMetadata = metadata;
+		if (currentMetadata == null) {
+			if (!Property.isInitialized()
+					|| !Property.containsProperty(property)) {
+				return -1;
+			}
+			return Property.property2Id(property);
+		}
+		return currentMetadata.property2Id(property);
 	}
 
 	/**
@@ -123,25 +221,115 @@ public class MediaItem {
 
 	/**
 	 * @param newProperties
-	 *            the properties to set
+	 *            the properties to set. They are copied into a compact
+	 *            representation, so later changes to
+	 *            <code>newProperties</code> are not reflected.
 	 */
 	public void setProperties(final Map<Integer, String> newProperties) {
-		this.properties = newProperties;
+		this.properties = new PropertyMap();
+		for (Map.Entry<Integer, String> property : newProperties.entrySet()) {
+			setProperty(property.getKey(), property.getValue());
+		}
+		this.propertyLoader = null;
+	}
+
+	/**
+	 * Shrinks the memory used for the properties to what is needed for the
+	 * current properties. Called by <code>SongbirdDb</code> once all
+	 * properties have been loaded, as the storage grows in steps while
+	 * properties are added.
+	 */
+	public void trimToSize() {
+		properties.trimToSize();
+	}
+
+	/**
+	 * Makes this MediaItem load its properties on first access, e.g. via
+	 * {@link #getProperty(String)} or {@link #getProperties()}.
+	 * 
+	 * @param newPropertyLoader
+	 *            the loader to call on first access or <code>null</code> if
+	 *            the properties are loaded already
+	 */
+	public void setPropertyLoader(final PropertyLoader newPropertyLoader) {
+		this.propertyLoader = newPropertyLoader;
+	}
+
+	/**
+	 * @return <code>false</code> if the properties are loaded on first
+	 *         access, see {@link #setPropertyLoader(PropertyLoader)}
+	 */
+	public boolean isPropertiesLoaded() {
+		return propertyLoader == null;
+	}
+
+	/** Calls the {@link PropertyLoader}, if the properties are not loaded. */
+	private void loadProperties() {
+		PropertyLoader loader = propertyLoader;
+		if (loader != null) {
+			loader.loadProperties(this);
+		}
+	}
+
+	/**
+	 * @return the IDs of properties and list types of the database this
+	 *         MediaItem belongs to or <code>null</code> if the global mappings
+	 *         of {@link Property} and {@link MediaListTypes} are used.
+	 */
+	public SongbirdDbMetadata getMetadata() {
+		return metadata;
+	}
+
+	/**
+	 * @param newMetadata
+	 *            the IDs of properties and list types of the database this
+	 *            MediaItem belongs to, used by {@link #getProperty(String)}
+	 *            and {@link #getListType()}. <code>null</code> uses the
+	 *            deprecated global mappings of {@link Property} and
+	 *            {@link MediaListTypes}, which have to be populated
+	 *            explicitly.
+	 */
+	public void setMetadata(final SongbirdDbMetadata newMetadata) {
+		this.metadata = newMetadata;
 	}
 
 	/**
 	 * @return the listType
+	 * @throws IllegalStateException
+	 *             if this MediaItem has no metadata and the global mappings of
+	 *             {@link MediaListTypes} have not been populated
 	 */
+	@SuppressWarnings("deprecation")
 	public String getListType() {
-		return MediaListTypes.id2ListType(listType);
+		SongbirdDbMetadata currentMetadata = metadata;
+		if (currentMetadata == null) {
+			return MediaListTypes.id2ListType(listType);
+		}
+		return currentMetadata.id2ListType(listType);
+	}
+
+	/**
+	 * @return the numerical ID of the listType. See {@link MediaListTypes}.
+	 */
+	public int getListTypeId() {
+		return listType;
 	}
 
 	/**
 	 * @param newListType
 	 *            the listType to set
+	 * @throws IllegalStateException
+	 *             if this MediaItem has no metadata and the global mappings of
+	 *             {@link MediaListTypes} have not been populated
 	 */
+	@SuppressWarnings("deprecation")
 	public void setListType(final String newListType) {
-		this.listType = MediaListTypes.listType2Id(newListType);
+		SongbirdDbMetadata currentMetadata = metadata;
+		if (currentMetadata == null) {
+			this.listType = MediaListTypes.listType2Id(newListType);
+		} else {
+			this.listType = currentMetadata.listType2Id(newListType);
+		}
 	}
 
 	/**
@@ -156,6 +344,7 @@ public class MediaItem {
 	 * @return the properties
 	 */
 	public Map<Integer, String> getProperties() {
+		loadProperties();
 		return properties;
 	}
 
@@ -19,6 +19,7 @@ import info.schnatterer.songbirddbapi4j.SongbirdDbConnection;
 
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -40,14 +41,28 @@ public final class MediaListTypes {
 	 * Why not use enum, which would be easier to use and more efficient?
 	 * Software must be adapted to DB changes, i.e. map is more flexible
 	 */
+	/*
+	 * The IDs differ between databases. MediaItems loaded by SongbirdDb use
+	 * the mappings of their own database, see SongbirdDbMetadata. The global
+	 * mappings are only used by MediaItems without metadata, e.g. ones created
+	 * by hand, and are only filled by calling populatelistTypeMap(). They are
+	 * kept for compatibility only, so the methods accessing them are
+	 * deprecated.
+	 */
+	/** Thrown when accessing the global mappings before populating them. */
+	private static final String NOT_POPULATED = "The global list type mappings "
+			+ "are not populated. Use the mappings of the database instead, see "
+			+ "SongbirdDb.getMetadata() and MediaItem.getMetadata()";
 	/** Mapping from string constants (database enums) to numerical IDs. */
-	private static Map<String, Integer> listTyep2IdMap;
+	private static volatile Map<String, Integer> listTyep2IdMap;
 	/** Mapping from numerical IDs to string constants (database enums). */
-	private static Map<Integer, String> id2ListTypeMap;
+	private static volatile Map<Integer, String> id2ListTypeMap;
 
 	/**
-	 * Initializes the mappings from string constants (database enums) to
-	 * numerical IDs and the other way round from the database.
+	 * Initializes the global mappings from string constants (database enums)
+	 * to numerical IDs and the other way round from the database. The
+	 * mappings of a specific database are provided by
+	 * {@link SongbirdDbMetadata}.
 	 * 
 	 * To avoid doing this again and again, use {@link #isInitialized()}.
 	 * 
@@ -55,30 +70,69 @@ public final class MediaListTypes {
 	 *            database connection to use for querying
 	 * @throws SQLException
 	 *             in case an error occurs during the db query.
-	 * 
+	 * @deprecated the IDs differ between databases, use
+	 *             {@link SongbirdDbMetadata#read(SongbirdDbConnection)}
 	 */
+	@Deprecated
 	public static void populatelistTypeMap(SongbirdDbConnection connection)
 			throws SQLException {
-		listTyep2IdMap = new HashMap<String, Integer>();
-		id2ListTypeMap = new HashMap<Integer, String>();
+		Map<Integer, String> id2ListType = new HashMap<Integer, String>();
 		ResultSet rs = connection.executeQuery(QUERY_LIST_TYPES);
 		while (rs.next()) {
 			// read the result set
-			Integer id = rs.getInt(1);
-			String type = rs.getString(2);
-			id2ListTypeMap.put(id, type);
-			listTyep2IdMap.put(type, id);
+			id2ListType.put(rs.getInt(1), rs.getString(2));
 			// logger.debug("id=" + id + "; type=" + type );
 		}
+		populatelistTypeMap(id2ListType);
+	}
+
+	/**
+	 * Initializes the mappings from string constants (database enums) to
+	 * numerical IDs and the other way round from an existing mapping, e.g.
+	 * one that has been read from a snapshot.
+	 * 
+	 * @param id2ListType
+	 *            mapping from numerical IDs to string constants
+	 * @deprecated the IDs differ between databases, create a
+	 *             {@link SongbirdDbMetadata} and set it to the
+	 *             {@link MediaItem}s instead
+	 */
+	@Deprecated
+	public static void populatelistTypeMap(
+			final Map<Integer, String> id2ListType) {
+		Map<String, Integer> newListType2IdMap = new HashMap<String, Integer>();
+		for (Map.Entry<Integer, String> entry : id2ListType.entrySet()) {
+			newListType2IdMap.put(entry.getValue(), entry.getKey());
+		}
+		listTyep2IdMap = newListType2IdMap;
+		id2ListTypeMap = new HashMap<Integer, String>(id2ListType);
+	}
+
+	/**
+	 * @return an unmodifiable view of the mapping from numerical IDs to string
+	 *         constants
+	 * @throws IllegalStateException
+	 *             if the mappings have not been populated
+	 * @deprecated use {@link SongbirdDbMetadata#getId2ListTypeMap()}, e.g.
+	 *             of <code>SongbirdDb.getMetadata()</code>
+	 */
+	@Deprecated
+	public static Map<Integer, String> getId2ListTypeMap() {
+		return Collections.unmodifiableMap(id2ListTypeMap());
 	}
 
 	/**
 	 * @param id
 	 *            a numerical ID to be mapped to the corresponding string
 	 * @return the string representation of a numerical ID.
+	 * @throws IllegalStateException
+	 *             if the mappings have not been populated
+	 * @deprecated use {@link SongbirdDbMetadata#id2ListType(int)}, e.g. of
+	 *             <code>SongbirdDb.getMetadata()</code>
 	 */
+	@Deprecated
 	public static String id2ListType(final int id) {
-		return id2ListTypeMap.get(id);
+		return id2ListTypeMap().get(id);
 	}
 
 	/**
@@ -86,9 +140,27 @@ public final class MediaListTypes {
 	 *            a string representation to be mapped to the corresponding
 	 *            numerical ID.
 	 * @return the numerical ID of a string representation.
+	 * @throws IllegalStateException
+	 *             if the mappings have not been populated
+	 * @deprecated use {@link SongbirdDbMetadata#listType2Id(String)}, e.g.
+	 *             of <code>SongbirdDb.getMetadata()</code>
 	 */
+	@Deprecated
 	public static int listType2Id(final String listType) {
-		return listTyep2IdMap.get(listType);
+		Map<String, Integer> map = listTyep2IdMap;
+		if (map == null || map.isEmpty()) {
+			throw new IllegalStateException(NOT_POPULATED);
+		}
+		return map.get(listType);
+	}
+
+	/** @return {@link #id2ListTypeMap}, if populated */
+	private static Map<Integer, String> id2ListTypeMap() {
+		Map<Integer, String> map = id2ListTypeMap;
+		if (map == null || map.isEmpty()) {
+			throw new IllegalStateException(NOT_POPULATED);
+		}
+		return map;
 	}
 
 	/**
@@ -96,7 +168,11 @@ public final class MediaListTypes {
 	 * {@link #populatelistTypeMap(SongbirdDbConnection)}
 	 * 
 	 * @return <code>true</code> if initialized, otherwise <code>false</code>
+	 * @deprecated the global mappings are not populated by
+	 *             <code>SongbirdDb</code>, use the mappings of the database,
+	 *             see <code>SongbirdDb.getMetadata()</code>
 	 */
+	@Deprecated
 	public static boolean isInitialized() {
 		if (id2ListTypeMap == null || id2ListTypeMap.size() == 0
 				|| listTyep2IdMap == null || listTyep2IdMap.size() == 0) {
@@ -33,6 +33,8 @@
 
 package info.schnatterer.songbirddbapi4j.domain;
 
+import info.schnatterer.songbirddbapi4j.domain.util.MemberMediaItemComparator;
+
 /**
  * A member object of a playlist ({@link SimpleMediaList}), contains a {@link MediaItem} as well as the ordinal within
  * the playlist.
@@ -49,6 +51,11 @@ public class MemberMediaItem {
 	 * Can be sorted using {@link info.schnatterer.songbirddbapi4j.domain.util.MemberMediaItemComparator}.
 	 */
 	private String oridnal;
+	/**
+	 * The numbers of {@link #oridnal}, parsed once for sorting. See
+	 * {@link MemberMediaItemComparator#toOrdinalKey(String)}.
+	 */
+	private int[] ordinalKey;
 	/** The actual member object. */
 	private MediaItem member;
 
@@ -59,6 +66,17 @@ public class MemberMediaItem {
 		return oridnal;
 	}
 
+	/**
+	 * Returns the numbers contained in the ordinal, as used for sorting. The
+	 * array is not copied and must not be modified.
+	 * 
+	 * @return the numbers of {@link #getOridnal()} or <code>null</code> if the
+	 *         ordinal cannot be represented as numbers
+	 */
+	public int[] getOrdinalKey() {
+		return ordinalKey;
+	}
+
 	/**
 	 * @return the actual member object.
 	 */
@@ -72,6 +90,7 @@ public class MemberMediaItem {
 	 */
 	public void setOridnal(final String newOrdinal) {
 		this.oridnal = newOrdinal;
+		this.ordinalKey = MemberMediaItemComparator.toOrdinalKey(newOrdinal);
 	}
 
 	/**
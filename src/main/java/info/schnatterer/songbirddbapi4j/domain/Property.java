@@ -19,8 +19,12 @@ import info.schnatterer.songbirddbapi4j.SongbirdDbConnection;
 
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Map;
+import java.util.Set;
 
 /**
  * The property types of a {@link MemberMediaItem}.
@@ -56,12 +60,13 @@ public final class Property {
 	public static final String PROP_LAST_SKIP_TIME = "http://songbirdnest.com/data/1.0#lastSkipTime";
 	/** Property constant for skipCount. */
 	public static final String PROP_SKIP_COUNT = "http://songbirdnest.com/data/1.0#skipCount";
+	/** Property constant for duration (in microseconds). */
+	public static final String PROP_DURATION = "http://songbirdnest.com/data/1.0#duration";
 
 	/**
 	 * TODO Insert remaining properties
 	 * 
 	 * <pre>
-	 * 	public static final String PROP_ = "http://songbirdnest.com/data/1.0#duration";
 	 * 	public static final String PROP_ = "http://songbirdnest.com/data/1.0#genre";
 	 * 	public static final String PROP_ = "http://songbirdnest.com/data/1.0#trackNumber";
 	 * 	public static final String PROP_ = "http://songbirdnest.com/data/1.0#year";
@@ -187,14 +192,73 @@ public final class Property {
 	 * </pre>
 	 */
 
+	/**
+	 * The properties whose values are decoded to numbers when loaded, see
+	 * {@link #getNumericProperties()}. Replaced as a whole on change.
+	 */
+	private static volatile Set<String> numericProperties = Collections
+			.unmodifiableSet(new HashSet<String>(Arrays.asList(PROP_RATING,
+					PROP_PLAY_COUNT, PROP_LAST_PLAY_TIME, PROP_SKIP_COUNT,
+					PROP_LAST_SKIP_TIME)));
+
+	/**
+	 * @return the properties whose values are decoded to numbers once, when
+	 *         loaded. That is, {@link MediaItem#getPropertyAsLong(String, long)}
+	 *         does not have to parse them. By default these are
+	 *         {@link #PROP_RATING}, {@link #PROP_PLAY_COUNT},
+	 *         {@link #PROP_LAST_PLAY_TIME}, {@link #PROP_SKIP_COUNT} and
+	 *         {@link #PROP_LAST_SKIP_TIME}.
+	 */
+	public static Set<String> getNumericProperties() {
+		return numericProperties;
+	}
+
+	/**
+	 * Adds a property to {@link #getNumericProperties()}. Affects the
+	 * {@link MediaItem}s that are loaded by
+	 * {@link info.schnatterer.songbirddbapi4j.SongbirdDb} instances created
+	 * afterwards.
+	 * 
+	 * @param property
+	 *            a property whose values are integers, e.g.
+	 *            "http://songbirdnest.com/data/1.0#year"
+	 * @deprecated changes the default of all databases opened afterwards. Use
+	 *             {@link info.schnatterer.songbirddbapi4j.SongbirdDb#addNumericProperty(String)}
+	 *             in order to decode a property of one database only.
+	 */
+	@Deprecated
+	public static synchronized void addNumericProperty(final String property) {
+		if (numericProperties.contains(property)) {
+			return;
+		}
+		Set<String> newNumericProperties = new HashSet<String>(
+				numericProperties);
+		newNumericProperties.add(property);
+		numericProperties = Collections.unmodifiableSet(newNumericProperties);
+	}
+
+	/*
+	 * The IDs differ between databases. MediaItems loaded by SongbirdDb use
+	 * the mappings of their own database, see SongbirdDbMetadata. The global
+	 * mappings are only used by MediaItems without metadata, e.g. ones created
+	 * by hand, and are only filled by calling populateResourceMap(). They are
+	 * kept for compatibility only, so the methods accessing them are
+	 * deprecated.
+	 */
+	/** Thrown when accessing the global mappings before populating them. */
+	private static final String NOT_POPULATED = "The global property mappings "
+			+ "are not populated. Use the mappings of the database instead, see "
+			+ "SongbirdDb.getMetadata() and MediaItem.getMetadata()";
 	/** Mapping from numerical IDs to string constants (database enums). */
-	private static Map<Integer, String> id2PropertyMap;
+	private static volatile Map<Integer, String> id2PropertyMap;
 	/** Mapping from string constants (database enums) to numerical IDs. */
-	private static Map<String, Integer> property2IdMap;
+	private static volatile Map<String, Integer> property2IdMap;
 
 	/**
-	 * Initializes the mappings from string constants (database enums) to
-	 * numerical IDs and the other way round from the database.
+	 * Initializes the global mappings from string constants (database enums)
+	 * to numerical IDs and the other way round from the database. The
+	 * mappings of a specific database are provided by
+	 * {@link SongbirdDbMetadata}.
 	 * 
 	 * To avoid doing this again and again, use {@link #isInitialized()}.
 	 * 
@@ -202,28 +266,68 @@ public final class Property {
 	 *            database connection to use for querying
 	 * @throws SQLException
 	 *             in case an error occurs during the db query.
+	 * @deprecated the IDs differ between databases, use
+	 *             {@link SongbirdDbMetadata#read(SongbirdDbConnection)}
 	 */
+	@Deprecated
 	public static void populateResourceMap(SongbirdDbConnection connection)
 			throws SQLException {
-		property2IdMap = new HashMap<String, Integer>();
-		id2PropertyMap = new HashMap<Integer, String>();
+		Map<Integer, String> id2Property = new HashMap<Integer, String>();
 		ResultSet rs = connection.executeQuery(QUERY_PROPERTIES);
 		while (rs.next()) {
 			// read the result set
-			Integer id = rs.getInt(1);
-			String name = rs.getString(2);
-			property2IdMap.put(name, id);
-			id2PropertyMap.put(id, name);
+			id2Property.put(rs.getInt(1), rs.getString(2));
+		}
+		populateResourceMap(id2Property);
+	}
+
+	/**
+	 * Initializes the mappings from string constants (database enums) to
+	 * numerical IDs and the other way round from an existing mapping, e.g.
+	 * one that has been read from a snapshot.
+	 * 
+	 * @param id2Property
+	 *            mapping from numerical IDs to string constants
+	 * @deprecated the IDs differ between databases, create a
+	 *             {@link SongbirdDbMetadata} and set it to the
+	 *             {@link MediaItem}s instead
+	 */
+	@Deprecated
+	public static void populateResourceMap(
+			final Map<Integer, String> id2Property) {
+		Map<String, Integer> newProperty2IdMap = new HashMap<String, Integer>();
+		for (Map.Entry<Integer, String> entry : id2Property.entrySet()) {
+			newProperty2IdMap.put(entry.getValue(), entry.getKey());
 		}
+		property2IdMap = newProperty2IdMap;
+		id2PropertyMap = new HashMap<Integer, String>(id2Property);
+	}
+
+	/**
+	 * @return an unmodifiable view of the mapping from numerical IDs to string
+	 *         constants
+	 * @throws IllegalStateException
+	 *             if the mappings have not been populated
+	 * @deprecated use {@link SongbirdDbMetadata#getId2PropertyMap()}, e.g.
+	 *             of <code>SongbirdDb.getMetadata()</code>
+	 */
+	@Deprecated
+	public static Map<Integer, String> getId2PropertyMap() {
+		return Collections.unmodifiableMap(id2PropertyMap());
 	}
 
 	/**
 	 * @param id
 	 *            a numerical ID to be mapped to the corresponding string
 	 * @return the string representation of a numerical ID.
+	 * @throws IllegalStateException
+	 *             if the mappings have not been populated
+	 * @deprecated use {@link SongbirdDbMetadata#id2Property(int)}, e.g. of
+	 *             <code>SongbirdDb.getMetadata()</code>
 	 */
+	@Deprecated
 	public static String id2Property(final int id) {
-		return id2PropertyMap.get(id);
+		return id2PropertyMap().get(id);
 	}
 
 	/**
@@ -231,9 +335,47 @@ public final class Property {
 	 *            a string representation to be mapped to the corresponding
 	 *            numerical ID.
 	 * @return the numerical ID of a string representation.
+	 * @throws IllegalStateException
+	 *             if the mappings have not been populated
+	 * @deprecated use {@link SongbirdDbMetadata#property2Id(String)}, e.g.
+	 *             of <code>SongbirdDb.getMetadata()</code>
 	 */
+	@Deprecated
 	public static int property2Id(final String property) {
-		return property2IdMap.get(property);
+		return property2IdMap().get(property);
+	}
+
+	/**
+	 * @param property
+	 *            a string representation of a property
+	 * @return <code>true</code> if the property is contained in the database,
+	 *         i.e. {@link #property2Id(String)} can be called.
+	 * @throws IllegalStateException
+	 *             if the mappings have not been populated
+	 * @deprecated use {@link SongbirdDbMetadata#containsProperty(String)},
+	 *             e.g. of <code>SongbirdDb.getMetadata()</code>
+	 */
+	@Deprecated
+	public static boolean containsProperty(final String property) {
+		return property2IdMap().containsKey(property);
+	}
+
+	/** @return {@link #id2PropertyMap}, if populated */
+	private static Map<Integer, String> id2PropertyMap() {
+		Map<Integer, String> map = id2PropertyMap;
+		if (map == null || map.isEmpty()) {
+			throw new IllegalStateException(NOT_POPULATED);
+		}
+		return map;
+	}
+
+	/** @return {@link #property2IdMap}, if populated */
+	private static Map<String, Integer> property2IdMap() {
+		Map<String, Integer> map = property2IdMap;
+		if (map == null || map.isEmpty()) {
+			throw new IllegalStateException(NOT_POPULATED);
+		}
+		return map;
 	}
 
 	/**
@@ -241,7 +383,11 @@ public final class Property {
 	 * {@link #populateResourceMap(SongbirdDbConnection)}.
 	 * 
 	 * @return <code>true</code> if initialized, otherwise <code>false</code>
+	 * @deprecated the global mappings are not populated by
+	 *             <code>SongbirdDb</code>, use the mappings of the database,
+	 *             see <code>SongbirdDb.getMetadata()</code>
 	 */
+	@Deprecated
 	public static boolean isInitialized() {
 		if (property2IdMap == null || property2IdMap.size() == 0
 				|| id2PropertyMap == null || id2PropertyMap.size() == 0) {
@@ -0,0 +1,41 @@
+/**
+ * Copyright (C) 2015 Johannes Schnatterer
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package info.schnatterer.songbirddbapi4j.domain;
+
+/**
+ * Loads the properties of a {@link MediaItem} on first access, see
+ * {@link MediaItem#setPropertyLoader(PropertyLoader)}.
+ * 
+ * @author schnatterer
+ * 
+ */
+public interface PropertyLoader {
+
+	/**
+	 * Loads the properties of <code>mediaItem</code> via
+	 * {@link MediaItem#setProperty(int, String)} and then removes itself via
+	 * {@link MediaItem#setPropertyLoader(PropertyLoader)}. An implementation
+	 * may load the properties of other items that refer to it as well, in
+	 * order to load many items at once.
+	 * 
+	 * @param mediaItem
+	 *            the item whose properties are accessed
+	 * @throws RuntimeException
+	 *             if loading fails. The item keeps its loader in this case,
+	 *             so loading is tried again on the next access.
+	 */
+	void loadProperties(MediaItem mediaItem);
+}
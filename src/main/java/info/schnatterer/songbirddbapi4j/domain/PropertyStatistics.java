@@ -0,0 +1,123 @@
+/**
+ * Copyright (C) 2015 Johannes Schnatterer
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package info.schnatterer.songbirddbapi4j.domain;
+
+/**
+ * Aggregates the values of a numeric {@link Property}, e.g.
+ * {@link Property#PROP_PLAY_COUNT}, over all media items that have the
+ * property.
+ * 
+ * @author schnatterer
+ * 
+ */
+public class PropertyStatistics {
+
+	/** The property, see {@link Property}. */
+	private final String property;
+	/** Number of media items having the property. */
+	private final int count;
+	/** Number of media items whose value is not 0. */
+	private final int nonZeroCount;
+	/** Sum of the values. */
+	private final long sum;
+	/** Smallest value, <code>null</code> without values. */
+	private final Long min;
+	/** Greatest value, <code>null</code> without values. */
+	private final Long max;
+
+	/**
+	 * @param property
+	 *            the property, see {@link Property}
+	 * @param count
+	 *            number of media items having the property
+	 * @param nonZeroCount
+	 *            number of media items whose value is not 0
+	 * @param sum
+	 *            sum of the values
+	 * @param min
+	 *            smallest value, <code>null</code> if <code>count</code> is 0
+	 * @param max
+	 *            greatest value, <code>null</code> if <code>count</code> is 0
+	 */
+	public PropertyStatistics(final String property, final int count,
+			final int nonZeroCount, final long sum, final Long min,
+			final Long max) {
+		this.property = property;
+		this.count = count;
+		this.nonZeroCount = nonZeroCount;
+		this.sum = sum;
+		this.min = min;
+		this.max = max;
+	}
+
+	/**
+	 * @return the property, see {@link Property}
+	 */
+	public String getProperty() {
+		return property;
+	}
+
+	/**
+	 * @return number of media items having the property
+	 */
+	public int getCount() {
+		return count;
+	}
+
+	/**
+	 * @return number of media items whose value is not 0, e.g. the tracks
+	 *         that have been rated
+	 */
+	public int getNonZeroCount() {
+		return nonZeroCount;
+	}
+
+	/**
+	 * @return sum of the values
+	 */
+	public long getSum() {
+		return sum;
+	}
+
+	/**
+	 * @return smallest value, <code>null</code> if {@link #getCount()} is 0
+	 */
+	public Long getMin() {
+		return min;
+	}
+
+	/**
+	 * @return greatest value, <code>null</code> if {@link #getCount()} is 0
+	 */
+	public Long getMax() {
+		return max;
+	}
+
+	/**
+	 * @return the average of the values that are not 0 (e.g. the average
+	 *         rating of the rated tracks) or 0 if there are no such values
+	 */
+	public double getNonZeroAverage() {
+		return nonZeroCount == 0 ? 0 : (double) sum / nonZeroCount;
+	}
+
+	@Override
+	public String toString() {
+		return "PropertyStatistics [property=" + property + ", count=" + count
+				+ ", nonZeroCount=" + nonZeroCount + ", sum=" + sum + ", min="
+				+ min + ", max=" + max + "]";
+	}
+}
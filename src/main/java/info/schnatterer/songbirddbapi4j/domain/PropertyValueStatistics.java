@@ -0,0 +1,75 @@
+/**
+ * Copyright (C) 2015 Johannes Schnatterer
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package info.schnatterer.songbirddbapi4j.domain;
+
+/**
+ * Aggregates the tracks that share the value of a {@link Property}, e.g. all
+ * tracks of an artist.
+ * 
+ * @author schnatterer
+ * 
+ */
+public class PropertyValueStatistics {
+
+	/** The value of the property, e.g. the name of the artist. */
+	private final String value;
+	/** Number of tracks having the value. */
+	private final int trackCount;
+	/** Sum of the {@link Property#PROP_PLAY_COUNT} of the tracks. */
+	private final long playCount;
+
+	/**
+	 * @param value
+	 *            the value of the property, e.g. the name of the artist
+	 * @param trackCount
+	 *            number of tracks having the value
+	 * @param playCount
+	 *            sum of the {@link Property#PROP_PLAY_COUNT} of the tracks
+	 */
+	public PropertyValueStatistics(final String value, final int trackCount,
+			final long playCount) {
+		this.value = value;
+		this.trackCount = trackCount;
+		this.playCount = playCount;
+	}
+
+	/**
+	 * @return the value of the property, e.g. the name of the artist
+	 */
+	public String getValue() {
+		return value;
+	}
+
+	/**
+	 * @return number of tracks having the value
+	 */
+	public int getTrackCount() {
+		return trackCount;
+	}
+
+	/**
+	 * @return sum of the {@link Property#PROP_PLAY_COUNT} of the tracks
+	 */
+	public long getPlayCount() {
+		return playCount;
+	}
+
+	@Override
+	public String toString() {
+		return "PropertyValueStatistics [value=" + value + ", trackCount="
+				+ trackCount + ", playCount=" + playCount + "]";
+	}
+}
@@ -0,0 +1,259 @@
+/**
+ * Copyright (C) 2015 Johannes Schnatterer
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package info.schnatterer.songbirddbapi4j.domain;
+
+import info.schnatterer.songbirddbapi4j.SongbirdDbConnection;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The mappings from string constants (database enums) to numerical IDs of one
+ * songbird database, i.e. the IDs of its {@link Property}s and
+ * {@link MediaListTypes}. The IDs differ between databases.
+ * 
+ * In addition, knows the IDs of the properties that are decoded to numbers when
+ * loaded, by default {@link Property#getNumericProperties()}.
+ * 
+ * Instances are immutable and can therefore be shared between threads and
+ * read without locking.
+ * 
+ * @author schnatterer
+ * 
+ */
+public final class SongbirdDbMetadata {
+
+	/** Mapping from numerical IDs to property constants. */
+	private final Map<Integer, String> id2PropertyMap;
+	/** Mapping from property constants to numerical IDs. */
+	private final Map<String, Integer> property2IdMap;
+	/** Mapping from numerical IDs to list type constants. */
+	private final Map<Integer, String> id2ListTypeMap;
+	/** Mapping from list type constants to numerical IDs. */
+	private final Map<String, Integer> listType2IdMap;
+	/** The numeric properties this instance was created with. */
+	private final Set<String> numericProperties;
+	/** Is the property with this ID numeric? */
+	private final boolean[] numericPropertyIds;
+
+	/**
+	 * Creates the mappings from existing mappings, e.g. ones that have been
+	 * read from a snapshot. The numeric properties are the current
+	 * {@link Property#getNumericProperties()}.
+	 * 
+	 * @param id2Property
+	 *            mapping from numerical IDs to property constants. Is copied.
+	 * @param id2ListType
+	 *            mapping from numerical IDs to list type constants. Is copied.
+	 */
+	public SongbirdDbMetadata(final Map<Integer, String> id2Property,
+			final Map<Integer, String> id2ListType) {
+		this(id2Property, id2ListType, Property.getNumericProperties());
+	}
+
+	/**
+	 * Creates the mappings from existing mappings, e.g. ones that have been
+	 * read from a snapshot.
+	 * 
+	 * @param id2Property
+	 *            mapping from numerical IDs to property constants. Is copied.
+	 * @param id2ListType
+	 *            mapping from numerical IDs to list type constants. Is copied.
+	 * @param numeric
+	 *            the properties whose values are decoded to numbers when
+	 *            loaded. Is copied.
+	 */
+	public SongbirdDbMetadata(final Map<Integer, String> id2Property,
+			final Map<Integer, String> id2ListType, final Set<String> numeric) {
+		id2PropertyMap = Collections
+				.unmodifiableMap(new HashMap<Integer, String>(id2Property));
+		property2IdMap = Collections.unmodifiableMap(invert(id2Property));
+		id2ListTypeMap = Collections
+				.unmodifiableMap(new HashMap<Integer, String>(id2ListType));
+		listType2IdMap = Collections.unmodifiableMap(invert(id2ListType));
+
+		numericProperties = Collections.unmodifiableSet(new HashSet<String>(
+				numeric));
+		int maxId = -1;
+		for (String property : numericProperties) {
+			maxId = Math.max(maxId, property2Id(property));
+		}
+		numericPropertyIds = new boolean[maxId + 1];
+		for (String property : numericProperties) {
+			int id = property2Id(property);
+			if (id >= 0) {
+				numericPropertyIds[id] = true;
+			}
+		}
+	}
+
+	/**
+	 * Reads the mappings from a database.
+	 * 
+	 * @param connection
+	 *            database connection to use for querying
+	 * @return the mappings of the database
+	 * @throws SQLException
+	 *             in case an error occurs during the db query.
+	 */
+	public static SongbirdDbMetadata read(final SongbirdDbConnection connection)
+			throws SQLException {
+		return new SongbirdDbMetadata(readMap(connection,
+				Property.QUERY_PROPERTIES), readMap(connection,
+				MediaListTypes.QUERY_LIST_TYPES));
+	}
+
+	/**
+	 * @return an unmodifiable mapping from numerical IDs to property
+	 *         constants
+	 */
+	public Map<Integer, String> getId2PropertyMap() {
+		return id2PropertyMap;
+	}
+
+	/**
+	 * @param id
+	 *            a numerical ID to be mapped to the corresponding property
+	 * @return the property constant or <code>null</code> if there is no such
+	 *         property
+	 */
+	public String id2Property(final int id) {
+		return id2PropertyMap.get(id);
+	}
+
+	/**
+	 * @param property
+	 *            a property constant, see {@link Property}
+	 * @return the numerical ID of the property or -1 if the property is not
+	 *         contained in the database
+	 */
+	public int property2Id(final String property) {
+		Integer id = property2IdMap.get(property);
+		if (id == null) {
+			return -1;
+		}
+		return id;
+	}
+
+	/**
+	 * @param property
+	 *            a property constant, see {@link Property}
+	 * @return <code>true</code> if the property is contained in the database
+	 */
+	public boolean containsProperty(final String property) {
+		return property2IdMap.containsKey(property);
+	}
+
+	/**
+	 * @param id
+	 *            the numerical ID of a property
+	 * @return <code>true</code> if the values of the property are decoded to
+	 *         numbers when loaded
+	 */
+	public boolean isNumericProperty(final int id) {
+		return id >= 0 && id < numericPropertyIds.length
+				&& numericPropertyIds[id];
+	}
+
+	/**
+	 * @return the properties whose values are decoded to numbers when loaded,
+	 *         unmodifiable
+	 */
+	public Set<String> getNumericProperties() {
+		return numericProperties;
+	}
+
+	/**
+	 * @param property
+	 *            a property whose values are integers, e.g.
+	 *            "http://songbirdnest.com/data/1.0#year"
+	 * @return new mappings that decode the values of <code>property</code> to
+	 *         numbers in addition, or this instance if they already do
+	 */
+	public SongbirdDbMetadata withNumericProperty(final String property) {
+		if (numericProperties.contains(property)) {
+			return this;
+		}
+		Set<String> numeric = new HashSet<String>(numericProperties);
+		numeric.add(property);
+		return new SongbirdDbMetadata(id2PropertyMap, id2ListTypeMap, numeric);
+	}
+
+	/**
+	 * @return an unmodifiable mapping from numerical IDs to list type
+	 *         constants
+	 */
+	public Map<Integer, String> getId2ListTypeMap() {
+		return id2ListTypeMap;
+	}
+
+	/**
+	 * @param id
+	 *            a numerical ID to be mapped to the corresponding list type
+	 * @return the list type or <code>null</code> if there is no such list
+	 *         type
+	 */
+	public String id2ListType(final int id) {
+		return id2ListTypeMap.get(id);
+	}
+
+	/**
+	 * @param listType
+	 *            a list type constant, see {@link MediaListTypes}
+	 * @return the numerical ID of the list type or -1 if the list type is not
+	 *         contained in the database
+	 */
+	public int listType2Id(final String listType) {
+		Integer id = listType2IdMap.get(listType);
+		if (id == null) {
+			return -1;
+		}
+		return id;
+	}
+
+	/**
+	 * Reads a mapping from numerical IDs (first column) to string constants
+	 * (second column).
+	 */
+	private static Map<Integer, String> readMap(
+			final SongbirdDbConnection connection, final String query)
+			throws SQLException {
+		Map<Integer, String> map = new HashMap<Integer, String>();
+		ResultSet rs = connection.executeQuery(query);
+		try {
+			while (rs.next()) {
+				map.put(rs.getInt(1), rs.getString(2));
+			}
+		} finally {
+			connection.release(rs);
+		}
+		return map;
+	}
+
+	/** @return a new map from the values of <code>map</code> to its keys */
+	private static Map<String, Integer> invert(final Map<Integer, String> map) {
+		Map<String, Integer> inverted = new HashMap<String, Integer>();
+		for (Map.Entry<Integer, String> entry : map.entrySet()) {
+			inverted.put(entry.getValue(), entry.getKey());
+		}
+		return inverted;
+	}
+}
@@ -0,0 +1,222 @@
+/**
+ * Copyright (C) 2015 Johannes Schnatterer
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package info.schnatterer.songbirddbapi4j.domain.util;
+
+import info.schnatterer.songbirddbapi4j.domain.MediaItem;
+import info.schnatterer.songbirddbapi4j.domain.Property;
+import info.schnatterer.songbirddbapi4j.domain.SongbirdDbMetadata;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+/**
+ * Indexes a collection of {@link MediaItem}s (e.g. all tracks) for fast
+ * lookups: By content URL in constant time, by artist and album name in
+ * logarithmic time. The index is built in one pass over the items and is not
+ * updated when the items change.
+ * 
+ * Content URLs are normalized via {@link #normalizeContentUrl(String)}.
+ * Artist and album names are compared case-insensitively.
+ * 
+ * @author schnatterer
+ * 
+ */
+public class MediaItemIndex {
+
+	/** The items by their normalized content URL. */
+	private final Map<String, MediaItem> byContentUrl;
+	/** The items by their artist name, case insensitive. */
+	private final SortedMap<String, List<MediaItem>> byArtist = new TreeMap<String, List<MediaItem>>(
+			String.CASE_INSENSITIVE_ORDER);
+	/** The items by their album name, case insensitive. */
+	private final SortedMap<String, List<MediaItem>> byAlbum = new TreeMap<String, List<MediaItem>>(
+			String.CASE_INSENSITIVE_ORDER);
+
+	/**
+	 * Builds the index.
+	 * 
+	 * @param items
+	 *            the items to index
+	 */
+	public MediaItemIndex(final Collection<MediaItem> items) {
+		byContentUrl = new HashMap<String, MediaItem>(
+				(int) (items.size() / 0.75f) + 1);
+		SongbirdDbMetadata metadata = null;
+		int artistId = propertyId(metadata, Property.PROP_ARTIST_NAME);
+		int albumId = propertyId(metadata, Property.PROP_ALBUM_NAME);
+
+		for (MediaItem item : items) {
+			if (item.getMetadata() != metadata) {
+				// The items might be loaded from several databases
+				metadata = item.getMetadata();
+				artistId = propertyId(metadata, Property.PROP_ARTIST_NAME);
+				albumId = propertyId(metadata, Property.PROP_ALBUM_NAME);
+			}
+			String contentUrl = normalizeContentUrl(item.getContentUrl());
+			if (contentUrl != null && !byContentUrl.containsKey(contentUrl)) {
+				byContentUrl.put(contentUrl, item);
+			}
+			add(byArtist, item.getProperty(artistId), item);
+			add(byAlbum, item.getProperty(albumId), item);
+		}
+	}
+
+	/**
+	 * Normalizes a content URL for comparison: Removes leading and trailing
+	 * spaces and converts ASCII letters to lower case, as songbird itself
+	 * stores file URLs in lower case on case insensitive file systems. Other
+	 * characters are percent-encoded in URLs anyway.
+	 * 
+	 * This is exactly what SQLite's <code>lower(trim(content_url))</code>
+	 * does, so URLs normalized here can be compared to the database, see
+	 * <code>SongbirdDb.getPlayListIdsContaining(String)</code>.
+	 * 
+	 * @param contentUrl
+	 *            the content URL of a {@link MediaItem}
+	 * @return the normalized URL or <code>null</code> if
+	 *         <code>contentUrl</code> is <code>null</code>
+	 */
+	public static String normalizeContentUrl(final String contentUrl) {
+		if (contentUrl == null) {
+			return null;
+		}
+		int start = 0;
+		int end = contentUrl.length();
+		while (start < end && contentUrl.charAt(start) == ' ') {
+			start++;
+		}
+		while (end > start && contentUrl.charAt(end - 1) == ' ') {
+			end--;
+		}
+		char[] normalized = new char[end - start];
+		for (int i = start; i < end; i++) {
+			char c = contentUrl.charAt(i);
+			normalized[i - start] = c >= 'A' && c <= 'Z' ? (char) (c + ('a' - 'A'))
+					: c;
+		}
+		return new String(normalized);
+	}
+
+	/**
+	 * @param contentUrl
+	 *            the content URL, normalized via
+	 *            {@link #normalizeContentUrl(String)} before lookup
+	 * @return the item with this content URL (the first one, if there are
+	 *         several) or <code>null</code> if there is none
+	 */
+	public MediaItem getByContentUrl(final String contentUrl) {
+		return byContentUrl.get(normalizeContentUrl(contentUrl));
+	}
+
+	/**
+	 * @param artistName
+	 *            the name of the artist, case insensitive
+	 * @return all items of the artist, in the order they were indexed. Never
+	 *         <code>null</code>.
+	 */
+	public List<MediaItem> getByArtist(final String artistName) {
+		return get(byArtist, artistName);
+	}
+
+	/**
+	 * @param albumName
+	 *            the name of the album, case insensitive
+	 * @return all items of the album, in the order they were indexed. Never
+	 *         <code>null</code>.
+	 */
+	public List<MediaItem> getByAlbum(final String albumName) {
+		return get(byAlbum, albumName);
+	}
+
+	/**
+	 * @return all items grouped by artist name, sorted case-insensitively by
+	 *         artist name. Use e.g. {@link SortedMap#subMap(Object, Object)}
+	 *         for range queries.
+	 */
+	public SortedMap<String, List<MediaItem>> getArtists() {
+		return Collections.unmodifiableSortedMap(byArtist);
+	}
+
+	/**
+	 * @return all items grouped by album name, sorted case-insensitively by
+	 *         album name. Use e.g. {@link SortedMap#subMap(Object, Object)}
+	 *         for range queries.
+	 */
+	public SortedMap<String, List<MediaItem>> getAlbums() {
+		return Collections.unmodifiableSortedMap(byAlbum);
+	}
+
+	/**
+	 * @return the number of distinct content URLs
+	 */
+	public int size() {
+		return byContentUrl.size();
+	}
+
+	/**
+	 * @param metadata
+	 *            the mappings of the database or <code>null</code> for the
+	 *            global mappings of {@link Property}
+	 * @param property
+	 *            a property constant
+	 * @return the ID of the property or -1 if it is not contained in the
+	 *         database
+	 */
+	@SuppressWarnings("deprecation")
+	private static int propertyId(final SongbirdDbMetadata metadata,
+			final String property) {
+		if (metadata != null) {
+			return metadata.property2Id(property);
+		}
+		if (!Property.isInitialized() || !Property.containsProperty(property)) {
+			return -1;
+		}
+		return Property.property2Id(property);
+	}
+
+	/** Adds an item to the group of <code>key</code>. */
+	private static void add(final Map<String, List<MediaItem>> index,
+			final String key, final MediaItem item) {
+		if (key == null) {
+			return;
+		}
+		List<MediaItem> group = index.get(key);
+		if (group == null) {
+			group = new ArrayList<MediaItem>(1);
+			index.put(key, group);
+		}
+		group.add(item);
+	}
+
+	/** @return the (unmodifiable) group of <code>key</code>, never null. */
+	private static List<MediaItem> get(final Map<String, List<MediaItem>> index,
+			final String key) {
+		if (key == null) {
+			return Collections.emptyList();
+		}
+		List<MediaItem> group = index.get(key);
+		if (group == null) {
+			return Collections.emptyList();
+		}
+		return Collections.unmodifiableList(group);
+	}
+}
@@ -25,6 +25,10 @@ import java.util.Comparator;
  * {@link MemberMediaItem#getOridnal()}, which is a String containing numbers
  * separated by dots.
  * 
+ * The numbers of each ordinal are parsed only once, when it is set (see
+ * {@link MemberMediaItem#getOrdinalKey()}), so comparing two members does not
+ * allocate any objects.
+ * 
  * @author schnatterer
  * 
  */
@@ -55,7 +59,103 @@ public class MemberMediaItemComparator implements Comparator<MemberMediaItem> {
 	@Override
 	public int compare(final MemberMediaItem member1,
 			final MemberMediaItem member2) {
-		return compare(member1.getOridnal(), member2.getOridnal());
+		int[] key1 = member1.getOrdinalKey();
+		int[] key2 = member2.getOrdinalKey();
+		if (key1 == null || key2 == null) {
+			return compare(member1.getOridnal(), member2.getOridnal());
+		}
+
+		int compare = compare(key1, key2);
+		if (desc) {
+			compare = -compare;
+		}
+		return compare;
+	}
+
+	/**
+	 * Compares two ordinals that have been parsed by
+	 * {@link #toOrdinalKey(String)}. The result is the same as the one of
+	 * {@link #compare(String, String)} for the original strings, ignoring
+	 * {@link #isDescending()}.
+	 * 
+	 * @param key1
+	 *            the first ordinal to be compared
+	 * @param key2
+	 *            the second ordinal to be compared
+	 * @return &lt; 0 when the first argument is less than the second, 0 when
+	 *         they are equal, &gt; 0 when the first argument is greater than
+	 *         the second.
+	 */
+	public static int compare(final int[] key1, final int[] key2) {
+		int length = Math.min(key1.length, key2.length);
+		for (int i = 0; i < length; i++) {
+			if (key1[i] != key2[i]) {
+				return key1[i] < key2[i] ? -1 : 1;
+			}
+		}
+		// The shorter one is less
+		return key1.length - key2.length;
+	}
+
+	/**
+	 * Parses the numbers of an ordinal like "168.225.0.-1.0" into an array,
+	 * without creating intermediate strings.
+	 * 
+	 * Only ordinals whose numbers are written without leading zeros or plus
+	 * signs are parsed. For those, comparing the arrays results in the same
+	 * order as comparing the strings via {@link #compare(String, String)}.
+	 * 
+	 * @param ordinal
+	 *            the ordinal to parse
+	 * @return the numbers of the ordinal or <code>null</code> if
+	 *         <code>ordinal</code> is <code>null</code> or cannot be parsed
+	 */
+	public static int[] toOrdinalKey(final String ordinal) {
+		if (ordinal == null || ordinal.length() == 0) {
+			return null;
+		}
+		int length = ordinal.length();
+		int numbers = 1;
+		for (int i = 0; i < length; i++) {
+			if (ordinal.charAt(i) == SEPARATOR) {
+				numbers++;
+			}
+		}
+
+		int[] key = new int[numbers];
+		int pos = 0;
+		for (int i = 0; i < numbers; i++) {
+			boolean negative = false;
+			if (pos < length && ordinal.charAt(pos) == '-') {
+				negative = true;
+				pos++;
+			}
+			int start = pos;
+			long value = 0;
+			while (pos < length && ordinal.charAt(pos) != SEPARATOR) {
+				int digit = ordinal.charAt(pos) - '0';
+				if (digit < 0 || digit > 9) {
+					return null;
+				}
+				value = value * 10 + digit;
+				if (value > Integer.MAX_VALUE + 1L) {
+					return null;
+				}
+				pos++;
+			}
+			int digits = pos - start;
+			if (digits == 0
+					|| (digits > 1 && ordinal.charAt(start) == '0')
+					|| (negative && value == 0)
+					|| (!negative && value > Integer.MAX_VALUE)) {
+				// Empty, leading zero, "-0" or out of range
+				return null;
+			}
+			key[i] = (int) (negative ? -value : value);
+			// Skip separator
+			pos++;
+		}
+		return key;
 	}
 
 	/**
@@ -0,0 +1,123 @@
+/**
+ * Copyright (C) 2015 Johannes Schnatterer
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package info.schnatterer.songbirddbapi4j.domain.util;
+
+import info.schnatterer.songbirddbapi4j.domain.MediaItem;
+import info.schnatterer.songbirddbapi4j.domain.MemberMediaItem;
+import info.schnatterer.songbirddbapi4j.domain.SimpleMediaList;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Inverted index from tracks to the {@link SimpleMediaList}s containing them.
+ * Answers "which playlists contain this track?" in constant time, instead of
+ * scanning the members of all playlists. The index is built in one pass over
+ * the playlists and is not updated when the playlists change.
+ * 
+ * Content URLs are normalized via
+ * {@link MediaItemIndex#normalizeContentUrl(String)}.
+ * 
+ * @author schnatterer
+ * 
+ */
+public class PlayListIndex {
+
+	/** The playlists by the ID of their members. */
+	private final Map<Integer, List<SimpleMediaList>> byMemberId = new HashMap<Integer, List<SimpleMediaList>>();
+	/** The playlists by the normalized content URL of their members. */
+	private final Map<String, List<SimpleMediaList>> byContentUrl = new HashMap<String, List<SimpleMediaList>>();
+
+	/**
+	 * Builds the index.
+	 * 
+	 * @param playLists
+	 *            the playlists including their members, as returned by
+	 *            <code>SongbirdDb.getPlayLists()</code>
+	 */
+	public PlayListIndex(final Collection<SimpleMediaList> playLists) {
+		for (SimpleMediaList playList : playLists) {
+			for (MemberMediaItem member : playList.getMembers()) {
+				MediaItem item = member.getMember();
+				if (item == null) {
+					continue;
+				}
+				add(byMemberId, item.getId(), playList);
+				add(byContentUrl,
+						MediaItemIndex.normalizeContentUrl(item
+								.getContentUrl()), playList);
+			}
+		}
+	}
+
+	/**
+	 * @param mediaItemId
+	 *            the ID of a track
+	 * @return the playlists containing the track, each one only once and in
+	 *         the order they were indexed. Never <code>null</code>.
+	 */
+	public List<SimpleMediaList> getPlayListsContaining(final int mediaItemId) {
+		return get(byMemberId, mediaItemId);
+	}
+
+	/**
+	 * @param contentUrl
+	 *            the content URL of a track, normalized via
+	 *            {@link MediaItemIndex#normalizeContentUrl(String)} before
+	 *            lookup
+	 * @return the playlists containing the track, each one only once and in
+	 *         the order they were indexed. Never <code>null</code>.
+	 */
+	public List<SimpleMediaList> getPlayListsContaining(final String contentUrl) {
+		return get(byContentUrl,
+				MediaItemIndex.normalizeContentUrl(contentUrl));
+	}
+
+	/**
+	 * Adds a playlist to the group of <code>key</code>, unless it has been
+	 * added before. As the members of a playlist are added consecutively, a
+	 * playlist that contains a track several times can only be the last one
+	 * of the group.
+	 */
+	private static <K> void add(final Map<K, List<SimpleMediaList>> index,
+			final K key, final SimpleMediaList playList) {
+		if (key == null) {
+			return;
+		}
+		List<SimpleMediaList> group = index.get(key);
+		if (group == null) {
+			group = new ArrayList<SimpleMediaList>(1);
+			index.put(key, group);
+		} else if (group.get(group.size() - 1) == playList) {
+			return;
+		}
+		group.add(playList);
+	}
+
+	/** @return the (unmodifiable) group of <code>key</code>, never null. */
+	private static <K> List<SimpleMediaList> get(
+			final Map<K, List<SimpleMediaList>> index, final K key) {
+		List<SimpleMediaList> group = index.get(key);
+		if (group == null) {
+			return Collections.emptyList();
+		}
+		return Collections.unmodifiableList(group);
+	}
+}
@@ -0,0 +1,393 @@
+/**
+ * Copyright (C) 2015 Johannes Schnatterer
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package info.schnatterer.songbirddbapi4j.domain.util;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * A compact {@link Map} from property IDs to property values, as used by
+ * {@link info.schnatterer.songbirddbapi4j.domain.MediaItem}.
+ * 
+ * Instead of a hash table with boxed keys and one node per entry, the
+ * properties are stored in two parallel arrays that are sorted by ID. Use
+ * {@link #get(int)} and {@link #put(int, String)} in order to avoid boxing.
+ * Lookups are binary searches, which is as fast as hashing for the few dozen
+ * properties a media item usually has.
+ * 
+ * Numeric properties can be stored along with their decoded value via
+ * {@link #put(int, String, long)}, so {@link #getLong(int, long)} does not
+ * have to parse the value again.
+ * 
+ * Does not support <code>null</code> keys. <b>This class is not thread
+ * safe.</b>
+ * 
+ * @author schnatterer
+ * 
+ */
+public class PropertyMap extends AbstractMap<Integer, String> {
+
+	/** Initial capacity, once the first property is added. */
+	private static final int INITIAL_CAPACITY = 8;
+
+	/** Shared by all empty instances. */
+	private static final int[] EMPTY_KEYS = new int[0];
+	/** Shared by all empty instances. */
+	private static final String[] EMPTY_VALUES = new String[0];
+	/** Marks values within {@link #numbers} that have not been decoded. */
+	private static final long NOT_DECODED = Long.MIN_VALUE;
+
+	/** The property IDs, sorted ascendingly. Only the first size are used. */
+	private int[] keys = EMPTY_KEYS;
+	/** The values belonging to {@link #keys}, at the same index. */
+	private String[] values = EMPTY_VALUES;
+	/**
+	 * The decoded values belonging to {@link #keys}, at the same index, or
+	 * {@link #NOT_DECODED}. <code>null</code> until the first decoded value is
+	 * put.
+	 */
+	private long[] numbers = null;
+	/** Number of properties. */
+	private int size = 0;
+	/** Number of structural modifications, for detecting concurrent ones. */
+	private int modCount = 0;
+
+	/** Creates an empty map. */
+	public PropertyMap() {
+	}
+
+	/**
+	 * Creates a map containing all entries of another map.
+	 * 
+	 * @param map
+	 *            the entries to copy
+	 */
+	public PropertyMap(final Map<Integer, String> map) {
+		putAll(map);
+	}
+
+	/**
+	 * @param key
+	 *            the property ID
+	 * @return the value of the property or <code>null</code> if there is none
+	 */
+	public String get(final int key) {
+		int index = indexOf(key);
+		if (index < 0) {
+			return null;
+		}
+		return values[index];
+	}
+
+	/**
+	 * Sets the value of a property.
+	 * 
+	 * @param key
+	 *            the property ID
+	 * @param value
+	 *            the value of the property
+	 * @return the previous value of the property or <code>null</code> if there
+	 *         was none
+	 */
+	public String put(final int key, final String value) {
+		return put(key, value, NOT_DECODED);
+	}
+
+	/**
+	 * Sets the value of a numeric property along with its decoded value.
+	 * 
+	 * @param key
+	 *            the property ID
+	 * @param value
+	 *            the value of the property
+	 * @param number
+	 *            <code>value</code>, decoded via {@link Long#parseLong(String)}
+	 * @return the previous value of the property or <code>null</code> if there
+	 *         was none
+	 */
+	public String put(final int key, final String value, final long number) {
+		if (numbers == null && number != NOT_DECODED) {
+			numbers = new long[keys.length];
+			Arrays.fill(numbers, NOT_DECODED);
+		}
+		int index = indexOf(key);
+		if (index >= 0) {
+			String oldValue = values[index];
+			values[index] = value;
+			if (numbers != null) {
+				numbers[index] = number;
+			}
+			return oldValue;
+		}
+
+		index = -(index + 1);
+		if (size == keys.length) {
+			int capacity = keys.length == 0 ? INITIAL_CAPACITY
+					: keys.length * 2;
+			keys = Arrays.copyOf(keys, capacity);
+			values = Arrays.copyOf(values, capacity);
+			if (numbers != null) {
+				numbers = Arrays.copyOf(numbers, capacity);
+			}
+		}
+		if (index < size) {
+			System.arraycopy(keys, index, keys, index + 1, size - index);
+			System.arraycopy(values, index, values, index + 1, size - index);
+			if (numbers != null) {
+				System.arraycopy(numbers, index, numbers, index + 1, size
+						- index);
+			}
+		}
+		keys[index] = key;
+		values[index] = value;
+		if (numbers != null) {
+			numbers[index] = number;
+		}
+		size++;
+		modCount++;
+		return null;
+	}
+
+	/**
+	 * Gets the value of a numeric property without allocating. Values that
+	 * have not been decoded via {@link #put(int, String, long)} are parsed.
+	 * 
+	 * @param key
+	 *            the property ID
+	 * @param defaultValue
+	 *            returned if there is no value for the property
+	 * @return the value of the property as number or
+	 *         <code>defaultValue</code> if there is none
+	 * @throws NumberFormatException
+	 *             if the value of the property is not a number
+	 */
+	public long getLong(final int key, final long defaultValue) {
+		int index = indexOf(key);
+		if (index < 0) {
+			return defaultValue;
+		}
+		if (numbers != null && numbers[index] != NOT_DECODED) {
+			return numbers[index];
+		}
+		return Long.parseLong(values[index]);
+	}
+
+	/**
+	 * Removes a property.
+	 * 
+	 * @param key
+	 *            the property ID
+	 * @return the previous value of the property or <code>null</code> if there
+	 *         was none
+	 */
+	public String remove(final int key) {
+		int index = indexOf(key);
+		if (index < 0) {
+			return null;
+		}
+		return removeAt(index);
+	}
+
+	/**
+	 * @param key
+	 *            the property ID
+	 * @return <code>true</code> if there is a value for the property
+	 */
+	public boolean containsKey(final int key) {
+		return indexOf(key) >= 0;
+	}
+
+	/**
+	 * Shrinks the internal arrays to the number of properties. Useful after
+	 * all properties have been added.
+	 */
+	public void trimToSize() {
+		if (size < keys.length) {
+			if (size == 0) {
+				keys = EMPTY_KEYS;
+				values = EMPTY_VALUES;
+				numbers = null;
+			} else {
+				keys = Arrays.copyOf(keys, size);
+				values = Arrays.copyOf(values, size);
+				if (numbers != null) {
+					numbers = Arrays.copyOf(numbers, size);
+				}
+			}
+		}
+	}
+
+	@Override
+	public String get(final Object key) {
+		if (!(key instanceof Integer)) {
+			return null;
+		}
+		return get(((Integer) key).intValue());
+	}
+
+	@Override
+	public String put(final Integer key, final String value) {
+		return put(key.intValue(), value);
+	}
+
+	@Override
+	public String remove(final Object key) {
+		if (!(key instanceof Integer)) {
+			return null;
+		}
+		return remove(((Integer) key).intValue());
+	}
+
+	@Override
+	public boolean containsKey(final Object key) {
+		return key instanceof Integer
+				&& containsKey(((Integer) key).intValue());
+	}
+
+	@Override
+	public int size() {
+		return size;
+	}
+
+	@Override
+	public void clear() {
+		Arrays.fill(values, 0, size, null);
+		size = 0;
+		modCount++;
+	}
+
+	@Override
+	public Set<Map.Entry<Integer, String>> entrySet() {
+		return new AbstractSet<Map.Entry<Integer, String>>() {
+			@Override
+			public Iterator<Map.Entry<Integer, String>> iterator() {
+				return new EntryIterator();
+			}
+
+			@Override
+			public int size() {
+				return size;
+			}
+		};
+	}
+
+	/**
+	 * @param key
+	 *            the property ID
+	 * @return the index of the key, if found. Otherwise (-(insertion point) -
+	 *         1), see {@link Arrays#binarySearch(int[], int, int, int)}.
+	 */
+	private int indexOf(final int key) {
+		return Arrays.binarySearch(keys, 0, size, key);
+	}
+
+	/**
+	 * Removes the entry at a specific index.
+	 * 
+	 * @param index
+	 *            the index of the entry
+	 * @return the value of the removed entry
+	 */
+	private String removeAt(final int index) {
+		String oldValue = values[index];
+		int moved = size - index - 1;
+		if (moved > 0) {
+			System.arraycopy(keys, index + 1, keys, index, moved);
+			System.arraycopy(values, index + 1, values, index, moved);
+			if (numbers != null) {
+				System.arraycopy(numbers, index + 1, numbers, index, moved);
+			}
+		}
+		size--;
+		values[size] = null;
+		modCount++;
+		return oldValue;
+	}
+
+	/** Iterates over the entries in ascending order of their keys. */
+	private final class EntryIterator implements
+			Iterator<Map.Entry<Integer, String>> {
+		/** Index of the next entry. */
+		private int next = 0;
+		/** Index of the entry returned last, -1 if none or removed. */
+		private int last = -1;
+		/** Expected {@link PropertyMap#modCount}. */
+		private int expectedModCount = modCount;
+
+		@Override
+		public boolean hasNext() {
+			return next < size;
+		}
+
+		@Override
+		public Map.Entry<Integer, String> next() {
+			if (modCount != expectedModCount) {
+				throw new ConcurrentModificationException();
+			}
+			if (next >= size) {
+				throw new NoSuchElementException();
+			}
+			last = next++;
+			return new Entry(last);
+		}
+
+		@Override
+		public void remove() {
+			if (last < 0) {
+				throw new IllegalStateException();
+			}
+			if (modCount != expectedModCount) {
+				throw new ConcurrentModificationException();
+			}
+			removeAt(last);
+			next = last;
+			last = -1;
+			expectedModCount = modCount;
+		}
+	}
+
+	/** An entry that writes its value through to the map. */
+	private final class Entry extends AbstractMap.SimpleEntry<Integer, String> {
+		/** Default serial version UID. */
+		private static final long serialVersionUID = 1L;
+		/** Index of the entry within the arrays. */
+		private final int index;
+
+		/**
+		 * @param index
+		 *            index of the entry within the arrays
+		 */
+		private Entry(final int index) {
+			super(keys[index], values[index]);
+			this.index = index;
+		}
+
+		@Override
+		public String setValue(final String value) {
+			values[index] = value;
+			if (numbers != null) {
+				numbers[index] = NOT_DECODED;
+			}
+			return super.setValue(value);
+		}
+	}
+}
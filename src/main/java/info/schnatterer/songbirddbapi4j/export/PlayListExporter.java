@@ -0,0 +1,476 @@
+/**
+ * Copyright (C) 2015 Johannes Schnatterer
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package info.schnatterer.songbirddbapi4j.export;
+
+import info.schnatterer.songbirddbapi4j.SongbirdDb;
+import info.schnatterer.songbirddbapi4j.domain.MediaItem;
+import info.schnatterer.songbirddbapi4j.domain.MemberMediaItem;
+import info.schnatterer.songbirddbapi4j.domain.Property;
+import info.schnatterer.songbirddbapi4j.domain.SimpleMediaList;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CodingErrorAction;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Writes the playlists of a {@link SongbirdDb} to files, in one of the
+ * {@link PlayListFormat}s. The playlists are read and written one after
+ * another, so only the playlists that are currently written are kept in
+ * memory. Optionally, several playlists are written in parallel, see
+ * {@link #setExecutor(ExecutorService, int)}.
+ * 
+ * The content URLs of the members are converted to file paths (see
+ * {@link #toLocation(String)}), which can be remapped to another location,
+ * e.g. when the files are exported to a different machine. See
+ * {@link #addPathMapping(String, String)}.
+ * 
+ * @author schnatterer
+ * 
+ */
+public class PlayListExporter {
+	/** Size of the buffer each playlist file is written through. */
+	public static final int BUFFER_SIZE = 64 * 1024;
+	/** Characters that are replaced in the names of the playlist files. */
+	private static final String INVALID_FILE_NAME_CHARACTERS = "\\/:*?\"<>|";
+	/** Maximum length of the names of the playlist files, without extension. */
+	private static final int MAX_FILE_NAME_LENGTH = 200;
+	/** Decodes the content URLs. */
+	private static final Charset UTF_8 = Charset.forName("UTF-8");
+	/** The authority of <code>file</code> URLs that denotes the local host. */
+	private static final String LOCALHOST = "localhost";
+	/** SLF4J-Logger. */
+	private static final Logger logger = LoggerFactory
+			.getLogger(PlayListExporter.class);
+
+	/** Reads the playlists. */
+	private final SongbirdDb db;
+	/** The format to write. */
+	private PlayListFormat format = PlayListFormat.M3U8;
+	/** Path prefixes to replace, mapped to their replacements. */
+	private final Map<String, String> pathMappings = new LinkedHashMap<String, String>();
+	/** Writes the playlists in parallel, <code>null</code> if sequential. */
+	private ExecutorService executor;
+	/** The number of tasks to split the playlists into. */
+	private int parallelism = 1;
+
+	/**
+	 * @param db
+	 *            reads the playlists
+	 */
+	public PlayListExporter(final SongbirdDb db) {
+		this.db = db;
+	}
+
+	/**
+	 * Writes all playlists to a directory, one file per playlist. The files
+	 * are named after the playlists, see {@link #toFileName(String)}. Existing
+	 * files are overwritten.
+	 * 
+	 * @param directory
+	 *            the directory to write to, must exist
+	 * @param ignoreInternalPlaylists
+	 *            <code>true</code> ignores Songbird's internal playlists (all
+	 *            playlists having an mediaListType != simple)
+	 * @param skipDynamicLists
+	 *            <code>true</code> does not export songbird's "smart"
+	 *            playlists (all playlists whose name starts with "&amp;smart")
+	 * @return the files written, in the same order as
+	 *         {@link SongbirdDb#getPlaylistItems(boolean, boolean)}
+	 * @throws SQLException
+	 *             database-related exceptions
+	 * @throws IOException
+	 *             if writing a file fails
+	 */
+	public List<File> export(final File directory,
+			final boolean ignoreInternalPlaylists,
+			final boolean skipDynamicLists) throws SQLException, IOException {
+		List<MediaItem> playLists = db.getPlaylistItems(
+				ignoreInternalPlaylists, skipDynamicLists);
+		List<File> files = new ArrayList<File>(playLists.size());
+		Set<String> usedNames = new HashSet<String>();
+		for (MediaItem playList : playLists) {
+			String name = toFileName(playList
+					.getProperty(Property.PROP_MEDIA_LIST_NAME));
+			String uniqueName = name;
+			for (int i = 2; !usedNames.add(uniqueName
+					.toLowerCase(Locale.ENGLISH)); i++) {
+				uniqueName = name + " (" + i + ")";
+			}
+			files.add(new File(directory, uniqueName + "."
+					+ format.getExtension()));
+		}
+
+		int tasks = Math.min(parallelism, playLists.size());
+		if (executor == null || tasks < 2) {
+			export(playLists, files, 0, 1);
+		} else {
+			exportParallel(playLists, files, tasks);
+		}
+		return files;
+	}
+
+	/**
+	 * Writes the playlists in <code>tasks</code> parts on {@link #executor}.
+	 * 
+	 * @param playLists
+	 *            the playlists to write
+	 * @param files
+	 *            the files to write the playlists to, by index
+	 * @param tasks
+	 *            the number of parts
+	 * @throws SQLException
+	 *             database-related exceptions
+	 * @throws IOException
+	 *             if writing a file fails
+	 */
+	private void exportParallel(final List<MediaItem> playLists,
+			final List<File> files, final int tasks) throws SQLException,
+			IOException {
+		List<Future<Void>> futures = new ArrayList<Future<Void>>(tasks);
+		try {
+			for (int i = 0; i < tasks; i++) {
+				final int task = i;
+				futures.add(executor.submit(new Callable<Void>() {
+					@Override
+					public Void call() throws SQLException, IOException {
+						export(playLists, files, task, tasks);
+						return null;
+					}
+				}));
+			}
+			for (Future<Void> future : futures) {
+				future.get();
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while exporting playlists", e);
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof SQLException) {
+				throw (SQLException) e.getCause();
+			}
+			if (e.getCause() instanceof IOException) {
+				throw (IOException) e.getCause();
+			}
+			if (e.getCause() instanceof RuntimeException) {
+				throw (RuntimeException) e.getCause();
+			}
+			throw new IOException("Exporting playlists failed", e.getCause());
+		} finally {
+			for (Future<Void> future : futures) {
+				future.cancel(true);
+			}
+		}
+	}
+
+	/**
+	 * Writes every <code>step</code>th playlist, beginning at
+	 * <code>first</code>, reading its members right before writing it.
+	 * 
+	 * @param playLists
+	 *            the playlists to write
+	 * @param files
+	 *            the files to write the playlists to, by index
+	 * @param first
+	 *            the index of the first playlist to write
+	 * @param step
+	 *            the distance to the next playlist to write
+	 * @throws SQLException
+	 *             database-related exceptions
+	 * @throws IOException
+	 *             if writing a file fails
+	 */
+	private void export(final List<MediaItem> playLists,
+			final List<File> files, final int first, final int step)
+			throws SQLException, IOException {
+		for (int i = first; i < playLists.size(); i += step) {
+			if (Thread.currentThread().isInterrupted()) {
+				throw new IOException("Interrupted while exporting playlists");
+			}
+			export(db.getPlayList(playLists.get(i)), files.get(i));
+		}
+	}
+
+	/**
+	 * Writes a single playlist to a file, overwriting it if it exists.
+	 * 
+	 * @param playList
+	 *            the playlist and its members, e.g. as returned by
+	 *            {@link SongbirdDb#getPlayList(MediaItem)}
+	 * @param file
+	 *            the file to write to
+	 * @throws IOException
+	 *             if writing fails
+	 */
+	public void export(final SimpleMediaList playList, final File file)
+			throws IOException {
+		FileOutputStream out = new FileOutputStream(file);
+		try {
+			write(playList, out.getChannel());
+		} finally {
+			out.close();
+		}
+	}
+
+	/**
+	 * Writes a single playlist to a channel, through a buffer of
+	 * {@link #BUFFER_SIZE}. The channel is not closed.
+	 * 
+	 * Members whose location contains characters that cannot be encoded in
+	 * the charset of the format (e.g. Japanese file names in
+	 * {@link PlayListFormat#M3U}) are skipped with a warning, as the location
+	 * would not point to the file. Such characters are replaced by
+	 * <code>?</code> in the other fields, e.g. the title.
+	 * 
+	 * @param playList
+	 *            the playlist and its members, e.g. as returned by
+	 *            {@link SongbirdDb#getPlayList(MediaItem)}
+	 * @param channel
+	 *            the channel to write to
+	 * @throws IOException
+	 *             if writing fails
+	 */
+	public void write(final SimpleMediaList playList,
+			final WritableByteChannel channel) throws IOException {
+		Writer writer = Channels.newWriter(channel, format.getCharset()
+				.newEncoder().onMalformedInput(CodingErrorAction.REPLACE)
+				.onUnmappableCharacter(CodingErrorAction.REPLACE), BUFFER_SIZE);
+		CharsetEncoder locationEncoder = format.getCharset().newEncoder();
+		String playListName = playList.getList().getProperty(
+				Property.PROP_MEDIA_LIST_NAME);
+		format.writeHeader(writer, playListName);
+		for (MemberMediaItem member : playList.getMembers()) {
+			MediaItem item = member.getMember();
+			String location = toLocation(item.getContentUrl());
+			if (location == null) {
+				continue;
+			}
+			if (!locationEncoder.canEncode(location)) {
+				logger.warn("Skipping \"" + location + "\" in playlist \""
+						+ playListName + "\", as it cannot be encoded in "
+						+ format.getCharset() + ". Use "
+						+ PlayListFormat.M3U8 + " instead of " + format + ".");
+				continue;
+			}
+			format.writeEntry(writer, location,
+					item.getProperty(Property.PROP_ARTIST_NAME),
+					item.getProperty(Property.PROP_TRACK_NAME),
+					item.getProperty(Property.PROP_ALBUM_NAME),
+					durationMillis(item));
+		}
+		format.writeFooter(writer);
+		// Closing the writer would close the channel
+		writer.flush();
+	}
+
+	/**
+	 * Converts the content URL of a member to the location written to the
+	 * playlist files: <code>file</code> URLs are converted to decoded paths
+	 * (e.g. <code>file:///C:/My%20Music/a.mp3</code> to
+	 * <code>C:/My Music/a.mp3</code>), all other URLs are kept. The authority
+	 * <code>localhost</code> is treated like an empty one, other authorities
+	 * are converted to UNC paths (e.g. <code>file://server/share/a.mp3</code>
+	 * to <code>//server/share/a.mp3</code>). Afterwards, the first matching
+	 * mapping added via {@link #addPathMapping(String, String)} is applied.
+	 * 
+	 * @param contentUrl
+	 *            the content URL of a {@link MediaItem}
+	 * @return the location or <code>null</code> if <code>contentUrl</code> is
+	 *         <code>null</code>
+	 */
+	public String toLocation(final String contentUrl) {
+		if (contentUrl == null) {
+			return null;
+		}
+		String location = contentUrl;
+		if (location.regionMatches(true, 0, "file:", 0, "file:".length())) {
+			String path = location.substring("file:".length());
+			if (path.startsWith("//")) {
+				int pathStart = path.indexOf('/', 2);
+				if (pathStart < 0) {
+					pathStart = path.length();
+				}
+				String authority = path.substring(2, pathStart);
+				if (authority.length() == 0
+						|| authority.equalsIgnoreCase(LOCALHOST)) {
+					// i.e. file:///path or file://localhost/path
+					path = path.substring(pathStart);
+				}
+				// Otherwise keep the host as UNC path, i.e. //host/share/path
+			}
+			location = decode(path);
+			if (location.length() > 2 && location.charAt(0) == '/'
+					&& location.charAt(2) == ':') {
+				// Windows drive letter, i.e. file:///C:/path
+				location = location.substring(1);
+			}
+		}
+		for (Map.Entry<String, String> mapping : pathMappings.entrySet()) {
+			if (location.startsWith(mapping.getKey())) {
+				return mapping.getValue()
+						+ location.substring(mapping.getKey().length());
+			}
+		}
+		return location;
+	}
+
+	/**
+	 * Converts the name of a playlist to a file name without extension by
+	 * replacing characters that are invalid on common file systems.
+	 * 
+	 * @param playListName
+	 *            the name of the playlist
+	 * @return the file name
+	 */
+	public static String toFileName(final String playListName) {
+		if (playListName == null || playListName.trim().length() == 0) {
+			return "playlist";
+		}
+		String trimmed = playListName.trim();
+		StringBuilder name = new StringBuilder(Math.min(trimmed.length(),
+				MAX_FILE_NAME_LENGTH));
+		for (int i = 0; i < trimmed.length()
+				&& name.length() < MAX_FILE_NAME_LENGTH; i++) {
+			char c = trimmed.charAt(i);
+			if (c < 0x20 || INVALID_FILE_NAME_CHARACTERS.indexOf(c) >= 0
+					|| (i == 0 && c == '.')) {
+				name.append('_');
+			} else {
+				name.append(c);
+			}
+		}
+		return name.toString();
+	}
+
+	/**
+	 * @param item
+	 *            a member of a playlist
+	 * @return the duration of <code>item</code> in milliseconds or -1 if
+	 *         unknown
+	 */
+	private static long durationMillis(final MediaItem item) {
+		try {
+			long micros = item.getPropertyAsLong(Property.PROP_DURATION, -1);
+			return micros < 0 ? -1 : micros / 1000;
+		} catch (NumberFormatException e) {
+			return -1;
+		}
+	}
+
+	/**
+	 * Decodes percent-encoded UTF-8 characters. Invalid escapes are kept.
+	 * 
+	 * @param encoded
+	 *            a percent-encoded string
+	 * @return the decoded string
+	 */
+	private static String decode(final String encoded) {
+		if (encoded.indexOf('%') < 0) {
+			return encoded;
+		}
+		StringBuilder decoded = new StringBuilder(encoded.length());
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		int i = 0;
+		while (i < encoded.length()) {
+			while (i + 2 < encoded.length() && encoded.charAt(i) == '%'
+					&& Character.digit(encoded.charAt(i + 1), 16) >= 0
+					&& Character.digit(encoded.charAt(i + 2), 16) >= 0) {
+				bytes.write(Character.digit(encoded.charAt(i + 1), 16) << 4
+						| Character.digit(encoded.charAt(i + 2), 16));
+				i += 3;
+			}
+			if (bytes.size() > 0) {
+				decoded.append(new String(bytes.toByteArray(), UTF_8));
+				bytes.reset();
+			}
+			if (i < encoded.length()) {
+				decoded.append(encoded.charAt(i++));
+			}
+		}
+		return decoded.toString();
+	}
+
+	/**
+	 * Replaces the beginning of the locations written to the files, e.g.
+	 * <code>addPathMapping("C:/Music/", "/mnt/music/")</code>. The mappings
+	 * are applied in the order they have been added, only the first matching
+	 * mapping is applied.
+	 * 
+	 * @param prefix
+	 *            the beginning of the location to replace, as returned by
+	 *            {@link #toLocation(String)} without mappings
+	 * @param replacement
+	 *            replaces <code>prefix</code>
+	 */
+	public void addPathMapping(final String prefix, final String replacement) {
+		pathMappings.put(prefix, replacement);
+	}
+
+	/**
+	 * @return the format to write, {@link PlayListFormat#M3U8} by default
+	 */
+	public PlayListFormat getFormat() {
+		return format;
+	}
+
+	/**
+	 * @param newFormat
+	 *            the format to write
+	 */
+	public void setFormat(final PlayListFormat newFormat) {
+		this.format = newFormat;
+	}
+
+	/**
+	 * Makes {@link #export(File, boolean, boolean)} write several playlists
+	 * in parallel: The playlists are split up into <code>parallelism</code>
+	 * parts, each of which is written by a task running on
+	 * <code>executor</code>.
+	 * 
+	 * @param newExecutor
+	 *            executes the tasks, e.g. a fixed thread pool with
+	 *            <code>parallelism</code> threads. <code>null</code> writes
+	 *            the playlists sequentially.
+	 * @param newParallelism
+	 *            the number of tasks to split the playlists into
+	 */
+	public void setExecutor(final ExecutorService newExecutor,
+			final int newParallelism) {
+		this.executor = newExecutor;
+		this.parallelism = newParallelism;
+	}
+}
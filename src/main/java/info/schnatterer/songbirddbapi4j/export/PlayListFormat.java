@@ -0,0 +1,376 @@
+/**
+ * Copyright (C) 2015 Johannes Schnatterer
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package info.schnatterer.songbirddbapi4j.export;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.Charset;
+
+/**
+ * The file formats supported by {@link PlayListExporter}. Each format writes
+ * a header, one entry per member of the playlist and a footer.
+ * 
+ * @author schnatterer
+ * 
+ */
+public enum PlayListFormat {
+	/**
+	 * Plain M3U: One location per line, encoded in ISO-8859-1. Members whose
+	 * location cannot be encoded are skipped by {@link PlayListExporter}.
+	 */
+	M3U("m3u", "ISO-8859-1") {
+		@Override
+		void writeEntry(final Writer writer, final String location,
+				final String artist, final String title, final String album,
+				final long durationMillis) throws IOException {
+			writer.write(location);
+			writer.write(LINE_SEPARATOR);
+		}
+	},
+	/**
+	 * Extended M3U: Precedes each location by an <code>#EXTINF</code> line
+	 * containing duration, artist and title, encoded in ISO-8859-1. Members
+	 * whose location cannot be encoded are skipped, like in {@link #M3U}.
+	 */
+	EXTENDED_M3U("m3u", "ISO-8859-1") {
+		@Override
+		void writeHeader(final Writer writer, final String name)
+				throws IOException {
+			writeExtendedM3uHeader(writer);
+		}
+
+		@Override
+		void writeEntry(final Writer writer, final String location,
+				final String artist, final String title, final String album,
+				final long durationMillis) throws IOException {
+			writeExtendedM3uEntry(writer, location, artist, title,
+					durationMillis);
+		}
+	},
+	/** Extended M3U (see {@link #EXTENDED_M3U}), encoded in UTF-8. */
+	M3U8("m3u8", "UTF-8") {
+		@Override
+		void writeHeader(final Writer writer, final String name)
+				throws IOException {
+			writeExtendedM3uHeader(writer);
+		}
+
+		@Override
+		void writeEntry(final Writer writer, final String location,
+				final String artist, final String title, final String album,
+				final long durationMillis) throws IOException {
+			writeExtendedM3uEntry(writer, location, artist, title,
+					durationMillis);
+		}
+	},
+	/**
+	 * XML Shareable Playlist Format, see <a
+	 * href="http://xspf.org/spec">xspf.org</a>. The locations are written as
+	 * URIs.
+	 */
+	XSPF("xspf", "UTF-8") {
+		@Override
+		void writeHeader(final Writer writer, final String name)
+				throws IOException {
+			writer.write("<?xml version=\"1.0\" encoding=\"UTF-8\"?>");
+			writer.write(LINE_SEPARATOR);
+			writer.write("<playlist version=\"1\" xmlns=\"http://xspf.org/ns/0/\">");
+			writer.write(LINE_SEPARATOR);
+			writeXmlElement(writer, "\t", "title", name);
+			writer.write("\t<trackList>");
+			writer.write(LINE_SEPARATOR);
+		}
+
+		@Override
+		void writeEntry(final Writer writer, final String location,
+				final String artist, final String title, final String album,
+				final long durationMillis) throws IOException {
+			writer.write("\t\t<track>");
+			writer.write(LINE_SEPARATOR);
+			writeXmlElement(writer, "\t\t\t", "location", toUri(location));
+			writeXmlElement(writer, "\t\t\t", "creator", artist);
+			writeXmlElement(writer, "\t\t\t", "title", title);
+			writeXmlElement(writer, "\t\t\t", "album", album);
+			if (durationMillis >= 0) {
+				writeXmlElement(writer, "\t\t\t", "duration",
+						Long.toString(durationMillis));
+			}
+			writer.write("\t\t</track>");
+			writer.write(LINE_SEPARATOR);
+		}
+
+		@Override
+		void writeFooter(final Writer writer) throws IOException {
+			writer.write("\t</trackList>");
+			writer.write(LINE_SEPARATOR);
+			writer.write("</playlist>");
+			writer.write(LINE_SEPARATOR);
+		}
+	};
+
+	/** Separates the lines of all formats. */
+	private static final String LINE_SEPARATOR = "\n";
+	/** Characters that are not percent-encoded by {@link #toUri(String)}. */
+	private static final String URI_UNRESERVED = "abcdefghijklmnopqrstuvwxyzABCDEFGHIJKLMNOPQRSTUVWXYZ0123456789-._~/:";
+	/** Encodes the path of a URI, see {@link #toUri(String)}. */
+	private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+	/** The file extension, without dot. */
+	private final String extension;
+	/** The character encoding of the files. */
+	private final Charset charset;
+
+	/**
+	 * @param extension
+	 *            the file extension, without dot
+	 * @param charset
+	 *            the name of the character encoding of the files
+	 */
+	private PlayListFormat(final String extension, final String charset) {
+		this.extension = extension;
+		this.charset = Charset.forName(charset);
+	}
+
+	/**
+	 * @return the file extension, without dot
+	 */
+	public String getExtension() {
+		return extension;
+	}
+
+	/**
+	 * @return the character encoding of the files. Characters that cannot be
+	 *         encoded are replaced.
+	 */
+	public Charset getCharset() {
+		return charset;
+	}
+
+	/**
+	 * Writes the beginning of a playlist file. Does nothing by default.
+	 * 
+	 * @param writer
+	 *            the file to write to
+	 * @param name
+	 *            the name of the playlist
+	 * @throws IOException
+	 *             if writing fails
+	 */
+	void writeHeader(final Writer writer, final String name)
+			throws IOException {
+	}
+
+	/**
+	 * Writes a single member of a playlist.
+	 * 
+	 * @param writer
+	 *            the file to write to
+	 * @param location
+	 *            the path of the member, see
+	 *            {@link PlayListExporter#toLocation(String)}
+	 * @param artist
+	 *            the artist of the member or <code>null</code>
+	 * @param title
+	 *            the title of the member or <code>null</code>
+	 * @param album
+	 *            the album of the member or <code>null</code>
+	 * @param durationMillis
+	 *            the duration of the member in milliseconds, negative if
+	 *            unknown
+	 * @throws IOException
+	 *             if writing fails
+	 */
+	abstract void writeEntry(Writer writer, String location, String artist,
+			String title, String album, long durationMillis)
+			throws IOException;
+
+	/**
+	 * Writes the end of a playlist file. Does nothing by default.
+	 * 
+	 * @param writer
+	 *            the file to write to
+	 * @throws IOException
+	 *             if writing fails
+	 */
+	void writeFooter(final Writer writer) throws IOException {
+	}
+
+	/**
+	 * Writes the first line of an extended M3U file.
+	 * 
+	 * @param writer
+	 *            the file to write to
+	 * @throws IOException
+	 *             if writing fails
+	 */
+	private static void writeExtendedM3uHeader(final Writer writer)
+			throws IOException {
+		writer.write("#EXTM3U");
+		writer.write(LINE_SEPARATOR);
+	}
+
+	/**
+	 * Writes the <code>#EXTINF</code> line and the location of a member of an
+	 * extended M3U file.
+	 * 
+	 * @param writer
+	 *            the file to write to
+	 * @param location
+	 *            the path of the member
+	 * @param artist
+	 *            the artist of the member or <code>null</code>
+	 * @param title
+	 *            the title of the member or <code>null</code>
+	 * @param durationMillis
+	 *            the duration of the member in milliseconds, negative if
+	 *            unknown
+	 * @throws IOException
+	 *             if writing fails
+	 */
+	private static void writeExtendedM3uEntry(final Writer writer,
+			final String location, final String artist, final String title,
+			final long durationMillis) throws IOException {
+		writer.write("#EXTINF:");
+		writer.write(Long.toString(durationMillis < 0 ? -1
+				: durationMillis / 1000));
+		writer.write(',');
+		if (artist != null) {
+			writer.write(singleLine(artist));
+			writer.write(" - ");
+		}
+		if (title != null) {
+			writer.write(singleLine(title));
+		}
+		writer.write(LINE_SEPARATOR);
+		writer.write(location);
+		writer.write(LINE_SEPARATOR);
+	}
+
+	/**
+	 * @param value
+	 *            a value to write to an M3U file
+	 * @return <code>value</code> without line breaks
+	 */
+	private static String singleLine(final String value) {
+		return value.replace('\r', ' ').replace('\n', ' ');
+	}
+
+	/**
+	 * Writes an XML element on a line of its own, if its text is not
+	 * <code>null</code>.
+	 * 
+	 * @param writer
+	 *            the file to write to
+	 * @param indent
+	 *            written before the element
+	 * @param element
+	 *            the name of the element
+	 * @param text
+	 *            the text of the element, is escaped
+	 * @throws IOException
+	 *             if writing fails
+	 */
+	private static void writeXmlElement(final Writer writer,
+			final String indent, final String element, final String text)
+			throws IOException {
+		if (text == null) {
+			return;
+		}
+		writer.write(indent);
+		writer.write('<');
+		writer.write(element);
+		writer.write('>');
+		for (int i = 0; i < text.length(); i++) {
+			char c = text.charAt(i);
+			switch (c) {
+			case '<':
+				writer.write("&lt;");
+				break;
+			case '>':
+				writer.write("&gt;");
+				break;
+			case '&':
+				writer.write("&amp;");
+				break;
+			default:
+				if (c >= 0x20 || c == '\t' || c == '\n' || c == '\r') {
+					writer.write(c);
+				}
+				// Other control characters are not allowed in XML 1.0
+			}
+		}
+		writer.write("</");
+		writer.write(element);
+		writer.write('>');
+		writer.write(LINE_SEPARATOR);
+	}
+
+	/**
+	 * Converts a location to a URI as required by XSPF: Absolute paths are
+	 * converted to percent-encoded <code>file</code> URIs, UNC paths (e.g.
+	 * <code>//server/share/a.mp3</code>) to URIs with the server as authority.
+	 * Locations that are URIs already (e.g. <code>http://</code>) are kept.
+	 * 
+	 * @param location
+	 *            the path of the member, see
+	 *            {@link PlayListExporter#toLocation(String)}
+	 * @return the URI
+	 */
+	static String toUri(final String location) {
+		String path = location.replace('\\', '/');
+		boolean windowsPath = path.length() > 2 && path.charAt(1) == ':'
+				&& path.charAt(2) == '/';
+		if (!windowsPath && !path.startsWith("/")) {
+			// A URI or a relative path
+			return location.indexOf("://") > 0 ? location : encode(path);
+		}
+		if (path.startsWith("//")) {
+			// UNC path, i.e. file://host/share/path
+			return "file:" + encode(path);
+		}
+		return (windowsPath ? "file:///" : "file://") + encode(path);
+	}
+
+	/**
+	 * @param path
+	 *            a path using slashes as separators
+	 * @return <code>path</code> with all characters but
+	 *         {@link #URI_UNRESERVED} percent-encoded as UTF-8
+	 */
+	private static String encode(final String path) {
+		StringBuilder uri = new StringBuilder(path.length() + 16);
+		for (int i = 0; i < path.length(); i++) {
+			char c = path.charAt(i);
+			if (URI_UNRESERVED.indexOf(c) >= 0) {
+				uri.append(c);
+				continue;
+			}
+			int end = i + 1;
+			if (Character.isHighSurrogate(c) && end < path.length()) {
+				end++;
+			}
+			for (byte b : path.substring(i, end).getBytes(UTF_8)) {
+				uri.append('%');
+				uri.append(Character.toUpperCase(Character.forDigit(
+						(b >> 4) & 0xF, 16)));
+				uri.append(Character.toUpperCase(Character.forDigit(b & 0xF,
+						16)));
+			}
+			i = end - 1;
+		}
+		return uri.toString();
+	}
+}
@@ -0,0 +1,98 @@
+/**
+ * Copyright (C) 2015 Johannes Schnatterer
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package info.schnatterer.songbirddbapi4j;
+
+import static org.junit.Assert.*;
+
+import info.schnatterer.songbirddbapi4j.domain.MediaItem;
+import info.schnatterer.songbirddbapi4j.domain.Property;
+
+import java.io.File;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class PropertyValueDictionaryTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void testSharedBetweenDatabases() throws Exception {
+		SongbirdDbGenerator generator = new SongbirdDbGenerator();
+		generator.setTracks(200);
+		generator.setPlayLists(1);
+		File file1 = folder.newFile();
+		generator.generate(file1);
+		// Same content, but the track name has the ID of the artist in db1
+		generator.setFirstPropertyId(2);
+		File file2 = folder.newFile();
+		generator.generate(file2);
+		SongbirdDb db1 = new SongbirdDb(file1.getAbsolutePath());
+		SongbirdDb db2 = new SongbirdDb(file2.getAbsolutePath());
+		try {
+			assertEquals(
+					db1.getMetadata().property2Id(Property.PROP_ARTIST_NAME),
+					db2.getMetadata().property2Id(Property.PROP_TRACK_NAME));
+
+			PropertyValueDictionary dictionary = db1
+					.createValueDictionary(Property.PROP_ARTIST_NAME);
+			assertTrue(dictionary.isEnabled(Property.PROP_ARTIST_NAME));
+			assertFalse(dictionary.isEnabled(Property.PROP_TRACK_NAME));
+			db1.setValueDictionary(dictionary);
+			db2.setValueDictionary(dictionary);
+			List<MediaItem> tracks1 = db1.getAllTracks();
+			List<MediaItem> tracks2 = db2.getAllTracks();
+
+			Set<String> artists = new HashSet<String>();
+			for (int i = 0; i < tracks1.size(); i++) {
+				MediaItem track1 = tracks1.get(i);
+				MediaItem track2 = tracks2.get(i);
+				artists.add(track1.getProperty(Property.PROP_ARTIST_NAME));
+				assertSame(track1.getProperty(Property.PROP_ARTIST_NAME),
+						track2.getProperty(Property.PROP_ARTIST_NAME));
+				String name1 = track1.getProperty(Property.PROP_TRACK_NAME);
+				String name2 = track2.getProperty(Property.PROP_TRACK_NAME);
+				assertEquals(name1, name2);
+				assertNotSame(name1, name2);
+			}
+			assertEquals(artists.size(), dictionary.getDistinctValues());
+			assertEquals(2 * tracks1.size() - artists.size(),
+					dictionary.getDeduplicatedValues());
+			assertTrue(dictionary.getSavedBytes() > 0);
+
+			// Net of the heap used by the dictionary
+			PropertyValueDictionary unique = db1
+					.createValueDictionary(Property.PROP_ARTIST_NAME);
+			int artistId = db1.getMetadata().property2Id(
+					Property.PROP_ARTIST_NAME);
+			unique.canonicalize(db1.getMetadata(), artistId, "Artist");
+			long entrySize = -unique.getSavedBytes();
+			assertTrue(entrySize > 0);
+			unique.canonicalize(db1.getMetadata(), artistId, new String(
+					"Artist"));
+			assertEquals(PropertyValueDictionary.estimateSize("Artist")
+					- entrySize, unique.getSavedBytes());
+		} finally {
+			db1.close();
+			db2.close();
+		}
+	}
+}
@@ -0,0 +1,543 @@
+/**
+ * Copyright (C) 2015 Johannes Schnatterer
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package info.schnatterer.songbirddbapi4j;
+
+import info.schnatterer.songbirddbapi4j.domain.Property;
+
+import java.io.File;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * Creates synthetic songbird databases, e.g. for testing at scale without a
+ * real user's songbird profile. The content is derived from a seed, so
+ * databases created with the same settings are identical.
+ * 
+ * The database contains
+ * <ul>
+ * <li>{@link #setTracks(int)} tracks (media items with is_list = 0) with
+ * {@link #setPropertiesPerTrack(int)} properties each,</li>
+ * <li>{@link #setPlayLists(int)} simple playlists with
+ * {@link #setMembersPerPlayList(int)} members each, picked randomly from the
+ * tracks. The ordinals of the members consist of up to
+ * {@link #setOrdinalDepth(int)} dot-separated numbers and ascend in the order
+ * the members were generated.</li>
+ * </ul>
+ * The IDs of the tracks are <code>1..tracks</code>, the ones of the playlists
+ * follow.
+ * 
+ * In order to resemble real libraries, fractions of the items can be varied
+ * (all 0 by default): playlists with a list type other than "simple"
+ * ({@link #setListTypeRatio(double)}), dynamic playlists
+ * ({@link #setSmartNameRatio(double)}), playlists without a name
+ * ({@link #setUnnamedRatio(double)}), tracks that duplicate the previous one
+ * ({@link #setDuplicateRatio(double)}), tracks with an empty title
+ * ({@link #setEmptyTitleRatio(double)}) and tracks with a
+ * {@link Property#PROP_DURATION} ({@link #setDurationRatio(double)}). These
+ * are drawn from a random sequence of their own, so the other content does
+ * not change when varying them.
+ * 
+ * @author schnatterer
+ * 
+ */
+public class SongbirdDbGenerator {
+
+	/** The subset of songbird's schema that is read by songbirdDbApi4j. */
+	private static final String[] SCHEMA = {
+			"create table media_list_types (media_list_type_id integer primary key autoincrement, "
+					+ "type text unique not null, factory_contractid text not null)",
+			"create table properties (property_id integer primary key autoincrement, "
+					+ "property_name text not null unique)",
+			"create table media_items (media_item_id integer primary key autoincrement, "
+					+ "guid text unique not null, created integer not null, updated integer not null, "
+					+ "content_url text not null, content_mime_type text, content_length integer, "
+					+ "content_hash text, hidden integer not null, media_list_type_id integer, "
+					+ "is_list integer not null default 0)",
+			"create table resource_properties (media_item_id integer not null, "
+					+ "property_id integer not null, obj text not null, obj_searchable text, "
+					+ "obj_sortable text, primary key (media_item_id, property_id))",
+			"create table simple_media_lists (media_item_id integer not null, "
+					+ "member_media_item_id integer not null, ordinal text not null)",
+			"create index idx_simple_media_lists_media_item_id_member_media_item_id "
+					+ "on simple_media_lists (media_item_id, member_media_item_id, ordinal)",
+			"create index idx_simple_media_lists_member_media_item_id "
+					+ "on simple_media_lists (member_media_item_id)",
+			"create index idx_media_items_content_url on media_items (content_url)",
+			"create index idx_media_items_is_list on media_items (is_list)" };
+
+	/**
+	 * The properties set on tracks, in this order. If more properties per
+	 * track are requested, synthetic ones are added.
+	 */
+	private static final String[] TRACK_PROPERTIES = { Property.PROP_TRACK_NAME,
+			Property.PROP_ARTIST_NAME, Property.PROP_ALBUM_NAME,
+			Property.PROP_RATING, Property.PROP_PLAY_COUNT,
+			Property.PROP_LAST_PLAY_TIME, Property.PROP_SKIP_COUNT,
+			Property.PROP_LAST_SKIP_TIME };
+
+	/** Prefix of the properties that are added to {@link #TRACK_PROPERTIES}. */
+	public static final String PROP_SYNTHETIC_PREFIX = "http://songbirdnest.com/data/1.0#synthetic";
+
+	/** The list types, in the order of their IDs. */
+	private static final String[] LIST_TYPES = { "simple", "smart",
+			"dynamic" };
+
+	/** Number of rows inserted per batch. */
+	private static final int BATCH_SIZE = 10000;
+
+	/** Base of the timestamps (created, updated, lastPlayTime, etc.). */
+	private static final long NOW = 1400000000000L;
+
+	private int tracks = 1000;
+	private int propertiesPerTrack = 5;
+	private int playLists = 10;
+	private int membersPerPlayList = 100;
+	private int ordinalDepth = 1;
+	private int valueCardinality = 100;
+	private long seed = 42;
+	private int firstPropertyId = 1;
+	private double listTypeRatio = 0;
+	private double smartNameRatio = 0;
+	private double unnamedRatio = 0;
+	private double duplicateRatio = 0;
+	private double emptyTitleRatio = 0;
+	private double durationRatio = 0;
+
+	/**
+	 * Creates a database. Overwrites <code>db</code> if it exists.
+	 * 
+	 * @param db
+	 *            the database file to create
+	 * @throws SQLException
+	 *             database-related exceptions
+	 */
+	public void generate(final File db) throws SQLException {
+		if (db.exists() && !db.delete()) {
+			throw new IllegalStateException("Unable to delete " + db);
+		}
+		try {
+			Class.forName("org.sqlite.JDBC");
+		} catch (ClassNotFoundException e) {
+			throw new IllegalStateException(e);
+		}
+		Connection connection = DriverManager.getConnection("jdbc:sqlite:"
+				+ db.getAbsolutePath());
+		try {
+			connection.setAutoCommit(false);
+			Random random = new Random(seed);
+			Random variety = new Random(seed + 1);
+			createSchema(connection);
+			insertTracks(connection, random, variety);
+			insertPlayLists(connection, random, variety);
+			connection.commit();
+		} finally {
+			connection.close();
+		}
+	}
+
+	/**
+	 * Creates the tables, list types and properties. The ID of a property is
+	 * its index in {@link #getPropertyNames()} + {@link #firstPropertyId}.
+	 */
+	private void createSchema(final Connection connection) throws SQLException {
+		Statement statement = connection.createStatement();
+		try {
+			for (String sql : SCHEMA) {
+				statement.executeUpdate(sql);
+			}
+		} finally {
+			statement.close();
+		}
+
+		PreparedStatement insertListType = connection
+				.prepareStatement("insert into media_list_types (media_list_type_id, type, factory_contractid) values (?, ?, ?)");
+		try {
+			for (int i = 0; i < LIST_TYPES.length; i++) {
+				insertListType.setInt(1, i + 1);
+				insertListType.setString(2, LIST_TYPES[i]);
+				insertListType.setString(3, "@songbirdnest.com/Songbird/Local/"
+						+ LIST_TYPES[i] + "MediaList;1");
+				insertListType.executeUpdate();
+			}
+		} finally {
+			insertListType.close();
+		}
+
+		PreparedStatement insertProperty = connection
+				.prepareStatement("insert into properties (property_id, property_name) values (?, ?)");
+		try {
+			String[] propertyNames = getPropertyNames();
+			for (int i = 0; i < propertyNames.length; i++) {
+				insertProperty.setInt(1, i + firstPropertyId);
+				insertProperty.setString(2, propertyNames[i]);
+				insertProperty.executeUpdate();
+			}
+		} finally {
+			insertProperty.close();
+		}
+	}
+
+	/**
+	 * @return the names of all properties in the database:
+	 *         {@link Property#PROP_MEDIA_LIST_NAME} and
+	 *         {@link Property#PROP_CUSTOM_TYPE}, followed by the ones of the
+	 *         tracks. So the IDs of the properties are the same in all
+	 *         generated databases with the same
+	 *         {@link #setFirstPropertyId(int)}, regardless of the number of
+	 *         properties per track. {@link Property#PROP_DURATION} is appended
+	 *         if {@link #setDurationRatio(double)} is set.
+	 */
+	public String[] getPropertyNames() {
+		int trackProperties = Math.max(propertiesPerTrack,
+				TRACK_PROPERTIES.length);
+		String[] propertyNames = new String[trackProperties
+				+ (durationRatio > 0 ? 3 : 2)];
+		propertyNames[0] = Property.PROP_MEDIA_LIST_NAME;
+		propertyNames[1] = Property.PROP_CUSTOM_TYPE;
+		if (durationRatio > 0) {
+			propertyNames[propertyNames.length - 1] = Property.PROP_DURATION;
+		}
+		for (int i = 0; i < trackProperties; i++) {
+			if (i < TRACK_PROPERTIES.length) {
+				propertyNames[i + 2] = TRACK_PROPERTIES[i];
+			} else {
+				propertyNames[i + 2] = PROP_SYNTHETIC_PREFIX
+						+ (i - TRACK_PROPERTIES.length);
+			}
+		}
+		return propertyNames;
+	}
+
+	/**
+	 * Inserts the tracks and their properties. <code>variety</code> decides
+	 * which tracks are duplicates, have an empty title or a duration.
+	 */
+	private void insertTracks(final Connection connection,
+			final Random random, final Random variety) throws SQLException {
+		int durationId = getPropertyNames().length - 1 + firstPropertyId;
+		PreparedStatement insertItem = connection
+				.prepareStatement("insert into media_items (media_item_id, guid, created, updated, "
+						+ "content_url, content_length, hidden, is_list) values (?, ?, ?, ?, ?, ?, 0, 0)");
+		PreparedStatement insertValue = connection
+				.prepareStatement("insert into resource_properties (media_item_id, property_id, obj) values (?, ?, ?)");
+		try {
+			int rows = 0;
+			String previousUrl = null;
+			String[] previousTags = new String[3];
+			for (int id = 1; id <= tracks; id++) {
+				long created = NOW - (long) random.nextInt(Integer.MAX_VALUE);
+				String url = "file:///c:/music/" + value(random, "artist") + "/"
+						+ value(random, "album") + "/track" + id + ".mp3";
+				boolean duplicate = previousUrl != null
+						&& variety.nextDouble() < duplicateRatio;
+				if (duplicate) {
+					// Same file and tags, as if imported twice
+					url = previousUrl.toUpperCase(Locale.ENGLISH);
+				}
+				insertItem.setInt(1, id);
+				insertItem.setString(2, "track-" + id);
+				insertItem.setLong(3, created);
+				insertItem.setLong(4, created + random.nextInt(Integer.MAX_VALUE));
+				insertItem.setString(5, url);
+				insertItem.setLong(6, 1000000 + random.nextInt(10000000));
+				insertItem.addBatch();
+
+				boolean emptyTitle = variety.nextDouble() < emptyTitleRatio;
+				for (int p = 0; p < propertiesPerTrack; p++) {
+					String value = propertyValue(random, id, p);
+					if (p < previousTags.length) {
+						if (duplicate) {
+							value = previousTags[p];
+						} else if (p == 0 && emptyTitle) {
+							value = "";
+						}
+						previousTags[p] = value;
+					}
+					insertValue.setInt(1, id);
+					insertValue.setInt(2, p + firstPropertyId + 2);
+					insertValue.setString(3, value);
+					insertValue.addBatch();
+				}
+				rows += 1 + propertiesPerTrack;
+				if (variety.nextDouble() < durationRatio) {
+					insertValue.setInt(1, id);
+					insertValue.setInt(2, durationId);
+					// Microseconds, 1 to 10 minutes
+					insertValue.setString(3, String.valueOf(
+							(60 + variety.nextInt(540)) * 1000000L));
+					insertValue.addBatch();
+					rows++;
+				}
+				previousUrl = url;
+				if (rows >= BATCH_SIZE) {
+					insertItem.executeBatch();
+					insertValue.executeBatch();
+					rows = 0;
+				}
+			}
+			insertItem.executeBatch();
+			insertValue.executeBatch();
+		} finally {
+			insertItem.close();
+			insertValue.close();
+		}
+	}
+
+	/**
+	 * @return the value of property <code>p</code> of {@link #TRACK_PROPERTIES}
+	 *         for track <code>id</code>
+	 */
+	private String propertyValue(final Random random, final int id,
+			final int p) {
+		switch (p) {
+		case 0:
+			return "Track " + id;
+		case 1:
+			return value(random, "Artist ");
+		case 2:
+			return value(random, "Album ");
+		case 3:
+			return String.valueOf(random.nextInt(6) * 20);
+		case 4:
+		case 6:
+			return String.valueOf(random.nextInt(valueCardinality));
+		case 5:
+		case 7:
+			return String.valueOf(NOW - random.nextInt(Integer.MAX_VALUE));
+		default:
+			return value(random, "Value " + p + " ");
+		}
+	}
+
+	/** @return one of {@link #valueCardinality} values */
+	private String value(final Random random, final String prefix) {
+		return prefix + random.nextInt(valueCardinality);
+	}
+
+	/**
+	 * Inserts the playlists, their properties and their members.
+	 * <code>variety</code> decides which playlists have another list type, a
+	 * dynamic name or no name.
+	 */
+	private void insertPlayLists(final Connection connection,
+			final Random random, final Random variety) throws SQLException {
+		int listNameId = firstPropertyId;
+		PreparedStatement insertItem = connection
+				.prepareStatement("insert into media_items (media_item_id, guid, created, updated, "
+						+ "content_url, hidden, media_list_type_id, is_list) values (?, ?, ?, ?, ?, 0, ?, 1)");
+		PreparedStatement insertValue = connection
+				.prepareStatement("insert into resource_properties (media_item_id, property_id, obj) values (?, ?, ?)");
+		PreparedStatement insertMember = connection
+				.prepareStatement("insert into simple_media_lists (media_item_id, member_media_item_id, ordinal) values (?, ?, ?)");
+		try {
+			int rows = 0;
+			for (int i = 0; i < playLists; i++) {
+				int id = tracks + 1 + i;
+				// Internal lists, e.g. downloads, have the type as custom type
+				int listType = 0;
+				if (variety.nextDouble() < listTypeRatio) {
+					listType = 1 + variety.nextInt(LIST_TYPES.length - 1);
+				}
+				String name = "Playlist " + i;
+				if (variety.nextDouble() < smartNameRatio) {
+					name = "&smart:" + name;
+				}
+				if (variety.nextDouble() < unnamedRatio) {
+					name = null;
+				}
+				insertItem.setInt(1, id);
+				insertItem.setString(2, "list-" + id);
+				insertItem.setLong(3, NOW);
+				insertItem.setLong(4, NOW);
+				insertItem.setString(5, "songbird-medialist://" + id);
+				insertItem.setInt(6, listType + 1);
+				insertItem.executeUpdate();
+
+				if (name != null) {
+					insertValue.setInt(1, id);
+					insertValue.setInt(2, listNameId);
+					insertValue.setString(3, name);
+					insertValue.addBatch();
+				}
+				insertValue.setInt(1, id);
+				insertValue.setInt(2, listNameId + 1);
+				insertValue.setString(3, LIST_TYPES[listType]);
+				insertValue.addBatch();
+
+				for (int m = 0; m < membersPerPlayList && tracks > 0; m++) {
+					insertMember.setInt(1, id);
+					insertMember.setInt(2, 1 + random.nextInt(tracks));
+					insertMember.setString(3, ordinal(random, m));
+					insertMember.addBatch();
+					if (++rows >= BATCH_SIZE) {
+						insertMember.executeBatch();
+						rows = 0;
+					}
+				}
+			}
+			insertValue.executeBatch();
+			insertMember.executeBatch();
+		} finally {
+			insertItem.close();
+			insertValue.close();
+			insertMember.close();
+		}
+	}
+
+	/**
+	 * @return the ordinal of the <code>index</code>th member: The index,
+	 *         followed by up to {@link #ordinalDepth} - 1 random numbers, so
+	 *         that the ordinals ascend with the index.
+	 */
+	private String ordinal(final Random random, final int index) {
+		StringBuilder ordinal = new StringBuilder(String.valueOf(index));
+		int depth = ordinalDepth > 1 ? 1 + random.nextInt(ordinalDepth) : 1;
+		for (int i = 1; i < depth; i++) {
+			ordinal.append('.').append(random.nextInt(10));
+		}
+		return ordinal.toString();
+	}
+
+	/**
+	 * @param newTracks
+	 *            number of tracks. Default: 1000.
+	 */
+	public void setTracks(final int newTracks) {
+		this.tracks = newTracks;
+	}
+
+	/**
+	 * @param newPropertiesPerTrack
+	 *            number of properties set on each track. Default: 5.
+	 */
+	public void setPropertiesPerTrack(final int newPropertiesPerTrack) {
+		this.propertiesPerTrack = newPropertiesPerTrack;
+	}
+
+	/**
+	 * @param newPlayLists
+	 *            number of simple playlists. Default: 10.
+	 */
+	public void setPlayLists(final int newPlayLists) {
+		this.playLists = newPlayLists;
+	}
+
+	/**
+	 * @param newMembersPerPlayList
+	 *            number of members of each playlist. Default: 100.
+	 */
+	public void setMembersPerPlayList(final int newMembersPerPlayList) {
+		this.membersPerPlayList = newMembersPerPlayList;
+	}
+
+	/**
+	 * @param newOrdinalDepth
+	 *            maximum number of dot-separated numbers in an ordinal.
+	 *            Default: 1.
+	 */
+	public void setOrdinalDepth(final int newOrdinalDepth) {
+		this.ordinalDepth = newOrdinalDepth;
+	}
+
+	/**
+	 * @param newValueCardinality
+	 *            number of distinct values of properties like artist and
+	 *            album. Default: 100.
+	 */
+	public void setValueCardinality(final int newValueCardinality) {
+		this.valueCardinality = newValueCardinality;
+	}
+
+	/**
+	 * @param newSeed
+	 *            the seed of the random content. Default: 42.
+	 */
+	public void setSeed(final long newSeed) {
+		this.seed = newSeed;
+	}
+
+	/**
+	 * @param newListTypeRatio
+	 *            fraction of the playlists whose list type (and custom type)
+	 *            is "smart" or "dynamic" instead of "simple", like songbird's
+	 *            internal lists. Default: 0.
+	 */
+	public void setListTypeRatio(final double newListTypeRatio) {
+		this.listTypeRatio = newListTypeRatio;
+	}
+
+	/**
+	 * @param newSmartNameRatio
+	 *            fraction of the playlists whose name starts with "&amp;smart:",
+	 *            like songbird's dynamic playlists. Default: 0.
+	 */
+	public void setSmartNameRatio(final double newSmartNameRatio) {
+		this.smartNameRatio = newSmartNameRatio;
+	}
+
+	/**
+	 * @param newUnnamedRatio
+	 *            fraction of the playlists without
+	 *            {@link Property#PROP_MEDIA_LIST_NAME}. Default: 0.
+	 */
+	public void setUnnamedRatio(final double newUnnamedRatio) {
+		this.unnamedRatio = newUnnamedRatio;
+	}
+
+	/**
+	 * @param newDuplicateRatio
+	 *            fraction of the tracks that have the upper-cased content URL
+	 *            and the title, artist and album of the previous track.
+	 *            Default: 0.
+	 */
+	public void setDuplicateRatio(final double newDuplicateRatio) {
+		this.duplicateRatio = newDuplicateRatio;
+	}
+
+	/**
+	 * @param newEmptyTitleRatio
+	 *            fraction of the tracks whose {@link Property#PROP_TRACK_NAME}
+	 *            is an empty string. Default: 0.
+	 */
+	public void setEmptyTitleRatio(final double newEmptyTitleRatio) {
+		this.emptyTitleRatio = newEmptyTitleRatio;
+	}
+
+	/**
+	 * @param newDurationRatio
+	 *            fraction of the tracks that have a
+	 *            {@link Property#PROP_DURATION}. If greater than 0, the
+	 *            property is added to {@link #getPropertyNames()}. Default: 0.
+	 */
+	public void setDurationRatio(final double newDurationRatio) {
+		this.durationRatio = newDurationRatio;
+	}
+
+	/**
+	 * @param newFirstPropertyId
+	 *            the ID of the first property of {@link #getPropertyNames()}.
+	 *            Changing it simulates databases whose properties have
+	 *            different IDs. Default: 1.
+	 */
+	public void setFirstPropertyId(final int newFirstPropertyId) {
+		this.firstPropertyId = newFirstPropertyId;
+	}
+}
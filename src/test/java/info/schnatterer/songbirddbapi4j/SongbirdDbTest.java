@@ -0,0 +1,1164 @@
+/**
+ * Copyright (C) 2015 Johannes Schnatterer
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package info.schnatterer.songbirddbapi4j;
+
+import static org.junit.Assert.*;
+
+import info.schnatterer.songbirddbapi4j.domain.DuplicateGroup;
+import info.schnatterer.songbirddbapi4j.domain.LibrarySummary;
+import info.schnatterer.songbirddbapi4j.domain.MediaItem;
+import info.schnatterer.songbirddbapi4j.domain.MediaListTypes;
+import info.schnatterer.songbirddbapi4j.domain.MemberMediaItem;
+import info.schnatterer.songbirddbapi4j.domain.Property;
+import info.schnatterer.songbirddbapi4j.domain.PropertyStatistics;
+import info.schnatterer.songbirddbapi4j.domain.PropertyValueStatistics;
+import info.schnatterer.songbirddbapi4j.domain.SimpleMediaList;
+import info.schnatterer.songbirddbapi4j.domain.util.PlayListIndex;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Runs {@link SongbirdDb} against databases created by
+ * {@link SongbirdDbGenerator}.
+ */
+public class SongbirdDbTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void testLoadGeneratedDb() throws Exception {
+		SongbirdDbGenerator generator = new SongbirdDbGenerator();
+		generator.setTracks(300);
+		generator.setPropertiesPerTrack(10);
+		generator.setPlayLists(7);
+		generator.setMembersPerPlayList(40);
+		generator.setOrdinalDepth(3);
+		SongbirdDb db = open(generator);
+		try {
+			List<MediaItem> tracks = db.getAllTracks();
+			assertEquals(300, tracks.size());
+			assertEquals(10, tracks.get(0).getProperties().size());
+			assertEquals("Track 1",
+					tracks.get(0).getProperty(Property.PROP_TRACK_NAME));
+
+			List<SimpleMediaList> playLists = db.getPlayLists(false, false);
+			assertEquals(7, playLists.size());
+			for (SimpleMediaList playList : playLists) {
+				List<MemberMediaItem> members = playList.getMembers();
+				assertEquals(40, members.size());
+				for (int i = 0; i < members.size(); i++) {
+					// The generated ordinals start with the index of the member
+					assertTrue(members.get(i).getOridnal(), members.get(i)
+							.getOridnal().matches(i + "(\\..*)?"));
+				}
+
+				int memberId = members.get(0).getMember().getId();
+				Set<Integer> containing = db
+						.getPlayListIdsContaining(memberId);
+				assertTrue(containing.contains(playList.getList().getId()));
+			}
+		} finally {
+			db.close();
+		}
+	}
+
+	@Test
+	public void testGeneratorIsDeterministic() throws Exception {
+		SongbirdDbGenerator generator = new SongbirdDbGenerator();
+		generator.setTracks(50);
+		generator.setPlayLists(2);
+		generator.setMembersPerPlayList(10);
+		generator.setSeed(7);
+
+		SongbirdDb db1 = open(generator);
+		SongbirdDb db2 = open(generator);
+		try {
+			assertEquals(db1.getAllTracks().toString(), db2.getAllTracks()
+					.toString());
+			assertEquals(toString(db1.getPlayLists(false, false)),
+					toString(db2.getPlayLists(false, false)));
+		} finally {
+			db1.close();
+			db2.close();
+		}
+	}
+
+	@Test
+	public void testGeneratorVariety() throws Exception {
+		SongbirdDbGenerator generator = new SongbirdDbGenerator();
+		generator.setTracks(200);
+		generator.setPlayLists(40);
+		generator.setMembersPerPlayList(5);
+		SongbirdDb plain = open(generator);
+		generator.setListTypeRatio(0.25);
+		generator.setSmartNameRatio(0.25);
+		generator.setUnnamedRatio(0.25);
+		generator.setDuplicateRatio(0.1);
+		generator.setEmptyTitleRatio(0.1);
+		generator.setDurationRatio(0.5);
+		SongbirdDb varied = open(generator);
+		try {
+			assertFalse(plain.getMetadata().containsProperty(
+					Property.PROP_DURATION));
+			assertEquals(40, plain.getPlayLists(true, true).size());
+			assertTrue(plain.getDuplicateTracksByContentUrl().isEmpty());
+
+			// Unnamed lists are always skipped
+			int named = varied.getPlayLists(false, false).size();
+			assertTrue(named > 0 && named < 40);
+			assertTrue(varied.getPlayLists(true, false).size() < named);
+			assertTrue(varied.getPlayLists(false, true).size() < named);
+			assertFalse(varied.getDuplicateTracksByContentUrl().isEmpty());
+			assertFalse(varied.getDuplicateTracksByTags().isEmpty());
+			int emptyTitles = 0;
+			int durations = 0;
+			List<MediaItem> tracks = varied.getAllTracks();
+			for (MediaItem track : tracks) {
+				if ("".equals(track.getProperty(Property.PROP_TRACK_NAME))) {
+					emptyTitles++;
+				}
+				if (track.getProperty(Property.PROP_DURATION) != null) {
+					durations++;
+				}
+			}
+			assertTrue(emptyTitles > 0 && emptyTitles < tracks.size());
+			assertTrue(durations > 0 && durations < tracks.size());
+
+			// The remaining content does not change
+			assertEquals(plain.getAllTracks().get(0).getProperty(
+					Property.PROP_ARTIST_NAME), tracks.get(0).getProperty(
+					Property.PROP_ARTIST_NAME));
+		} finally {
+			plain.close();
+			varied.close();
+		}
+	}
+
+	@Test
+	public void testLazyPropertyLoading() throws Exception {
+		SongbirdDbGenerator generator = new SongbirdDbGenerator();
+		generator.setTracks(1200);
+		generator.setPlayLists(3);
+		generator.setMembersPerPlayList(300);
+		SongbirdDb db = open(generator);
+		try {
+			List<MediaItem> eagerTracks = db.getAllTracks();
+			List<SimpleMediaList> eagerPlayLists = db.getPlayLists(false,
+					false);
+
+			db.setLazyPropertyLoading(true);
+			List<MediaItem> lazyTracks = db.getAllTracks();
+			List<SimpleMediaList> lazyPlayLists = db.getPlayLists(false,
+					false);
+			MediaItem lastTrack = lazyTracks.get(lazyTracks.size() - 1);
+			assertFalse(lastTrack.isPropertiesLoaded());
+			assertEquals(eagerTracks.get(eagerTracks.size() - 1)
+					.getContentUrl(), lastTrack.getContentUrl());
+
+			assertEquals(eagerTracks.toString(), toStringLoaded(lazyTracks));
+			assertTrue(lastTrack.isPropertiesLoaded());
+			assertEquals(toString(eagerPlayLists), toString(lazyPlayLists));
+		} finally {
+			db.close();
+		}
+	}
+
+	@Test
+	public void testParallelPlayLists() throws Exception {
+		SongbirdDbGenerator generator = new SongbirdDbGenerator();
+		generator.setTracks(500);
+		generator.setPlayLists(7);
+		generator.setMembersPerPlayList(60);
+		SongbirdDb db = open(generator);
+		ExecutorService executor = Executors.newFixedThreadPool(3);
+		try {
+			List<SimpleMediaList> sequential = db.getPlayLists(false, false);
+			for (int parallelism : new int[] { 1, 3, 16 }) {
+				List<SimpleMediaList> parallel = db.getPlayLists(false, false,
+						null, executor, parallelism);
+				assertEquals(sequential.size(), parallel.size());
+				assertEquals(toString(sequential), toString(parallel));
+			}
+		} finally {
+			executor.shutdownNow();
+			db.close();
+		}
+	}
+
+	@Test
+	public void testPlayListFilters() throws Exception {
+		SongbirdDbGenerator generator = new SongbirdDbGenerator();
+		generator.setTracks(10);
+		generator.setPlayLists(2);
+		generator.setMembersPerPlayList(3);
+		File file = folder.newFile();
+		generator.generate(file);
+		List<String> statements = new ArrayList<String>();
+		addList(statements, 20, "Downloads", "download");
+		addList(statements, 21, "&smart:Top rated", "simple");
+		addList(statements, 22, null, "simple");
+		addList(statements, 23, "No type", null);
+		addList(statements, 24, "&smart:Internal", "smart");
+		execute(file, statements.toArray(new String[statements.size()]));
+		SongbirdDb db = new SongbirdDb(file.getAbsolutePath());
+		try {
+			assertEquals(
+					"[Playlist 0, Playlist 1, Downloads, &smart:Top rated, No type, &smart:Internal]",
+					listNames(db.getPlayLists(false, false)));
+			assertEquals(
+					"[Playlist 0, Playlist 1, &smart:Top rated, No type]",
+					listNames(db.getPlayLists(true, false)));
+			assertEquals("[Playlist 0, Playlist 1, Downloads, No type]",
+					listNames(db.getPlayLists(false, true)));
+			assertEquals("[Playlist 0, Playlist 1, No type]",
+					listNames(db.getPlayLists(true, true)));
+
+			// The filters do not depend on loading the name and type
+			List<SimpleMediaList> projected = db.getPlayLists(true, true,
+					Collections.singleton(Property.PROP_TRACK_NAME));
+			List<Integer> ids = new ArrayList<Integer>();
+			for (SimpleMediaList playList : projected) {
+				ids.add(playList.getList().getId());
+			}
+			assertEquals(Arrays.asList(11, 12, 23), ids);
+		} finally {
+			db.close();
+		}
+	}
+
+	@Test
+	public void testPlayListFiltersSkipMembers() throws Exception {
+		SongbirdDbGenerator generator = new SongbirdDbGenerator();
+		generator.setTracks(10);
+		generator.setPlayLists(2);
+		generator.setMembersPerPlayList(3);
+		File file = folder.newFile();
+		generator.generate(file);
+		List<String> statements = new ArrayList<String>();
+		addList(statements, 20, "Downloads", "download");
+		addList(statements, 21, "&smart:Top rated", "simple");
+		addList(statements, 22, null, "simple");
+		addList(statements, 23, "No type", null);
+		// Every list has the same members, in reverse order of their IDs
+		for (int listId = 20; listId <= 23; listId++) {
+			for (int trackId = 1; trackId <= 5; trackId++) {
+				statements.add("insert into simple_media_lists (media_item_id, member_media_item_id, ordinal) values ("
+						+ listId + ", " + trackId + ", '" + (6 - trackId) + "')");
+			}
+		}
+		execute(file, statements.toArray(new String[statements.size()]));
+		SongbirdDb db = new SongbirdDb(file.getAbsolutePath());
+		ExecutorService executor = Executors.newSingleThreadExecutor();
+		try {
+			SongbirdDbMetrics metrics = new SongbirdDbMetrics();
+			db.setListener(metrics);
+			List<SimpleMediaList> playLists = db.getPlayLists(true, true);
+			assertEquals("[Playlist 0, Playlist 1, No type]",
+					listNames(playLists));
+			SimpleMediaList noType = playLists.get(2);
+			List<Integer> memberIds = new ArrayList<Integer>();
+			for (MemberMediaItem member : noType.getMembers()) {
+				memberIds.add(member.getMember().getId());
+			}
+			assertEquals(Arrays.asList(5, 4, 3, 2, 1), memberIds);
+			assertEquals(3, playLists.get(0).getMembers().size());
+			assertEquals(3, playLists.get(1).getMembers().size());
+
+			// The members of the other lists are not even read
+			assertEquals(rows(playLists),
+					metrics.getOperations().get("getPlayLists").getRows());
+
+			List<SimpleMediaList> sequential = db.getPlayLists(true, true,
+					null, executor, 1);
+			assertEquals(listNames(playLists), listNames(sequential));
+			assertEquals(2 * rows(playLists),
+					metrics.getOperations().get("getPlayLists").getRows());
+		} finally {
+			executor.shutdown();
+			db.close();
+		}
+	}
+
+	@Test
+	public void testGetTracksPages() throws Exception {
+		SongbirdDbGenerator generator = new SongbirdDbGenerator();
+		generator.setTracks(50);
+		generator.setPlayLists(1);
+		SongbirdDb db = open(generator);
+		try {
+			List<MediaItem> pages = new ArrayList<MediaItem>();
+			int afterId = 0;
+			List<MediaItem> page;
+			while (!(page = db.getTracks(afterId, 7)).isEmpty()) {
+				assertTrue(page.size() <= 7);
+				pages.addAll(page);
+				afterId = page.get(page.size() - 1).getId();
+			}
+			assertEquals(db.getAllTracks().toString(), pages.toString());
+		} finally {
+			db.close();
+		}
+	}
+
+	@Test
+	public void testPropertyProjection() throws Exception {
+		SongbirdDbGenerator generator = new SongbirdDbGenerator();
+		generator.setTracks(100);
+		generator.setPropertiesPerTrack(10);
+		generator.setPlayLists(3);
+		generator.setMembersPerPlayList(20);
+		SongbirdDb db = open(generator);
+		try {
+			Set<String> propertyNames = new HashSet<String>(Arrays.asList(
+					Property.PROP_TRACK_NAME, Property.PROP_ARTIST_NAME));
+			List<MediaItem> allProperties = db.getAllTracks();
+			SongbirdDbMetrics metrics = new SongbirdDbMetrics();
+			db.setListener(metrics);
+			List<MediaItem> tracks = db.getAllTracks(propertyNames);
+			db.setListener(null);
+
+			assertEquals(allProperties.size(), tracks.size());
+			for (int i = 0; i < tracks.size(); i++) {
+				assertProjected(allProperties.get(i), tracks.get(i),
+						propertyNames);
+			}
+			// Only the requested properties have been read
+			assertEquals(200, metrics.getOperations().get("getAllTracks")
+					.getProperties());
+
+			// The query text does not depend on the iteration order
+			final List<String> queries = new ArrayList<String>();
+			db.setListener(new SongbirdDbMetrics() {
+				@Override
+				public void queryExecuted(final String query, final long nanos) {
+					queries.add(query);
+				}
+			});
+			db.getAllTracks(new LinkedHashSet<String>(Arrays.asList(
+					Property.PROP_TRACK_NAME, Property.PROP_ARTIST_NAME)));
+			db.getAllTracks(new LinkedHashSet<String>(Arrays.asList(
+					Property.PROP_ARTIST_NAME, Property.PROP_TRACK_NAME)));
+			db.setListener(null);
+			assertEquals(2, queries.size());
+			assertEquals(queries.get(0), queries.get(1));
+
+			MediaItemCursor cursor = db.openTrackCursor(propertyNames);
+			try {
+				int i = 0;
+				while (cursor.hasNext()) {
+					assertProjected(allProperties.get(i++), cursor.next(),
+							propertyNames);
+				}
+				assertEquals(allProperties.size(), i);
+			} finally {
+				cursor.close();
+			}
+
+			List<SimpleMediaList> playLists = db.getPlayLists(false, false,
+					propertyNames);
+			assertEquals(3, playLists.size());
+			for (SimpleMediaList playList : playLists) {
+				// The name is used for filtering, but not loaded
+				assertTrue(playList.getList().getProperties().isEmpty());
+				for (MemberMediaItem member : playList.getMembers()) {
+					MediaItem item = member.getMember();
+					assertProjected(allProperties.get(item.getId() - 1), item,
+							propertyNames);
+				}
+			}
+		} finally {
+			db.close();
+		}
+	}
+
+	@Test
+	public void testChangedSince() throws Exception {
+		SongbirdDbGenerator generator = new SongbirdDbGenerator();
+		generator.setTracks(30);
+		generator.setPlayLists(4);
+		generator.setMembersPerPlayList(10);
+		File file = folder.newFile();
+		generator.generate(file);
+		// Playlists have the IDs 31 to 34
+		execute(file, "update media_items set updated = 1000",
+				"update media_items set updated = 3000 where media_item_id in (3, 7, 32)",
+				"delete from media_items where media_item_id = 5");
+		SongbirdDb db = new SongbirdDb(file.getAbsolutePath());
+		try {
+			List<MediaItem> tracks = db.getTracksChangedSince(2000);
+			assertEquals(2, tracks.size());
+			assertEquals(Integer.valueOf(3), tracks.get(0).getId());
+			assertEquals(Integer.valueOf(7), tracks.get(1).getId());
+			assertEquals(3000, tracks.get(0).getDateUpdated().getTime());
+			assertFalse(tracks.get(0).getProperties().isEmpty());
+			assertTrue(db.getTracksChangedSince(3000).isEmpty());
+
+			Set<Integer> expected = new TreeSet<Integer>();
+			expected.add(32);
+			expected.addAll(db.getPlayListIdsContaining(3));
+			expected.addAll(db.getPlayListIdsContaining(7));
+			Map<Integer, SimpleMediaList> allPlayLists = new HashMap<Integer, SimpleMediaList>();
+			for (SimpleMediaList playList : db.getPlayLists(false, false)) {
+				allPlayLists.put(playList.getList().getId(), playList);
+			}
+			Set<Integer> changed = new TreeSet<Integer>();
+			for (SimpleMediaList playList : db.getPlayListsChangedSince(2000,
+					false, false)) {
+				changed.add(playList.getList().getId());
+				// All members are loaded, not only the changed ones
+				assertEquals(toString(Arrays.asList(allPlayLists.get(playList
+						.getList().getId()))), toString(Arrays.asList(playList)));
+			}
+			assertEquals(expected, changed);
+			assertTrue(db.getPlayListsChangedSince(3000, false, false)
+					.isEmpty());
+
+			int[] trackIds = db.getTrackIds();
+			assertEquals(29, trackIds.length);
+			assertEquals(4, trackIds[3]);
+			assertEquals(6, trackIds[4]);
+			assertArrayEquals(new int[] { 31, 32, 33, 34 }, db.getPlayListIds());
+		} finally {
+			db.close();
+		}
+	}
+
+	@Test
+	public void testPlayListsContaining() throws Exception {
+		SongbirdDbGenerator generator = new SongbirdDbGenerator();
+		generator.setTracks(20);
+		generator.setPlayLists(5);
+		generator.setMembersPerPlayList(8);
+		File file = folder.newFile();
+		generator.generate(file);
+		execute(file,
+				"update media_items set content_url = ' FILE:///Music/Track 3.MP3' where media_item_id = 3");
+		SongbirdDb db = new SongbirdDb(file.getAbsolutePath());
+		try {
+			PlayListIndex index = new PlayListIndex(db.getPlayLists(false,
+					false));
+			List<String> urls = new ArrayList<String>();
+			for (MediaItem track : db.getAllTracks()) {
+				urls.add(track.getContentUrl());
+				urls.add(track.getContentUrl().toUpperCase(Locale.ENGLISH));
+			}
+			urls.add("file:///music/track 3.mp3");
+			urls.add("file:///nowhere.mp3");
+			Map<String, Set<Integer>> containing = db
+					.getPlayListIdsContainingContentUrls(urls);
+			assertEquals(new HashSet<String>(urls), containing.keySet());
+			boolean found = false;
+			for (String url : urls) {
+				Set<Integer> ids = new TreeSet<Integer>();
+				for (SimpleMediaList playList : index
+						.getPlayListsContaining(url)) {
+					ids.add(playList.getList().getId());
+				}
+				// The database and the index agree
+				assertEquals(url, ids, containing.get(url));
+				assertEquals(url, ids, db.getPlayListIdsContaining(url));
+				found |= !ids.isEmpty();
+			}
+			assertTrue(found);
+			assertEquals(containing.get(" FILE:///Music/Track 3.MP3"),
+					containing.get("file:///music/track 3.mp3"));
+
+			// URLs that are stored exactly like this don't scan normalized
+			final List<String> queries = new ArrayList<String>();
+			db.setListener(new SongbirdDbMetrics() {
+				@Override
+				public void queryExecuted(final String query, final long nanos) {
+					super.queryExecuted(query, nanos);
+					queries.add(query);
+				}
+			});
+			assertEquals(containing.get(" FILE:///Music/Track 3.MP3"), db
+					.getPlayListIdsContaining(" FILE:///Music/Track 3.MP3"));
+			assertEquals(1, queries.size());
+			assertTrue(queries.get(0).contains("where m.content_url in"));
+			assertEquals(containing.get("file:///music/track 3.mp3"),
+					db.getPlayListIdsContaining("file:///music/track 3.mp3"));
+			assertEquals(3, queries.size());
+			db.setListener(null);
+
+			for (int id = 1; id <= 20; id++) {
+				Set<Integer> ids = new TreeSet<Integer>();
+				for (SimpleMediaList playList : index
+						.getPlayListsContaining(id)) {
+					ids.add(playList.getList().getId());
+				}
+				assertEquals(ids, db.getPlayListIdsContaining(id));
+			}
+		} finally {
+			db.close();
+		}
+	}
+
+	@Test
+	public void testMetrics() throws Exception {
+		SongbirdDbGenerator generator = new SongbirdDbGenerator();
+		generator.setTracks(20);
+		generator.setPropertiesPerTrack(3);
+		generator.setPlayLists(2);
+		generator.setMembersPerPlayList(5);
+		SongbirdDb db = open(generator);
+		try {
+			SongbirdDbMetrics metrics = new SongbirdDbMetrics();
+			db.setListener(metrics);
+			List<MediaItem> allTracks = db.getAllTracks();
+			db.getPlayLists(false, false);
+
+			// One connection per call, as connections are not kept open
+			assertEquals(3, metrics.getConnections().getCount());
+			assertEquals(3, metrics.getQueries().getCount());
+			assertEquals(2, metrics.getSorts().getCount());
+			assertEquals(10, metrics.getSortedMembers());
+			SongbirdDbMetrics.Operation tracks = metrics.getOperations().get(
+					"getAllTracks");
+			assertEquals(1, tracks.getLatency().getCount());
+			assertEquals(20, tracks.getItems());
+			assertEquals(60, tracks.getRows());
+			assertEquals(60, tracks.getProperties());
+			long bytes = 0;
+			for (MediaItem track : allTracks) {
+				bytes += track.getContentUrl().getBytes("UTF-8").length;
+				for (String value : track.getProperties().values()) {
+					bytes += value.getBytes("UTF-8").length;
+				}
+			}
+			assertEquals(bytes, tracks.getStringBytes());
+			assertEquals(12, metrics.getOperations().get("getPlayLists")
+					.getItems());
+		} finally {
+			db.close();
+		}
+	}
+
+	@Test
+	public void testUtf8Length() {
+		assertEquals(0, SongbirdDb.ItemCounter.utf8Length(null));
+		assertEquals(1 + 2 + 3 + 4,
+				SongbirdDb.ItemCounter.utf8Length("a\u00e9\u20ac\uD83C\uDFB5"));
+	}
+
+	@Test
+	@SuppressWarnings("deprecation")
+	public void testMetadataPerDb() throws Exception {
+		SongbirdDbGenerator generator = new SongbirdDbGenerator();
+		generator.setTracks(20);
+		generator.setPlayLists(2);
+		generator.setMembersPerPlayList(5);
+		SongbirdDb db1 = open(generator);
+		generator.setFirstPropertyId(101);
+		SongbirdDb db2 = open(generator);
+		try {
+			assertEquals(1, db1.getMetadata().property2Id(
+					Property.PROP_MEDIA_LIST_NAME));
+			assertEquals(101, db2.getMetadata().property2Id(
+					Property.PROP_MEDIA_LIST_NAME));
+			// Same file, same metadata
+			assertSame(db2.getMetadata(),
+					new SongbirdDb(db2.getPathToDb()).getMetadata());
+
+			for (SongbirdDb db : new SongbirdDb[] { db1, db2 }) {
+				assertEquals("Track 1", db.getAllTracks().get(0)
+						.getProperty(Property.PROP_TRACK_NAME));
+				List<SimpleMediaList> playLists = db.getPlayLists(true, true);
+				assertEquals(2, playLists.size());
+				assertEquals("Playlist 0", playLists.get(0).getList()
+						.getProperty(Property.PROP_MEDIA_LIST_NAME));
+				assertEquals("simple", playLists.get(0).getList()
+						.getListType());
+			}
+			// The global mappings are not filled from the first database
+			assertFalse(Property.isInitialized());
+			MediaItem unbound = new MediaItem();
+			unbound.setProperty(1, "value");
+			assertNull(unbound.getProperty(Property.PROP_MEDIA_LIST_NAME));
+			try {
+				Property.property2Id(Property.PROP_MEDIA_LIST_NAME);
+				fail("Expected IllegalStateException");
+			} catch (IllegalStateException e) {
+				assertTrue(e.getMessage().contains("SongbirdDb.getMetadata()"));
+			}
+			try {
+				MediaListTypes.id2ListType(1);
+				fail("Expected IllegalStateException");
+			} catch (IllegalStateException e) {
+				assertTrue(e.getMessage().contains("SongbirdDb.getMetadata()"));
+			}
+		} finally {
+			db1.close();
+			db2.close();
+		}
+	}
+
+	@Test
+	public void testNumericProperties() throws Exception {
+		SongbirdDbGenerator generator = new SongbirdDbGenerator();
+		generator.setTracks(50);
+		generator.setPropertiesPerTrack(8);
+		generator.setPlayLists(0);
+		SongbirdDb db = open(generator);
+		try {
+			for (MediaItem track : db.getAllTracks()) {
+				for (String property : new String[] { Property.PROP_RATING,
+						Property.PROP_PLAY_COUNT, Property.PROP_LAST_PLAY_TIME,
+						Property.PROP_SKIP_COUNT }) {
+					long expected = Long.parseLong(track.getProperty(property));
+					assertEquals(expected,
+							track.getPropertyAsLong(property, -1));
+					assertEquals(Long.valueOf(expected),
+							track.getPropertyAsLong(property));
+				}
+				assertEquals(
+						track.getPropertyAsLong(Property.PROP_LAST_PLAY_TIME,
+								-1), track.getPropertyAsDate(
+								Property.PROP_LAST_PLAY_TIME).getTime());
+				assertEquals(-1, track.getPropertyAsLong(
+						SongbirdDbGenerator.PROP_SYNTHETIC_PREFIX + 8, -1));
+				assertNull(track.getPropertyAsDate(Property.PROP_DURATION));
+			}
+
+			// Per instance, neither global nor for other instances
+			String name = Property.PROP_TRACK_NAME;
+			int nameId = db.getMetadata().property2Id(name);
+			assertTrue(nameId >= 0);
+			SongbirdDb other = new SongbirdDb(db.getPathToDb());
+			db.addNumericProperty(name);
+			assertTrue(db.getMetadata().isNumericProperty(nameId));
+			assertFalse(other.getMetadata().isNumericProperty(nameId));
+			assertFalse(Property.getNumericProperties().contains(name));
+			assertFalse(new SongbirdDb(db.getPathToDb()).getMetadata()
+					.isNumericProperty(nameId));
+			assertSame(db.getMetadata(), db.getAllTracks().get(0)
+					.getMetadata());
+			assertTrue(db.getMetadata().isNumericProperty(
+					db.getMetadata().property2Id(Property.PROP_RATING)));
+		} finally {
+			db.close();
+		}
+	}
+
+	@Test
+	public void testStatistics() throws Exception {
+		SongbirdDbGenerator generator = new SongbirdDbGenerator();
+		generator.setTracks(500);
+		generator.setPropertiesPerTrack(8);
+		generator.setPlayLists(3);
+		generator.setMembersPerPlayList(10);
+		generator.setValueCardinality(20);
+		SongbirdDb db = open(generator);
+		try {
+			// Aggregate in Java for comparison
+			Map<String, long[]> artists = new HashMap<String, long[]>();
+			Map<Long, Integer> ratings = new HashMap<Long, Integer>();
+			long plays = 0;
+			int rated = 0;
+			long lastPlayTime = 0;
+			for (MediaItem track : db.getAllTracks()) {
+				long playCount = track.getPropertyAsLong(
+						Property.PROP_PLAY_COUNT, 0);
+				long rating = track.getPropertyAsLong(Property.PROP_RATING, 0);
+				String artist = track.getProperty(Property.PROP_ARTIST_NAME);
+				long[] artistStats = artists.get(artist);
+				if (artistStats == null) {
+					artistStats = new long[2];
+					artists.put(artist, artistStats);
+				}
+				artistStats[0]++;
+				artistStats[1] += playCount;
+				Integer ratingCount = ratings.get(rating);
+				ratings.put(rating, ratingCount == null ? 1 : ratingCount + 1);
+				plays += playCount;
+				rated += rating > 0 ? 1 : 0;
+				lastPlayTime = Math.max(lastPlayTime, track.getPropertyAsLong(
+						Property.PROP_LAST_PLAY_TIME, 0));
+			}
+
+			SongbirdDbStatistics statistics = new SongbirdDbStatistics(db);
+			LibrarySummary summary = statistics.getSummary();
+			assertEquals(500, summary.getTrackCount());
+			assertEquals(artists.size(), summary.getArtistCount());
+			assertEquals(plays, summary.getTotalPlayCount());
+			assertEquals(rated, summary.getRatedTrackCount());
+			assertEquals(lastPlayTime, summary.getLastPlayTime().getTime());
+			assertEquals(ratings, statistics.getRatingHistogram());
+
+			List<PropertyValueStatistics> topArtists = statistics
+					.getTopArtists(5);
+			assertEquals(5, topArtists.size());
+			long previousPlays = Long.MAX_VALUE;
+			for (PropertyValueStatistics artist : topArtists) {
+				long[] expected = artists.get(artist.getValue());
+				assertEquals(expected[0], artist.getTrackCount());
+				assertEquals(expected[1], artist.getPlayCount());
+				assertTrue(artist.getPlayCount() <= previousPlays);
+				previousPlays = artist.getPlayCount();
+			}
+			List<PropertyValueStatistics> byTracks = statistics.getTopValues(
+					Property.PROP_ALBUM_NAME, false, 100);
+			assertEquals(summary.getAlbumCount(), byTracks.size());
+			assertTrue(byTracks.get(0).getTrackCount() >= byTracks.get(1)
+					.getTrackCount());
+
+			assertTrue(statistics.getHistogram("unknownProperty", 10)
+					.isEmpty());
+			PropertyStatistics unknown = statistics
+					.getStatistics("unknownProperty");
+			assertEquals(0, unknown.getCount());
+			assertNull(unknown.getMin());
+			assertNull(unknown.getMax());
+
+			// Negative values belong to the bucket below them
+			int skipCountId = db.getMetadata().property2Id(
+					Property.PROP_SKIP_COUNT);
+			execute(new File(db.getPathToDb()),
+					"update resource_properties set obj = '-5' where media_item_id = 1 and property_id = "
+							+ skipCountId,
+					"update resource_properties set obj = '-10' where media_item_id = 2 and property_id = "
+							+ skipCountId,
+					"update resource_properties set obj = '-11' where media_item_id = 3 and property_id = "
+							+ skipCountId);
+			Map<Long, Integer> skips = new HashMap<Long, Integer>();
+			for (MediaItem track : db.getAllTracks()) {
+				long bucket = (long) Math.floor(track.getPropertyAsLong(
+						Property.PROP_SKIP_COUNT, 0) / 10.0) * 10;
+				Integer count = skips.get(bucket);
+				skips.put(bucket, count == null ? 1 : count + 1);
+			}
+			assertEquals(Integer.valueOf(2), skips.get(-10L));
+			assertEquals(skips,
+					statistics.getHistogram(Property.PROP_SKIP_COUNT, 10));
+			assertEquals(Long.valueOf(-11),
+					statistics.getStatistics(Property.PROP_SKIP_COUNT)
+							.getMin());
+		} finally {
+			db.close();
+		}
+	}
+
+	@Test
+	public void testDuplicates() throws Exception {
+		SongbirdDbGenerator generator = new SongbirdDbGenerator();
+		generator.setTracks(100);
+		generator.setPropertiesPerTrack(3);
+		generator.setPlayLists(3);
+		generator.setMembersPerPlayList(60);
+		File file = folder.newFile();
+		generator.generate(file);
+
+		execute(file,
+				// Same URL and tags as track 1, apart from case and whitespace
+				"insert into media_items (media_item_id, guid, created, updated, content_url, hidden, is_list) "
+						+ "select 201, 'dup', created, updated, upper(content_url) || ' ', 0, 0 from media_items where media_item_id = 1",
+				"insert into resource_properties (media_item_id, property_id, obj) "
+						+ "select 201, property_id, upper(obj) from resource_properties where media_item_id = 1",
+				// Same artist and title as track 2, but no album
+				"insert into media_items (media_item_id, guid, created, updated, content_url, hidden, is_list) "
+						+ "values (202, 'other', 0, 0, 'file:///other.mp3', 0, 0)",
+				"insert into resource_properties (media_item_id, property_id, obj) "
+						+ "select 202, property_id, obj from resource_properties where media_item_id = 2 and property_id in (3, 4)",
+				// Same artist, but blank titles
+				"insert into media_items (media_item_id, guid, created, updated, content_url, hidden, is_list) "
+						+ "values (203, 'blank1', 0, 0, 'file:///blank1.mp3', 0, 0)",
+				"insert into media_items (media_item_id, guid, created, updated, content_url, hidden, is_list) "
+						+ "values (204, 'blank2', 0, 0, 'file:///blank2.mp3', 0, 0)",
+				"insert into resource_properties (media_item_id, property_id, obj) values (203, 3, ' ')",
+				"insert into resource_properties (media_item_id, property_id, obj) values (203, 4, 'Artist')",
+				"insert into resource_properties (media_item_id, property_id, obj) values (204, 3, '')",
+				"insert into resource_properties (media_item_id, property_id, obj) values (204, 4, 'Artist')",
+				// Orphaned properties with the tags of track 2
+				"insert into resource_properties (media_item_id, property_id, obj) "
+						+ "select 150, property_id, obj from resource_properties where media_item_id = 2",
+				"insert into resource_properties (media_item_id, property_id, obj) "
+						+ "select 100000, property_id, obj from resource_properties where media_item_id = 2");
+
+		SongbirdDb db = new SongbirdDb(file.getAbsolutePath());
+		try {
+			List<DuplicateGroup> byUrl = db.getDuplicateTracksByContentUrl();
+			assertEquals(1, byUrl.size());
+			assertEquals(Arrays.asList(1, 201), byUrl.get(0).getMediaItemIds());
+			assertEquals(2, byUrl.get(0).getCount());
+
+			List<DuplicateGroup> byTags = db.getDuplicateTracksByTags();
+			assertEquals(1, byTags.size());
+			assertEquals(Arrays.asList(1, 201), byTags.get(0).getMediaItemIds());
+			assertTrue(byTags.get(0).getKey(),
+					byTags.get(0).getKey().contains(" - track 1 - "));
+
+			Map<Integer, List<DuplicateGroup>> byPlayList = db
+					.getDuplicateMembers();
+			for (SimpleMediaList playList : db.getPlayLists(false, false)) {
+				Map<Integer, Integer> counts = new HashMap<Integer, Integer>();
+				for (MemberMediaItem member : playList.getMembers()) {
+					Integer count = counts.get(member.getMember().getId());
+					counts.put(member.getMember().getId(),
+							count == null ? 1 : count + 1);
+				}
+				Map<Integer, Integer> duplicateCounts = new HashMap<Integer, Integer>();
+				for (Map.Entry<Integer, Integer> count : counts.entrySet()) {
+					if (count.getValue() > 1) {
+						duplicateCounts.put(count.getKey(), count.getValue());
+					}
+				}
+				Map<Integer, Integer> actual = new HashMap<Integer, Integer>();
+				List<DuplicateGroup> groups = byPlayList.get(playList
+						.getList().getId());
+				if (groups != null) {
+					for (DuplicateGroup group : groups) {
+						actual.put(group.getMediaItemIds().get(0),
+								group.getCount());
+					}
+				}
+				assertFalse(duplicateCounts.isEmpty());
+				assertEquals(duplicateCounts, actual);
+			}
+		} finally {
+			db.close();
+		}
+	}
+
+	@Test
+	public void testSnapshot() throws Exception {
+		SongbirdDbGenerator generator = new SongbirdDbGenerator();
+		generator.setTracks(100);
+		generator.setPropertiesPerTrack(5);
+		generator.setPlayLists(3);
+		generator.setMembersPerPlayList(20);
+		File dbFile = folder.newFile();
+		generator.generate(dbFile);
+		File snapshotFile = new File(folder.getRoot(), "library.snapshot");
+
+		SongbirdDb db = new SongbirdDb(dbFile.getAbsolutePath());
+		try {
+			SongbirdDbSnapshot written = SongbirdDbSnapshot.create(
+					snapshotFile, db, false, false);
+			assertTrue(SongbirdDbSnapshot.isUpToDate(snapshotFile, dbFile));
+			SongbirdDbSnapshot snapshot = SongbirdDbSnapshot.read(
+					snapshotFile, dbFile);
+			assertEquals(toStringLoaded(written.getTracks()),
+					toStringLoaded(snapshot.getTracks()));
+			assertEquals(toString(written.getPlayLists()),
+					toString(snapshot.getPlayLists()));
+			assertEquals("Track 1", snapshot.getTracks().get(0)
+					.getProperty(Property.PROP_TRACK_NAME));
+			// Playlist members are the same instances as the tracks
+			MediaItem member = snapshot.getPlayLists().get(0).getMembers()
+					.get(0).getMember();
+			assertSame(snapshot.getTracks().get(member.getId() - 1), member);
+
+			// Uncheckpointed writes in the write-ahead log
+			File wal = new File(dbFile.getPath() + "-wal");
+			FileOutputStream walOut = new FileOutputStream(wal);
+			walOut.write(new byte[32]);
+			walOut.close();
+			assertFalse(SongbirdDbSnapshot.isUpToDate(snapshotFile, dbFile));
+			assertTrue(wal.delete());
+			assertTrue(SongbirdDbSnapshot.isUpToDate(snapshotFile, dbFile));
+
+			// Loaded before the database changes, written afterwards
+			SongbirdDbSnapshot.DbFileState stateBeforeChange = SongbirdDbSnapshot.DbFileState
+					.of(dbFile);
+			List<MediaItem> tracks = db.getAllTracks();
+			List<SimpleMediaList> playLists = db.getPlayLists(false, false);
+			execute(dbFile,
+					"update resource_properties set obj = 'Changed' where media_item_id = 1 and property_id = 3");
+			assertFalse(SongbirdDbSnapshot.isUpToDate(snapshotFile, dbFile));
+			assertNull(SongbirdDbSnapshot.read(snapshotFile, dbFile));
+
+			// The mapping has been released, so the file can be replaced
+			SongbirdDbSnapshot.write(snapshotFile, stateBeforeChange,
+					db.getMetadata(), tracks, playLists);
+			assertNull(SongbirdDbSnapshot.read(snapshotFile, dbFile));
+
+			SongbirdDbSnapshot.create(snapshotFile, db, false, false);
+			assertEquals("Changed",
+					SongbirdDbSnapshot.read(snapshotFile, dbFile).getTracks()
+							.get(0).getProperty(Property.PROP_TRACK_NAME));
+		} finally {
+			db.close();
+		}
+	}
+
+	@Test
+	public void testNestedConnectionUse() throws Exception {
+		File file = folder.newFile();
+		new SongbirdDbGenerator().generate(file);
+		SongbirdDb db = new SongbirdDb(file.getAbsolutePath(), true);
+		try {
+			Thread thread = Thread.currentThread();
+			SongbirdDbConnection outer = db.acquireConnection();
+			// E.g. lazy loading while reading a cursor
+			SongbirdDbConnection inner = db.acquireConnection();
+			assertSame(outer, inner);
+			db.releaseConnection(inner);
+			assertTrue(db.isUsingConnection(thread));
+			db.releaseConnection(outer);
+			assertFalse(db.isUsingConnection(thread));
+			assertFalse(db.cancelQueries(thread));
+		} finally {
+			db.close();
+		}
+	}
+
+	@Test
+	public void testKeepConnectionsOpen() throws Exception {
+		SongbirdDbGenerator generator = new SongbirdDbGenerator();
+		generator.setTracks(20);
+		generator.setPlayLists(2);
+		generator.setMembersPerPlayList(5);
+		File file = folder.newFile();
+		generator.generate(file);
+		final SongbirdDb db = new SongbirdDb(file.getAbsolutePath(), true);
+		try {
+			SongbirdDbMetrics metrics = new SongbirdDbMetrics();
+			db.setListener(metrics);
+			List<MediaItem> tracks = db.getAllTracks();
+			db.getPlayLists(false, false);
+			assertEquals(tracks.toString(), db.getAllTracks().toString());
+			/*
+			 * All calls of this thread use the connection that has been opened
+			 * for reading the metadata
+			 */
+			assertEquals(0, metrics.getConnections().getCount());
+			assertEquals(4, metrics.getQueries().getCount());
+
+			// Other threads use their own connection
+			final List<Thread> executorThreads = new ArrayList<Thread>();
+			ExecutorService executor = Executors
+					.newSingleThreadExecutor(new ThreadFactory() {
+						@Override
+						public Thread newThread(final Runnable runnable) {
+							Thread thread = new Thread(runnable);
+							executorThreads.add(thread);
+							return thread;
+						}
+					});
+			try {
+				for (int i = 0; i < 2; i++) {
+					executor.submit(new Callable<List<MediaItem>>() {
+						@Override
+						public List<MediaItem> call() throws Exception {
+							return db.getAllTracks();
+						}
+					}).get();
+				}
+			} finally {
+				executor.shutdownNow();
+			}
+			assertEquals(1, metrics.getConnections().getCount());
+			assertEquals(2, db.getOpenConnections());
+			executorThreads.get(0).join();
+
+			// The connections of threads that have ended are closed
+			for (int i = 0; i < 3; i++) {
+				Thread thread = new Thread(new Runnable() {
+					@Override
+					public void run() {
+						try {
+							db.getAllTracks();
+						} catch (SQLException e) {
+							throw new RuntimeException(e);
+						}
+					}
+				});
+				thread.start();
+				thread.join();
+			}
+			assertEquals(4, metrics.getConnections().getCount());
+			// This thread's, and the one of the last thread that has ended
+			assertEquals(2, db.getOpenConnections());
+
+			db.close();
+			assertEquals(0, db.getOpenConnections());
+			// Closing drops the connections of all threads
+			assertEquals(tracks.toString(), db.getAllTracks().toString());
+			assertEquals(5, metrics.getConnections().getCount());
+			assertEquals(1, db.getOpenConnections());
+		} finally {
+			db.close();
+		}
+	}
+
+	@Test
+	public void testStatementCache() throws Exception {
+		File file = folder.newFile();
+		new SongbirdDbGenerator().generate(file);
+		SongbirdDbConnection connection = new SongbirdDbConnection(
+				file.getAbsolutePath());
+		try {
+			PreparedStatement statement = connection
+					.preparedStatement(SongbirdDb.QUERY_MEDIA_ITEMS);
+			connection.release(statement);
+			assertSame(statement,
+					connection.preparedStatement(SongbirdDb.QUERY_MEDIA_ITEMS));
+
+			// A statement in use is not handed out twice
+			PreparedStatement concurrent = connection
+					.preparedStatement(SongbirdDb.QUERY_MEDIA_ITEMS);
+			assertNotSame(statement, concurrent);
+			connection.release(concurrent);
+			connection.release(statement);
+
+			// Releasing the result releases its statement
+			ResultSet rs = connection
+					.executeQuery(SongbirdDb.QUERY_MEDIA_ITEMS);
+			Statement executed = rs.getStatement();
+			assertTrue(rs.next());
+			connection.release(rs);
+			rs = connection.executeQuery(SongbirdDb.QUERY_MEDIA_ITEMS);
+			assertSame(executed, rs.getStatement());
+			assertTrue(rs.next());
+			connection.release(rs);
+		} finally {
+			connection.close();
+		}
+	}
+
+	/** Modifies a database, e.g. a generated one. */
+	private static void execute(final File file, final String... statements)
+			throws Exception {
+		Connection connection = DriverManager.getConnection("jdbc:sqlite:"
+				+ file.getAbsolutePath());
+		try {
+			Statement statement = connection.createStatement();
+			for (String sql : statements) {
+				statement.executeUpdate(sql);
+			}
+			statement.close();
+		} finally {
+			connection.close();
+		}
+	}
+
+	/**
+	 * Adds the SQL statements that insert an empty playlist into a generated
+	 * database, see {@link SongbirdDbGenerator#getPropertyNames()}.
+	 * <code>name</code> and <code>customType</code> are omitted if
+	 * <code>null</code>.
+	 */
+	private static void addList(final List<String> statements, final int id,
+			final String name, final String customType) {
+		statements.add("insert into media_items (media_item_id, guid, created, updated, "
+				+ "content_url, hidden, media_list_type_id, is_list) values ("
+				+ id + ", 'list-" + id + "', 0, 0, 'songbird-medialist://"
+				+ id + "', 0, 1, 1)");
+		if (name != null) {
+			statements.add("insert into resource_properties (media_item_id, property_id, obj) values ("
+					+ id + ", 1, '" + name + "')");
+		}
+		if (customType != null) {
+			statements.add("insert into resource_properties (media_item_id, property_id, obj) values ("
+					+ id + ", 2, '" + customType + "')");
+		}
+	}
+
+	/**
+	 * @return the number of rows needed for reading <code>playLists</code>,
+	 *         i.e. one per property and at least one per item
+	 */
+	private static long rows(final List<SimpleMediaList> playLists) {
+		long rows = 0;
+		for (SimpleMediaList playList : playLists) {
+			rows += Math.max(1, playList.getList().getProperties().size());
+			for (MemberMediaItem member : playList.getMembers()) {
+				rows += Math.max(1, member.getMember().getProperties().size());
+			}
+		}
+		return rows;
+	}
+
+	/** @return the names of the playlists, in order */
+	private static String listNames(final List<SimpleMediaList> playLists) {
+		List<String> names = new ArrayList<String>();
+		for (SimpleMediaList playList : playLists) {
+			names.add(playList.getList().getProperty(
+					Property.PROP_MEDIA_LIST_NAME));
+		}
+		return names.toString();
+	}
+
+	/**
+	 * Asserts that <code>projected</code> contains exactly the properties of
+	 * <code>item</code> that are named in <code>propertyNames</code>.
+	 */
+	private static void assertProjected(final MediaItem item,
+			final MediaItem projected, final Set<String> propertyNames) {
+		assertEquals(item.getId(), projected.getId());
+		assertEquals(item.getContentUrl(), projected.getContentUrl());
+		assertEquals(propertyNames.size(), projected.getProperties().size());
+		for (String propertyName : propertyNames) {
+			assertNotNull(projected.getProperty(propertyName));
+			assertEquals(item.getProperty(propertyName),
+					projected.getProperty(propertyName));
+		}
+		assertNull(projected.getProperty(Property.PROP_ALBUM_NAME));
+	}
+
+	private SongbirdDb open(final SongbirdDbGenerator generator)
+			throws Exception {
+		File file = folder.newFile();
+		generator.generate(file);
+		return new SongbirdDb(file.getAbsolutePath());
+	}
+
+	private static String toString(final List<SimpleMediaList> playLists) {
+		StringBuilder string = new StringBuilder();
+		for (SimpleMediaList playList : playLists) {
+			for (MemberMediaItem member : playList.getMembers()) {
+				member.getMember().getProperties();
+			}
+			string.append(playList.getList()).append(playList.getMembers());
+		}
+		return string.toString();
+	}
+
+	/** Loads the properties of all items before converting them. */
+	private static String toStringLoaded(final List<MediaItem> items) {
+		for (MediaItem item : items) {
+			item.getProperties();
+		}
+		return items.toString();
+	}
+}
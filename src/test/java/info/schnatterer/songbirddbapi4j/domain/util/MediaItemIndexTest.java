@@ -0,0 +1,87 @@
+/**
+ * Copyright (C) 2015 Johannes Schnatterer
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package info.schnatterer.songbirddbapi4j.domain.util;
+
+import static org.junit.Assert.*;
+
+import info.schnatterer.songbirddbapi4j.domain.MediaItem;
+import info.schnatterer.songbirddbapi4j.domain.Property;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+public class MediaItemIndexTest {
+
+	private static final int ARTIST = 1;
+	private static final int ALBUM = 2;
+
+	@BeforeClass
+	@SuppressWarnings("deprecation")
+	public static void initProperties() {
+		Map<Integer, String> properties = new HashMap<Integer, String>();
+		properties.put(ARTIST, Property.PROP_ARTIST_NAME);
+		properties.put(ALBUM, Property.PROP_ALBUM_NAME);
+		Property.populateResourceMap(properties);
+	}
+
+	/** Leaves the global mappings empty, as SongbirdDb does not fill them. */
+	@AfterClass
+	@SuppressWarnings("deprecation")
+	public static void resetProperties() {
+		Property.populateResourceMap(new HashMap<Integer, String>());
+	}
+
+	@Test
+	public void testLookups() {
+		MediaItem a = createItem(1, "file:///Music/A.mp3", "Beatles", "Help");
+		MediaItem b = createItem(2, "file:///music/b.mp3", "beatles", "Abbey Road");
+		MediaItem c = createItem(3, "file:///music/c.mp3", "Air", null);
+		MediaItemIndex index = new MediaItemIndex(Arrays.asList(a, b, c));
+
+		assertEquals(3, index.size());
+		assertSame(a, index.getByContentUrl("FILE:///music/a.mp3"));
+		assertNull(index.getByContentUrl("file:///music/d.mp3"));
+		assertNull(index.getByContentUrl(null));
+
+		assertEquals(Arrays.asList(a, b), index.getByArtist("BEATLES"));
+		assertEquals(Arrays.asList(c), index.getByArtist("air"));
+		assertTrue(index.getByArtist("Nobody").isEmpty());
+		assertEquals(Arrays.asList("Air", "Beatles"),
+				Arrays.asList(index.getArtists().keySet().toArray()));
+
+		assertEquals(Arrays.asList(b), index.getByAlbum("abbey road"));
+		assertEquals(2, index.getAlbums().size());
+	}
+
+	private static MediaItem createItem(int id, String contentUrl,
+			String artist, String album) {
+		MediaItem item = new MediaItem();
+		item.setId(id);
+		item.setContentUrl(contentUrl);
+		if (artist != null) {
+			item.setProperty(ARTIST, artist);
+		}
+		if (album != null) {
+			item.setProperty(ALBUM, album);
+		}
+		return item;
+	}
+}
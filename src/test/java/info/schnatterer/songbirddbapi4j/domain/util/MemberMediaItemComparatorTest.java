@@ -114,6 +114,54 @@ public class MemberMediaItemComparatorTest {
 
 	}
 
+	@Test
+	public void testOrdinalKey() {
+		assertArrayEquals(new int[] { 72, 31, 0, 20, 2, 0, -1, -1, 1, -1, 0 },
+				MemberMediaItemComparator.toOrdinalKey(TEST_0));
+		assertArrayEquals(new int[] { 100 },
+				MemberMediaItemComparator.toOrdinalKey(TEST_5));
+		assertArrayEquals(new int[] { Integer.MIN_VALUE, Integer.MAX_VALUE },
+				MemberMediaItemComparator
+						.toOrdinalKey("-2147483648.2147483647"));
+	}
+
+	@Test
+	public void testOrdinalKeyNotParseable() {
+		assertNull(MemberMediaItemComparator.toOrdinalKey(null));
+		assertNull(MemberMediaItemComparator.toOrdinalKey(""));
+		assertNull(MemberMediaItemComparator.toOrdinalKey("1..2"));
+		assertNull(MemberMediaItemComparator.toOrdinalKey("1.2."));
+		assertNull(MemberMediaItemComparator.toOrdinalKey("1.02"));
+		assertNull(MemberMediaItemComparator.toOrdinalKey("-0"));
+		assertNull(MemberMediaItemComparator.toOrdinalKey("1.a"));
+		assertNull(MemberMediaItemComparator.toOrdinalKey("2147483648"));
+	}
+
+	@Test
+	public void testKeyComparisonMatchesStringComparison() {
+		String[] ordinals = { TEST_0, TEST_1, TEST_2, TEST_3, TEST_4, TEST_5,
+				TEST_6, TEST_7, TEST_8, "0", "-1", "71", "71.0.0", "1.02" };
+		for (boolean descending : new boolean[] { false, true }) {
+			MemberMediaItemComparator comp = new MemberMediaItemComparator(
+					descending);
+			for (String ordinal1 : ordinals) {
+				for (String ordinal2 : ordinals) {
+					assertEquals(ordinal1 + " vs " + ordinal2,
+							Integer.signum(comp.compare(ordinal1, ordinal2)),
+							Integer.signum(comp.compare(
+									createMember(ordinal1),
+									createMember(ordinal2))));
+				}
+			}
+		}
+	}
+
+	private MemberMediaItem createMember(String ordinal) {
+		MemberMediaItem member = new MemberMediaItem();
+		member.setOridnal(ordinal);
+		return member;
+	}
+
 	private void addMember(List<MemberMediaItem> list, String ordinal) {
 		MemberMediaItem member = new MemberMediaItem();
 		member.setOridnal(ordinal);
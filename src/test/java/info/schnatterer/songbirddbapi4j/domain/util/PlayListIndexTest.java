@@ -0,0 +1,91 @@
+/**
+ * Copyright (C) 2015 Johannes Schnatterer
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package info.schnatterer.songbirddbapi4j.domain.util;
+
+import static org.junit.Assert.*;
+
+import info.schnatterer.songbirddbapi4j.domain.MediaItem;
+import info.schnatterer.songbirddbapi4j.domain.MemberMediaItem;
+import info.schnatterer.songbirddbapi4j.domain.SimpleMediaList;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+public class PlayListIndexTest {
+
+	@Test
+	public void testLookups() {
+		MediaItem a = createItem(1, "file:///Music/A.mp3");
+		MediaItem b = createItem(2, " file:///music/b.mp3 ");
+		MediaItem c = createItem(3, "file:///music/%C3%A4.mp3");
+		SimpleMediaList first = createList(10, a, b, a);
+		SimpleMediaList second = createList(11, b, c);
+		SimpleMediaList empty = createList(12);
+		PlayListIndex index = new PlayListIndex(Arrays.asList(first, second,
+				empty));
+
+		// Each playlist only once, even if it contains the track twice
+		assertEquals(Arrays.asList(first), index.getPlayListsContaining(1));
+		assertEquals(Arrays.asList(first, second),
+				index.getPlayListsContaining(2));
+		assertTrue(index.getPlayListsContaining(4).isEmpty());
+
+		assertEquals(Arrays.asList(first),
+				index.getPlayListsContaining("FILE:///music/a.mp3"));
+		assertEquals(Arrays.asList(first, second),
+				index.getPlayListsContaining("file:///music/b.mp3"));
+		assertEquals(Arrays.asList(second),
+				index.getPlayListsContaining("file:///music/%c3%a4.mp3  "));
+		assertTrue(index.getPlayListsContaining("file:///music/d.mp3")
+				.isEmpty());
+		assertTrue(index.getPlayListsContaining(null).isEmpty());
+	}
+
+	@Test
+	public void testNormalizeContentUrl() {
+		assertEquals("file:///music/a.mp3",
+				MediaItemIndex.normalizeContentUrl("  FILE:///Music/A.mp3 "));
+		// Like SQLite's lower() and trim(), only ASCII letters and spaces
+		assertEquals("\tfile:///\u00c4.mp3",
+				MediaItemIndex.normalizeContentUrl("\tFILE:///\u00c4.mp3"));
+		assertEquals("", MediaItemIndex.normalizeContentUrl("   "));
+		assertNull(MediaItemIndex.normalizeContentUrl(null));
+	}
+
+	private static MediaItem createItem(int id, String contentUrl) {
+		MediaItem item = new MediaItem();
+		item.setId(id);
+		item.setContentUrl(contentUrl);
+		return item;
+	}
+
+	private static SimpleMediaList createList(int id, MediaItem... members) {
+		SimpleMediaList list = new SimpleMediaList();
+		list.setList(createItem(id, "songbird-medialist://" + id));
+		List<MemberMediaItem> memberItems = new ArrayList<MemberMediaItem>();
+		for (int i = 0; i < members.length; i++) {
+			MemberMediaItem member = new MemberMediaItem();
+			member.setMember(members[i]);
+			member.setOridnal(String.valueOf(i));
+			memberItems.add(member);
+		}
+		list.setMembers(memberItems);
+		return list;
+	}
+}
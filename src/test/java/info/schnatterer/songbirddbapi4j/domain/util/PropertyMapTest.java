@@ -0,0 +1,119 @@
+/**
+ * Copyright (C) 2015 Johannes Schnatterer
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package info.schnatterer.songbirddbapi4j.domain.util;
+
+import static org.junit.Assert.*;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class PropertyMapTest {
+
+	@Test
+	public void testPutAndGet() {
+		PropertyMap map = new PropertyMap();
+		assertNull(map.put(15, "fifteen"));
+		assertNull(map.put(3, "three"));
+		assertNull(map.put(42, "fortytwo"));
+		assertEquals("three", map.put(3, "THREE"));
+
+		assertEquals(3, map.size());
+		assertEquals("THREE", map.get(3));
+		assertEquals("fifteen", map.get(Integer.valueOf(15)));
+		assertNull(map.get(4));
+		assertNull(map.get("15"));
+		assertTrue(map.containsKey(42));
+		assertFalse(map.containsKey(43));
+	}
+
+	@Test
+	public void testIterationIsSortedByKey() {
+		PropertyMap map = new PropertyMap();
+		map.put(15, "c");
+		map.put(1, "a");
+		map.put(7, "b");
+
+		assertEquals("{1=a, 7=b, 15=c}", map.toString());
+	}
+
+	@Test
+	public void testRemove() {
+		PropertyMap map = new PropertyMap();
+		map.put(1, "a");
+		map.put(2, "b");
+		map.put(3, "c");
+
+		assertEquals("b", map.remove(2));
+		assertNull(map.remove(2));
+		assertEquals("{1=a, 3=c}", map.toString());
+
+		Iterator<Map.Entry<Integer, String>> it = map.entrySet().iterator();
+		it.next();
+		it.remove();
+		assertEquals("{3=c}", map.toString());
+
+		map.entrySet().iterator().next().setValue("C");
+		assertEquals("C", map.get(3));
+	}
+
+	@Test
+	public void testGetLong() {
+		PropertyMap map = new PropertyMap();
+		map.put(5, "5");
+		map.put(9, "9", 9);
+		map.put(1, "1", 1);
+		map.put(3, "3");
+
+		assertEquals(1, map.getLong(1, -1));
+		assertEquals(3, map.getLong(3, -1));
+		assertEquals(5, map.getLong(5, -1));
+		assertEquals(9, map.getLong(9, -1));
+		assertEquals(-1, map.getLong(2, -1));
+
+		map.put(9, "10");
+		assertEquals(10, map.getLong(9, -1));
+		map.remove(3);
+		assertEquals(1, map.getLong(1, -1));
+		assertEquals(5, map.getLong(5, -1));
+		assertEquals(10, map.getLong(9, -1));
+	}
+
+	@Test
+	public void testEqualToHashMap() {
+		Random random = new Random(0);
+		Map<Integer, String> expected = new HashMap<Integer, String>();
+		PropertyMap actual = new PropertyMap();
+		for (int i = 0; i < 1000; i++) {
+			int key = random.nextInt(100);
+			String value = String.valueOf(random.nextInt());
+			if (random.nextInt(4) == 0) {
+				assertEquals(expected.remove(key), actual.remove(key));
+			} else {
+				assertEquals(expected.put(key, value), actual.put(key, value));
+			}
+		}
+		assertEquals(expected, actual);
+		assertEquals(actual, expected);
+		assertEquals(expected.hashCode(), actual.hashCode());
+
+		actual.trimToSize();
+		assertEquals(expected, new PropertyMap(actual));
+	}
+}
@@ -0,0 +1,221 @@
+/**
+ * Copyright (C) 2015 Johannes Schnatterer
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package info.schnatterer.songbirddbapi4j.export;
+
+import static org.junit.Assert.*;
+
+import info.schnatterer.songbirddbapi4j.SongbirdDb;
+import info.schnatterer.songbirddbapi4j.SongbirdDbGenerator;
+import info.schnatterer.songbirddbapi4j.domain.MediaItem;
+import info.schnatterer.songbirddbapi4j.domain.MemberMediaItem;
+import info.schnatterer.songbirddbapi4j.domain.Property;
+import info.schnatterer.songbirddbapi4j.domain.SimpleMediaList;
+import info.schnatterer.songbirddbapi4j.domain.SongbirdDbMetadata;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Exports the playlists of databases created by {@link SongbirdDbGenerator}
+ * via {@link PlayListExporter}.
+ */
+public class PlayListExporterTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private SongbirdDb db;
+
+	@Before
+	public void setUp() throws Exception {
+		SongbirdDbGenerator generator = new SongbirdDbGenerator();
+		generator.setTracks(300);
+		generator.setPropertiesPerTrack(10);
+		generator.setPlayLists(7);
+		generator.setMembersPerPlayList(40);
+		File file = folder.newFile();
+		generator.generate(file);
+		db = new SongbirdDb(file.getAbsolutePath());
+	}
+
+	@After
+	public void tearDown() {
+		db.close();
+	}
+
+	@Test
+	public void testExportM3u8() throws Exception {
+		PlayListExporter exporter = new PlayListExporter(db);
+		exporter.addPathMapping("c:/music/", "/mnt/music/");
+		List<File> files = exporter.export(folder.newFolder(), false, false);
+
+		assertEquals(7, files.size());
+		assertTrue(files.get(0).getName().endsWith(".m3u8"));
+		String[] lines = read(files.get(0)).split("\n");
+		assertEquals(1 + 2 * 40, lines.length);
+		assertEquals("#EXTM3U", lines[0]);
+		assertTrue(lines[1], lines[1].matches("#EXTINF:-1,Artist \\d+ - Track \\d+"));
+		assertTrue(lines[2], lines[2].startsWith("/mnt/music/artist"));
+	}
+
+	@Test
+	public void testExportParallel() throws Exception {
+		PlayListExporter exporter = new PlayListExporter(db);
+		List<File> files = exporter.export(folder.newFolder(), false, false);
+
+		ExecutorService executor = Executors.newFixedThreadPool(3);
+		try {
+			// Fewer, as many and more tasks than threads and playlists
+			for (int parallelism : new int[] { 2, 3, 16 }) {
+				exporter.setExecutor(executor, parallelism);
+				List<File> parallelFiles = exporter.export(
+						folder.newFolder(), false, false);
+				assertEquals(files.size(), parallelFiles.size());
+				for (int i = 0; i < files.size(); i++) {
+					assertEquals(files.get(i).getName(), parallelFiles.get(i)
+							.getName());
+					assertEquals(read(files.get(i)),
+							read(parallelFiles.get(i)));
+				}
+			}
+
+			// The exception of a task is thrown as is
+			try {
+				exporter.export(new File(folder.getRoot(), "missing"), false,
+						false);
+				fail("Expected FileNotFoundException");
+			} catch (FileNotFoundException e) {
+				// Expected
+			}
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+	@Test
+	public void testExportUnencodable() throws Exception {
+		SongbirdDbMetadata metadata = db.getMetadata();
+		MediaItem japanese = new MediaItem();
+		japanese.setContentUrl("file:///c:/music/%E6%97%A5%E6%9C%AC.mp3");
+		MediaItem japaneseTitle = new MediaItem();
+		japaneseTitle.setContentUrl("file:///c:/music/a.mp3");
+		japaneseTitle.setMetadata(metadata);
+		japaneseTitle.setProperty(
+				metadata.property2Id(Property.PROP_TRACK_NAME),
+				"\u65e5\u672c");
+		SimpleMediaList playList = new SimpleMediaList();
+		playList.setList(db.getPlaylistItems(false, false).get(0));
+		List<MemberMediaItem> members = new ArrayList<MemberMediaItem>();
+		for (MediaItem item : new MediaItem[] { japanese, japaneseTitle }) {
+			MemberMediaItem member = new MemberMediaItem();
+			member.setMember(item);
+			members.add(member);
+		}
+		playList.setMembers(members);
+
+		PlayListExporter exporter = new PlayListExporter(db);
+		exporter.setFormat(PlayListFormat.EXTENDED_M3U);
+		File file = folder.newFile();
+		exporter.export(playList, file);
+		// The location would not point to the file, the title is only shown
+		assertEquals("#EXTM3U\n#EXTINF:-1,??\nc:/music/a.mp3\n", read(file));
+
+		exporter.setFormat(PlayListFormat.M3U8);
+		exporter.export(playList, file);
+		assertEquals(
+				"#EXTM3U\n#EXTINF:-1,\nc:/music/\u65e5\u672c.mp3\n"
+						+ "#EXTINF:-1,\u65e5\u672c\nc:/music/a.mp3\n", read(file));
+	}
+
+	@Test
+	public void testExportXspf() throws Exception {
+		SimpleMediaList playList = db.getPlayList(db.getPlaylistItems(false,
+				false).get(0));
+		PlayListExporter exporter = new PlayListExporter(db);
+		exporter.setFormat(PlayListFormat.XSPF);
+		File file = folder.newFile();
+		exporter.export(playList, file);
+
+		String xspf = read(file);
+		assertTrue(xspf.startsWith("<?xml"));
+		assertTrue(xspf.endsWith("</trackList>\n</playlist>\n"));
+		assertEquals(40, xspf.split("<track>").length - 1);
+		assertTrue(xspf.contains("<location>file:///c:/music/artist"));
+	}
+
+	@Test
+	public void testToLocation() {
+		PlayListExporter exporter = new PlayListExporter(db);
+		assertEquals("C:/My Music/\u00c4rzte/a b.mp3",
+				exporter.toLocation("file:///C:/My%20Music/%C3%84rzte/a%20b.mp3"));
+		assertEquals("/home/music/100%.mp3",
+				exporter.toLocation("file:///home/music/100%.mp3"));
+		assertEquals("http://example.com/a%20b.mp3",
+				exporter.toLocation("http://example.com/a%20b.mp3"));
+		assertNull(exporter.toLocation(null));
+		assertEquals("C:/a.mp3",
+				exporter.toLocation("file://localhost/C:/a.mp3"));
+		assertEquals("/home/a.mp3",
+				exporter.toLocation("file://LOCALHOST/home/a.mp3"));
+		assertEquals("C:/a.mp3", exporter.toLocation("file:/C:/a.mp3"));
+		assertEquals("//server/My Share/a.mp3",
+				exporter.toLocation("file://server/My%20Share/a.mp3"));
+		assertEquals("//server/share/a.mp3",
+				exporter.toLocation("file:////server/share/a.mp3"));
+		assertEquals("file://server/My%20Share/a.mp3",
+				PlayListFormat.toUri("//server/My Share/a.mp3"));
+
+		exporter.addPathMapping("C:/My Music/", "/mnt/music/");
+		assertEquals("/mnt/music/a.mp3",
+				exporter.toLocation("file:///C:/My%20Music/a.mp3"));
+		assertEquals("file:///C:/My%20Music/%C3%84rzte.mp3",
+				PlayListFormat.toUri("C:/My Music/\u00c4rzte.mp3"));
+
+		assertEquals("AC_DC_ Best_", PlayListExporter.toFileName("AC/DC: Best?"));
+		assertEquals("playlist", PlayListExporter.toFileName(" "));
+	}
+
+	private static String read(final File file) throws IOException {
+		InputStream in = new FileInputStream(file);
+		try {
+			Reader reader = new InputStreamReader(in, "UTF-8");
+			StringBuilder content = new StringBuilder();
+			char[] buffer = new char[4096];
+			int read;
+			while ((read = reader.read(buffer)) >= 0) {
+				content.append(buffer, 0, read);
+			}
+			return content.toString();
+		} finally {
+			in.close();
+		}
+	}
+}